@@ -147,6 +147,18 @@ public class ColumnDescription {
         this.resizeable = resizeable;
     }
 
+    /**
+     * Creates a copy of another column.
+     *
+     * @param other The column to copy
+     */
+    public ColumnDescription(ColumnDescription other) {
+        this(other.name, other.width, other.alignment, other.overflowBehavior, other.resizeable);
+        this.type = other.type;
+        this.nativeType = other.nativeType;
+        this.formatter = other.formatter;
+    }
+
     /**
      * @return the formatter
      */
@@ -20,6 +20,7 @@ import org.sqsh.completion.NullCompleter;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
 
 /**
  * "Connections" are theoretically abstract things, and this is the base representation of a connection.  For most of
@@ -238,6 +239,39 @@ public abstract class ConnectionContext {
         return new NullCompleter(session, line, position, word);
     }
 
+    /**
+     * Returns a tab word completer that comes up with its completions right away, using only what is already at hand
+     * (such as the current SQL buffer or cached metadata), without waiting on the server. This is used when the
+     * completer returned by {@link #getTabCompleter(Session, String, int, String)} takes too long. The default
+     * implementation returns that same completer.
+     *
+     * @param session The current session
+     * @param line The line being typed into when the tab was struck
+     * @param position The current cursor position in the line
+     * @param word The current word at the point the tab was struct
+     * @return The completer
+     */
+    public Completer getCachedTabCompleter(Session session, String line, int position, String word) {
+        return getTabCompleter(session, line, position, word);
+    }
+
+    /**
+     * Returns the work of coming up with the completer returned by
+     * {@link #getTabCompleter(Session, String, int, String)}, to be done off of the thread of the session. The work
+     * may still be going on when the session next uses the connection, so it must not make use of the connection of
+     * the session itself. This method is called on the thread of the session, before the work is handed off. The
+     * default implementation does the work with {@link #getTabCompleter(Session, String, int, String)}.
+     *
+     * @param session The current session
+     * @param line The line being typed into when the tab was struck
+     * @param position The current cursor position in the line
+     * @param word The current word at the point the tab was struct
+     * @return The work, which returns the completer
+     */
+    public Callable<Completer> getBackgroundTabCompleter(Session session, String line, int position, String word) {
+        return () -> getTabCompleter(session, line, position, word);
+    }
+
     /**
      * Returns global variables/objects. This is primarily intended for use by scripting-language "connections" and is
      * used by the \globals command.
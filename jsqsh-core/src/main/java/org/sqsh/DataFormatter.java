@@ -27,6 +27,7 @@ import org.sqsh.format.Unformatter;
 import org.sqsh.format.UnsupportedTypeFormatter;
 import org.sqsh.format.XMLFormatter;
 
+import java.io.File;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.Calendar;
@@ -48,6 +49,13 @@ public class DataFormatter {
     ;
     private boolean byteStringFormat = false;
 
+    /**
+     * The number of characters of a CLOB, or bytes of a BLOB, to display (0 for no limit), and the directory to
+     * write out any that are longer to (null to cut them short instead).
+     */
+    private int lobLimit = 0;
+    private String lobDirectory = null;
+
     /**
      * Number of decimal places of precision to use when displaying floating point values (except for BigDecimal).
      */
@@ -336,7 +344,7 @@ public class DataFormatter {
      * Returns a formatter for formatting strings.
      */
     public Formatter getClobFormatter() {
-        return new ClobFormatter();
+        return new ClobFormatter(lobLimit, getLobDirectoryFile());
     }
 
     /**
@@ -367,7 +375,41 @@ public class DataFormatter {
      * @return The formatter.
      */
     public Formatter getBlobFormatter() {
-        return new BlobFormatter();
+        return new BlobFormatter(lobLimit, getLobDirectoryFile());
+    }
+
+    /**
+     * @return The number of characters of a CLOB, or bytes of a BLOB, that are displayed, or 0 if there is no limit
+     */
+    public int getLobLimit() {
+        return lobLimit;
+    }
+
+    /**
+     * @param lobLimit The number of characters of a CLOB, or bytes of a BLOB, to display, or 0 for no limit. LOBs
+     *         that are longer are either cut short or, see {@link #setLobDirectory(String)}, written out to a file.
+     */
+    public void setLobLimit(int lobLimit) {
+        this.lobLimit = Math.max(lobLimit, 0);
+    }
+
+    /**
+     * @return The directory to which LOBs that are longer than the limit are written, or null if they are cut short
+     */
+    public String getLobDirectory() {
+        return lobDirectory;
+    }
+
+    /**
+     * @param lobDirectory The directory to which LOBs that are longer than the limit are written, with the name of
+     *         the file displayed in their place, or null to cut them short.
+     */
+    public void setLobDirectory(String lobDirectory) {
+        this.lobDirectory = lobDirectory == null || lobDirectory.isEmpty() ? null : lobDirectory;
+    }
+
+    private File getLobDirectoryFile() {
+        return lobDirectory == null ? null : new File(lobDirectory);
     }
 
     /* ====================================================================
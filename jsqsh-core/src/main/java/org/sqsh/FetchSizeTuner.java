@@ -0,0 +1,305 @@
+/*
+ * Copyright 2007-2022 Scott C. Gray
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sqsh;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * Picks the fetch size for each query, rather than applying one fixed size to all of them.
+ *
+ * <p>A query starts out with a small fetch size, so that the first rows arrive quickly. While its result set is
+ * fetched, a {@link Tracker} watches each block of rows go by. The call to {@link ResultSet#next()} that has to go
+ * back to the server for the next block is much slower than the rest, so if that round trip is a significant part
+ * of the time taken to get through a block, the fetch size is doubled for the next one. The fetch size is never
+ * allowed to grow past the point at which a block of rows (at the width measured so far) would take more than a
+ * given amount of memory.
+ *
+ * <p>The size a query ends up with is remembered for its "shape" (its text, with literals removed, see
+ * {@link #shapeOf(String)}), so the next time it, or one like it, is run it starts out at that size.
+ */
+public class FetchSizeTuner {
+
+    private static final Logger LOG = Logger.getLogger(FetchSizeTuner.class.getName());
+
+    /**
+     * The largest fetch size that is ever requested.
+     */
+    static final int MAX_FETCH_SIZE = 100_000;
+
+    /**
+     * The block round trip must take at least this fraction of the time taken to get through the block for the
+     * fetch size to grow.
+     */
+    static final double GROWTH_THRESHOLD = 0.10;
+
+    /**
+     * The number of query shapes whose fetch size is remembered.
+     */
+    static final int MAX_SHAPES = 256;
+
+    private int initialFetchSize = 32;
+    private long memoryLimit = 16L * 1024L * 1024L;
+
+    private final Map<String, Integer> shapes = new LinkedHashMap<String, Integer>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Integer> eldest) {
+            return size() > MAX_SHAPES;
+        }
+    };
+
+    /**
+     * @return The fetch size that a query whose shape has not been seen before starts out with
+     */
+    public int getInitialFetchSize() {
+        return initialFetchSize;
+    }
+
+    /**
+     * @param initialFetchSize The fetch size that a query whose shape has not been seen before starts out with
+     */
+    public void setInitialFetchSize(int initialFetchSize) {
+        this.initialFetchSize = Math.max(initialFetchSize, 1);
+    }
+
+    /**
+     * @return The most memory, in bytes, that a block of rows may take up
+     */
+    public long getMemoryLimit() {
+        return memoryLimit;
+    }
+
+    /**
+     * @param memoryLimit The most memory, in bytes, that a block of rows may take up
+     */
+    public void setMemoryLimit(long memoryLimit) {
+        this.memoryLimit = Math.max(memoryLimit, 1024L);
+    }
+
+    /**
+     * Returns the fetch size to start a query out with.
+     *
+     * @param shape The shape of the query (see {@link #shapeOf(String)}), or null if it is not known
+     * @return The size that was last settled on for the shape, or the initial fetch size if there is none
+     */
+    public synchronized int getFetchSize(String shape) {
+        final Integer size = shape == null ? null : shapes.get(shape);
+        return size != null ? size : initialFetchSize;
+    }
+
+    /**
+     * Forgets the fetch sizes of all query shapes.
+     */
+    public synchronized void clear() {
+        shapes.clear();
+    }
+
+    private synchronized void remember(String shape, int fetchSize) {
+        shapes.put(shape, fetchSize);
+    }
+
+    /**
+     * Starts watching the fetching of a result set.
+     *
+     * @param resultSet The result set
+     * @param shape The shape of the query that produced it, or null if it is not known
+     * @param columns The columns of the result set, used to guess the width of its rows until some have been
+     *         measured
+     * @return The tracker
+     */
+    public Tracker track(ResultSet resultSet, String shape, ColumnDescription[] columns) {
+        int width = 0;
+        for (ColumnDescription column : columns) {
+            width += Math.min(Math.max(column.getWidth(), 8), 1024);
+        }
+        int fetchSize = 0;
+        try {
+            fetchSize = resultSet.getFetchSize();
+        } catch (SQLException e) {
+            // The driver will tell us when we try and change it.
+        }
+        return new Tracker(resultSet, shape, fetchSize > 0 ? fetchSize : getFetchSize(shape), width);
+    }
+
+    /**
+     * Reduces a SQL statement to its shape: string and numeric literals are replaced by '?', runs of white space
+     * are collapsed to a single space and everything else is folded to lower case. Two statements that differ
+     * only in the values they refer to have the same shape.
+     *
+     * @param sql The statement
+     * @return Its shape
+     */
+    public static String shapeOf(String sql) {
+        final StringBuilder sb = new StringBuilder(sql.length());
+        final int len = sql.length();
+        int i = 0;
+        while (i < len) {
+            final char ch = sql.charAt(i);
+            if (ch == '\'') {
+                // Skip to the end of the string, allowing for '' inside of it
+                ++i;
+                while (i < len) {
+                    if (sql.charAt(i) == '\'') {
+                        if (i + 1 < len && sql.charAt(i + 1) == '\'') {
+                            i += 2;
+                            continue;
+                        }
+                        break;
+                    }
+                    ++i;
+                }
+                ++i;
+                sb.append('?');
+            } else if (Character.isDigit(ch) && (sb.length() == 0 || !isWordChar(sb.charAt(sb.length() - 1)))) {
+                while (i < len && (Character.isLetterOrDigit(sql.charAt(i)) || sql.charAt(i) == '.')) {
+                    ++i;
+                }
+                sb.append('?');
+            } else if (Character.isWhitespace(ch)) {
+                while (i < len && Character.isWhitespace(sql.charAt(i))) {
+                    ++i;
+                }
+                if (sb.length() > 0 && i < len) {
+                    sb.append(' ');
+                }
+            } else {
+                sb.append(Character.toLowerCase(ch));
+                ++i;
+            }
+        }
+        return sb.toString();
+    }
+
+    private static boolean isWordChar(char ch) {
+        return Character.isLetterOrDigit(ch) || ch == '_' || ch == '$' || ch == '#';
+    }
+
+    /**
+     * Works out the fetch size for the next block of rows.
+     *
+     * @param fetchSize The current fetch size
+     * @param blockNanos The time it took to get through the last block of rows
+     * @param roundTripNanos The time it took the driver to fetch the last block of rows
+     * @param rowWidth The average width of a row, in bytes
+     * @param memoryLimit The most memory a block of rows may take up
+     * @return The new fetch size
+     */
+    static int nextFetchSize(int fetchSize, long blockNanos, long roundTripNanos, long rowWidth, long memoryLimit) {
+        final long limit = Math.max(1L, Math.min(MAX_FETCH_SIZE, memoryLimit / Math.max(rowWidth, 1L)));
+        long size = fetchSize;
+        if (roundTripNanos >= blockNanos * GROWTH_THRESHOLD) {
+            size = fetchSize * 2L;
+        }
+        return (int) Math.min(size, limit);
+    }
+
+    /**
+     * Watches the fetching of a single result set, adjusting its fetch size from one block of rows to the next.
+     * All of the rows of the result set must be fetched through {@link #next()}.
+     */
+    public class Tracker {
+        private final ResultSet resultSet;
+        private final String shape;
+        private int fetchSize;
+        private boolean adjustable = true;
+
+        private long rowCount = 0L;
+        private int blockRows = 0;
+        private long blockStart = System.nanoTime();
+        private long slowestNext = 0L;
+
+        private long widthTotal = 0L;
+        private long widthRows = 0L;
+        private final long guessedWidth;
+
+        private Tracker(ResultSet resultSet, String shape, int fetchSize, long guessedWidth) {
+            this.resultSet = resultSet;
+            this.shape = shape;
+            this.fetchSize = fetchSize;
+            this.guessedWidth = guessedWidth;
+        }
+
+        /**
+         * @return The fetch size currently in use
+         */
+        public int getFetchSize() {
+            return fetchSize;
+        }
+
+        /**
+         * Moves on to the next row of the result set, see {@link ResultSet#next()}.
+         *
+         * @return true if there is another row
+         * @throws SQLException If the driver fails
+         */
+        public boolean next() throws SQLException {
+            final long start = System.nanoTime();
+            final boolean hasRow = resultSet.next();
+            final long end = System.nanoTime();
+            if (!hasRow) {
+                return false;
+            }
+
+            // The slowest call to next() in a block is the one that went back to the server for it.
+            slowestNext = Math.max(slowestNext, end - start);
+            ++rowCount;
+            if (++blockRows >= fetchSize && adjustable) {
+                final long width = widthRows > 0 ? widthTotal / widthRows : guessedWidth;
+                final int newSize = nextFetchSize(fetchSize, end - blockStart, slowestNext, width, memoryLimit);
+                if (newSize != fetchSize) {
+                    try {
+                        resultSet.setFetchSize(newSize);
+                        fetchSize = newSize;
+                    } catch (SQLException e) {
+                        LOG.fine("Driver refused fetch size " + newSize + ": " + e.getMessage());
+                        adjustable = false;
+                    }
+                }
+                blockRows = 0;
+                blockStart = end;
+                slowestNext = 0L;
+            }
+            return true;
+        }
+
+        /**
+         * Measures the width of a row that has been fetched. It is not necessary to measure every row.
+         *
+         * @param row The display form of the row
+         */
+        public void measure(CharSequence[] row) {
+            long width = 0L;
+            for (CharSequence value : row) {
+                // Allow for the overhead of each value
+                width += 8 + (value == null ? 0 : value.length());
+            }
+            widthTotal += width;
+            ++widthRows;
+        }
+
+        /**
+         * Called when all of the rows have been fetched, to remember the fetch size that was settled on.
+         */
+        public void finish() {
+            if (shape != null && rowCount > 0) {
+                remember(shape, fetchSize);
+            }
+        }
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright 2007-2022 Scott C. Gray
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sqsh;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * The foreign keys between tables, as reported by {@link java.sql.DatabaseMetaData#getImportedKeys(String, String,
+ * String)}, held in memory so that the ways in which a set of tables join can be worked out without going back to
+ * the server. Tables are added one at a time, each along with all of the keys it imports, so that the keys between
+ * any two tables are known once the table holding them has been added.
+ *
+ * <p>A graph is kept by each {@link MetadataCache} (see {@link MetadataCache#getForeignKeyGraph(List)}) and thrown
+ * away along with the rest of the cache. This class is thread safe.
+ */
+public class ForeignKeyGraph {
+
+    /**
+     * One column of a foreign key.
+     */
+    public static class ForeignKey {
+        private final String[] parent;
+        private final String parentColumn;
+        private final String[] child;
+        private final String childColumn;
+        private final String name;
+        private final int sequence;
+
+        /**
+         * @param parent The catalog, schema and name of the table that is referred to
+         * @param parentColumn The column that is referred to
+         * @param child The catalog, schema and name of the table holding the key
+         * @param childColumn The column holding the key
+         * @param name The name of the key, or null
+         * @param sequence The position of the column within the key, starting at 1
+         */
+        public ForeignKey(String[] parent, String parentColumn, String[] child, String childColumn, String name,
+                int sequence) {
+            this.parent = parent;
+            this.parentColumn = parentColumn;
+            this.child = child;
+            this.childColumn = childColumn;
+            this.name = name;
+            this.sequence = sequence;
+        }
+
+        /**
+         * @return The column of the table that is referred to
+         */
+        public String getParentColumn() {
+            return parentColumn;
+        }
+
+        /**
+         * @return The column of the table holding the key
+         */
+        public String getChildColumn() {
+            return childColumn;
+        }
+
+        /**
+         * @return The name of the key, or null if it has none
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return The position of the column within the key, starting at 1
+         */
+        public int getSequence() {
+            return sequence;
+        }
+    }
+
+    private final Map<String, List<ForeignKey>> imported = new HashMap<>();
+    private final long created = System.currentTimeMillis();
+
+    /**
+     * @return When the graph was created, which is how old the keys of the first tables added to it are
+     */
+    long getCreated() {
+        return created;
+    }
+
+    /**
+     * @param catalog The catalog of the table, or null
+     * @param schema The schema of the table, or null
+     * @param table The name of the table
+     * @return true if the table, and so the keys it imports, has been added
+     */
+    public synchronized boolean contains(String catalog, String schema, String table) {
+        return imported.containsKey(key(catalog, schema, table));
+    }
+
+    /**
+     * Adds a table and the keys that it imports, replacing what was known about it before.
+     *
+     * @param catalog The catalog of the table, or null
+     * @param schema The schema of the table, or null
+     * @param table The name of the table
+     * @param keys The keys that it imports
+     */
+    public synchronized void add(String catalog, String schema, String table, List<ForeignKey> keys) {
+        imported.put(key(catalog, schema, table), new ArrayList<>(keys));
+    }
+
+    /**
+     * Adds a table, reading the keys that it imports from the result of
+     * {@link java.sql.DatabaseMetaData#getImportedKeys(String, String, String)}.
+     *
+     * @param catalog The catalog of the table, or null
+     * @param schema The schema of the table, or null
+     * @param table The name of the table
+     * @param importedKeys The keys that it imports. It is read to the end, but not closed.
+     * @throws SQLException If the keys cannot be read
+     */
+    public void add(String catalog, String schema, String table, ResultSet importedKeys) throws SQLException {
+        final List<ForeignKey> keys = new ArrayList<>();
+        while (importedKeys.next()) {
+            keys.add(new ForeignKey(
+                    new String[] { importedKeys.getString(1), importedKeys.getString(2), importedKeys.getString(3) },
+                    importedKeys.getString(4),
+                    new String[] { importedKeys.getString(5), importedKeys.getString(6), importedKeys.getString(7) },
+                    importedKeys.getString(8),
+                    importedKeys.getString(12),
+                    importedKeys.getInt(9)));
+        }
+        add(catalog, schema, table, keys);
+    }
+
+    /**
+     * Returns the columns by which one table refers to another, in the order in which they were reported. Only
+     * keys imported by tables that have been added are known.
+     *
+     * @param parent The catalog, schema and name of the table that is referred to
+     * @param child The catalog, schema and name of the table holding the keys
+     * @return The columns of the keys
+     */
+    public synchronized List<ForeignKey> getKeys(String[] parent, String[] child) {
+        final List<ForeignKey> keys = imported.get(key(child));
+        if (keys == null) {
+            return Collections.emptyList();
+        }
+        final List<ForeignKey> result = new ArrayList<>();
+        for (ForeignKey key : keys) {
+            if (matches(key.parent, parent)) {
+                result.add(key);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Compares two table names. A catalog or schema that one side does not know is taken to match any on the other.
+     */
+    private static boolean matches(String[] a, String[] b) {
+        return Objects.equals(a[2], b[2])
+                && (a[1] == null || b[1] == null || a[1].equals(b[1]))
+                && (a[0] == null || b[0] == null || a[0].equals(b[0]));
+    }
+
+    private static String key(String[] name) {
+        return key(name[0], name[1], name[2]);
+    }
+
+    private static String key(String catalog, String schema, String table) {
+        return (catalog == null ? "" : catalog) + '\0' + (schema == null ? "" : schema) + '\0' + table;
+    }
+}
@@ -36,4 +36,18 @@ public interface Formatter {
      * @throws FormatError If the formatter fails to format a value
      */
     String format(Object value);
+
+    /**
+     * Formats a value, appending the result to the provided buffer. This is intended for callers that reuse a
+     * buffer from one value to the next and allows formatters that are able to do so to produce their output
+     * without creating an intermediate string. The default implementation simply appends the result of
+     * {@link #format(Object)}.
+     *
+     * @param value The value to be formatted.
+     * @param buffer The buffer to which the formatted value is appended.
+     * @throws FormatError If the formatter fails to format a value
+     */
+    default void formatTo(Object value, StringBuilder buffer) {
+        buffer.append(format(value));
+    }
 }
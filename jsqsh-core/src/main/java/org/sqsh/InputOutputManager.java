@@ -15,9 +15,16 @@
  */
 package org.sqsh;
 
+import org.sqsh.util.OutputSink;
+import org.sqsh.util.ParallelGzipOutputStream;
+import org.sqsh.util.SinkPrintStream;
+
 import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.io.PrintStream;
 import java.util.Stack;
 import java.util.logging.Level;
@@ -35,6 +42,11 @@ import java.util.logging.Logger;
  *
  * <p>It is up to the user to avoid doing stupid things like calling
  * setOut(System.out, true)--that is, asking for a system handle to be closed when it is finished.
+ *
+ * <p>Output that is headed to a file or to another process should be opened with {@link #openFile(File, boolean,
+ * int)} or {@link #openStream(OutputStream, int)}. These streams are heavily buffered and are only written out when
+ * their buffer fills, when they are closed, or when {@link #flush()} is called, which jsqsh does at the end of each
+ * result set and before prompting for input.
  */
 public class InputOutputManager {
 
@@ -46,6 +58,76 @@ public class InputOutputManager {
         ioStack.push(new InputOutputState());
     }
 
+    /**
+     * Opens a buffered stream that writes to a file.
+     *
+     * @param file The file to write to
+     * @param append If true, output is appended to the file, otherwise it is truncated
+     * @param bufferSize The size of the output buffer, in bytes
+     * @return The new stream
+     * @throws IOException If the file cannot be opened
+     */
+    public static PrintStream openFile(File file, boolean append, int bufferSize) throws IOException {
+        return new SinkPrintStream(OutputSink.open(file, append, bufferSize));
+    }
+
+    /**
+     * Opens a buffered stream that gzip compresses its output, using several threads, to a file. If the file is
+     * appended to, the output is added as a new gzip member, which gzip treats as a continuation of the file.
+     *
+     * @param file The file to write to
+     * @param append If true, output is appended to the file, otherwise it is truncated
+     * @param bufferSize The size of the output buffer, in bytes
+     * @param threads The number of threads to compress with
+     * @return The new stream
+     * @throws IOException If the file cannot be opened
+     */
+    public static PrintStream openCompressedFile(File file, boolean append, int bufferSize, int threads)
+            throws IOException {
+        return new SinkPrintStream(OutputSink.wrap(newCompressedStream(file, append, threads), bufferSize));
+    }
+
+    /**
+     * Opens an unbuffered stream that gzip compresses its output, using several threads, to a file.
+     *
+     * @param file The file to write to
+     * @param append If true, output is appended to the file, otherwise it is truncated
+     * @param threads The number of threads to compress with
+     * @return The new stream
+     * @throws IOException If the file cannot be opened
+     */
+    public static OutputStream newCompressedStream(File file, boolean append, int threads) throws IOException {
+        final FileOutputStream out = new FileOutputStream(file, append);
+        try {
+            return new ParallelGzipOutputStream(out, threads, ParallelGzipOutputStream.DEFAULT_BLOCK_SIZE);
+        } catch (IOException e) {
+            out.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Opens a buffered stream on top of another stream, such as the input of a process that is being piped to.
+     *
+     * @param out The stream to write to. It is closed when the returned stream is closed.
+     * @param bufferSize The size of the output buffer, in bytes
+     * @return The new stream
+     */
+    public static PrintStream openStream(OutputStream out, int bufferSize) {
+        return new SinkPrintStream(OutputSink.wrap(out, bufferSize));
+    }
+
+    /**
+     * Writes out anything that is waiting in the buffers of the current output and error streams.
+     */
+    public void flush() {
+        InputOutputState state = ioStack.peek();
+        state.out.flush();
+        if (state.err != state.out) {
+            state.err.flush();
+        }
+    }
+
     /**
      * Returns the number of saved I/O states in the manager.
      *
@@ -20,8 +20,10 @@ import org.sqsh.options.Argv;
 import org.sqsh.options.OptionException;
 import org.sqsh.options.OptionProcessor;
 import org.sqsh.options.OptionProperty;
+import org.sqsh.util.OutputSink;
 
 import java.io.BufferedInputStream;
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -349,7 +351,11 @@ public class JSqsh {
     private static PrintStream getOutputStream(Options options) {
         if (options.outputFile != null) {
             try {
-                return new PrintStream(options.outputFile);
+                if (options.outputFile.endsWith(".gz")) {
+                    return InputOutputManager.openCompressedFile(new File(options.outputFile), false,
+                            OutputSink.DEFAULT_BUFFER_SIZE, Runtime.getRuntime().availableProcessors());
+                }
+                return InputOutputManager.openFile(new File(options.outputFile), false, OutputSink.DEFAULT_BUFFER_SIZE);
             }
             catch (IOException e) {
                 System.err.println("Unable to open output file '" + options.outputFile + "' for write: " + e.getMessage());
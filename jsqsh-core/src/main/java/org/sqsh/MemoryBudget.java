@@ -0,0 +1,243 @@
+/*
+ * Copyright 2007-2022 Scott C. Gray
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sqsh;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Keeps track of the memory held by renderers that have to buffer results before they can display them (such as the
+ * "perfect" and "graphical" display styles), and places an upper limit on the total held across all sessions.
+ *
+ * <p>A renderer that is about to hold onto some data asks its {@link Reservation} to grow by the (estimated) size of
+ * that data. If the budget would be exceeded, the request is refused and it is up to the renderer to do something
+ * sensible, such as writing the data to disk, displaying what it has so far, or discarding the rest of the results
+ * with a warning.
+ *
+ * <p>Reservations are scoped to the command that is running in a session: {@link #beginCommand(Session)} and
+ * {@link #endCommand(Session)} bracket each command, and any memory still reserved when the command ends is given
+ * back to the budget, even if the renderer holding it never got the chance to clean up after itself.
+ */
+public class MemoryBudget {
+
+    private static final Logger LOG = Logger.getLogger(MemoryBudget.class.getName());
+
+    /**
+     * Rough overhead, in bytes, of a String object and its backing array.
+     */
+    private static final int STRING_OVERHEAD = 40;
+
+    /**
+     * Rough overhead, in bytes, of an array object.
+     */
+    private static final int ARRAY_OVERHEAD = 16;
+
+    private long limit = Runtime.getRuntime().maxMemory() / 2;
+    private long used = 0L;
+    private final Map<Integer, SessionUsage> sessions = new HashMap<>();
+
+    /**
+     * @return The maximum number of bytes that may be reserved across all sessions. A value &lt;= 0 indicates that
+     *         there is no limit.
+     */
+    public synchronized long getLimit() {
+        return limit;
+    }
+
+    /**
+     * @param limit The maximum number of bytes that may be reserved across all sessions. A value &lt;= 0 indicates
+     *         that there is no limit.
+     */
+    public synchronized void setLimit(long limit) {
+        this.limit = limit;
+    }
+
+    /**
+     * @return The number of bytes currently reserved across all sessions.
+     */
+    public synchronized long getUsed() {
+        return used;
+    }
+
+    /**
+     * Creates a new reservation, initially holding nothing.
+     *
+     * @param session The session on whose behalf the memory is being held.
+     * @return The reservation.
+     */
+    public synchronized Reservation reserve(Session session) {
+        final SessionUsage usage = getUsage(session);
+        final Reservation reservation = new Reservation(usage);
+        usage.reservations.add(reservation);
+        return reservation;
+    }
+
+    /**
+     * Called before a command is executed in a session. Commands may be nested (a command may run other commands),
+     * in which case only the outermost command is tracked.
+     *
+     * @param session The session.
+     */
+    public synchronized void beginCommand(Session session) {
+        final SessionUsage usage = getUsage(session);
+        if (usage.depth++ == 0) {
+            usage.peak = usage.current;
+        }
+    }
+
+    /**
+     * Called after a command has completed in a session. If this is the outermost command, all memory still
+     * reserved on behalf of the session is released.
+     *
+     * @param session The session.
+     * @return The largest number of bytes that the session had reserved at any one time while the command ran.
+     */
+    public synchronized long endCommand(Session session) {
+        final SessionUsage usage = getUsage(session);
+        final long peak = usage.peak;
+        if (--usage.depth <= 0) {
+            for (Reservation reservation : usage.reservations) {
+                used -= reservation.bytes;
+                reservation.bytes = 0L;
+            }
+            usage.reservations.clear();
+            usage.current = 0L;
+            sessions.remove(session.getId());
+
+            if (peak > 0 && LOG.isLoggable(Level.FINE)) {
+                LOG.fine("Session " + session.getId() + " held at most " + peak + " bytes of results in memory");
+            }
+        }
+        return peak;
+    }
+
+    private SessionUsage getUsage(Session session) {
+        return sessions.computeIfAbsent(session.getId(), id -> new SessionUsage());
+    }
+
+    /**
+     * Estimates the number of bytes of memory taken up by a value.
+     *
+     * @param value The value
+     * @return The estimated size, in bytes.
+     */
+    public static long estimate(String value) {
+        return (value == null ? 0 : STRING_OVERHEAD + value.length());
+    }
+
+    /**
+     * Estimates the number of bytes of memory taken up by a row and the values it contains.
+     *
+     * @param row The row
+     * @return The estimated size, in bytes.
+     */
+    public static long estimate(String[] row) {
+        long size = ARRAY_OVERHEAD + 4L * row.length;
+        for (String value : row) {
+            size += estimate(value);
+        }
+        return size;
+    }
+
+    /**
+     * Memory held on behalf of a single session.
+     */
+    private static class SessionUsage {
+        private final List<Reservation> reservations = new ArrayList<>();
+        private long current = 0L;
+        private long peak = 0L;
+        private int depth = 0;
+    }
+
+    /**
+     * The memory held by a single renderer.
+     */
+    public class Reservation {
+
+        private final SessionUsage usage;
+        private long bytes = 0L;
+        private boolean detached = false;
+
+        private Reservation(SessionUsage usage) {
+            this.usage = usage;
+        }
+
+        /**
+         * Attempts to reserve additional memory.
+         *
+         * @param nBytes The number of bytes to add to the reservation.
+         * @return true if the memory was reserved, false if doing so would exceed the budget, in which case
+         *         nothing is reserved.
+         */
+        public boolean tryGrow(long nBytes) {
+            synchronized (MemoryBudget.this) {
+                if (limit > 0 && used + nBytes > limit) {
+                    return false;
+                }
+                used += nBytes;
+                bytes += nBytes;
+                if (!detached) {
+                    usage.current += nBytes;
+                    if (usage.current > usage.peak) {
+                        usage.peak = usage.current;
+                    }
+                }
+                return true;
+            }
+        }
+
+        /**
+         * Gives back everything held by this reservation. The reservation may continue to be used afterwards.
+         */
+        public void release() {
+            synchronized (MemoryBudget.this) {
+                used -= bytes;
+                if (!detached) {
+                    usage.current -= bytes;
+                }
+                bytes = 0L;
+            }
+        }
+
+        /**
+         * Detaches the reservation from the session, so that it is not given back when the current command ends.
+         * This is for memory that outlives the command that reserved it, such as rows shown in a window; it
+         * remains reserved until {@link #release()} is called.
+         */
+        public void detach() {
+            synchronized (MemoryBudget.this) {
+                if (!detached) {
+                    usage.reservations.remove(this);
+                    usage.current -= bytes;
+                    detached = true;
+                }
+            }
+        }
+
+        /**
+         * @return The number of bytes currently held by this reservation.
+         */
+        public long getBytes() {
+            synchronized (MemoryBudget.this) {
+                return bytes;
+            }
+        }
+    }
+}
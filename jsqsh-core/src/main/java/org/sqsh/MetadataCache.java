@@ -0,0 +1,1218 @@
+/*
+ * Copyright 2007-2022 Scott C. Gray
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sqsh;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.sql.rowset.CachedRowSet;
+import javax.sql.rowset.RowSetFactory;
+import javax.sql.rowset.RowSetProvider;
+
+import org.sqsh.commands.PatternFilteredResultSet;
+import org.sqsh.commands.SlicedResultSet;
+import org.sqsh.util.PrefixIndex;
+
+/**
+ * Holds on to the results of recent calls to {@link DatabaseMetaData} made on a connection, so that tab completion
+ * and commands such as <code>\describe</code>, <code>\select</code> and <code>\tree</code> do not need to go back to
+ * the server each time they need to know what tables or columns exist.
+ *
+ * <p>Each result is read in full into a {@link CachedRowSet} the first time it is asked for, keyed by the call and
+ * its arguments, and every caller after that is handed its own copy of it to read (and close) as it wishes. Entries
+ * expire after the number of seconds given by {@link SqshContext#getMetadataCacheTtl()} (caching is disabled if that
+ * is 0) and are thrown away when {@link #invalidate()} is called, as is done by <code>\refresh</code> and whenever
+ * DDL is executed through the connection.
+ *
+ * <p>The cache is filled lazily, as lookups are made. {@link #prefetch()} may be used to fill it with the catalogs,
+ * schemas and tables of the current catalog in the background, over a connection of the cache's own.
+ * {@link #cachedOnly()} provides a view of the cache that never goes to the server, for use when an answer is needed
+ * right away, and {@link #withOwnConnection(String, Function)} one that goes to the server over a connection of the
+ * cache's own, for lookups that may outlast the moment the session is waiting for.
+ *
+ * <p>The names of the tables and procedures in a schema are also kept as a {@link PrefixIndex}, for tab completion
+ * against catalogs holding a great many objects (see {@link #getTableIndex(String, String)}).
+ *
+ * <p>If the connection was established using a saved connection descriptor, the contents of the cache are saved as
+ * a {@link MetadataSnapshot} when the connection is closed (and after a prefetch or refresh) and read back by
+ * {@link #restore()} the next time that connection is used. Lookups read back are used straight away, regardless of
+ * their age, while {@link #restore()} looks each of them up again in the background, one at a time over a connection
+ * of the cache's own, replacing it as it goes.
+ *
+ * <p>The <code>stream</code> lookups ({@link #streamTables(String, String, String, String[])} and so on) are for
+ * commands that display what they find. When their schema pattern matches more than one schema, they are made one
+ * schema at a time over a small pool of connections of the cache's own (see {@link SqshContext#getMetadataThreads()}),
+ * and the rows of each schema are returned as soon as they arrive.
+ */
+public class MetadataCache {
+
+    private static final Logger LOG = Logger.getLogger(MetadataCache.class.getName());
+
+    /**
+     * The most lookups that are held on to at once. The least recently used are thrown away beyond this.
+     */
+    private static final int MAX_ENTRIES = 1000;
+
+    /**
+     * A call to {@link DatabaseMetaData}.
+     */
+    private interface Lookup {
+        ResultSet lookup(DatabaseMetaData meta) throws SQLException;
+    }
+
+    /**
+     * The result of a lookup.
+     */
+    static class CachedLookup {
+        final CachedRowSet rows;
+        final long created;
+        final boolean restored;
+
+        CachedLookup(CachedRowSet rows, long created, boolean restored) {
+            this.rows = rows;
+            this.created = created;
+            this.restored = restored;
+        }
+    }
+
+    /**
+     * An index of the names returned by a lookup.
+     */
+    static class CachedIndex {
+        final PrefixIndex index;
+        final long created;
+        final boolean restored;
+
+        CachedIndex(PrefixIndex index, long created, boolean restored) {
+            this.index = index;
+            this.created = created;
+            this.restored = restored;
+        }
+    }
+
+    private static RowSetFactory rowSetFactory = null;
+
+    private final SQLConnectionContext context;
+    private final Map<String, CachedLookup> entries;
+    private final Map<String, CachedIndex> indexes;
+    private final MetadataCache owner;
+    private final boolean cachedOnly;
+    private final Connection connection;
+    private long hits = 0L;
+    private long misses = 0L;
+    private boolean dirty = false;
+    private Thread worker = null;
+    private volatile String currentCatalog = null;
+    private MetadataCache view = null;
+    private ExecutorService pool = null;
+    private final ConcurrentLinkedQueue<Connection> idle = new ConcurrentLinkedQueue<>();
+
+    /**
+     * The connections of the cache's own, each with the catalog that it is switched back to when it is handed back.
+     */
+    private final Map<Connection, String> opened = new HashMap<>();
+    private volatile ForeignKeyGraph foreignKeys = new ForeignKeyGraph();
+
+    /**
+     * @param context The connection whose metadata is to be cached
+     */
+    public MetadataCache(SQLConnectionContext context) {
+        this.context = context;
+        this.entries = new LinkedHashMap<String, CachedLookup>(64, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedLookup> eldest) {
+                return size() > MAX_ENTRIES;
+            }
+        };
+        this.indexes = new HashMap<>();
+        this.owner = this;
+        this.cachedOnly = false;
+        this.connection = null;
+    }
+
+    /**
+     * Creates a view of a cache.
+     *
+     * @param owner The cache
+     * @param connection The connection that the view goes to the server with, or null for a view that only answers
+     *         from the cache
+     * @param catalog The current catalog of the view
+     */
+    private MetadataCache(MetadataCache owner, Connection connection, String catalog) {
+        this.context = owner.context;
+        this.entries = owner.entries;
+        this.indexes = owner.indexes;
+        this.owner = owner;
+        this.cachedOnly = connection == null;
+        this.connection = connection;
+        this.currentCatalog = catalog;
+    }
+
+    /**
+     * Returns a view of this cache that answers lookups only from what is already cached, without ever going to the
+     * server (or even touching the connection, which may be busy). It uses cached lookups even if they have expired.
+     * Lookups that are not cached fail with an {@link SQLException}, and the current catalog is the one that was last
+     * seen by this cache.
+     *
+     * @return The view
+     */
+    public synchronized MetadataCache cachedOnly() {
+        if (owner != this) {
+            return cachedOnly ? this : owner.cachedOnly();
+        }
+        if (view == null) {
+            view = new MetadataCache(this, null, null);
+        }
+        return view;
+    }
+
+    /**
+     * Hands a view of this cache to some work that may still be going on when the session next uses its connection,
+     * such as tab completion that has run past its deadline. Lookups made through the view that are not in the cache
+     * go to the server over a connection of the cache's own (see {@link #borrow(String)}), in the given catalog,
+     * rather than over the connection of the session. If no such connection can be had, the work is handed the
+     * {@link #cachedOnly()} view instead.
+     *
+     * @param catalog The current catalog of the session, or null
+     * @param work The work
+     * @param <T> What the work produces
+     * @return What the work produces
+     */
+    public <T> T withOwnConnection(String catalog, Function<MetadataCache, T> work) {
+        if (owner != this) {
+            return owner.withOwnConnection(catalog, work);
+        }
+        final Connection conn;
+        try {
+            conn = borrow(catalog);
+        } catch (SQLException e) {
+            LOG.log(Level.FINE, "Unable to open a connection for metadata lookups in catalog " + catalog, e);
+            return work.apply(cachedOnly());
+        }
+        boolean ok = false;
+        try {
+            final T result = work.apply(new MetadataCache(this, conn, catalog));
+            ok = true;
+            return result;
+        } finally {
+            release(conn, ok);
+        }
+    }
+
+    /**
+     * @return true if this is a view that only answers from the cache
+     */
+    public boolean isCachedOnly() {
+        return cachedOnly;
+    }
+
+    /**
+     * @return The connection whose metadata is cached, or for a view made by
+     *         {@link #withOwnConnection(String, Function)}, the connection that the view goes to the server with
+     */
+    public Connection getConnection() {
+        return connection != null ? connection : context.getConnection();
+    }
+
+    /**
+     * Normalizes an identifier according to the rules of the database (see
+     * {@link SQLConnectionContext#normalizeIdentifier(String)}).
+     *
+     * @param identifier The identifier
+     * @return The normalized identifier
+     */
+    public String normalize(String identifier) {
+        return context.normalizeIdentifier(identifier);
+    }
+
+    /**
+     * @return The current catalog of the connection, or null if there is none or it cannot be determined
+     */
+    public String getCurrentCatalog() {
+        if (owner != this) {
+            return cachedOnly ? owner.currentCatalog : currentCatalog;
+        }
+        try {
+            currentCatalog = getConnection().getCatalog();
+        } catch (SQLException e) {
+            currentCatalog = null;
+        }
+        return currentCatalog;
+    }
+
+    /**
+     * @return The result of {@link DatabaseMetaData#getCatalogs()}
+     * @throws SQLException If the lookup fails
+     */
+    public ResultSet getCatalogs() throws SQLException {
+        return fetch(getConnection(), "catalogs");
+    }
+
+    /**
+     * @return The result of {@link DatabaseMetaData#getSchemas()}
+     * @throws SQLException If the lookup fails
+     */
+    public ResultSet getSchemas() throws SQLException {
+        return fetch(getConnection(), "schemas");
+    }
+
+    /**
+     * @return The result of {@link DatabaseMetaData#getTables(String, String, String, String[])}
+     * @throws SQLException If the lookup fails
+     */
+    public ResultSet getTables(String catalog, String schemaPattern, String tablePattern, String[] types)
+            throws SQLException {
+        return fetch(getConnection(), "tables", catalog, schemaPattern, tablePattern,
+                types == null ? null : String.join(",", types));
+    }
+
+    /**
+     * @return The result of {@link DatabaseMetaData#getColumns(String, String, String, String)}
+     * @throws SQLException If the lookup fails
+     */
+    public ResultSet getColumns(String catalog, String schemaPattern, String tablePattern, String columnPattern)
+            throws SQLException {
+        return fetch(getConnection(), "columns", catalog, schemaPattern, tablePattern, columnPattern);
+    }
+
+    /**
+     * @return The result of {@link DatabaseMetaData#getProcedures(String, String, String)}
+     * @throws SQLException If the lookup fails
+     */
+    public ResultSet getProcedures(String catalog, String schemaPattern, String procedurePattern)
+            throws SQLException {
+        return fetch(getConnection(), "procedures", catalog, schemaPattern, procedurePattern);
+    }
+
+    /**
+     * @return The result of {@link DatabaseMetaData#getProcedureColumns(String, String, String, String)}
+     * @throws SQLException If the lookup fails
+     */
+    public ResultSet getProcedureColumns(String catalog, String schemaPattern, String procedurePattern,
+            String columnPattern) throws SQLException {
+        return fetch(getConnection(), "procedureColumns", catalog, schemaPattern, procedurePattern, columnPattern);
+    }
+
+    /**
+     * @return The result of {@link DatabaseMetaData#getCrossReference(String, String, String, String, String, String)}
+     * @throws SQLException If the lookup fails
+     */
+    public ResultSet getCrossReference(String parentCatalog, String parentSchema, String parentTable,
+            String foreignCatalog, String foreignSchema, String foreignTable) throws SQLException {
+        return fetch(getConnection(), "crossReference", parentCatalog, parentSchema, parentTable,
+                foreignCatalog, foreignSchema, foreignTable);
+    }
+
+    /**
+     * Returns an index of the names of the tables in a schema, as returned by
+     * {@link DatabaseMetaData#getTables(String, String, String, String[])} for all types of table.
+     *
+     * @param catalog The catalog
+     * @param schemaPattern The schema pattern
+     * @return The index
+     * @throws SQLException If the lookup fails
+     */
+    public PrefixIndex getTableIndex(String catalog, String schemaPattern) throws SQLException {
+        return index(getConnection(), "tableIndex", catalog, schemaPattern);
+    }
+
+    /**
+     * Returns an index of the names of the procedures in a schema, as returned by
+     * {@link DatabaseMetaData#getProcedures(String, String, String)}.
+     *
+     * @param catalog The catalog
+     * @param schemaPattern The schema pattern
+     * @return The index
+     * @throws SQLException If the lookup fails
+     */
+    public PrefixIndex getProcedureIndex(String catalog, String schemaPattern) throws SQLException {
+        return index(getConnection(), "procedureIndex", catalog, schemaPattern);
+    }
+
+    /**
+     * @return The result of {@link DatabaseMetaData#getImportedKeys(String, String, String)}
+     * @throws SQLException If the lookup fails
+     */
+    public ResultSet getImportedKeys(String catalog, String schema, String table) throws SQLException {
+        return fetch(getConnection(), "importedKeys", catalog, schema, table);
+    }
+
+    /**
+     * Looks up the columns of several tables, as {@link #getColumns(String, String, String, String)} does, over
+     * several connections at once if more than one of them is not in the cache.
+     *
+     * @param tables The catalog, schema and table name patterns of each of the tables
+     * @param columnPattern The column name pattern
+     * @return The columns of each table, in the same order as the tables. The caller is to close them.
+     * @throws SQLException If any of the lookups fails
+     */
+    public List<ResultSet> getColumns(List<String[]> tables, String columnPattern) throws SQLException {
+        final List<String[]> argLists = new ArrayList<>(tables.size());
+        for (String[] table : tables) {
+            argLists.add(new String[] { table[0], table[1], table[2], columnPattern });
+        }
+        return fetchAll("columns", argLists);
+    }
+
+    /**
+     * Returns the graph of the foreign keys between tables that is kept for this connection, first adding any of
+     * the tables given that are not yet in it. The graph expires as a whole, as the other lookups do (see
+     * {@link SqshContext#getMetadataCacheTtl()}), once the keys of the first tables added to it have expired; if
+     * caching is disabled, a new graph is built each time. Their keys are looked up with
+     * {@link DatabaseMetaData#getImportedKeys(String, String, String)}, over several connections at once if more
+     * than one of them is not in the cache.
+     *
+     * @param tables The catalog, schema and name of each of the tables
+     * @return The graph
+     * @throws SQLException If the keys of a table cannot be looked up
+     */
+    public ForeignKeyGraph getForeignKeyGraph(List<String[]> tables) throws SQLException {
+        final int ttl = getTtl();
+        final ForeignKeyGraph graph;
+        if (ttl <= 0) {
+            graph = new ForeignKeyGraph();
+        } else {
+            synchronized (entries) {
+                if (!isUsable(owner.foreignKeys.getCreated(), false, ttl)) {
+                    owner.foreignKeys = new ForeignKeyGraph();
+                }
+                graph = owner.foreignKeys;
+            }
+        }
+        final List<String[]> missing = new ArrayList<>();
+        for (String[] table : tables) {
+            if (!graph.contains(table[0], table[1], table[2])) {
+                missing.add(table);
+            }
+        }
+        if (!missing.isEmpty()) {
+            final List<ResultSet> keys = fetchAll("importedKeys", missing);
+            for (int i = 0; i < missing.size(); i++) {
+                final String[] table = missing.get(i);
+                try (ResultSet results = keys.get(i)) {
+                    graph.add(table[0], table[1], table[2], results);
+                }
+            }
+        }
+        return graph;
+    }
+
+    /**
+     * Like {@link #getTables(String, String, String, String[])}, but made one schema at a time over several
+     * connections if the schema pattern matches more than one schema.
+     *
+     * @return The tables, for the schemas in order, as they arrive
+     * @throws SQLException If the lookup fails
+     */
+    public ResultSet streamTables(String catalog, String schemaPattern, String tablePattern, String[] types)
+            throws SQLException {
+        return stream("tables", catalog, schemaPattern, tablePattern, types == null ? null : String.join(",", types));
+    }
+
+    /**
+     * Like {@link #getColumns(String, String, String, String)}, but made one schema at a time over several
+     * connections if the schema pattern matches more than one schema.
+     *
+     * @return The columns, for the schemas in order, as they arrive
+     * @throws SQLException If the lookup fails
+     */
+    public ResultSet streamColumns(String catalog, String schemaPattern, String tablePattern, String columnPattern)
+            throws SQLException {
+        return stream("columns", catalog, schemaPattern, tablePattern, columnPattern);
+    }
+
+    /**
+     * Like {@link #getProcedures(String, String, String)}, but made one schema at a time over several connections
+     * if the schema pattern matches more than one schema.
+     *
+     * @return The procedures, for the schemas in order, as they arrive
+     * @throws SQLException If the lookup fails
+     */
+    public ResultSet streamProcedures(String catalog, String schemaPattern, String procedurePattern)
+            throws SQLException {
+        return stream("procedures", catalog, schemaPattern, procedurePattern);
+    }
+
+    /**
+     * Returns the result of {@link DatabaseMetaData#getFunctions(String, String, String)} in the same manner as
+     * {@link #streamProcedures(String, String, String)}.
+     *
+     * @return The functions, for the schemas in order, as they arrive
+     * @throws SQLException If the lookup fails
+     */
+    public ResultSet streamFunctions(String catalog, String schemaPattern, String functionPattern)
+            throws SQLException {
+        return stream("functions", catalog, schemaPattern, functionPattern);
+    }
+
+    /**
+     * Throws away everything in the cache.
+     *
+     * @return The number of lookups that were thrown away
+     */
+    public int invalidate() {
+        synchronized (entries) {
+            final int size = entries.size() + indexes.size();
+            entries.clear();
+            indexes.clear();
+            owner.foreignKeys = new ForeignKeyGraph();
+            owner.dirty = true;
+            return size;
+        }
+    }
+
+    /**
+     * Saves the cache, if it is to be saved and has changed, and throws everything in it away. Called when the
+     * connection is closed.
+     */
+    public void close() {
+        if (owner == this) {
+            save();
+            invalidate();
+            closePool();
+        }
+    }
+
+    /**
+     * @return The number of lookups held in the cache
+     */
+    public int getEntries() {
+        synchronized (entries) {
+            return entries.size() + indexes.size();
+        }
+    }
+
+    /**
+     * @return The number of lookups that were answered from the cache
+     */
+    public long getHits() {
+        synchronized (entries) {
+            return owner.hits;
+        }
+    }
+
+    /**
+     * @return The number of lookups that had to go to the server
+     */
+    public long getMisses() {
+        synchronized (entries) {
+            return owner.misses;
+        }
+    }
+
+    /**
+     * Starts filling the cache with the catalogs, schemas and the tables of the current catalog, as looked up by tab
+     * completion, in the background. The lookups are made on a connection of the cache's own (see
+     * {@link #borrow(String)}), so they never get in the way of a query, or a transaction, on the connection of the
+     * session. Does nothing if caching is disabled, the cache is already busy in the background or no connection
+     * can be opened for it.
+     */
+    public void prefetch() {
+        final String catalog = owner == this ? getCurrentCatalog() : null;
+        background("jsqsh-metadata-prefetch", () -> {
+            final Connection conn = borrow(catalog);
+            boolean ok = false;
+            try {
+                fetch(conn, "catalogs").close();
+                fetch(conn, "schemas").close();
+                index(conn, "tableIndex", catalog == null ? "%" : catalog, "%");
+                ok = true;
+            } finally {
+                release(conn, ok);
+            }
+        });
+    }
+
+    /**
+     * Reads back the snapshot that was saved the last time that the connection descriptor of the connection was
+     * used, if any, and starts looking up everything in it again in the background, on a connection of the cache's
+     * own (see {@link #borrow(String)}). Until a lookup has been made again, its result from the snapshot is used, however
+     * old it is. Lookups already in the cache are left alone.
+     */
+    public void restore() {
+        final File file = getFile();
+        if (owner != this || getTtl() <= 0 || file == null || !file.exists()) {
+            return;
+        }
+        final MetadataSnapshot snapshot;
+        try {
+            snapshot = MetadataSnapshot.read(file);
+        } catch (IOException | SQLException e) {
+            LOG.log(Level.FINE, "Unable to read " + file, e);
+            return;
+        }
+        if (snapshot == null) {
+            LOG.fine("Ignoring " + file + ", which is not in a recognized format");
+            return;
+        }
+        synchronized (entries) {
+            snapshot.getLookups().forEach(entries::putIfAbsent);
+            snapshot.getIndexes().forEach(indexes::putIfAbsent);
+        }
+        if (currentCatalog == null) {
+            currentCatalog = snapshot.getCatalog();
+        }
+        if (LOG.isLoggable(Level.FINE)) {
+            LOG.fine("Restored " + snapshot.getLookups().size() + " lookups and " + snapshot.getIndexes().size()
+                    + " indexes from " + file);
+        }
+
+        final Connection session = getConnection();
+        final String catalog = getCurrentCatalog();
+        final List<String> lookups = new ArrayList<>(snapshot.getLookups().keySet());
+        final List<String> indexKeys = new ArrayList<>(snapshot.getIndexes().keySet());
+        background("jsqsh-metadata-refresh", () -> {
+            final Connection conn = borrow(catalog);
+            boolean ok = false;
+            try {
+                for (String key : indexKeys) {
+                    refresh(session, conn, key, true);
+                }
+                for (String key : lookups) {
+                    refresh(session, conn, key, false);
+                }
+                ok = true;
+            } finally {
+                release(conn, ok);
+            }
+        });
+    }
+
+    private interface Work {
+        void run() throws SQLException;
+    }
+
+    /**
+     * Runs work on a background thread and saves the cache once it is done. Only one piece of work runs at a time;
+     * if there is already something running, the new work is not done at all.
+     */
+    private synchronized void background(String name, Work work) {
+        if (owner != this || getTtl() <= 0 || (worker != null && worker.isAlive())) {
+            return;
+        }
+        worker = new Thread(() -> {
+            try {
+                work.run();
+            } catch (SQLException e) {
+                LOG.log(Level.FINE, name + " failed", e);
+            }
+            save();
+        }, name);
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * Makes a lookup again if the result in the cache was restored from a snapshot, replacing it. Lookups that fail
+     * are dropped from the cache. Returns without doing anything if the session has since moved on to another
+     * connection, or closed the one it had.
+     *
+     * @param session The connection of the session when the snapshot was restored
+     * @param conn The connection to make the lookup on
+     */
+    private void refresh(Connection session, Connection conn, String key, boolean isIndex) throws SQLException {
+        if (session != getConnection() || session.isClosed()) {
+            return;
+        }
+        synchronized (entries) {
+            final boolean restored = isIndex
+                    ? indexes.containsKey(key) && indexes.get(key).restored
+                    : entries.containsKey(key) && entries.get(key).restored;
+            if (!restored) {
+                return;
+            }
+        }
+        final String[] parts = key.split("\0", -1);
+        final String[] args = Arrays.copyOfRange(parts, 1, parts.length);
+        for (int i = 0; i < args.length; i++) {
+            if ("\1".equals(args[i])) {
+                args[i] = null;
+            }
+        }
+        try {
+            load(conn, key, parts[0], args, isIndex);
+        } catch (SQLException e) {
+            LOG.log(Level.FINE, "Unable to refresh " + key.replace('\0', ','), e);
+            synchronized (entries) {
+                if (isIndex) {
+                    indexes.remove(key);
+                } else {
+                    entries.remove(key);
+                }
+                dirty = true;
+            }
+        }
+    }
+
+    /**
+     * Makes a lookup whose first two arguments are a catalog and schema pattern, fanning it out over the pool one
+     * schema at a time if the pattern matches more than one schema, the pool is to be used, and it can be. Only a few
+     * schemas at a time are looked up ahead of the one being read. The lookups of the individual schemas are not
+     * cached; once all of them have been made, their rows are cached together as the result of the whole lookup, so
+     * that a pattern matching a great many schemas takes up a single entry in the cache.
+     */
+    private ResultSet stream(String name, String catalog, String schemaPattern, String... rest) throws SQLException {
+        final String[] args = new String[rest.length + 2];
+        args[0] = catalog;
+        args[1] = schemaPattern;
+        System.arraycopy(rest, 0, args, 2, rest.length);
+
+        final String current = owner == this ? getCurrentCatalog() : null;
+        final List<String> schemas = cachedOnly ? null : getSchemas(current, catalog, schemaPattern);
+        final String key = key(name, args);
+        final int ttl = getTtl();
+        if (schemas == null || schemas.size() < 2 || isCached(key, ttl)) {
+            return fetch(getConnection(), name, args);
+        }
+        synchronized (entries) {
+            ++owner.misses;
+        }
+
+        final String escape = getConnection().getMetaData().getSearchStringEscape();
+        final long now = System.currentTimeMillis();
+        final CachedRowSet[] parts = new CachedRowSet[schemas.size()];
+        final AtomicInteger remaining = new AtomicInteger(parts.length);
+        final List<Callable<ResultSet>> work = new ArrayList<>(parts.length);
+        for (int i = 0; i < parts.length; i++) {
+            final int slice = i;
+            final String[] sliceArgs = args.clone();
+            sliceArgs[1] = escape(schemas.get(i), escape);
+            work.add(() -> {
+                final CachedRowSet rows = newRowSet();
+                final Connection conn = borrow(current);
+                boolean ok = false;
+                try (ResultSet results = lookupOf(name, sliceArgs).lookup(conn.getMetaData())) {
+                    rows.populate(results);
+                    ok = true;
+                } finally {
+                    release(conn, ok);
+                }
+                parts[slice] = rows;
+                if (remaining.decrementAndGet() == 0 && ttl > 0) {
+                    cacheMerged(key, parts, now);
+                }
+                return copyOf(rows);
+            });
+        }
+        return new SlicedResultSet(work, getPool(), context.getSession().getContext().getMetadataThreads());
+    }
+
+    /**
+     * @return true if the result of a lookup is in the cache and may be used
+     */
+    private boolean isCached(String key, int ttl) {
+        if (ttl <= 0) {
+            return false;
+        }
+        synchronized (entries) {
+            final CachedLookup entry = entries.get(key);
+            return entry != null && isUsable(entry.created, entry.restored, ttl);
+        }
+    }
+
+    /**
+     * Caches the rows of the lookups of the individual schemas of a fanned out lookup together, as the result of
+     * the whole lookup.
+     */
+    private void cacheMerged(String key, CachedRowSet[] parts, long created) throws SQLException {
+        final List<Future<ResultSet>> slices = new ArrayList<>(parts.length);
+        for (CachedRowSet part : parts) {
+            slices.add(CompletableFuture.completedFuture(copyOf(part)));
+        }
+        final CachedRowSet rows = newRowSet();
+        try (ResultSet all = new SlicedResultSet(slices)) {
+            rows.populate(all);
+        }
+        synchronized (entries) {
+            entries.put(key, new CachedLookup(rows, created, false));
+            owner.dirty = true;
+        }
+    }
+
+    /**
+     * Works out the schemas that a lookup is to be fanned out over.
+     *
+     * @param current The current catalog of the session
+     * @param catalog The catalog of the lookup
+     * @param schemaPattern The schema pattern of the lookup
+     * @return The names of the schemas, or null if the lookup should not be fanned out
+     */
+    private List<String> getSchemas(String current, String catalog, String schemaPattern) throws SQLException {
+        if ((schemaPattern != null && schemaPattern.indexOf('%') < 0 && schemaPattern.indexOf('_') < 0)
+                || !canUsePool(current)) {
+            return null;
+        }
+        final List<String> schemas = new ArrayList<>();
+        try (ResultSet results = new PatternFilteredResultSet(getSchemas(), 1, schemaPattern, 2,
+                "%".equals(catalog) ? null : catalog)) {
+            while (results.next()) {
+                schemas.add(results.getString(1));
+            }
+        }
+        return schemas;
+    }
+
+    /**
+     * Makes several lookups of the same kind, over the pool if more than one of them needs to go to the server.
+     *
+     * @param name The name of the lookups
+     * @param argLists The arguments of each lookup
+     * @return The results, in the same order as the arguments
+     */
+    private List<ResultSet> fetchAll(String name, List<String[]> argLists) throws SQLException {
+        int missing = 0;
+        synchronized (entries) {
+            for (String[] args : argLists) {
+                if (!entries.containsKey(key(name, args))) {
+                    ++missing;
+                }
+            }
+        }
+        final List<ResultSet> results = new ArrayList<>(argLists.size());
+        final String current = owner == this ? getCurrentCatalog() : null;
+        if (missing < 2 || !canUsePool(current)) {
+            for (String[] args : argLists) {
+                results.add(fetch(getConnection(), name, args));
+            }
+            return results;
+        }
+        final List<Callable<ResultSet>> work = new ArrayList<>(argLists.size());
+        for (String[] args : argLists) {
+            work.add(() -> {
+                final Connection conn = borrow(current);
+                boolean ok = false;
+                try {
+                    final ResultSet rows = fetch(conn, name, args);
+                    ok = true;
+                    return rows;
+                } finally {
+                    release(conn, ok);
+                }
+            });
+        }
+        try (SlicedResultSet all = new SlicedResultSet(work, getPool(),
+                context.getSession().getContext().getMetadataThreads())) {
+            for (int i = 0; i < work.size(); i++) {
+                results.add(all.take(i));
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Takes a connection of the cache's own, for lookups made off of the thread of the session: an idle one, or a
+     * newly opened one (see {@link SQLConnectionContext#openConnection(String)}), switched to the given catalog. The
+     * connection of the session is never used for these, or even asked for its catalog, as the session may be in the
+     * middle of a query or a transaction on it, so the catalog has to be found out on the thread of the session.
+     *
+     * @param catalog The catalog for the lookups, or null to use the connection in whatever catalog it is in
+     * @return The connection, to be handed back with {@link #release(Connection, boolean)}
+     * @throws SQLException If there is no idle connection and one cannot be opened, or the connection cannot be
+     *         switched to the catalog
+     */
+    private Connection borrow(String catalog) throws SQLException {
+        Connection conn = idle.poll();
+        if (conn == null) {
+            conn = open(catalog);
+        }
+        try {
+            if (catalog != null && !catalog.equals(conn.getCatalog())) {
+                conn.setCatalog(catalog);
+            }
+        } catch (SQLException e) {
+            release(conn, false);
+            throw e;
+        }
+        return conn;
+    }
+
+    /**
+     * Opens a connection of the cache's own, which is switched back to the catalog it starts out in whenever it is
+     * handed back.
+     */
+    private Connection open(String catalog) throws SQLException {
+        final Connection conn = context.openConnection(catalog);
+        try {
+            final String home = conn.getCatalog();
+            synchronized (opened) {
+                opened.put(conn, home);
+            }
+        } catch (SQLException e) {
+            conn.close();
+            throw e;
+        }
+        return conn;
+    }
+
+    /**
+     * Hands back a connection taken with {@link #borrow(String)}, switching it back to the catalog it was opened in,
+     * so that the next lookup to borrow it does not find it in a catalog other than the one it asks for. If the work
+     * done with it failed, it is only kept if it still works; otherwise, or if it cannot be switched back, it is
+     * closed, and another is opened in its place when one is next needed.
+     *
+     * @param conn The connection
+     * @param ok Whether the work done with the connection succeeded
+     */
+    private void release(Connection conn, boolean ok) {
+        final String home;
+        final boolean pooled;
+        synchronized (opened) {
+            pooled = opened.containsKey(conn);
+            home = opened.get(conn);
+        }
+        try {
+            if (pooled && (ok || conn.isValid(5))) {
+                if (home != null && !home.equals(conn.getCatalog())) {
+                    conn.setCatalog(home);
+                }
+                idle.add(conn);
+                return;
+            }
+        } catch (SQLException e) {
+            LOG.log(Level.FINE, "Discarding a connection for metadata lookups", e);
+        }
+        synchronized (opened) {
+            opened.remove(conn);
+        }
+        try {
+            conn.close();
+        } catch (SQLException e) {
+            /* IGNORED */
+        }
+    }
+
+    /**
+     * Decides whether lookups may be made over the pool: it is to be used and connections can be added to it. If
+     * there are none yet, the first of them is opened to find out.
+     *
+     * @param catalog The current catalog of the session, which the first connection is opened in
+     */
+    private boolean canUsePool(String catalog) {
+        if (owner != this || context.getSession().getContext().getMetadataThreads() < 2) {
+            return false;
+        }
+        synchronized (opened) {
+            if (!opened.isEmpty()) {
+                return true;
+            }
+            try {
+                idle.add(open(catalog));
+                return true;
+            } catch (SQLException e) {
+                LOG.log(Level.FINE, "Unable to open a connection for metadata lookups", e);
+                return false;
+            }
+        }
+    }
+
+    private synchronized ExecutorService getPool() {
+        if (pool == null) {
+            pool = Executors.newFixedThreadPool(context.getSession().getContext().getMetadataThreads(), r -> {
+                final Thread thread = new Thread(r, "jsqsh-metadata");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return pool;
+    }
+
+    /**
+     * Stops the pool and closes its connections.
+     */
+    private void closePool() {
+        synchronized (this) {
+            if (pool != null) {
+                pool.shutdownNow();
+                pool = null;
+            }
+        }
+        synchronized (opened) {
+            for (Connection conn : opened.keySet()) {
+                try {
+                    conn.close();
+                } catch (SQLException e) {
+                    /* IGNORED */
+                }
+            }
+            opened.clear();
+            idle.clear();
+        }
+    }
+
+    /**
+     * Escapes the characters in a name that would otherwise be taken as wildcards in a pattern.
+     */
+    private static String escape(String name, String escape) {
+        if (name == null || escape == null || escape.isEmpty()) {
+            return name;
+        }
+        final StringBuilder sb = new StringBuilder(name.length() + 4);
+        for (int i = 0; i < name.length(); i++) {
+            final char ch = name.charAt(i);
+            if (ch == '%' || ch == '_' || escape.indexOf(ch) >= 0) {
+                sb.append(escape);
+            }
+            sb.append(ch);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Looks up a result in the cache, going to the server for it if it is not there or has expired.
+     *
+     * @param conn The connection to go to the server with
+     * @param name The name of the lookup
+     * @param args The arguments of the lookup
+     * @return A copy of the result that the caller is free to read and close
+     * @throws SQLException If the lookup fails
+     */
+    private ResultSet fetch(Connection conn, String name, String... args) throws SQLException {
+        final int ttl = getTtl();
+        if (ttl <= 0) {
+            if (cachedOnly) {
+                throw new SQLException("Metadata caching is disabled");
+            }
+            return lookupOf(name, args).lookup(conn.getMetaData());
+        }
+        final String key = key(name, args);
+        CachedLookup entry;
+        synchronized (entries) {
+            entry = entries.get(key);
+            if (entry != null && !isUsable(entry.created, entry.restored, ttl)) {
+                entries.remove(key);
+                entry = null;
+            }
+            if (entry != null) {
+                ++owner.hits;
+            } else if (cachedOnly) {
+                throw new SQLException("Not cached: " + key.replace('\0', ','));
+            } else {
+                ++owner.misses;
+            }
+        }
+        if (entry == null) {
+            return copyOf((CachedRowSet) load(conn, key, name, args, false));
+        }
+        return copyOf(entry.rows);
+    }
+
+    /**
+     * Looks up an index in the cache, going to the server for the names in it if it is not there or has expired.
+     *
+     * @param conn The connection to go to the server with
+     * @param name The name of the index
+     * @param args The arguments of the lookup the index is built from
+     * @return The index
+     * @throws SQLException If the lookup fails
+     */
+    private PrefixIndex index(Connection conn, String name, String... args) throws SQLException {
+        final int ttl = getTtl();
+        final String key = key(name, args);
+        synchronized (entries) {
+            final CachedIndex entry = indexes.get(key);
+            if (entry != null && isUsable(entry.created, entry.restored, ttl)) {
+                ++owner.hits;
+                return entry.index;
+            }
+            if (cachedOnly) {
+                throw new SQLException("Not cached: " + key.replace('\0', ','));
+            }
+            ++owner.misses;
+        }
+        return (PrefixIndex) load(conn, key, name, args, true);
+    }
+
+    /**
+     * Decides whether a cached result may be used: the cached only view will use anything it has, and results
+     * restored from a snapshot are used until they have been looked up again.
+     */
+    private boolean isUsable(long created, boolean restored, int ttl) {
+        return cachedOnly || restored || (ttl > 0 && System.currentTimeMillis() - created < ttl * 1000L);
+    }
+
+    /**
+     * Goes to the server for a lookup, adding the result (or an index of the names in it) to the cache.
+     *
+     * @return The row set or the index
+     */
+    private Object load(Connection conn, String key, String name, String[] args, boolean isIndex)
+            throws SQLException {
+        final Lookup lookup = lookupOf(name, args);
+        if (lookup == null) {
+            throw new SQLException("Unrecognized metadata lookup " + name);
+        }
+        final long now = System.currentTimeMillis();
+        final Object result;
+        try (ResultSet results = lookup.lookup(conn.getMetaData())) {
+            if (isIndex) {
+                final List<String> names = new ArrayList<>();
+                while (results.next()) {
+                    names.add(results.getString(3));
+                }
+                result = PrefixIndex.of(names);
+            } else {
+                final CachedRowSet rows = newRowSet();
+                rows.populate(results);
+                result = rows;
+            }
+        }
+        if (getTtl() > 0) {
+            synchronized (entries) {
+                if (isIndex) {
+                    indexes.put(key, new CachedIndex((PrefixIndex) result, now, false));
+                } else {
+                    entries.put(key, new CachedLookup((CachedRowSet) result, now, false));
+                }
+                owner.dirty = true;
+            }
+        }
+        if (LOG.isLoggable(Level.FINE)) {
+            LOG.fine((isIndex ? "Indexed " + ((PrefixIndex) result).size() + " names"
+                    : "Cached " + ((CachedRowSet) result).size() + " rows") + " for " + key.replace('\0', ','));
+        }
+        return result;
+    }
+
+    /**
+     * Returns the call to {@link DatabaseMetaData} that a lookup makes. The arguments are those that go into the key
+     * of the lookup.
+     *
+     * @return The call, or null if the lookup is not recognized
+     */
+    private static Lookup lookupOf(String name, String[] a) {
+        switch (name) {
+            case "catalogs":
+                return DatabaseMetaData::getCatalogs;
+            case "schemas":
+                return DatabaseMetaData::getSchemas;
+            case "tables":
+                return meta -> meta.getTables(a[0], a[1], a[2], a[3] == null ? null : a[3].split(","));
+            case "tableIndex":
+                return meta -> meta.getTables(a[0], a[1], "%", null);
+            case "columns":
+                return meta -> meta.getColumns(a[0], a[1], a[2], a[3]);
+            case "procedures":
+                return meta -> meta.getProcedures(a[0], a[1], a[2]);
+            case "functions":
+                return meta -> meta.getFunctions(a[0], a[1], a[2]);
+            case "procedureIndex":
+                return meta -> meta.getProcedures(a[0], a[1], "%");
+            case "importedKeys":
+                return meta -> meta.getImportedKeys(a[0], a[1], a[2]);
+            case "procedureColumns":
+                return meta -> meta.getProcedureColumns(a[0], a[1], a[2], a[3]);
+            case "crossReference":
+                return meta -> meta.getCrossReference(a[0], a[1], a[2], a[3], a[4], a[5]);
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * @return The file that the cache is saved to, or null if it is not to be saved
+     */
+    private File getFile() {
+        final String name = context.getConnectionDescriptor() == null ? null : context.getLogicalName();
+        final SqshContext sqshContext = context.getSession().getContext();
+        if (name == null || !sqshContext.isMetadataPersist()) {
+            return null;
+        }
+        return new File(new File(sqshContext.getConfigDirectory(), "metadata"),
+                name.replaceAll("[^A-Za-z0-9._-]", "_") + ".idx");
+    }
+
+    /**
+     * Saves the cache as a snapshot, if it is to be saved and anything has changed since it was last saved.
+     */
+    private void save() {
+        final File file = getFile();
+        if (owner != this || file == null) {
+            return;
+        }
+        final MetadataSnapshot snapshot;
+        synchronized (entries) {
+            if (!dirty) {
+                return;
+            }
+            dirty = false;
+            snapshot = new MetadataSnapshot(currentCatalog, new HashMap<>(entries), new HashMap<>(indexes));
+        }
+        synchronized (this) {
+            try {
+                snapshot.write(file);
+            } catch (IOException | SQLException e) {
+                LOG.log(Level.FINE, "Unable to save " + file, e);
+            }
+        }
+    }
+
+    /**
+     * Produces a copy of a cached result. The rows are copied (through a shared cursor over the cached result), so
+     * the copy may be read, changed and closed without affecting the cached result or any other copy of it.
+     */
+    private static ResultSet copyOf(CachedRowSet rows) throws SQLException {
+        final CachedRowSet copy = newRowSet();
+        final ResultSet shared = rows.createShared();
+        shared.beforeFirst();
+        copy.populate(shared);
+        copy.beforeFirst();
+        // A new row set starts out with an empty warning, which would otherwise be displayed.
+        copy.clearWarnings();
+        return copy;
+    }
+
+    static synchronized CachedRowSet newRowSet() throws SQLException {
+        if (rowSetFactory == null) {
+            rowSetFactory = RowSetProvider.newFactory();
+        }
+        return rowSetFactory.createCachedRowSet();
+    }
+
+    private int getTtl() {
+        return context.getSession().getContext().getMetadataCacheTtl();
+    }
+
+    /**
+     * Builds the key of a lookup from its name and arguments.
+     */
+    private static String key(String name, String... args) {
+        final StringBuilder sb = new StringBuilder(name);
+        for (String arg : args) {
+            sb.append('\0').append(arg == null ? "\1" : arg);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,320 @@
+/*
+ * Copyright 2007-2022 Scott C. Gray
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sqsh;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import javax.sql.rowset.CachedRowSet;
+import javax.sql.rowset.RowSetMetaDataImpl;
+
+import org.sqsh.MetadataCache.CachedIndex;
+import org.sqsh.MetadataCache.CachedLookup;
+import org.sqsh.util.PrefixIndex;
+
+/**
+ * The contents of a {@link MetadataCache} as saved to disk between sessions: the lookups (tables, columns, keys,
+ * procedures and so on) that were cached, each with the description of its columns and its rows, and the indexes of
+ * table and procedure names.
+ *
+ * <p>The file is a gzip compressed stream of a magic number and version, followed by the current catalog of the
+ * connection and then each lookup and index along with the time at which it was made. Only the values that metadata
+ * lookups return are kept as they are (strings, numbers and booleans); anything else is kept as a string. Strings
+ * are written as their length in bytes followed by their UTF-8 encoding, as the remarks of a view or procedure may
+ * well be longer than {@link DataOutput#writeUTF(String)} allows. Files written with any other version are ignored,
+ * and are replaced the next time that the cache is saved.
+ */
+class MetadataSnapshot {
+
+    private static final int FILE_MAGIC = 0x6a734d43;
+    private static final int FILE_VERSION = 3;
+
+    private static final int NULL = 0;
+    private static final int STRING = 1;
+    private static final int SHORT = 2;
+    private static final int INT = 3;
+    private static final int LONG = 4;
+    private static final int BOOLEAN = 5;
+
+    private final String catalog;
+    private final Map<String, CachedLookup> lookups;
+    private final Map<String, CachedIndex> indexes;
+
+    MetadataSnapshot(String catalog, Map<String, CachedLookup> lookups, Map<String, CachedIndex> indexes) {
+        this.catalog = catalog;
+        this.lookups = lookups;
+        this.indexes = indexes;
+    }
+
+    /**
+     * @return The current catalog of the connection when the snapshot was taken, or null
+     */
+    String getCatalog() {
+        return catalog;
+    }
+
+    /**
+     * @return The lookups, by key
+     */
+    Map<String, CachedLookup> getLookups() {
+        return lookups;
+    }
+
+    /**
+     * @return The indexes, by key
+     */
+    Map<String, CachedIndex> getIndexes() {
+        return indexes;
+    }
+
+    /**
+     * Reads a snapshot. Everything in it is marked as having been restored.
+     *
+     * @param file The file to read
+     * @return The snapshot, or null if the file was written with another version
+     * @throws IOException If the file cannot be read
+     * @throws SQLException If a lookup cannot be rebuilt
+     */
+    static MetadataSnapshot read(File file) throws IOException, SQLException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new GZIPInputStream(new FileInputStream(file))))) {
+            if (in.readInt() != FILE_MAGIC || in.readInt() != FILE_VERSION) {
+                return null;
+            }
+            final String catalog = in.readBoolean() ? readText(in) : null;
+            final Map<String, CachedLookup> lookups = new HashMap<>();
+            for (int count = in.readInt(); count > 0; count--) {
+                final String key = readText(in);
+                final long created = in.readLong();
+                lookups.put(key, new CachedLookup(readRows(in), created, true));
+            }
+            final Map<String, CachedIndex> indexes = new HashMap<>();
+            for (int count = in.readInt(); count > 0; count--) {
+                final String key = readText(in);
+                final long created = in.readLong();
+                indexes.put(key, new CachedIndex(PrefixIndex.read(in), created, true));
+            }
+            return new MetadataSnapshot(catalog, lookups, indexes);
+        }
+    }
+
+    /**
+     * Writes the snapshot. It is written to a temporary file first, which then replaces the file, so that a
+     * snapshot that is being read is never only partially written.
+     *
+     * @param file The file to write
+     * @throws IOException If the file cannot be written
+     * @throws SQLException If a lookup cannot be read
+     */
+    void write(File file) throws IOException, SQLException {
+        final File dir = file.getParentFile();
+        final File tmp = new File(dir, file.getName() + ".tmp");
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Unable to create " + dir);
+        }
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    new GZIPOutputStream(new FileOutputStream(tmp))))) {
+                out.writeInt(FILE_MAGIC);
+                out.writeInt(FILE_VERSION);
+                out.writeBoolean(catalog != null);
+                if (catalog != null) {
+                    writeText(out, catalog);
+                }
+                out.writeInt(lookups.size());
+                for (Map.Entry<String, CachedLookup> entry : lookups.entrySet()) {
+                    writeText(out, entry.getKey());
+                    out.writeLong(entry.getValue().created);
+                    writeRows(out, entry.getValue().rows);
+                }
+                out.writeInt(indexes.size());
+                for (Map.Entry<String, CachedIndex> entry : indexes.entrySet()) {
+                    writeText(out, entry.getKey());
+                    out.writeLong(entry.getValue().created);
+                    entry.getValue().index.write(out);
+                }
+            }
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            tmp.delete();
+        }
+    }
+
+    /**
+     * Writes the description of the columns of a row set followed by its rows.
+     *
+     * @param out Where to write to
+     * @param rows The rows. Only a copy of them is read, so the position of the row set is left alone.
+     * @throws IOException If the rows cannot be written
+     * @throws SQLException If the rows cannot be read
+     */
+    static void writeRows(DataOutput out, CachedRowSet rows) throws IOException, SQLException {
+        // The shared copy is not closed, as closing it would throw away the rows it shares.
+        final ResultSet shared = rows.createShared();
+        final ResultSetMetaData meta = rows.getMetaData();
+        final int columns = meta.getColumnCount();
+        out.writeInt(columns);
+        for (int i = 1; i <= columns; i++) {
+            writeString(out, meta.getColumnLabel(i));
+            writeString(out, meta.getColumnName(i));
+            out.writeInt(meta.getColumnType(i));
+            writeString(out, meta.getColumnTypeName(i));
+            out.writeInt(meta.getColumnDisplaySize(i));
+            out.writeInt(meta.getPrecision(i));
+            out.writeInt(meta.getScale(i));
+            out.writeInt(meta.isNullable(i));
+        }
+        out.writeInt(rows.size());
+        shared.beforeFirst();
+        while (shared.next()) {
+            for (int i = 1; i <= columns; i++) {
+                writeValue(out, shared.getObject(i));
+            }
+        }
+    }
+
+    /**
+     * Reads back a row set written by {@link #writeRows(DataOutput, CachedRowSet)}.
+     *
+     * @param in Where to read from
+     * @return The row set, positioned before its first row
+     * @throws IOException If the rows cannot be read
+     * @throws SQLException If the row set cannot be built
+     */
+    static CachedRowSet readRows(DataInput in) throws IOException, SQLException {
+        final int columns = in.readInt();
+        final RowSetMetaDataImpl meta = new RowSetMetaDataImpl();
+        meta.setColumnCount(columns);
+        for (int i = 1; i <= columns; i++) {
+            meta.setColumnLabel(i, readString(in));
+            meta.setColumnName(i, readString(in));
+            meta.setColumnType(i, in.readInt());
+            meta.setColumnTypeName(i, readString(in));
+            meta.setColumnDisplaySize(i, Math.max(in.readInt(), 0));
+            meta.setPrecision(i, Math.max(in.readInt(), 0));
+            meta.setScale(i, Math.max(in.readInt(), 0));
+            meta.setNullable(i, in.readInt());
+        }
+
+        final CachedRowSet rows = MetadataCache.newRowSet();
+        rows.setMetaData(meta);
+        for (int count = in.readInt(); count > 0; count--) {
+            rows.moveToInsertRow();
+            for (int i = 1; i <= columns; i++) {
+                final Object value = readValue(in);
+                if (value == null) {
+                    rows.updateNull(i);
+                } else {
+                    rows.updateObject(i, value);
+                }
+            }
+            rows.insertRow();
+        }
+        rows.moveToCurrentRow();
+        rows.beforeFirst();
+        return rows;
+    }
+
+    private static void writeValue(DataOutput out, Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(NULL);
+        } else if (value instanceof Short || value instanceof Byte) {
+            out.writeByte(SHORT);
+            out.writeShort(((Number) value).shortValue());
+        } else if (value instanceof Integer) {
+            out.writeByte(INT);
+            out.writeInt((Integer) value);
+        } else if (value instanceof Long) {
+            out.writeByte(LONG);
+            out.writeLong((Long) value);
+        } else if (value instanceof Boolean) {
+            out.writeByte(BOOLEAN);
+            out.writeBoolean((Boolean) value);
+        } else {
+            out.writeByte(STRING);
+            writeText(out, value.toString());
+        }
+    }
+
+    private static Object readValue(DataInput in) throws IOException {
+        final int type = in.readByte();
+        switch (type) {
+            case NULL:
+                return null;
+            case STRING:
+                return readText(in);
+            case SHORT:
+                return in.readShort();
+            case INT:
+                return in.readInt();
+            case LONG:
+                return in.readLong();
+            case BOOLEAN:
+                return in.readBoolean();
+            default:
+                throw new IOException("Unrecognized value type " + type);
+        }
+    }
+
+    private static void writeString(DataOutput out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            writeText(out, value);
+        }
+    }
+
+    private static String readString(DataInput in) throws IOException {
+        return in.readBoolean() ? readText(in) : null;
+    }
+
+    /**
+     * Writes a string of any length (unlike {@link DataOutput#writeUTF(String)}, which is limited to 64KB).
+     */
+    private static void writeText(DataOutput out, String value) throws IOException {
+        final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readText(DataInput in) throws IOException {
+        final int length = in.readInt();
+        if (length < 0) {
+            throw new IOException("Invalid string length " + length);
+        }
+        final byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
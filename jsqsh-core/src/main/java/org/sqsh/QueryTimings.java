@@ -0,0 +1,214 @@
+/*
+ * Copyright 2007-2022 Scott C. Gray
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sqsh;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.sqsh.util.TimeUtils;
+
+/**
+ * Breaks the time taken by a query down into the phases of its life, so that it is possible to tell whether time
+ * went to the server, to the network or to jsqsh itself:
+ * <ul>
+ *   <li><b>prepare</b> - from the start of the query until it is executed: creating (or preparing) the statement and
+ *   binding its parameters</li>
+ *   <li><b>execute</b> - waiting for the statement to execute</li>
+ *   <li><b>first row</b> - from the start of execution to the arrival of the first row</li>
+ *   <li><b>fetch</b> - waiting on the driver for rows ({@link java.sql.ResultSet#next()})</li>
+ *   <li><b>format</b> - turning the values of each row into their display form</li>
+ *   <li><b>render</b> - handing rows to the display style and writing them out</li>
+ *   <li><b>total</b> - from the start of execution until all results have been processed</li>
+ * </ul>
+ * Along with these, the number of rows and characters of formatted values of each result set are kept.
+ *
+ * <p>Instances are not thread safe; a thread that fetches rows on behalf of another should keep its own counts and
+ * hand them over once it is finished.
+ */
+public class QueryTimings {
+
+    /**
+     * The number of rows and characters of formatted values returned by a single result set.
+     */
+    public static class ResultStats {
+        private final long rows;
+        private final long chars;
+
+        public ResultStats(long rows, long chars) {
+            this.rows = rows;
+            this.chars = chars;
+        }
+
+        public long getRows() {
+            return rows;
+        }
+
+        public long getChars() {
+            return chars;
+        }
+    }
+
+    private long prepareNanos;
+    private long executeNanos;
+    private long firstRowNanos = -1L;
+    private long fetchNanos;
+    private long formatNanos;
+    private long renderNanos;
+    private long totalNanos;
+    private final List<ResultStats> results = new ArrayList<>();
+
+    public void addPrepare(long nanos) {
+        prepareNanos += nanos;
+    }
+
+    public void addExecute(long nanos) {
+        executeNanos += nanos;
+    }
+
+    public void addFetch(long nanos) {
+        fetchNanos += nanos;
+    }
+
+    public void addFormat(long nanos) {
+        formatNanos += nanos;
+    }
+
+    public void addRender(long nanos) {
+        renderNanos += nanos;
+    }
+
+    /**
+     * Records the arrival of the first row. Only the first call has any effect.
+     *
+     * @param nanos The time since the start of execution
+     */
+    public void firstRow(long nanos) {
+        if (firstRowNanos < 0L) {
+            firstRowNanos = nanos;
+        }
+    }
+
+    /**
+     * @param nanos The time from the start of the query until all results were processed
+     */
+    public void setTotal(long nanos) {
+        totalNanos = nanos;
+    }
+
+    /**
+     * Records the completion of a result set.
+     *
+     * @param rows The number of rows fetched
+     * @param chars The number of characters of formatted values
+     */
+    public void addResult(long rows, long chars) {
+        results.add(new ResultStats(rows, chars));
+    }
+
+    public long getPrepareMillis() {
+        return toMillis(prepareNanos);
+    }
+
+    public long getExecuteMillis() {
+        return toMillis(executeNanos);
+    }
+
+    /**
+     * @return The time from the start of execution until the first row arrived, or -1 if no rows were returned
+     */
+    public long getFirstRowMillis() {
+        return firstRowNanos < 0L ? -1L : toMillis(firstRowNanos);
+    }
+
+    public long getFetchMillis() {
+        return toMillis(fetchNanos);
+    }
+
+    public long getFormatMillis() {
+        return toMillis(formatNanos);
+    }
+
+    public long getRenderMillis() {
+        return toMillis(renderNanos);
+    }
+
+    public long getTotalMillis() {
+        return toMillis(totalNanos);
+    }
+
+    /**
+     * @return The statistics of each result set, in the order they were returned
+     */
+    public List<ResultStats> getResults() {
+        return Collections.unmodifiableList(results);
+    }
+
+    /**
+     * @return The number of rows returned by all result sets
+     */
+    public long getRows() {
+        long rows = 0L;
+        for (ResultStats result : results) {
+            rows += result.rows;
+        }
+        return rows;
+    }
+
+    /**
+     * @return The number of characters of formatted values returned by all result sets
+     */
+    public long getChars() {
+        long chars = 0L;
+        for (ResultStats result : results) {
+            chars += result.chars;
+        }
+        return chars;
+    }
+
+    /**
+     * @return A one line description of where the time went, suitable for use as a footer
+     */
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder();
+        sb.append("prepare: ").append(duration(prepareNanos))
+                .append("; execute: ").append(duration(executeNanos));
+        if (firstRowNanos >= 0L) {
+            sb.append("; first row: ").append(duration(firstRowNanos));
+        }
+        sb.append("; fetch: ").append(duration(fetchNanos))
+                .append("; format: ").append(duration(formatNanos))
+                .append("; render: ").append(duration(renderNanos))
+                .append("; total: ").append(duration(totalNanos));
+        for (int i = 0; i < results.size(); i++) {
+            final ResultStats result = results.get(i);
+            sb.append("; result set #").append(i + 1).append(": ")
+                    .append(result.rows).append(result.rows == 1 ? " row, " : " rows, ")
+                    .append(result.chars).append(result.chars == 1 ? " char" : " chars");
+        }
+        return sb.toString();
+    }
+
+    private static long toMillis(long nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
+    private static String duration(long nanos) {
+        return TimeUtils.millisToDurationString(toMillis(nanos));
+    }
+}
@@ -17,6 +17,9 @@ package org.sqsh;
 
 import org.sqsh.ColumnDescription.OverflowBehavior;
 
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
 
 /**
  * A renderer is a class that is responsible for translating data (row and
@@ -72,6 +75,14 @@ public abstract class Renderer {
      */
     private String nullRepresentation;
     
+    /**
+     * Used by the default implementation of {@link #row(ResultSet)} to 
+     * turn the values of each row into their display form.
+     */
+    private RowFetcher fetcher = null;
+    private ResultSet fetcherResultSet = null;
+    private int fetchedRows = 0;
+    
     /**
      * Creates a renderer.
      * 
@@ -104,6 +115,38 @@ public abstract class Renderer {
         return false;
     }
     
+    /**
+     * True if this renderer is completely finished with a row by the time
+     * {@link #row(CharSequence[])} returns (it writes it out, or folds it
+     * into a running total, but never holds onto it). For such renderers
+     * the <code>SQLRenderer</code> will hand over rows whose values live in
+     * buffers that are re-used for the next row, rather than allocating
+     * a new set of strings for every row fetched.
+     * 
+     * @return true if the renderer never retains the rows it is handed.
+     */
+    public boolean isStreaming() {
+        
+        return false;
+    }
+    
+    /**
+     * True if this renderer would rather have the values of each row as
+     * they come from the driver than their display form. When a result
+     * set is displayed, such a renderer is handed the result set itself via
+     * {@link #header(ColumnDescription[], ResultSet, int[])} and
+     * {@link #row(ResultSet)}. Results that do not come from a result set
+     * (such as stored procedure output parameters) are still handed over
+     * in their display form via {@link #header(ColumnDescription[])} and
+     * {@link #row(String[])}.
+     * 
+     * @return true if the renderer reads values directly from the result set.
+     */
+    public boolean isTyped() {
+        
+        return false;
+    }
+    
     /**
      * This is a helper method to display a string representing a 
      * single line of text to the session's output stream. This value
@@ -253,6 +296,20 @@ public abstract class Renderer {
         
     }
     
+    /**
+     * Same as {@link #isNull(String)}, but for values handed to 
+     * {@link #row(CharSequence[])}.
+     * 
+     * @param value The value in the row.
+     * @return true if it appears to be a null.
+     */
+    protected boolean isNull(CharSequence value) {
+        
+        return (value == null 
+            || value == nullRepresentation
+            || nullRepresentation.contentEquals(value));
+    }
+    
     /**
      * This method is called before {@link #row(String[])} to describe
      * the result set that is about to come. 
@@ -264,6 +321,28 @@ public abstract class Renderer {
         this.columns = columns;
     }
     
+    /**
+     * Called in place of {@link #header(ColumnDescription[])} for 
+     * {@link #isTyped() typed} renderers. The default implementation
+     * calls {@link #header(ColumnDescription[])} and prepares to format
+     * each row for {@link #row(ResultSet)}.
+     * 
+     * @param columns Description of the columns to be displayed
+     * @param resultSet The result set that the rows will be read from
+     * @param projection The (1-based) index of the result set column
+     *   that each of the displayed columns comes from
+     * @throws SQLException If the result set cannot be described
+     */
+    public void header (ColumnDescription []columns, ResultSet resultSet,
+            int []projection)
+        throws SQLException {
+        
+        header(columns);
+        fetcher = new RowFetcher(session, resultSet, columns, projection);
+        fetcherResultSet = resultSet;
+        fetchedRows = 0;
+    }
+    
     /**
      * Processes a row of data. Note that it is not necessary for a rendered
      * to display the row at this point. Some renderers may choose to 
@@ -280,6 +359,57 @@ public abstract class Renderer {
      */
     public abstract boolean row (String []row);
     
+    /**
+     * Processes a row of data whose values may live in buffers that are
+     * re-used once this method returns. This is only called for renderers
+     * that declare themselves {@link #isStreaming()}, which should override
+     * it to work on the values directly. The default implementation 
+     * simply copies the values to strings and calls {@link #row(String[])}.
+     * 
+     * @param row The row of data to be displayed.
+     * @return See {@link #row(String[])}.
+     */
+    public boolean row (CharSequence []row) {
+        
+        String []copy = new String[row.length];
+        for (int i = 0; i < row.length; i++) {
+            
+            copy[i] = (row[i] == null ? null : row[i].toString());
+        }
+        
+        return row(copy);
+    }
+    
+    /**
+     * Called in place of {@link #row(String[])} for {@link #isTyped() typed}
+     * renderers, with the result set positioned on the row to be displayed.
+     * The default implementation formats the values of the row just as 
+     * they would have been for a renderer that is not typed, and calls 
+     * {@link #row(String[])}.
+     * 
+     * @param resultSet The result set
+     * @return See {@link #row(String[])}.
+     * @throws SQLException If the row cannot be read
+     */
+    public boolean row (ResultSet resultSet)
+        throws SQLException {
+        
+        /*
+         * Only a subclass that overrides the typed header without calling
+         * ours could get here without a fetcher, in which case every column
+         * of the result set is displayed.
+         */
+        if (fetcher == null || fetcherResultSet != resultSet) {
+            
+            fetcher = new RowFetcher(session, resultSet, columns, 
+                RowFetcher.getProjection(columns.length, null));
+            fetcherResultSet = resultSet;
+            fetchedRows = 0;
+        }
+        
+        return row(fetcher.fetch(++fetchedRows, new String[columns.length]));
+    }
+    
     /**
      * Called when all of the available data for the current result set
      * has been passed to the renderer.
@@ -290,6 +420,17 @@ public abstract class Renderer {
      */
     public abstract boolean flush();
     
+    /**
+     * Called in place of {@link #flush()} when the display of a result set
+     * is abandoned part way through, because a row could not be displayed, 
+     * the result set failed, or the query was cancelled. The default 
+     * implementation does nothing; renderers that hold on to resources 
+     * until they are flushed should let go of them here.
+     */
+    public void abort() {
+        
+    }
+    
     /**
      * Called to display the footer string. The default implementation
      * will only display the footer string if 
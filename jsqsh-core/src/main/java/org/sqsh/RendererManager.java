@@ -38,6 +38,9 @@ public class RendererManager {
     private boolean showFooters = true;
     private int maxColumnWidth = 35;
     private int perfectSampleSize = 500;
+    private long perfectSpillSize = 16L * 1024L * 1024L;
+    private int arrowBatchSize = 65536;
+    private final MemoryBudget memoryBudget = new MemoryBudget();
     private String defaultRenderer = "perfect";
     
     private Map<String, Class<? extends Renderer>> renderers = 
@@ -82,6 +85,12 @@ public class RendererManager {
             org.sqsh.renderers.VerticalRenderer.class);
         renderers.put("json",
             org.sqsh.renderers.JsonRenderer.class);
+        renderers.put("ndjson",
+            org.sqsh.renderers.NdJsonRenderer.class);
+        renderers.put("jsonl",
+            org.sqsh.renderers.NdJsonRenderer.class);
+        renderers.put("arrow",
+            org.sqsh.renderers.ArrowRenderer.class);
         renderers.put("count",
                 org.sqsh.renderers.CountRenderer.class);
     }
@@ -198,6 +207,17 @@ public class RendererManager {
         }
     }
     
+    /**
+     * Returns the budget that renderers which must hold results in memory
+     * before displaying them reserve their memory from.
+     * 
+     * @return The memory budget.
+     */
+    public MemoryBudget getMemoryBudget() {
+        
+        return memoryBudget;
+    }
+    
     /**
      * Sets the name of the default renderer that will be used.
      * 
@@ -305,4 +325,43 @@ public class RendererManager {
     
         this.perfectSampleSize = perfectSampleSize;
     }
+    
+    /**
+     * @return the number of bytes of sampled rows that a "perfect" renderer
+     *    will hold in memory before writing further rows to a temporary
+     *    file. A value &lt;= 0 indicates that rows are never written to disk.
+     */
+    public long getPerfectSpillSize() {
+    
+        return perfectSpillSize;
+    }
+    
+    /**
+     * @param perfectSpillSize The number of bytes of sampled rows that a
+     *    "perfect" renderer will hold in memory before writing further rows 
+     *    to a temporary file. A value &lt;= 0 indicates that rows are never 
+     *    written to disk.
+     */
+    public void setPerfectSpillSize(long perfectSpillSize) {
+    
+        this.perfectSpillSize = perfectSpillSize;
+    }
+    
+    /**
+     * @return the number of rows written in each record batch by the 
+     *    "arrow" renderer.
+     */
+    public int getArrowBatchSize() {
+    
+        return arrowBatchSize;
+    }
+    
+    /**
+     * @param arrowBatchSize The number of rows written in each record 
+     *    batch by the "arrow" renderer.
+     */
+    public void setArrowBatchSize(int arrowBatchSize) {
+    
+        this.arrowBatchSize = arrowBatchSize;
+    }
 }
@@ -0,0 +1,495 @@
+/*
+ * Copyright 2007-2022 Scott C. Gray
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sqsh;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Holds on to the results of recently executed queries so that running the same query again can be answered
+ * without going back to the server.
+ *
+ * <p>Results are held in the form they are displayed in: the description of the columns of each result set and
+ * the display form of each of its rows, packed one after the other into a byte array (each value is its length
+ * plus one, as a variable length integer, followed by its UTF-8 encoding; a length of zero is a null). Replaying
+ * them through a {@link Renderer} produces the same output as the original query did, short of any changes
+ * made since to the formatting of values.
+ *
+ * <p>Entries are keyed by the connection, the current catalog and schema and the SQL text (see
+ * {@link #key(String, String, String, String, int, String, String)}). They expire a given number of seconds after
+ * they were captured and the least recently used are evicted to keep the total size of the cache within a
+ * budget.
+ */
+public class ResultCache {
+
+    /**
+     * The display form of the results of one query.
+     */
+    public static class Entry {
+        private final long created = System.currentTimeMillis();
+        private final List<Result> results = new ArrayList<>();
+        private long size = 0L;
+
+        /**
+         * @return The result sets, in the order they were returned
+         */
+        public List<Result> getResults() {
+            return results;
+        }
+
+        /**
+         * @return The approximate number of bytes of memory held by the entry
+         */
+        public long getSize() {
+            return size;
+        }
+    }
+
+    /**
+     * A single result set.
+     */
+    public static class Result {
+        private final ColumnDescription[] columns;
+        private byte[] data = new byte[256];
+        private int length = 0;
+        private int rowCount = 0;
+
+        private Result(ColumnDescription[] columns) {
+            this.columns = new ColumnDescription[columns.length];
+            for (int i = 0; i < columns.length; i++) {
+                this.columns[i] = new ColumnDescription(columns[i]);
+            }
+        }
+
+        /**
+         * @return A copy of the description of the columns, which the caller is free to modify
+         */
+        public ColumnDescription[] getColumns() {
+            final ColumnDescription[] copy = new ColumnDescription[columns.length];
+            for (int i = 0; i < columns.length; i++) {
+                copy[i] = new ColumnDescription(columns[i]);
+            }
+            return copy;
+        }
+
+        /**
+         * @return The number of rows
+         */
+        public int getRowCount() {
+            return rowCount;
+        }
+
+        /**
+         * @return The rows, decoded one at a time. Each row is a newly allocated array.
+         */
+        public Iterator<String[]> rows() {
+            return new Iterator<String[]>() {
+                private int pos = 0;
+                private int row = 0;
+
+                @Override
+                public boolean hasNext() {
+                    return row < rowCount;
+                }
+
+                @Override
+                public String[] next() {
+                    if (row >= rowCount) {
+                        throw new NoSuchElementException();
+                    }
+                    final String[] values = new String[columns.length];
+                    for (int i = 0; i < values.length; i++) {
+                        int len = 0;
+                        int shift = 0;
+                        byte b;
+                        do {
+                            b = data[pos++];
+                            len |= (b & 0x7f) << shift;
+                            shift += 7;
+                        } while (b < 0);
+                        if (len > 0) {
+                            values[i] = new String(data, pos, len - 1, StandardCharsets.UTF_8);
+                            pos += len - 1;
+                        }
+                    }
+                    ++row;
+                    return values;
+                }
+            };
+        }
+
+        private void add(CharSequence[] row) {
+            for (CharSequence value : row) {
+                if (value == null) {
+                    writeLength(0);
+                } else {
+                    final byte[] bytes = value.toString().getBytes(StandardCharsets.UTF_8);
+                    writeLength(bytes.length + 1);
+                    ensureCapacity(bytes.length);
+                    System.arraycopy(bytes, 0, data, length, bytes.length);
+                    length += bytes.length;
+                }
+            }
+            ++rowCount;
+        }
+
+        private void writeLength(int len) {
+            ensureCapacity(5);
+            while ((len & ~0x7f) != 0) {
+                data[length++] = (byte) ((len & 0x7f) | 0x80);
+                len >>>= 7;
+            }
+            data[length++] = (byte) len;
+        }
+
+        private void ensureCapacity(int needed) {
+            if (length + needed > data.length) {
+                data = Arrays.copyOf(data, Math.max(data.length * 2, length + needed));
+            }
+        }
+
+        private void trim() {
+            data = Arrays.copyOf(data, length);
+        }
+    }
+
+    /**
+     * Captures the results of a query as they are displayed. If the query turns out to be one that should not be
+     * cached, the recorder is abandoned and drops what it has captured.
+     */
+    public class Recorder {
+        private Entry entry = new Entry();
+        private Result current = null;
+
+        /**
+         * Starts capturing a new result set.
+         *
+         * @param columns The description of its columns
+         */
+        public void startResult(ColumnDescription[] columns) {
+            if (entry != null) {
+                current = new Result(columns);
+                entry.results.add(current);
+            }
+        }
+
+        /**
+         * Captures a row of the current result set.
+         *
+         * @param row The display form of its values
+         */
+        public void row(CharSequence[] row) {
+            if (entry != null) {
+                current.add(row);
+                if (current.length > memoryLimit) {
+                    abandon();
+                }
+            }
+        }
+
+        /**
+         * Finishes capturing the current result set.
+         */
+        public void endResult() {
+            if (entry != null) {
+                current.trim();
+                entry.size += current.length + 64L * current.columns.length;
+                current = null;
+                if (entry.size > memoryLimit) {
+                    abandon();
+                }
+            }
+        }
+
+        /**
+         * Drops everything captured, because the results are too large, or are not ones that should be cached.
+         */
+        public void abandon() {
+            entry = null;
+            current = null;
+        }
+
+        /**
+         * @return true if the recorder has been abandoned
+         */
+        public boolean isAbandoned() {
+            return entry == null;
+        }
+    }
+
+    private boolean enabled = false;
+    private int ttl = 300;
+    private long memoryLimit = 64L * 1024L * 1024L;
+
+    private long used = 0L;
+    private long hits = 0L;
+    private long misses = 0L;
+
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * @return Whether or not query results are cached
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @param enabled Whether or not query results are cached. Turning the cache off leaves its contents in
+     *         place, so that they can be used again if it is turned back on.
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * @return The number of seconds after which an entry expires
+     */
+    public int getTtl() {
+        return ttl;
+    }
+
+    /**
+     * @param ttl The number of seconds after which an entry expires
+     */
+    public void setTtl(int ttl) {
+        this.ttl = Math.max(ttl, 0);
+    }
+
+    /**
+     * @return The most memory, in bytes, that the cache may hold
+     */
+    public long getMemoryLimit() {
+        return memoryLimit;
+    }
+
+    /**
+     * @param memoryLimit The most memory, in bytes, that the cache may hold. Entries are evicted immediately if
+     *         the cache holds more than this.
+     */
+    public synchronized void setMemoryLimit(long memoryLimit) {
+        this.memoryLimit = Math.max(memoryLimit, 0L);
+        evict();
+    }
+
+    /**
+     * @return The number of times the results of a query were found in the cache
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return The number of times the results of a query that could have been cached were not found
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return The number of entries in the cache
+     */
+    public synchronized int getEntries() {
+        return entries.size();
+    }
+
+    /**
+     * @return The approximate number of bytes held by the cache
+     */
+    public synchronized long getBytes() {
+        return used;
+    }
+
+    /**
+     * Empties the cache and resets its counters.
+     */
+    public synchronized void clear() {
+        invalidate();
+        hits = 0L;
+        misses = 0L;
+    }
+
+    /**
+     * Empties the cache, leaving its counters alone. Called whenever a statement that may have changed the data
+     * behind the cached results is executed.
+     */
+    public synchronized void invalidate() {
+        entries.clear();
+        used = 0L;
+    }
+
+    /**
+     * Looks up the results of a query, counting the lookup as a hit or a miss.
+     *
+     * @param key The key of the query
+     * @return The results, or null if they are not in the cache or have expired
+     */
+    public synchronized Entry get(String key) {
+        Entry entry = entries.get(key);
+        if (entry != null && System.currentTimeMillis() - entry.created >= ttl * 1000L) {
+            remove(key);
+            entry = null;
+        }
+        if (entry == null) {
+            ++misses;
+        } else {
+            ++hits;
+        }
+        return entry;
+    }
+
+    /**
+     * @return A recorder to capture the results of a query with
+     */
+    public Recorder newRecorder() {
+        return new Recorder();
+    }
+
+    /**
+     * Adds the results captured by a recorder to the cache, unless the recorder was abandoned.
+     *
+     * @param key The key of the query
+     * @param recorder The recorder
+     */
+    public synchronized void put(String key, Recorder recorder) {
+        final Entry entry = recorder.entry;
+        if (entry == null || entry.results.isEmpty()) {
+            return;
+        }
+        entry.size += key.length() * 2L;
+        remove(key);
+        entries.put(key, entry);
+        used += entry.size;
+        evict();
+    }
+
+    private void remove(String key) {
+        final Entry entry = entries.remove(key);
+        if (entry != null) {
+            used -= entry.size;
+        }
+    }
+
+    private void evict() {
+        final Iterator<Map.Entry<String, Entry>> iter = entries.entrySet().iterator();
+        while (used > memoryLimit && iter.hasNext()) {
+            used -= iter.next().getValue().size;
+            iter.remove();
+        }
+    }
+
+    /**
+     * Builds the key that the results of a query are cached under.
+     *
+     * @param url The URL of the connection
+     * @param user The user connected as
+     * @param catalog The current catalog, or null
+     * @param schema The current schema, or null
+     * @param maxRows The limit on the number of rows displayed
+     * @param nullValue The display form of NULL. Display styles tell NULLs from other values by this, so results
+     *         captured with one cannot be replayed with another.
+     * @param sql The SQL, after variable expansion
+     * @return The key
+     */
+    public static String key(String url, String user, String catalog, String schema, int maxRows, String nullValue,
+            String sql) {
+        return url + '\u0000' + user + '\u0000' + catalog + '\u0000' + schema + '\u0000' + maxRows + '\u0000'
+                + nullValue + '\u0000' + sql;
+    }
+
+    /**
+     * Words that, appearing anywhere in a query outside of quotes and comments, mean that it may have a side effect
+     * beyond reading data: modifying data (in a common table expression, say), creating a table from its results,
+     * locking the rows it reads or drawing values from a sequence.
+     */
+    private static final Set<String> SIDE_EFFECTS = new HashSet<>(Arrays.asList("insert", "update", "delete",
+            "merge", "upsert", "into", "lock", "nextval", "setval", "next_value", "gen_id"));
+
+    /**
+     * Decides whether a statement is a plainly read-only query whose results may be cached. Replaying anything
+     * else would skip its side effects, so only statements that start with a keyword that reads data are, and then
+     * only if they do not contain a word from {@link #SIDE_EFFECTS}, a <code>FOR SHARE</code> locking clause or a
+     * <code>NEXT VALUE FOR</code> sequence expression. Functions with side effects of their own cannot be told
+     * apart from any other function, which is one reason why caching has to be asked for.
+     *
+     * @param sql The SQL
+     * @return true if it may be cached
+     */
+    public static boolean isCacheable(String sql) {
+        final int len = sql.length();
+        int idx = SQLParseUtil.skipWhitespace(sql, len, 0);
+        while (idx < len && sql.charAt(idx) == '(') {
+            idx = SQLParseUtil.skipWhitespace(sql, len, idx + 1);
+        }
+        int start = idx;
+        while (idx < len && Character.isLetter(sql.charAt(idx))) {
+            ++idx;
+        }
+        switch (sql.substring(start, idx).toLowerCase(Locale.ROOT)) {
+            case "select":
+            case "with":
+            case "values":
+            case "show":
+            case "describe":
+                break;
+            default:
+                return false;
+        }
+        if (idx < len && isWordChar(sql.charAt(idx))) {
+            return false;
+        }
+        String previous = null;
+        while (idx < len) {
+            final char ch = sql.charAt(idx);
+            if (ch == '\'' || ch == '"' || ch == '`') {
+                idx = SQLParseUtil.skipQuotedString(sql, len, idx);
+            } else if (ch == '[') {
+                idx = SQLParseUtil.skipBrackets(sql, len, idx);
+            } else if (ch == '-' || ch == '/') {
+                final int next = SQLParseUtil.skipWhitespace(sql, len, idx);
+                idx = (next == idx) ? idx + 1 : next;
+            } else if (isWordChar(ch)) {
+                start = idx;
+                while (idx < len && isWordChar(sql.charAt(idx))) {
+                    ++idx;
+                }
+                final String word = sql.substring(start, idx).toLowerCase(Locale.ROOT);
+                if (SIDE_EFFECTS.contains(word)
+                        || (("for".equals(previous) || "key".equals(previous)) && "share".equals(word))
+                        || ("next".equals(previous) && "value".equals(word))) {
+                    return false;
+                }
+                previous = word;
+            } else {
+                ++idx;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isWordChar(char ch) {
+        return Character.isLetterOrDigit(ch) || ch == '_' || ch == '$';
+    }
+}
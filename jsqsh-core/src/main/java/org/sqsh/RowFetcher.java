@@ -0,0 +1,549 @@
+/*
+ * Copyright 2007-2022 Scott C. Gray
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sqsh;
+
+import org.sqsh.format.NumberFormatter;
+
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.Set;
+import java.util.logging.Logger;
+
+/**
+ * Responsible for pulling the columns of the current row out of a {@link ResultSet} and converting them to their
+ * display form. All of the decisions about how a column is to be fetched (which getter to call, which formatter to
+ * use, whether or not it is even displayed) are made exactly once, when the fetcher is created, so that the
+ * per-row work is reduced to walking an array of column accessors.
+ *
+ * <p>Where the column's type and formatter allow it, the value is fetched using the primitive getters of the
+ * result set (e.g. {@link ResultSet#getLong(int)}) and formatted directly, avoiding boxing the value.
+ *
+ * <p>Rows may be fetched either into a freshly allocated array of strings ({@link #fetch(long, String[])}), or
+ * into a {@link RowBuffer} that is reused from one row to the next ({@link #fetch(long, RowBuffer)}). The latter
+ * produces no garbage for most data types, but may only be used when the consumer of the row is finished with
+ * it before the next row is fetched (see {@link Renderer#isStreaming()}).
+ */
+public class RowFetcher {
+
+    private static final Logger LOG = Logger.getLogger(RowFetcher.class.getName());
+
+    /**
+     * The value that is displayed in a column when the driver fails to decode its value.
+     */
+    public static final String ERROR_VALUE = "*ERROR*";
+
+    private final Session session;
+    private final ResultSet resultSet;
+    private final String nullValue;
+    private final ColumnAccessor[] accessors;
+
+    /**
+     * The current row number, used only for error reporting.
+     */
+    private long rowNumber;
+
+    /**
+     * When set, errors and warnings are held on to until they are collected with {@link #takeError()} and
+     * {@link #takeWarnings()}, rather than being reported to the session as they happen.
+     */
+    private boolean deferred = false;
+    private SQLException error = null;
+    private StringBuilder warnings = null;
+
+    /**
+     * Creates a fetcher.
+     *
+     * @param session The session that is fetching the results. Errors and warnings are reported to it.
+     * @param resultSet The result set to be fetched
+     * @param columns The description of the columns that are to be displayed. There must be exactly one entry
+     *         for each column in the projection.
+     * @param projection The (1-based) result set column numbers that are to be fetched, in display order.
+     * @throws SQLException Thrown if the result set metadata cannot be retrieved
+     */
+    public RowFetcher(Session session, ResultSet resultSet, ColumnDescription[] columns, int[] projection)
+            throws SQLException {
+        this.session = session;
+        this.resultSet = resultSet;
+        this.nullValue = session.getDataFormatter().getNull();
+        this.accessors = new ColumnAccessor[projection.length];
+
+        final ResultSetMetaData meta = resultSet.getMetaData();
+        for (int i = 0; i < projection.length; i++) {
+            accessors[i] = newAccessor(meta, projection[i], columns[i]);
+        }
+    }
+
+    /**
+     * Computes the set of result set column numbers that are to be fetched.
+     *
+     * @param nCols The number of columns in the result set
+     * @param displayCols If non-null, the set of (1-based) column numbers that are to be displayed
+     * @return The column numbers to display, in result set order
+     */
+    public static int[] getProjection(int nCols, Set<Integer> displayCols) {
+        final int[] projection = new int[displayCols == null ? nCols : displayCols.size()];
+        int idx = 0;
+        for (int i = 1; i <= nCols && idx < projection.length; i++) {
+            if (displayCols == null || displayCols.contains(i)) {
+                projection[idx++] = i;
+            }
+        }
+        return projection;
+    }
+
+    /**
+     * Causes errors and warnings to be held on to until they are collected, rather than reported to the session
+     * as they happen. This is used when rows are fetched by a thread other than the one displaying them, so that
+     * they are reported by the displaying thread along with the row they belong to.
+     *
+     * @param deferred true to hold on to errors and warnings
+     */
+    public void setDeferred(boolean deferred) {
+        this.deferred = deferred;
+    }
+
+    /**
+     * @return The first error that was encountered since the last call, if errors are {@link #setDeferred(boolean)
+     *         deferred}, or null
+     */
+    public SQLException takeError() {
+        final SQLException e = error;
+        error = null;
+        return e;
+    }
+
+    /**
+     * @return The warnings that were issued since the last call, if they are {@link #setDeferred(boolean)
+     *         deferred}, or null
+     */
+    public String takeWarnings() {
+        final StringBuilder w = warnings;
+        warnings = null;
+        return w == null ? null : w.toString();
+    }
+
+    private void error(SQLException e) {
+        if (!deferred) {
+            session.setException(e);
+        } else if (error == null) {
+            error = e;
+        }
+    }
+
+    /**
+     * @return The number of columns that will be fetched for each row.
+     */
+    public int getColumnCount() {
+        return accessors.length;
+    }
+
+    /**
+     * Fetches the current row of the result set into the provided array.
+     *
+     * @param rowNumber The number of the row being fetched (only used for error reporting)
+     * @param row The array to fill with the display form of the values. It must be at least as long as
+     *         {@link #getColumnCount()}.
+     * @return The row that was passed in
+     */
+    public String[] fetch(long rowNumber, String[] row) {
+        this.rowNumber = rowNumber;
+        for (int i = 0; i < accessors.length; i++) {
+            final ColumnAccessor accessor = accessors[i];
+            String value;
+            try {
+                value = accessor.fetch();
+            } catch (SQLException e) {
+                LOG.fine("Row #" + rowNumber + ", column " + accessor.column
+                        + ", driver error decoding value: " + e.getMessage());
+                error(e);
+                value = ERROR_VALUE;
+            }
+            row[i] = (value == null ? nullValue : value);
+        }
+        return row;
+    }
+
+    /**
+     * @return A new buffer suitable for passing to {@link #fetch(long, RowBuffer)}
+     */
+    public RowBuffer newRowBuffer() {
+        return new RowBuffer(accessors.length);
+    }
+
+    /**
+     * Fetches the current row of the result set into a reusable buffer. Values that are NULL are represented
+     * by the display form of NULL provided by the {@link DataFormatter}.
+     *
+     * @param rowNumber The number of the row being fetched (only used for error reporting)
+     * @param buffer The buffer to fetch into. Its previous contents are overwritten.
+     * @return The fetched row. This is {@link RowBuffer#getRow()} of the buffer provided.
+     */
+    public CharSequence[] fetch(long rowNumber, RowBuffer buffer) {
+        this.rowNumber = rowNumber;
+        final StringBuilder[] cells = buffer.cells;
+        final CharSequence[] row = buffer.row;
+        for (int i = 0; i < accessors.length; i++) {
+            final ColumnAccessor accessor = accessors[i];
+            final StringBuilder cell = cells[i];
+            cell.setLength(0);
+            try {
+                row[i] = accessor.fetchTo(cell) ? cell : nullValue;
+            } catch (SQLException e) {
+                LOG.fine("Row #" + rowNumber + ", column " + accessor.column
+                        + ", driver error decoding value: " + e.getMessage());
+                error(e);
+                row[i] = ERROR_VALUE;
+            }
+        }
+        return row;
+    }
+
+    /**
+     * Picks the cheapest way to fetch a column given its type and the formatter that will be used to display it.
+     */
+    private ColumnAccessor newAccessor(ResultSetMetaData meta, int column, ColumnDescription desc)
+            throws SQLException {
+        final Formatter formatter = desc.getFormatter();
+        final boolean isNumberFormat = formatter instanceof NumberFormatter;
+
+        switch (desc.getNativeType()) {
+            case Types.BIGINT:
+            case Types.INTEGER:
+            case Types.SMALLINT:
+            case Types.TINYINT:
+                // Unsigned types (e.g. MySQL's BIGINT UNSIGNED) may not fit in a long, so those go the long way
+                if (isNumberFormat && isSigned(meta, column)) {
+                    return new LongAccessor(column, (NumberFormatter) formatter);
+                }
+                break;
+            case Types.DOUBLE:
+            case Types.FLOAT:
+                if (isNumberFormat) {
+                    return new DoubleAccessor(column, (NumberFormatter) formatter);
+                }
+                break;
+            case Types.REAL:
+                if (isNumberFormat) {
+                    return new FloatAccessor(column, (NumberFormatter) formatter);
+                }
+                break;
+            case Types.DECIMAL:
+            case Types.NUMERIC:
+                return new BigDecimalAccessor(column, formatter);
+
+            // With certain drivers I've had problems with resultSet.getObject() so for those data types that I
+            // run into this issue I am calling the "correct" getter method.
+            case Types.TIMESTAMP:
+                return new TimestampAccessor(column, formatter);
+            case Types.VARCHAR:
+            case Types.CHAR:
+            case Types.LONGVARCHAR:
+                return new StringAccessor(column, formatter);
+            default:
+                break;
+        }
+        return new ObjectAccessor(column, formatter);
+    }
+
+    private static boolean isSigned(ResultSetMetaData meta, int column) {
+        try {
+            return meta.isSigned(column);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Fetches and formats a single column of the current row.
+     */
+    private abstract class ColumnAccessor {
+        protected final int column;
+
+        protected ColumnAccessor(int column) {
+            this.column = column;
+        }
+
+        /**
+         * @return The formatted value of the column for the current row, or null if the value is NULL
+         * @throws SQLException If the driver fails to retrieve the value
+         */
+        public abstract String fetch() throws SQLException;
+
+        /**
+         * Fetches the value of the column for the current row, appending its formatted value to a buffer.
+         *
+         * @param buffer The buffer to append to
+         * @return true if the value was appended, false if the value was NULL
+         * @throws SQLException If the driver fails to retrieve the value
+         */
+        public abstract boolean fetchTo(StringBuilder buffer) throws SQLException;
+
+        /**
+         * Called when the driver hands back a null value without indicating that the value was NULL.
+         */
+        protected void missingValue() {
+            final String warning = "WARNING: Row #" + rowNumber + ", column " + column + ", driver indicated "
+                    + "a value present, but returned NULL";
+            if (!deferred) {
+                session.err.println(warning);
+            } else {
+                if (warnings == null) {
+                    warnings = new StringBuilder();
+                }
+                warnings.append(warning).append(System.lineSeparator());
+            }
+        }
+    }
+
+    private class LongAccessor extends ColumnAccessor {
+        private final NumberFormatter formatter;
+
+        public LongAccessor(int column, NumberFormatter formatter) {
+            super(column);
+            this.formatter = formatter;
+        }
+
+        @Override
+        public String fetch() throws SQLException {
+            final long value = resultSet.getLong(column);
+            return resultSet.wasNull() ? null : formatter.format(value);
+        }
+
+        @Override
+        public boolean fetchTo(StringBuilder buffer) throws SQLException {
+            final long value = resultSet.getLong(column);
+            if (resultSet.wasNull()) {
+                return false;
+            }
+            formatter.formatTo(value, buffer);
+            return true;
+        }
+    }
+
+    private class DoubleAccessor extends ColumnAccessor {
+        private final NumberFormatter formatter;
+
+        public DoubleAccessor(int column, NumberFormatter formatter) {
+            super(column);
+            this.formatter = formatter;
+        }
+
+        @Override
+        public String fetch() throws SQLException {
+            final double value = resultSet.getDouble(column);
+            return resultSet.wasNull() ? null : formatter.format(value);
+        }
+
+        @Override
+        public boolean fetchTo(StringBuilder buffer) throws SQLException {
+            final double value = resultSet.getDouble(column);
+            if (resultSet.wasNull()) {
+                return false;
+            }
+            formatter.formatTo(value, buffer);
+            return true;
+        }
+    }
+
+    private class FloatAccessor extends ColumnAccessor {
+        private final NumberFormatter formatter;
+
+        public FloatAccessor(int column, NumberFormatter formatter) {
+            super(column);
+            this.formatter = formatter;
+        }
+
+        @Override
+        public String fetch() throws SQLException {
+            final float value = resultSet.getFloat(column);
+            return resultSet.wasNull() ? null : formatter.format(value);
+        }
+
+        @Override
+        public boolean fetchTo(StringBuilder buffer) throws SQLException {
+            final float value = resultSet.getFloat(column);
+            if (resultSet.wasNull()) {
+                return false;
+            }
+            formatter.formatTo(value, buffer);
+            return true;
+        }
+    }
+
+    private class BigDecimalAccessor extends ColumnAccessor {
+        private final Formatter formatter;
+
+        public BigDecimalAccessor(int column, Formatter formatter) {
+            super(column);
+            this.formatter = formatter;
+        }
+
+        @Override
+        public String fetch() throws SQLException {
+            final BigDecimal value = resultSet.getBigDecimal(column);
+            if (value == null) {
+                if (!resultSet.wasNull()) {
+                    missingValue();
+                }
+                return null;
+            }
+            return formatter.format(value);
+        }
+
+        @Override
+        public boolean fetchTo(StringBuilder buffer) throws SQLException {
+            final BigDecimal value = resultSet.getBigDecimal(column);
+            if (value == null) {
+                if (!resultSet.wasNull()) {
+                    missingValue();
+                }
+                return false;
+            }
+            formatter.formatTo(value, buffer);
+            return true;
+        }
+    }
+
+    private class TimestampAccessor extends ColumnAccessor {
+        private final Formatter formatter;
+
+        public TimestampAccessor(int column, Formatter formatter) {
+            super(column);
+            this.formatter = formatter;
+        }
+
+        @Override
+        public String fetch() throws SQLException {
+            final Timestamp value = resultSet.getTimestamp(column);
+            if (value == null) {
+                if (!resultSet.wasNull()) {
+                    missingValue();
+                }
+                return null;
+            }
+            return formatter.format(value);
+        }
+
+        @Override
+        public boolean fetchTo(StringBuilder buffer) throws SQLException {
+            final Timestamp value = resultSet.getTimestamp(column);
+            if (value == null) {
+                if (!resultSet.wasNull()) {
+                    missingValue();
+                }
+                return false;
+            }
+            formatter.formatTo(value, buffer);
+            return true;
+        }
+    }
+
+    private class StringAccessor extends ColumnAccessor {
+        private final Formatter formatter;
+
+        public StringAccessor(int column, Formatter formatter) {
+            super(column);
+            this.formatter = formatter;
+        }
+
+        @Override
+        public String fetch() throws SQLException {
+            final String value = resultSet.getString(column);
+            if (value == null) {
+                if (!resultSet.wasNull()) {
+                    missingValue();
+                }
+                return null;
+            }
+            return formatter.format(value);
+        }
+
+        @Override
+        public boolean fetchTo(StringBuilder buffer) throws SQLException {
+            final String value = resultSet.getString(column);
+            if (value == null) {
+                if (!resultSet.wasNull()) {
+                    missingValue();
+                }
+                return false;
+            }
+            formatter.formatTo(value, buffer);
+            return true;
+        }
+    }
+
+    private class ObjectAccessor extends ColumnAccessor {
+        private final Formatter formatter;
+
+        public ObjectAccessor(int column, Formatter formatter) {
+            super(column);
+            this.formatter = formatter;
+        }
+
+        @Override
+        public String fetch() throws SQLException {
+            final Object value = resultSet.getObject(column);
+            if (value == null) {
+                if (!resultSet.wasNull()) {
+                    missingValue();
+                }
+                return null;
+            }
+            return formatter.format(value);
+        }
+
+        @Override
+        public boolean fetchTo(StringBuilder buffer) throws SQLException {
+            final Object value = resultSet.getObject(column);
+            if (value == null) {
+                if (!resultSet.wasNull()) {
+                    missingValue();
+                }
+                return false;
+            }
+            formatter.formatTo(value, buffer);
+            return true;
+        }
+    }
+
+    /**
+     * A row that is fetched into over and over again. Each column has its own buffer that is cleared and refilled
+     * as each row is fetched, so the contents of the row are only valid until the next row is fetched.
+     */
+    public static class RowBuffer {
+        private final StringBuilder[] cells;
+        private final CharSequence[] row;
+
+        private RowBuffer(int nCols) {
+            cells = new StringBuilder[nCols];
+            row = new CharSequence[nCols];
+            for (int i = 0; i < nCols; i++) {
+                cells[i] = new StringBuilder(32);
+            }
+        }
+
+        /**
+         * @return The contents of the row as of the last fetch
+         */
+        public CharSequence[] getRow() {
+            return row;
+        }
+    }
+}
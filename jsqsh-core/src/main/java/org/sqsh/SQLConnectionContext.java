@@ -17,9 +17,12 @@ package org.sqsh;
 
 import java.lang.reflect.Method;
 import java.sql.Connection;
+import java.sql.DriverManager;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.Properties;
+import java.util.concurrent.Callable;
 import java.util.logging.Logger;
 
 import org.sqsh.analyzers.SQLAnalyzer;
@@ -87,6 +90,18 @@ public class SQLConnectionContext
      */
     private String currentSchemaQuery;
     
+    /**
+     * Cache of database metadata, created the first time it is needed.
+     */
+    private MetadataCache metadataCache = null;
+    
+    /**
+     * The properties that were handed to the JDBC driver along with
+     * the URL, if known, so that more connections like this one can 
+     * be opened.
+     */
+    private Properties connectionProperties = null;
+    
     /**
      * Creates a ConnectionContext
      * 
@@ -198,13 +213,34 @@ public class SQLConnectionContext
             }
         }
         
-        if (isCall) {
+        try {
             
-            renderer.executeCall(session, sql);
+            if (isCall) {
+                
+                renderer.executeCall(session, sql);
+            }
+            else {
+                
+                renderer.execute(session, sql);
+            }
         }
-        else {
+        finally {
+            
+            /*
+             * Whatever metadata we have cached may no longer be accurate
+             * once the schema has been changed, and whatever results we
+             * have cached may no longer be accurate once anything other
+             * than a plain query has been executed.
+             */
+            if (metadataCache != null && SQLParseUtil.isDDL(sql)) {
+                
+                metadataCache.invalidate();
+            }
             
-            renderer.execute(session, sql);
+            if (!ResultCache.isCacheable(sql)) {
+                
+                renderer.getResultCache().invalidate();
+            }
         }
     }
     
@@ -279,6 +315,79 @@ public class SQLConnectionContext
     public void setConnection (Connection connection) {
     
         this.connection = connection;
+        if (metadataCache != null) {
+            
+            metadataCache.invalidate();
+        }
+    }
+    
+    /**
+     * Returns the cache of metadata for this connection, which is
+     * shared by tab completion and the commands that look up tables
+     * and columns.
+     * 
+     * @return The metadata cache
+     */
+    public synchronized MetadataCache getMetadataCache() {
+        
+        if (metadataCache == null) {
+            
+            metadataCache = new MetadataCache(this);
+        }
+        
+        return metadataCache;
+    }
+    
+    /**
+     * @param connectionProperties The properties that were handed to
+     *   the JDBC driver along with the URL to establish the connection.
+     *   Without them, {@link #openConnection(String)} cannot be used.
+     */
+    public void setConnectionProperties(Properties connectionProperties) {
+        
+        this.connectionProperties = connectionProperties;
+    }
+    
+    /**
+     * Opens another connection to the same database as this one, using
+     * the same URL and properties, in the given catalog and with 
+     * auto-commit enabled. It is up to the caller to close it. The
+     * connection of this context is not used, so this may be called from
+     * any thread, even while a query is running on it.
+     * 
+     * @param catalog The catalog to switch the new connection to, 
+     *   typically the current catalog of this connection as found out on
+     *   the thread of the session, or null to leave it in the catalog 
+     *   that the driver starts it in
+     * @return The new connection
+     * @throws SQLException If the connection cannot be established, or
+     *   it is not known how this one was established
+     */
+    public Connection openConnection(String catalog) throws SQLException {
+        
+        if (connectionProperties == null || url == null) {
+            
+            throw new SQLException("The settings used to establish the "
+                + "connection are not known");
+        }
+        
+        final Connection conn = 
+            DriverManager.getConnection(url, connectionProperties);
+        try {
+            
+            if (catalog != null && !catalog.equals(conn.getCatalog())) {
+                
+                conn.setCatalog(catalog);
+            }
+            conn.setAutoCommit(true);
+        }
+        catch (SQLException e) {
+            
+            conn.close();
+            throw e;
+        }
+        
+        return conn;
     }
 
     /**
@@ -500,7 +609,32 @@ public class SQLConnectionContext
     public Completer getTabCompleter(Session session, String line,
                     int position, String word) {
 
-        return new DatabaseObjectCompleter(session, line, position, word);
+        return new DatabaseObjectCompleter(session, line, position, word,
+            getMetadataCache());
+    }
+    
+    @Override
+    public Completer getCachedTabCompleter(Session session, String line,
+                    int position, String word) {
+
+        return new DatabaseObjectCompleter(session, line, position, word,
+            getMetadataCache().cachedOnly());
+    }
+    
+    /**
+     * Makes the lookups for the completer over a connection of the 
+     * metadata cache's own (see {@link MetadataCache#withOwnConnection(
+     * String, java.util.function.Function)}), switched to the current
+     * catalog of this one.
+     */
+    @Override
+    public Callable<Completer> getBackgroundTabCompleter(Session session,
+                    String line, int position, String word) {
+        
+        final MetadataCache cache = getMetadataCache();
+        final String catalog = cache.getCurrentCatalog();
+        return () -> cache.withOwnConnection(catalog, meta -> 
+            new DatabaseObjectCompleter(session, line, position, word, meta));
     }
 
     @Override
@@ -512,6 +646,11 @@ public class SQLConnectionContext
     @Override
     public void close() {
         
+        if (metadataCache != null) {
+            
+            metadataCache.close();
+        }
+        
         try {
             
             connection.close();
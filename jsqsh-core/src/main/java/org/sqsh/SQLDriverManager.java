@@ -481,11 +481,11 @@ public class SQLDriverManager {
         url = getUrl(session, properties, variables, url);
         
         final Connection conn;
+        final Properties props = new Properties();
         try {
             Driver jdbcDriver = DriverManager.getDriver(url);
             
             // Similar to above, we'll iterate through the properties supported by the driver and set them as necessary.
-            Properties props = new Properties();
 
             // If the driver explicitly declares a property we just blindly pass it in.
             for (String name : sqlDriver.getPropertyNames()) {
@@ -564,6 +564,7 @@ public class SQLDriverManager {
                 sqlDriver.getAnalyzer(),
                 sqlDriver.getNormalizer(),
                 sqlDriver.getCurrentSchemaQuery());
+        newContext.setConnectionProperties(props);
         session.setConnectionContext(newContext, false);
 
         try {
@@ -267,4 +267,132 @@ public class SQLParseUtil {
         
         return idx;
     }
+    
+    /**
+     * Checks whether a statement changes the definition of database
+     * objects, that is, whether it starts with CREATE, ALTER, DROP,
+     * RENAME or TRUNCATE, is a call to the sp_rename procedure, or is
+     * a SELECT ... INTO that creates a new table. Leading white space 
+     * and comments are skipped.
+     * 
+     * @param sql The statement
+     * 
+     * @return true if the statement is DDL
+     */
+    public static boolean isDDL(CharSequence sql) {
+        
+        int len = sql.length();
+        int idx = skipWhitespace(sql, len, 0);
+        String word = nextWord(sql, len, idx);
+        
+        /*
+         * Procedures may be called with or without EXEC in front of them.
+         */
+        if (word.equalsIgnoreCase("exec") || word.equalsIgnoreCase("execute")) {
+            
+            idx = skipWhitespace(sql, len, idx + word.length());
+            word = nextWord(sql, len, idx);
+        }
+        
+        if (word.equalsIgnoreCase("select")) {
+            
+            return isSelectIntoTable(sql, len, idx + word.length());
+        }
+        
+        return word.equalsIgnoreCase("create")
+            || word.equalsIgnoreCase("alter")
+            || word.equalsIgnoreCase("drop")
+            || word.equalsIgnoreCase("rename")
+            || word.equalsIgnoreCase("truncate")
+            || word.equalsIgnoreCase("sp_rename");
+    }
+    
+    /**
+     * Looks through the body of a SELECT for an INTO that is not inside of
+     * parentheses, a string or a comment and that names a table. An INTO 
+     * followed by a @variable, :host_variable or parameter marker only
+     * assigns values and is not considered to create a table.
+     * 
+     * @param sql The statement being parsed
+     * @param len The length of the statement being parsed
+     * @param idx The index immediately following the SELECT keyword
+     * 
+     * @return true if the SELECT creates a table
+     */
+    private static boolean isSelectIntoTable(CharSequence sql, int len, int idx) {
+        
+        int depth = 0;
+        while (idx < len) {
+            
+            char ch = sql.charAt(idx);
+            if (ch == '/' || ch == '-') {
+                
+                int nextIdx = skipWhitespace(sql, len, idx);
+                idx = (nextIdx == idx ? idx + 1 : nextIdx);
+            }
+            else if (ch == '\'' || ch == '"') {
+                
+                idx = skipQuotedString(sql, len, idx);
+            }
+            else if (ch == '[') {
+                
+                idx = skipBrackets(sql, len, idx);
+            }
+            else if (ch == '@') {
+                
+                idx = skipVariable(sql, len, idx);
+            }
+            else if (ch == '(') {
+                
+                ++depth;
+                ++idx;
+            }
+            else if (ch == ')') {
+                
+                --depth;
+                ++idx;
+            }
+            else if (Character.isLetterOrDigit(ch) || ch == '_') {
+                
+                String word = nextWord(sql, len, idx);
+                idx += word.length();
+                if (depth == 0 && word.equalsIgnoreCase("into")) {
+                    
+                    idx = skipWhitespace(sql, len, idx);
+                    return idx < len
+                        && sql.charAt(idx) != '@'
+                        && sql.charAt(idx) != ':'
+                        && sql.charAt(idx) != '?';
+                }
+            }
+            else {
+                
+                ++idx;
+            }
+        }
+        
+        return false;
+    }
+    
+    /**
+     * Returns the word (letters, digits and underscores) that starts at
+     * a position in a string.
+     * 
+     * @param str The string being parsed
+     * @param len The length of the string being parsed
+     * @param idx The index at which the word starts
+     * 
+     * @return The word, which is empty if there is none at idx
+     */
+    private static String nextWord(CharSequence str, int len, int idx) {
+        
+        int start = idx;
+        while (idx < len && (Character.isLetterOrDigit(str.charAt(idx))
+                || str.charAt(idx) == '_')) {
+            
+            ++idx;
+        }
+        
+        return str.subSequence(start, idx).toString();
+    }
 }
@@ -15,8 +15,11 @@
  */
 package org.sqsh;
 
+import org.sqsh.util.BoundedRing;
+import org.sqsh.util.RollingPrintStream;
 import org.sqsh.util.TimeUtils;
 
+import java.io.IOException;
 import java.sql.*;
 import java.util.ArrayList;
 import java.util.Iterator;
@@ -99,6 +102,42 @@ public class SQLRenderer {
      */
     private int maxUpdateCount = 0;
     
+    /**
+     * The number of rows fetched between checks of the result set for
+     * warnings. A value &lt;= 0 indicates that warnings are only checked
+     * before the first and after the last row is fetched.
+     */
+    private int warningInterval = 1;
+    
+    /**
+     * If greater than zero, result sets are fetched by a dedicated thread
+     * that hands rows to the renderer through a queue of this many rows.
+     */
+    private int pipelineDepth = 0;
+    
+    /**
+     * If true, the fetch size of each query is chosen, and adjusted while
+     * its results are fetched, by {@link #fetchTuner} rather than being 
+     * taken from the session.
+     */
+    private boolean adaptiveFetch = false;
+    
+    /**
+     * Remembers the fetch size settled upon for each shape of query.
+     */
+    private final FetchSizeTuner fetchTuner = new FetchSizeTuner();
+    
+    /**
+     * If true, a footer breaking down where the time went is displayed
+     * after each query.
+     */
+    private boolean detailedTimings = false;
+    
+    /**
+     * Holds the results of recently executed queries.
+     */
+    private final ResultCache resultCache = new ResultCache();
+    
     private long startTime;
     private long firstRowTime;
     private long endTime;
@@ -150,6 +189,132 @@ public class SQLRenderer {
         return maxUpdateCount;
     }
 
+    /**
+     * @return The number of rows fetched between checks of the result set
+     *   for warnings. A value &lt;= 0 indicates that warnings are only checked
+     *   before the first and after the last row of a result set is fetched.
+     */
+    public int getWarningInterval() {
+    
+        return warningInterval;
+    }
+    
+    /**
+     * Sets how often the result set is checked for warnings while it is
+     * being fetched. Checking after every row (the default) is the most
+     * precise, but with some drivers each check is surprisingly expensive.
+     * As the warnings of a row are cleared when the next row is fetched,
+     * the warnings of the rows in between checks are lost.
+     * 
+     * @param warningInterval The number of rows fetched between checks
+     *   for warnings. A value &lt;= 0 indicates that warnings are only checked
+     *   before the first and after the last row of a result set is fetched.
+     */
+    public void setWarningInterval(int warningInterval) {
+    
+        this.warningInterval = warningInterval;
+    }
+
+    /**
+     * @return The number of rows that may be queued between the thread
+     *   fetching a result set and the thread rendering it. A value &lt;= 0
+     *   indicates that results are fetched and rendered by the same thread.
+     */
+    public int getPipelineDepth() {
+    
+        return pipelineDepth;
+    }
+    
+    /**
+     * Enables or disables pipelined fetching of results. When enabled, rows
+     * are fetched from the driver and formatted by a dedicated thread while
+     * the calling thread hands the previously fetched rows to the renderer,
+     * allowing the network and the output to be kept busy at the same time.
+     * 
+     * @param pipelineDepth The number of rows that may be queued between
+     *   the fetching thread and the rendering thread. A value &lt;= 0 disables
+     *   pipelining.
+     */
+    public void setPipelineDepth(int pipelineDepth) {
+    
+        this.pipelineDepth = pipelineDepth;
+    }
+    
+    /**
+     * @return whether or not the fetch size is adapted to each query
+     */
+    public boolean isAdaptiveFetch() {
+    
+        return adaptiveFetch;
+    }
+    
+    /**
+     * Enables or disables adaptive fetch sizes. When enabled, the session's
+     * fetch size is ignored. Each query starts out with a small fetch size,
+     * which is grown while its results are fetched for as long as the 
+     * round trips to the server are a significant part of the time 
+     * taken, and the size that is settled upon is remembered for the next
+     * query of the same shape.
+     * 
+     * @param adaptiveFetch true if the fetch size is to be adapted
+     */
+    public void setAdaptiveFetch(boolean adaptiveFetch) {
+    
+        this.adaptiveFetch = adaptiveFetch;
+        if (!adaptiveFetch) {
+            
+            fetchTuner.clear();
+        }
+    }
+    
+    /**
+     * @return The most memory, in bytes, that a single fetch may take up
+     *   when the fetch size is adaptive
+     */
+    public long getAdaptiveFetchMemory() {
+    
+        return fetchTuner.getMemoryLimit();
+    }
+    
+    /**
+     * @param bytes The most memory, in bytes, that a single fetch may take 
+     *   up when the fetch size is adaptive. This bounds how large the fetch
+     *   size may grow for queries with wide rows.
+     */
+    public void setAdaptiveFetchMemory(long bytes) {
+    
+        fetchTuner.setMemoryLimit(bytes);
+    }
+
+    /**
+     * @return The cache of query results. The cache is disabled unless
+     *   it is explicitly enabled.
+     */
+    public ResultCache getResultCache() {
+    
+        return resultCache;
+    }
+    
+    /**
+     * @return whether or not a breakdown of the time taken by each query
+     *   is displayed.
+     */
+    public boolean isDetailedTimings() {
+    
+        return detailedTimings;
+    }
+    
+    /**
+     * @param detailedTimings whether or not to display a breakdown of the
+     *   time taken by each query (see {@link QueryTimings}) after its 
+     *   results. The breakdown is always available through 
+     *   {@link Session#getLastQueryTimings()}.
+     */
+    public void setDetailedTimings(boolean detailedTimings) {
+    
+        this.detailedTimings = detailedTimings;
+    }
+
     /**
      * @return whether or not result set metadata is displayed.
      */
@@ -347,6 +512,7 @@ public class SQLRenderer {
         
         CallableStatement statement = null;
         
+        Query query = beginQuery(session);
         Connection conn = session.getConnection();
         DataFormatter formatter = session.getDataFormatter();
         
@@ -474,13 +640,13 @@ public class SQLRenderer {
                 }
             }
             
-            startTime = System.currentTimeMillis();
+            startExecute(query);
             
             boolean hasResults = statement.execute();
             
             session.stopVisualTimer();
             
-            ok = execute(renderer, session, statement, hasResults);
+            ok = execute(renderer, session, statement, hasResults, query);
             
             /*
              * Display any output parameters
@@ -503,7 +669,7 @@ public class SQLRenderer {
                         session.out.println();
                         session.out.println("Parameter #" + idx + " CURSOR:");
                             
-                        displayResults(renderer, session, (ResultSet) o, null);
+                        displayResults(renderer, session, (ResultSet) o, null, query);
                         
                         iter.remove();
                     }
@@ -739,6 +905,7 @@ public class SQLRenderer {
             .getRenderer(session);
         
         CallableStatement statement = null;
+        Query query = beginQuery(session);
         Connection conn = session.getConnection();
 
         if (conn == null) {
@@ -758,13 +925,13 @@ public class SQLRenderer {
             statement = conn.prepareCall(sql);
             bindParameters(statement, params);
             
-            startTime = System.currentTimeMillis();
+            startExecute(query);
             
             boolean hasResults = statement.execute();
             
             session.stopVisualTimer();
             
-            ok = execute(renderer, session, statement, hasResults);
+            ok = execute(renderer, session, statement, hasResults, query);
             
             /*
              * If there were any output parameters, then try to display 
@@ -783,7 +950,7 @@ public class SQLRenderer {
                         
                         try {
                             
-                            displayResults(renderer, session, rs, null);
+                            displayResults(renderer, session, rs, null, query);
                         }
                         finally {
                             
@@ -825,6 +992,7 @@ public class SQLRenderer {
             .getRenderer(session);
         
         PreparedStatement statement = null;
+        Query query = beginQuery(session);
         Connection conn = session.getConnection();
 
         if (conn == null) {
@@ -839,13 +1007,13 @@ public class SQLRenderer {
             statement = conn.prepareStatement(sql);
             bindParameters(statement, params);
             
-            startTime = System.currentTimeMillis();
+            startExecute(query);
             
             boolean hasResults = statement.execute();
             
             session.stopVisualTimer();
             
-            ok = execute(renderer, session, statement, hasResults);
+            ok = execute(renderer, session, statement, hasResults, query);
         }
         finally {
             
@@ -884,6 +1052,7 @@ public class SQLRenderer {
         }
         
         Statement statement = null;
+        Query query = beginQuery(session);
         Connection conn = session.getConnection();
 
         if (conn == null) {
@@ -898,37 +1067,70 @@ public class SQLRenderer {
         SQLConnectionContext ctx = 
             (SQLConnectionContext) session.getConnectionContext();
         
+        query.fetchShape = adaptiveFetch ? FetchSizeTuner.shapeOf(sql) : null;
+        
+        /*
+         * If the results may be cached, look for them in the cache and,
+         * if they are not there, capture them as they are displayed. 
+         * Renderers that read their values straight from the result set
+         * (or throw them away) never see the display form of the rows, 
+         * so there would be nothing to capture.
+         */
+        String cacheKey = null;
+        ResultCache.Entry cached = null;
+        if (resultCache.isEnabled() && !renderer.isTyped() 
+            && !renderer.isDiscard() && ResultCache.isCacheable(sql)) {
+            
+            cacheKey = ResultCache.key(ctx.getUrl(), ctx.getUsername(),
+                SQLTools.getCatalog(conn), SQLTools.getSchema(conn), 
+                maxRows, sqshContext.getDataFormatter().getNull(), sql);
+            cached = resultCache.get(cacheKey);
+            if (cached == null) {
+                
+                query.recorder = resultCache.newRecorder();
+            }
+        }
+        
         try {
             
             session.startVisualTimer();
             
-            if (ctx.getExecutionMode() == SQLConnectionContext.EXEC_PREPARE) {
+            if (cached != null) {
+                
+                ok = replay(renderer, session, cached, query);
+            }
+            else if (ctx.getExecutionMode() == SQLConnectionContext.EXEC_PREPARE) {
 
                 statement = conn.prepareStatement(sql);
                 
-                initStatement(ctx, session, statement);
+                initStatement(ctx, session, statement, query);
                 
-                startTime = System.currentTimeMillis();
+                startExecute(query);
                 
                 boolean hasResults = ((PreparedStatement) statement).execute();
                 
                 session.stopVisualTimer();
                 
-                ok = execute(renderer, session, statement, hasResults);
+                ok = execute(renderer, session, statement, hasResults, query);
             }
             else  {
 
                 statement = conn.createStatement();
                 
-                initStatement(ctx, session, statement);
+                initStatement(ctx, session, statement, query);
                 
-                startTime = System.currentTimeMillis();
+                startExecute(query);
                 
                 boolean hasResults = statement.execute(sql);
                 
                 session.stopVisualTimer();
                 
-                ok = execute(renderer, session, statement, hasResults);
+                ok = execute(renderer, session, statement, hasResults, query);
+            }
+            
+            if (query.recorder != null && ok) {
+                
+                resultCache.put(cacheKey, query.recorder);
             }
         }
         finally {
@@ -946,14 +1148,44 @@ public class SQLRenderer {
         return ok;
     }
     
+    /**
+     * Starts timing a new query, making its {@link QueryTimings} the 
+     * session's last.
+     * 
+     * @param session The session
+     * @return The state of the query
+     */
+    private Query beginQuery(Session session) {
+        
+        Query query = new Query();
+        session.setLastQueryTimings(query.timings);
+        
+        return query;
+    }
+    
+    /**
+     * Called immediately before a statement is executed. Everything since
+     * the query was started is counted as preparation of the statement.
+     * 
+     * @param query The query
+     */
+    private void startExecute(Query query) {
+        
+        startTime = System.currentTimeMillis();
+        query.executeStart = System.nanoTime();
+        query.timings.addPrepare(query.executeStart - query.start);
+    }
+    
     /**
      * Called for each newly created statement to initialize it based upon session
      * settings.
      * @param ctx The connection
      * @param session The session
      * @param statement The statement
+     * @param query The query the statement is executing
      */
-    private void initStatement(SQLConnectionContext ctx, Session session, Statement statement) {
+    private void initStatement(SQLConnectionContext ctx, Session session, Statement statement,
+            Query query) {
         
         /*
          * Registers the statement handle back with the context, which
@@ -961,7 +1193,8 @@ public class SQLRenderer {
          */
         ctx.setStatement(statement);
         
-        int fetchSize = session.getFetchSize();
+        int fetchSize = adaptiveFetch 
+            ? fetchTuner.getFetchSize(query.fetchShape) : session.getFetchSize();
         if (fetchSize > 0) {
             
             try {
@@ -973,7 +1206,17 @@ public class SQLRenderer {
                 session.err.println("WARNING: Requested fetch size "
                    + fetchSize + " is invalid: " + e.getMessage()
                    + ". Resetting to -1");
-                session.setFetchSize(-1);
+                if (adaptiveFetch) {
+                    
+                    /*
+                     * The driver will not let us pick, so stop trying.
+                     */
+                    setAdaptiveFetch(false);
+                }
+                else {
+                    
+                    session.setFetchSize(-1);
+                }
             }
         }
     }
@@ -1091,6 +1334,7 @@ public class SQLRenderer {
      *   of the statement.
      * @param session The session that will be used for output.
      * @param statement The statement that was just executed.
+     * @param query The query the statement is executing
      * 
      * @return true if the SQL executed without error (warnings do not
      *   count towards errors), false if there was at least one error
@@ -1099,9 +1343,11 @@ public class SQLRenderer {
      * @throws SQLException Thrown if there is an issue.
      */
     private boolean execute (Renderer renderer, Session session,
-            Statement statement, boolean hasResults)
+            Statement statement, boolean hasResults, Query query)
         throws SQLException {
         
+        final QueryTimings timings = query.timings;
+        final ResultCache.Recorder recorder = query.recorder;
         Connection conn = session.getConnection();
         ResultSet resultSet = null;
         boolean done = false;
@@ -1117,6 +1363,8 @@ public class SQLRenderer {
         firstRowTime = 0L;
         endTime = 0L;
         
+        timings.addExecute(System.nanoTime() - query.executeStart);
+        
         try {
             
             SQLTools.printWarnings(session, conn);
@@ -1144,6 +1392,15 @@ public class SQLRenderer {
                 }
             }
             
+            /*
+             * A statement that changes something is never cached, no 
+             * matter how it started out.
+             */
+            if (recorder != null && updateCount >= 0) {
+                
+                recorder.abandon();
+            }
+            
             StringBuilder footer = new StringBuilder();
             do {
                 
@@ -1161,7 +1418,7 @@ public class SQLRenderer {
                         displayMetadata(session, resultSet.getMetaData());
                     }
                     
-                    int nRows = displayResults(renderer, session, resultSet, null);
+                    int nRows = displayResults(renderer, session, resultSet, null, query);
 
                     /*
                      * A negative value here indicates that the results
@@ -1170,6 +1427,10 @@ public class SQLRenderer {
                      */
                     if (nRows < 0) {
                         
+                        if (recorder != null) {
+                            
+                            recorder.abandon();
+                        }
                         return ok;
                     }
                     
@@ -1188,6 +1449,11 @@ public class SQLRenderer {
                      */
                     if (maxRows > 0 && nRows > maxRows) {
                         
+                        if (recorder != null) {
+                            
+                            recorder.abandon();
+                        }
+                        
                         if (rowLimitMethod == LIMIT_CANCEL) {
                             
                             footer.append(", query cancelled to limit results ");
@@ -1267,6 +1533,11 @@ public class SQLRenderer {
                     if (updateCount >= 0) {
                         
                         ++updateCountCount;
+                        
+                        if (recorder != null) {
+                            
+                            recorder.abandon();
+                        }
                     }
                 }
                 
@@ -1279,6 +1550,11 @@ public class SQLRenderer {
                 done = (done || (hasResults == false && updateCount < 0) 
                     || (maxUpdateCount > 0 && updateCountCount >= maxUpdateCount));
                 
+                if (done) {
+                    
+                    timings.setTotal(System.nanoTime() - query.start);
+                }
+                
                 /*
                  * If we are finished and we are being asked to show query
                  * statistics, then show them.
@@ -1304,6 +1580,11 @@ public class SQLRenderer {
                     renderer.footer(footer.toString());
                     footer.setLength(0);
                 }
+                
+                if (done && detailedTimings) {
+                    
+                    renderer.footer(timings.toString());
+                }
             }
             while (!done);
         }
@@ -1334,18 +1615,74 @@ public class SQLRenderer {
             ResultSet resultSet, Set<Integer>displayCols)
         throws SQLException {
         
+        /*
+         * Results displayed by commands other than those executing a query
+         * are timed all the same, the timings just go nowhere.
+         */
+        return displayResults(renderer, session, resultSet, displayCols,
+            new Query());
+    }
+    
+    /**
+     * Displays a result set of a query.
+     * 
+     * @param query The query that produced the result set
+     */
+    private int displayResults(Renderer renderer, Session session,
+            ResultSet resultSet, Set<Integer>displayCols, Query query)
+        throws SQLException {
+        
+        int rowCount = -1;
+        try {
+            
+            rowCount = renderResults(renderer, session, resultSet, 
+                displayCols, query);
+        }
+        finally {
+            
+            if (rowCount < 0) {
+                
+                renderer.abort();
+            }
+        }
+        
+        return rowCount;
+    }
+    
+    /**
+     * Does the work of {@link #displayResults(Renderer, Session, ResultSet, 
+     * Set)}, returning -1 without flushing the renderer if the results
+     * could not be displayed.
+     */
+    private int renderResults(Renderer renderer, Session session,
+            ResultSet resultSet, Set<Integer>displayCols, Query query)
+        throws SQLException {
+        
         SQLTools.printWarnings(session, resultSet);
         
         DataFormatter formatter = sqshContext.getDataFormatter();
-        ColumnDescription []columns = getDescription(resultSet, displayCols);
-        int nCols = resultSet.getMetaData().getColumnCount();
+        int []projection = RowFetcher.getProjection(
+            resultSet.getMetaData().getColumnCount(), displayCols);
+        ColumnDescription []columns = getDescription(resultSet, projection);
         int rowCount = 0;
+        final QueryTimings timings = query.timings;
+        final ResultCache.Recorder recorder = query.recorder;
+        
+        /*
+         * How often (in rows) we poll the result set for warnings. Rows
+         * that are discarded due to the row limit are not counted.
+         */
+        final int warnInterval = warningInterval;
+        int rowsSinceWarningCheck = 0;
 
         /*
          * If this is a discarding renderer, then create a synthetic row to
-         * represent the results to be discarded.
+         * represent the results to be discarded, otherwise build the 
+         * fetcher that will pull each row out of the result set.
          */
         final String[] discardRow;
+        final RowFetcher fetcher;
+        final boolean isTyped = renderer.isTyped() && !renderer.isDiscard();
         if (renderer.isDiscard()) {
 
             discardRow = new String[columns.length];
@@ -1353,25 +1690,95 @@ public class SQLRenderer {
 
                 discardRow[i] = formatter.getNull();
             }
+            fetcher = null;
+        }
+        else if (isTyped) {
+            
+            /*
+             * The renderer reads the values itself.
+             */
+            discardRow = null;
+            fetcher = null;
         }
         else {
 
             discardRow = null;
+            fetcher = new RowFetcher(session, resultSet, columns, projection);
         }
+        
+        /*
+         * A renderer that is done with each row as soon as it is handed
+         * over can have every row fetched into the same set of buffers.
+         */
+        final RowFetcher.RowBuffer rowBuffer = 
+            (fetcher != null && renderer.isStreaming()) 
+                ? fetcher.newRowBuffer() : null;
 
         /*
          * Display the header
          */
-        renderer.header(columns);
+        if (isTyped) {
+            
+            renderer.header(columns, resultSet, projection);
+        }
+        else {
+            
+            renderer.header(columns);
+        }
         
-        while (resultSet.next()) {
+        if (recorder != null) {
             
-            SQLTools.printWarnings(session, resultSet);
+            recorder.startResult(columns);
+        }
+        
+        /*
+         * If the output is being split across a series of files, then
+         * we need to tell it where each row ends.
+         */
+        final RollingPrintStream rolling = 
+            (discardRow == null && session.out instanceof RollingPrintStream)
+                ? (RollingPrintStream) session.out : null;
+        
+        /*
+         * With an adaptive fetch size, every row is fetched through the
+         * tracker so that it can see the round trips to the server.
+         */
+        final FetchSizeTuner.Tracker tracker = adaptiveFetch
+            ? fetchTuner.track(resultSet, query.fetchShape, columns) : null;
+        
+        if (fetcher != null && pipelineDepth > 0) {
+            
+            return displayResultsPipelined(renderer, session, resultSet,
+                fetcher, columns, rolling, tracker, query);
+        }
+        
+        /*
+         * Each row is timed from the point at which we ask the driver for
+         * it, to when it has been fetched, to when its values have been
+         * formatted, to when the renderer is done with it.
+         */
+        long fetchNanos = 0L;
+        long formatNanos = 0L;
+        long renderNanos = 0L;
+        long chars = 0L;
+        long mark = System.nanoTime();
+        
+        while (tracker != null ? tracker.next() : resultSet.next()) {
+            
+            final long fetched = System.nanoTime();
+            fetchNanos += fetched - mark;
+            
+            if (warnInterval > 0 && ++rowsSinceWarningCheck >= warnInterval) {
+                
+                SQLTools.printWarnings(session, resultSet);
+                rowsSinceWarningCheck = 0;
+            }
             
             ++rowCount;
             if (firstRowTime == 0L && rowCount == 1) {
                 
                 firstRowTime = System.currentTimeMillis();
+                timings.firstRow(fetched - query.executeStart);
             }
             
             /*
@@ -1387,111 +1794,731 @@ public class SQLRenderer {
                 }
                 else if (rowLimitMethod == LIMIT_DISCARD) {
                     
+                    mark = System.nanoTime();
                     continue;
                 }
             }
 
-
-            final String[] row;
+            if (rolling != null && rolling.isFull()
+                && !roll(renderer, session, rolling, columns, resultSet, 
+                    isTyped ? projection : null)) {
+                
+                return -1;
+            }
+            
+            final boolean ok;
+            long formatted = fetched;
             if (discardRow != null) {
 
-                row = discardRow;
+                ok = renderer.row(discardRow);
+            }
+            else if (isTyped) {
+                
+                ok = renderer.row(resultSet);
             }
             else {
-
-                row = new String[columns.length];
-                int idx = 0;
-                for (int i = 1; i <= nCols; i++) {
-
-                    if (displayCols == null || displayCols.contains(i)) {
-
-                        Object value = null;
-                        boolean wasNull = false;
-                        boolean wasError = false;
+                
+                final CharSequence []row = (rowBuffer != null)
+                    ? fetcher.fetch(rowCount, rowBuffer)
+                    : fetcher.fetch(rowCount, new String[columns.length]);
+                formatted = System.nanoTime();
+                formatNanos += formatted - fetched;
+                chars += charCount(row);
+                if (tracker != null && (rowCount & 0xf) == 1) {
                     
-                        /*
-                         * With certain drivers I've had problems with resultSet.getObject()
-                         * so for those data types that I run into this issue I am
-                         * calling the "correct" getter method.
-                         */
-                        try {
-
-                            switch (columns[idx].getNativeType()) {
-
-                                case Types.TIMESTAMP:
-                                    value = resultSet.getTimestamp(i);
-                                    break;
-                                case Types.VARCHAR:
-                                case Types.CHAR:
-                                case Types.LONGVARCHAR:
-                                    value = resultSet.getString(i);
-                                    break;
-                                default:
-                                    value = resultSet.getObject(i);
-                            }
-
-                            wasNull = resultSet.wasNull();
-                        }
-                        catch (SQLException e) {
-
-                            LOG.fine("Row #" + rowCount + ", column " + i
-                                    + ", driver error decoding value: " + e.getMessage());
-
-                            session.setException(e);
-                            wasError = true;
-                            wasNull = false;
-                        }
-
-                        if (wasNull) {
-
-                            row[idx] = formatter.getNull();
-                        }
-                        else {
-
-                            if (wasError) {
-
-                                row[idx] = "*ERROR*";
-                            }
-                            else if (value == null) {
-
-                                session.err.println("WARNING: Row #"
-                                        + rowCount + ", column " + i + ", driver indicated "
-                                        + "a value present, but returned NULL");
-                                row[idx] = formatter.getNull();
-                            }
-                            else {
-
-                                row[idx] = columns[idx].getFormatter().format(value);
-                            }
-                        }
-
-                        ++idx;
-                    }
+                    tracker.measure(row);
                 }
+                if (recorder != null) {
+                    
+                    recorder.row(row);
+                }
+                ok = (rowBuffer != null) 
+                    ? renderer.row(row) : renderer.row((String[]) row);
             }
             
-            if (!renderer.row(row)) {
+            mark = System.nanoTime();
+            renderNanos += mark - formatted;
+            
+            if (!ok) {
                 
                 return -1;
             }
+            
+            if (rolling != null) {
+                
+                rolling.rowWritten();
+            }
+        }
+        
+        /*
+         * If we weren't checking for warnings on every row, then pick up
+         * any stragglers.
+         */
+        if (warnInterval != 1) {
+            
+            SQLTools.printWarnings(session, resultSet);
         }
         
+        if (tracker != null) {
+            
+            tracker.finish();
+        }
+        
+        mark = System.nanoTime();
         if (!renderer.flush()) {
             
             return -1;
         }
         
+        /*
+         * File and pipe output is buffered, so this is the point at which
+         * the result set actually gets written out.
+         */
+        session.out.flush();
+        renderNanos += System.nanoTime() - mark;
+        
+        timings.addFetch(fetchNanos);
+        timings.addFormat(formatNanos);
+        timings.addRender(renderNanos);
+        timings.addResult(rowCount, chars);
+        
+        if (recorder != null) {
+            
+            recorder.endResult();
+        }
+        
         return rowCount;
     }
     
     /**
-     * Called to render the result set metadata as a table. This is
-     * primarily for debugging purposes.
+     * Called by {@link #displayResults(Renderer, Session, ResultSet, Set)}
+     * when pipelining is enabled. A {@link FetchThread} is started to
+     * fetch the rows of the result set while the calling thread passes
+     * them along to the renderer. The rows arrive at the renderer in the
+     * same order, and the row limit is enforced in the same fashion, as
+     * they would be without pipelining.
      * 
-     * @param session The session.
-     * @param meta Metadata for the result set
-     */
-    public void displayMetadata(Session session, ResultSetMetaData meta) {
+     * <p>A fixed pool of {@link FetchSlot slots} is passed back and forth
+     * between the two threads, so the fetch thread never allocates a row.
+     * Any warnings or errors encountered while fetching a row travel with
+     * it in its slot, and are reported by the calling thread, so that only
+     * the calling thread ever writes to the session. Renderers that are not
+     * {@link Renderer#isStreaming() streaming} hold on to the rows they are
+     * given, so they are handed a copy of the row in the slot.
+     * 
+     * @param renderer The renderer (its header has already been called)
+     * @param session The session used for output.
+     * @param resultSet The result set to display
+     * @param fetcher Used to fetch each row of the result set
+     * @param tracker If the fetch size is adaptive, the tracker that 
+     *   rows are to be fetched through, otherwise null
+     * @param query The query that produced the result set; the time 
+     *   taken to fetch, format and render the rows is recorded in its 
+     *   timings and, if the results are being captured for the result 
+     *   cache, they are handed to its recorder
+     * @return The number of rows fetched, or -1 if the renderer was not
+     *   able to display the results.
+     * @throws SQLException Thrown if the fetch thread fails.
+     */
+    private int displayResultsPipelined(Renderer renderer, Session session,
+            ResultSet resultSet, RowFetcher fetcher, 
+            ColumnDescription []columns, RollingPrintStream rolling,
+            FetchSizeTuner.Tracker tracker, Query query)
+        throws SQLException {
+        
+        final QueryTimings timings = query.timings;
+        final ResultCache.Recorder recorder = query.recorder;
+        final boolean isStreaming = renderer.isStreaming();
+        BoundedRing<FetchSlot> ring = 
+            new BoundedRing<FetchSlot>(pipelineDepth);
+        
+        /*
+         * There can be at most one slot being filled by the fetch thread,
+         * pipelineDepth slots waiting in the ring and one slot being 
+         * rendered.
+         */
+        BoundedRing<FetchSlot> free = 
+            new BoundedRing<FetchSlot>(pipelineDepth + 2);
+        
+        fetcher.setDeferred(true);
+        FetchThread fetchThread = new FetchThread(session, resultSet,
+            fetcher, ring, free, tracker);
+        boolean ok = true;
+        long renderNanos = 0L;
+        
+        try {
+            
+            for (int i = 0; i < free.getCapacity(); i++) {
+                
+                free.put(new FetchSlot(fetcher, isStreaming));
+            }
+            
+            fetchThread.start();
+            
+            FetchSlot slot = ring.take();
+            while (slot != null) {
+                
+                final long start = System.nanoTime();
+                
+                slot.report(session);
+                if (rolling != null && rolling.isFull()
+                    && !roll(renderer, session, rolling, columns, resultSet,
+                        null)) {
+                    
+                    ok = false;
+                    break;
+                }
+                
+                if (recorder != null) {
+                    
+                    recorder.row(slot.row);
+                }
+                
+                if (isStreaming) {
+                    
+                    ok = renderer.row(slot.row);
+                }
+                else {
+                    
+                    ok = renderer.row(((String[]) slot.row).clone());
+                }
+                
+                free.put(slot);
+                renderNanos += System.nanoTime() - start;
+                
+                if (!ok) {
+                    
+                    break;
+                }
+                
+                if (rolling != null) {
+                    
+                    rolling.rowWritten();
+                }
+                
+                slot = ring.take();
+            }
+        }
+        catch (InterruptedException e) {
+            
+            Thread.currentThread().interrupt();
+            ok = false;
+        }
+        catch (BoundedRing.RingFailedException e) {
+            
+            Throwable cause = e.getCause();
+            if (cause instanceof SQLException) {
+                
+                throw (SQLException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                
+                throw (Error) cause;
+            }
+            throw new SQLException(cause.getMessage(), cause);
+        }
+        finally {
+            
+            /*
+             * Make sure the fetch thread has let go of the result set
+             * before our caller gets a chance to close it.
+             */
+            ring.abort();
+            free.close();
+            joinUninterruptibly(fetchThread);
+            fetcher.setDeferred(false);
+            
+            /*
+             * The warnings picked up once the last row was fetched.
+             */
+            if (fetchThread.warnings != null) {
+                
+                SQLTools.printWarnings(session, fetchThread.warnings);
+            }
+        }
+        
+        if (firstRowTime == 0L) {
+            
+            firstRowTime = fetchThread.firstRowTime;
+        }
+        
+        if (fetchThread.rowCount > 0) {
+            
+            timings.firstRow(fetchThread.firstRowNanos - query.executeStart);
+        }
+        
+        final long start = System.nanoTime();
+        if (!ok || !renderer.flush()) {
+            
+            return -1;
+        }
+        
+        session.out.flush();
+        renderNanos += System.nanoTime() - start;
+        
+        timings.addFetch(fetchThread.fetchNanos);
+        timings.addFormat(fetchThread.formatNanos);
+        timings.addRender(renderNanos);
+        timings.addResult(fetchThread.rowCount, fetchThread.chars);
+        
+        if (recorder != null) {
+            
+            recorder.endResult();
+        }
+        
+        return fetchThread.rowCount;
+    }
+    
+    /**
+     * Displays results from the result cache in place of executing a 
+     * query. Each result set is displayed, and followed by a footer, just
+     * as it was when the query was executed.
+     * 
+     * @param renderer The renderer
+     * @param session The session
+     * @param entry The cached results
+     * @param query The query being answered from the cache
+     * @return true if the results were displayed, false if the renderer
+     *   was not able to display them
+     * @throws SQLException Not thrown in practice, results are only 
+     *   cached for renderers that do not read from the result set
+     */
+    private boolean replay(Renderer renderer, Session session,
+            ResultCache.Entry entry, Query query)
+        throws SQLException {
+        
+        startExecute(query);
+        final QueryTimings timings = query.timings;
+        
+        final RollingPrintStream rolling = 
+            (session.out instanceof RollingPrintStream)
+                ? (RollingPrintStream) session.out : null;
+        final List<ResultCache.Result> results = entry.getResults();
+        StringBuilder footer = new StringBuilder();
+        
+        for (int i = 0; i < results.size(); i++) {
+            
+            final long start = System.nanoTime();
+            ResultCache.Result result = results.get(i);
+            ColumnDescription []columns = result.getColumns();
+            long chars = 0L;
+            
+            renderer.header(columns);
+            
+            Iterator<String[]> rows = result.rows();
+            while (rows.hasNext()) {
+                
+                String []row = rows.next();
+                chars += charCount(row);
+                
+                if ((rolling != null && rolling.isFull()
+                        && !roll(renderer, session, rolling, columns, 
+                            null, null))
+                    || !renderer.row(row)) {
+                    
+                    renderer.abort();
+                    return false;
+                }
+                
+                if (rolling != null) {
+                    
+                    rolling.rowWritten();
+                }
+            }
+            
+            if (!renderer.flush()) {
+                
+                renderer.abort();
+                return false;
+            }
+            session.out.flush();
+            
+            timings.addRender(System.nanoTime() - start);
+            timings.addResult(result.getRowCount(), chars);
+            if (result.getRowCount() > 0) {
+                
+                timings.firstRow(start - query.executeStart);
+            }
+            
+            int nRows = result.getRowCount();
+            footer.append(nRows);
+            footer.append(" row");
+            if (nRows != 1) {
+                
+                footer.append('s');
+            }
+            footer.append(" in cached results");
+            
+            if (i == results.size() - 1) {
+                
+                timings.setTotal(System.nanoTime() - query.start);
+                if (showTimings) {
+                    
+                    footer.append("(total: "
+                        + TimeUtils.millisToDurationString(
+                            System.currentTimeMillis() - startTime) + ")");
+                }
+            }
+            
+            renderer.footer(footer.toString());
+            footer.setLength(0);
+        }
+        
+        if (detailedTimings) {
+            
+            renderer.footer(timings.toString());
+        }
+        
+        return true;
+    }
+    
+    /**
+     * Moves output that is being split across a series of files on to the
+     * next file. The renderer is flushed, finishing off the current file,
+     * and then handed the header again, so that each file stands on its
+     * own.
+     * 
+     * @param renderer The renderer
+     * @param session The session
+     * @param rolling The output
+     * @param columns The columns being displayed
+     * @param resultSet The result set being displayed
+     * @param projection If the renderer is {@link Renderer#isTyped() typed}
+     *   the columns of the result set being displayed, otherwise null
+     * @return false if the renderer or the output failed
+     * @throws SQLException If a typed renderer fails to re-read the 
+     *   description of the result set
+     */
+    private boolean roll(Renderer renderer, Session session, 
+            RollingPrintStream rolling, ColumnDescription []columns,
+            ResultSet resultSet, int []projection)
+        throws SQLException {
+        
+        if (!renderer.flush()) {
+            
+            return false;
+        }
+        
+        try {
+            
+            rolling.roll();
+        }
+        catch (IOException e) {
+            
+            session.err.println("Unable to start part " 
+                + (rolling.getPart() + 1) + " of the output: " 
+                + e.getMessage());
+            return false;
+        }
+        
+        if (projection != null) {
+            
+            renderer.header(columns, resultSet, projection);
+        }
+        else {
+            
+            renderer.header(columns);
+        }
+        
+        return true;
+    }
+    
+    /**
+     * @param row A fetched row
+     * @return The number of characters in the display form of its values
+     */
+    private static long charCount(CharSequence []row) {
+        
+        long chars = 0L;
+        for (int i = 0; i < row.length; i++) {
+            
+            if (row[i] != null) {
+                
+                chars += row[i].length();
+            }
+        }
+        
+        return chars;
+    }
+    
+    private static void joinUninterruptibly(Thread thread) {
+        
+        boolean interrupted = false;
+        while (thread.isAlive()) {
+            
+            try {
+                
+                thread.join();
+            }
+            catch (InterruptedException e) {
+                
+                interrupted = true;
+            }
+        }
+        
+        if (interrupted) {
+            
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    /**
+     * The state of a single query, from the point at which it is started
+     * until all of its results have been displayed. A new one is made for
+     * each query, so nothing about a query is left behind on the renderer,
+     * which is shared by every session of the context.
+     */
+    private static class Query {
+        
+        /*
+         * The phases are timed from start and executeStart (both from
+         * System.nanoTime()).
+         */
+        private final QueryTimings timings = new QueryTimings();
+        private final long start = System.nanoTime();
+        private long executeStart = start;
+        
+        /*
+         * The shape of the query, when the fetch size is adaptive.
+         */
+        private String fetchShape = null;
+        
+        /*
+         * Captures the results of the query for the result cache, or null
+         * if they are not being captured.
+         */
+        private ResultCache.Recorder recorder = null;
+    }
+    
+    /**
+     * Carries a row from the {@link FetchThread} to the rendering thread,
+     * along with any warnings or errors encountered while fetching it. 
+     * Slots are allocated up front and returned to the fetch thread once 
+     * the row they hold has been rendered.
+     */
+    private static class FetchSlot {
+        
+        private final RowFetcher.RowBuffer buffer;
+        private final String []strings;
+        private CharSequence []row;
+        private SQLWarning warnings;
+        private SQLException error;
+        private String messages;
+        
+        public FetchSlot(RowFetcher fetcher, boolean isStreaming) {
+            
+            buffer = isStreaming ? fetcher.newRowBuffer() : null;
+            strings = isStreaming 
+                ? null : new String[fetcher.getColumnCount()];
+        }
+        
+        /**
+         * Fills the slot with the current row of the result set.
+         */
+        public void fetch(RowFetcher fetcher, int rowNumber) {
+            
+            row = (buffer != null) 
+                ? fetcher.fetch(rowNumber, buffer)
+                : fetcher.fetch(rowNumber, strings);
+            error = fetcher.takeError();
+            messages = fetcher.takeWarnings();
+        }
+        
+        /**
+         * Reports the warnings and errors that came with the row to the
+         * session.
+         */
+        public void report(Session session) {
+            
+            if (warnings != null) {
+                
+                SQLTools.printWarnings(session, warnings);
+                warnings = null;
+            }
+            
+            if (messages != null) {
+                
+                session.err.print(messages);
+                messages = null;
+            }
+            
+            if (error != null) {
+                
+                session.setException(error);
+                error = null;
+            }
+        }
+    }
+    
+    /**
+     * The producing half of a pipelined fetch. This thread walks the
+     * result set, applying the row limit, and places each fetched row into
+     * the ring for the rendering thread to pick up. Nothing is written to
+     * the session by this thread; warnings and errors are passed back 
+     * along with the rows.
+     */
+    private class FetchThread extends Thread {
+        
+        private final ResultSet resultSet;
+        private final RowFetcher fetcher;
+        private final BoundedRing<FetchSlot> ring;
+        private final BoundedRing<FetchSlot> free;
+        private final FetchSizeTuner.Tracker tracker;
+        
+        /*
+         * These are only read by the rendering thread after it has joined
+         * this thread.
+         */
+        private int rowCount = 0;
+        private long firstRowTime = 0L;
+        private long firstRowNanos = 0L;
+        private long fetchNanos = 0L;
+        private long formatNanos = 0L;
+        private long chars = 0L;
+        private SQLWarning warnings = null;
+        
+        public FetchThread(Session session, ResultSet resultSet,
+                RowFetcher fetcher, BoundedRing<FetchSlot> ring,
+                BoundedRing<FetchSlot> free,
+                FetchSizeTuner.Tracker tracker) {
+            
+            this.resultSet = resultSet;
+            this.fetcher = fetcher;
+            this.ring = ring;
+            this.free = free;
+            this.tracker = tracker;
+            
+            setName("FetchThread-" + session.getId());
+            setDaemon(true);
+        }
+        
+        public void run() {
+            
+            final int warnInterval = warningInterval;
+            int rowsSinceWarningCheck = 0;
+            
+            try {
+                
+                long mark = System.nanoTime();
+                while (!ring.isAborted() 
+                    && (tracker != null ? tracker.next() : resultSet.next())) {
+                    
+                    final long fetched = System.nanoTime();
+                    fetchNanos += fetched - mark;
+                    
+                    ++rowCount;
+                    if (rowCount == 1) {
+                        
+                        firstRowTime = System.currentTimeMillis();
+                        firstRowNanos = fetched;
+                    }
+                    
+                    if (maxRows > 0 && rowCount > maxRows) {
+                        
+                        if (rowLimitMethod == LIMIT_CANCEL) {
+                            
+                            resultSet.getStatement().cancel();
+                            break;
+                        }
+                        else if (rowLimitMethod == LIMIT_DISCARD) {
+                            
+                            mark = System.nanoTime();
+                            continue;
+                        }
+                    }
+                    
+                    /*
+                     * A null slot means the renderer has given up.
+                     */
+                    final FetchSlot slot = free.take();
+                    if (slot == null) {
+                        
+                        break;
+                    }
+                    
+                    if (warnInterval > 0 
+                            && ++rowsSinceWarningCheck >= warnInterval) {
+                        
+                        slot.warnings = takeWarnings(resultSet);
+                        rowsSinceWarningCheck = 0;
+                    }
+                    
+                    /*
+                     * Time spent waiting on the rendering thread, for a 
+                     * free slot or for room in the ring, is not counted.
+                     */
+                    final long formatStart = System.nanoTime();
+                    slot.fetch(fetcher, rowCount);
+                    formatNanos += System.nanoTime() - formatStart;
+                    chars += charCount(slot.row);
+                    
+                    if (tracker != null && (rowCount & 0xf) == 1) {
+                        
+                        tracker.measure(slot.row);
+                    }
+                    
+                    if (!ring.put(slot)) {
+                        
+                        break;
+                    }
+                    
+                    mark = System.nanoTime();
+                }
+                
+                if (warnInterval != 1) {
+                    
+                    warnings = takeWarnings(resultSet);
+                }
+                
+                if (tracker != null) {
+                    
+                    tracker.finish();
+                }
+                
+                ring.close();
+            }
+            catch (Throwable e) {
+                
+                ring.fail(e);
+            }
+        }
+    }
+    
+    /**
+     * Removes the warnings that have piled up on a result set.
+     * 
+     * @param resultSet The result set
+     * @return The warnings, or null if there are none
+     */
+    private static SQLWarning takeWarnings(ResultSet resultSet) {
+        
+        try {
+            
+            final SQLWarning w = resultSet.getWarnings();
+            if (w != null) {
+                
+                resultSet.clearWarnings();
+            }
+            return w;
+        }
+        catch (SQLException e) {
+            
+            return null;
+        }
+    }
+    
+    /**
+     * Called to render the result set metadata as a table. This is
+     * primarily for debugging purposes.
+     * 
+     * @param session The session.
+     * @param meta Metadata for the result set
+     */
+    public void displayMetadata(Session session, ResultSetMetaData meta) {
         
         Renderer renderer = session.getRendererManager().getCommandRenderer(
             session);
@@ -1614,29 +2641,21 @@ public class SQLRenderer {
      * Returns a description of the provided result set.
      * 
      * @param resultSet The result set
-     * @param displayCols If non-null, can contains a set of column
-     *     numbers that are to be displayed.
+     * @param projection The (1-based) column numbers that are to be
+     *     displayed.
      * @return A description of the result set.
      * @throws SQLException Thrown if there is a problem.
      */
     private ColumnDescription[] getDescription(ResultSet resultSet,
-            Set<Integer>displayCols)
+            int []projection)
         throws SQLException {
         
         ResultSetMetaData meta = resultSet.getMetaData();
-        int nCols = meta.getColumnCount();
-        int nDisplay = 
-            (displayCols != null ? displayCols.size() : nCols);
-        ColumnDescription []colDesc = new ColumnDescription[nDisplay];
+        ColumnDescription []colDesc = new ColumnDescription[projection.length];
         
-        int idx = 0;
-        for (int i = 1; i <= nCols; i++) {
+        for (int i = 0; i < projection.length; i++) {
             
-            if (displayCols == null || displayCols.contains(i)) {
-                
-                colDesc[idx] = getDescription(meta, i);
-                ++idx;
-            }
+            colDesc[i] = getDescription(meta, projection[i]);
         }
         
         return colDesc;
@@ -112,6 +112,25 @@ public class SQLTools {
         }
     }
     
+    /**
+     * Return the current schema for a connection.
+     * 
+     * @param connection The connection
+     * @return The schema, or null if it cannot be determined (drivers 
+     *   written prior to JDBC 4.1 do not implement getSchema()).
+     */
+    public static String getSchema(Connection connection) {
+        
+        try {
+            
+            return connection.getSchema();
+        }
+        catch (SQLException | AbstractMethodError e) {
+            
+            return null;
+        }
+    }
+    
     /**
      * Display SQLExceptions (and any nested exceptions) to an output stream
      * in a nicely formatted style.
@@ -245,7 +264,7 @@ public class SQLTools {
      * @param session The session to use for writing
      * @param w The warning.
      */
-    static private void printWarnings(Session session, SQLWarning w) {
+    static void printWarnings(Session session, SQLWarning w) {
         
         StringBuilder sb = new StringBuilder();
         String lineSep = System.getProperty("line.separator");
@@ -25,7 +25,6 @@ import java.io.BufferedReader;
 import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
@@ -63,6 +62,16 @@ public class Session implements Cloneable {
      */
     private int commandReturn = 0;
     
+    /**
+     * Peak memory held by display styles during the last command.
+     */
+    private long lastMemoryPeak = 0L;
+
+    /**
+     * The breakdown of the time taken by the last query executed.
+     */
+    private QueryTimings lastQueryTimings = new QueryTimings();
+    
     /**
      * Total number of commands that have been executed that failed to return a 0 return value (i.e. that failed).
      */
@@ -316,6 +325,13 @@ public class Session implements Cloneable {
         }
 
         connection = context;
+        if (doClose && context instanceof SQLConnectionContext) {
+            MetadataCache cache = ((SQLConnectionContext) context).getMetadataCache();
+            cache.restore();
+            if (sqshContext.isMetadataPrefetch()) {
+                cache.prefetch();
+            }
+        }
     }
 
     /**
@@ -708,6 +724,33 @@ public class Session implements Cloneable {
         return commandReturn;
     }
 
+    /**
+     * Returns the largest amount of memory that display styles held onto (see {@link MemoryBudget}) while the last
+     * command was executing.
+     *
+     * @return The peak number of bytes.
+     */
+    public long getLastMemoryPeak() {
+        return lastMemoryPeak;
+    }
+
+    /**
+     * Returns the breakdown of the time taken by the last query executed in this session. If the query is still
+     * running, the breakdown is of the time taken so far.
+     *
+     * @return The breakdown. This is never null.
+     */
+    public QueryTimings getLastQueryTimings() {
+        return lastQueryTimings;
+    }
+
+    /**
+     * @param lastQueryTimings The breakdown of the time taken by the query most recently started in this session
+     */
+    public void setLastQueryTimings(QueryTimings lastQueryTimings) {
+        this.lastQueryTimings = lastQueryTimings;
+    }
+
     /**
      * Convenience function to start the visual timer facility. The timer will only actually start if the timer service
      * is enabled and if the session is interactive, otherwise this method is a no-op.
@@ -973,6 +1016,9 @@ public class Session implements Cloneable {
         String line;
         try {
             if (ioManager.isInteractive()) {
+
+                // Make sure the user can see everything that has been produced before asking for more.
+                ioManager.flush();
                 SqshConsole console = sqshContext.getConsole();
                 String prompt = getVariableManager().get("prompt");
                 prompt = (prompt == null)
@@ -1293,7 +1339,13 @@ public class Session implements Cloneable {
             }
 
             // Sweet, it parsed! Now run that bad boy.
-            commandReturn = command.execute(this, argv.toArray(new String[0]));
+            final MemoryBudget memoryBudget = getRendererManager().getMemoryBudget();
+            memoryBudget.beginCommand(this);
+            try {
+                commandReturn = command.execute(this, argv.toArray(new String[0]));
+            } finally {
+                lastMemoryPeak = memoryBudget.endCommand(this);
+            }
             if (commandReturn != 0) {
                 ++commandFailCount;
 
@@ -1355,7 +1407,7 @@ public class Session implements Cloneable {
         }
         try {
             Process process = sqshContext.getShellManager().pipeShell(pager);
-            setOut(new PrintStream(process.getOutputStream()), true);
+            setOut(InputOutputManager.openStream(process.getOutputStream(), sqshContext.getOutputBufferSize()), true);
             return process;
         } catch (ShellException e) {
             err.println("Could not launch pager \"" + pager + "\". Set $PAGER variable to specify an alternative pager");
@@ -1380,7 +1432,7 @@ public class Session implements Cloneable {
             } else {
                 shell = sqshContext.getShellManager().pipeShell(token.getPipeCommand());
             }
-            setOut(new PrintStream(shell.getOutputStream()), true);
+            setOut(InputOutputManager.openStream(shell.getOutputStream(), sqshContext.getOutputBufferSize()), true);
             return shell;
         } catch (ShellException e) {
             throw new CommandLineSyntaxException("Failed to execute '" + token.getPipeCommand()
@@ -1409,7 +1461,7 @@ public class Session implements Cloneable {
             if (LOG.isLoggable(Level.FINE)) {
                 LOG.fine("Redirecting output of session #" + sessionId + " to " + tmpFile.toString());
             }
-            PrintStream out = new PrintStream(new FileOutputStream(tmpFile, false));
+            PrintStream out = InputOutputManager.openFile(tmpFile, false, sqshContext.getOutputBufferSize());
 
             // If we are supposed to be processing the output of a shell, then spawn a magical thread that will forward
             // all of the output of the shell to our temporary file, otherwise just attach the session's output to the
@@ -1477,7 +1529,8 @@ public class Session implements Cloneable {
                     + "1 (stdout) and 2 (stderr)", token.getPosition(), token.getLine());
         }
         try {
-            PrintStream newStream = new PrintStream(new FileOutputStream(token.getFilename(), token.isAppend()));
+            PrintStream newStream = sqshContext.openOutputFile(new File(token.getFilename()), token.isAppend(),
+                    token.getFd() == 1);
             if (token.getFd() == 1) {
                 setOut(newStream, true);
             } else {
@@ -1544,7 +1597,7 @@ public class Session implements Cloneable {
 
                 /* IGNORED */
             }
-            out.flush();
+            out.close();
             if (LOG.isLoggable(Level.FINE)) {
                 LOG.fine("Relayed " + count + " characters");
             }
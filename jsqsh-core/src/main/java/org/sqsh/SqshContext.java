@@ -16,6 +16,8 @@
 package org.sqsh;
 
 import org.sqsh.shell.ShellManager;
+import org.sqsh.util.OutputSink;
+import org.sqsh.util.RollingPrintStream;
 
 import java.io.BufferedReader;
 import java.io.File;
@@ -81,6 +83,15 @@ public class SqshContext {
         HIGH,    /// Displays stack trace
     }
     
+    /**
+     * Whether or not output that is redirected to a file is compressed.
+     */
+    public enum Compression {
+        NONE,    /// Never compressed
+        GZIP,    /// Always gzip compressed
+        AUTO,    /// Gzip compressed if the file name ends in ".gz"
+    }
+    
     /**
      * When a context exists, this indicates how any failures in the context
      * should be reported.
@@ -239,6 +250,48 @@ public class SqshContext {
      */
     private int queryTimeout = 0;
     
+    /**
+     * Size of the buffer used when output is sent to a file or a pipe.
+     */
+    private int outputBufferSize = OutputSink.DEFAULT_BUFFER_SIZE;
+    
+    /**
+     * Whether output redirected to a file is compressed.
+     */
+    private Compression compression = Compression.AUTO;
+    
+    /**
+     * The number of threads used to compress output, 0 meaning one
+     * per processor.
+     */
+    private int compressThreads = 0;
+    
+    /**
+     * Limits on the number of rows and bytes written to each file when
+     * output is redirected to a file, 0 meaning no limit.
+     */
+    private long rollRows = 0L;
+    private long rollSize = 0L;
+    
+    /**
+     * The number of seconds that database metadata is cached for, 0
+     * meaning that it is not cached, whether it is fetched in the
+     * background as soon as a connection is established, whether it
+     * is saved for the next time a saved connection is used, and the
+     * number of connections used to look up metadata one schema at a
+     * time when a pattern matches many schemas.
+     */
+    private int metadataCacheTtl = 300;
+    private boolean metadataPrefetch = false;
+    private boolean metadataPersist = true;
+    private int metadataThreads = 4;
+    
+    /**
+     * The number of milliseconds to wait for tab completion to come up
+     * with its completions before settling for what is at hand.
+     */
+    private int completionTimeout = 150;
+    
     /**
      * Controls how much detail is displayed in exceptions.
      */
@@ -650,6 +703,265 @@ public class SqshContext {
         this.screenWidth = screenWidth;
     }
 
+    /**
+     * @return The size (in bytes) of the buffer used when output is 
+     *   directed to a file or to a pipe.
+     */
+    public int getOutputBufferSize() {
+        
+        return outputBufferSize;
+    }
+    
+    /**
+     * Sets the size of the buffer used when output is directed to a file
+     * or to a pipe. This takes effect the next time output is redirected.
+     * 
+     * @param outputBufferSize The size of the buffer, in bytes.
+     */
+    public void setOutputBufferSize(int outputBufferSize) {
+        
+        this.outputBufferSize = Math.max(outputBufferSize, 
+            OutputSink.MIN_BUFFER_SIZE);
+    }
+    
+    /**
+     * @return Whether output redirected to a file is compressed.
+     */
+    public Compression getCompression() {
+        
+        return compression;
+    }
+    
+    /**
+     * @param compression Whether output redirected to a file is compressed.
+     */
+    public void setCompression(Compression compression) {
+        
+        this.compression = compression;
+    }
+    
+    /**
+     * @return Whether output redirected to a file is compressed.
+     */
+    public String getCompressionString() {
+        
+        return compression.toString().toLowerCase();
+    }
+    
+    /**
+     * Sets whether output redirected to a file is compressed.
+     * 
+     * @param compression One of "none", "gzip" or "auto".
+     */
+    public void setCompressionString(String compression) {
+        
+        try {
+            
+            this.compression = Compression.valueOf(compression.toUpperCase());
+        }
+        catch (IllegalArgumentException e) {
+            
+            throw new IllegalArgumentException("Illegal compression \""
+                + compression + "\" use none, gzip, or auto");
+        }
+    }
+    
+    /**
+     * @return The number of threads used to compress output. A value of
+     *   0 indicates one thread per processor.
+     */
+    public int getCompressThreads() {
+        
+        return compressThreads;
+    }
+    
+    /**
+     * @param compressThreads The number of threads used to compress
+     *   output. A value of 0 indicates one thread per processor.
+     */
+    public void setCompressThreads(int compressThreads) {
+        
+        this.compressThreads = Math.max(compressThreads, 0);
+    }
+    
+    /**
+     * @return The number of rows after which output redirected to a file
+     *   moves on to a new file, or 0 if there is no limit.
+     */
+    public long getRollRows() {
+        
+        return rollRows;
+    }
+    
+    /**
+     * @param rollRows The number of rows after which output redirected to
+     *   a file moves on to a new file, or 0 if there is no limit.
+     */
+    public void setRollRows(long rollRows) {
+        
+        this.rollRows = Math.max(rollRows, 0L);
+    }
+    
+    /**
+     * @return The number of bytes after which output redirected to a file
+     *   moves on to a new file, or 0 if there is no limit.
+     */
+    public long getRollSize() {
+        
+        return rollSize;
+    }
+    
+    /**
+     * @param rollSize The number of bytes after which output redirected to
+     *   a file moves on to a new file, or 0 if there is no limit.
+     */
+    public void setRollSize(long rollSize) {
+        
+        this.rollSize = Math.max(rollSize, 0L);
+    }
+    
+    /**
+     * @return The number of seconds for which database metadata, such as
+     *   the tables and columns used by tab completion, is cached, or 0 if
+     *   it is not cached.
+     */
+    public int getMetadataCacheTtl() {
+        
+        return metadataCacheTtl;
+    }
+    
+    /**
+     * @param metadataCacheTtl The number of seconds for which database
+     *   metadata is cached, or 0 if it is not to be cached.
+     */
+    public void setMetadataCacheTtl(int metadataCacheTtl) {
+        
+        this.metadataCacheTtl = Math.max(metadataCacheTtl, 0);
+    }
+    
+    /**
+     * @return Whether the catalogs, schemas and tables of a database are
+     *   fetched into the metadata cache in the background as soon as a
+     *   connection is established.
+     */
+    public boolean isMetadataPrefetch() {
+        
+        return metadataPrefetch;
+    }
+    
+    /**
+     * @param metadataPrefetch Whether the catalogs, schemas and tables of
+     *   a database are fetched into the metadata cache in the background as
+     *   soon as a connection is established.
+     */
+    public void setMetadataPrefetch(boolean metadataPrefetch) {
+        
+        this.metadataPrefetch = metadataPrefetch;
+    }
+    
+    /**
+     * @return Whether the names of the tables and procedures looked up 
+     *   on a connection established using a saved connection are saved
+     *   to disk, to be used the next time that connection is used.
+     */
+    public boolean isMetadataPersist() {
+        
+        return metadataPersist;
+    }
+    
+    /**
+     * @param metadataPersist Whether the names of the tables and 
+     *   procedures looked up on a connection established using a saved
+     *   connection are saved to disk, to be used the next time that 
+     *   connection is used.
+     */
+    public void setMetadataPersist(boolean metadataPersist) {
+        
+        this.metadataPersist = metadataPersist;
+    }
+    
+    /**
+     * @return The number of connections that commands such as 
+     *   <code>\show</code> and <code>\tables</code> use to look up 
+     *   metadata one schema at a time when their pattern matches more
+     *   than one schema, 1 meaning that they look it up all at once.
+     */
+    public int getMetadataThreads() {
+        
+        return metadataThreads;
+    }
+    
+    /**
+     * @param metadataThreads The number of connections that commands 
+     *   such as <code>\show</code> and <code>\tables</code> use to look
+     *   up metadata one schema at a time when their pattern matches more
+     *   than one schema, 1 meaning that they look it up all at once.
+     */
+    public void setMetadataThreads(int metadataThreads) {
+        
+        this.metadataThreads = Math.max(metadataThreads, 1);
+    }
+    
+    /**
+     * @return The number of milliseconds that tab completion waits on the
+     *   database before settling for completions from what is already at
+     *   hand, or 0 if it waits for as long as it takes.
+     */
+    public int getCompletionTimeout() {
+        
+        return completionTimeout;
+    }
+    
+    /**
+     * @param completionTimeout The number of milliseconds that tab 
+     *   completion waits on the database before settling for completions
+     *   from what is already at hand, or 0 to wait for as long as it takes.
+     */
+    public void setCompletionTimeout(int completionTimeout) {
+        
+        this.completionTimeout = Math.max(completionTimeout, 0);
+    }
+    
+    /**
+     * Opens a file that output is to be redirected to, compressing it if
+     * called for by the current {@link Compression} setting.
+     * 
+     * @param file The file to write to
+     * @param append If true, output is appended to the file
+     * @param canRoll If true, and a limit has been placed on the number 
+     *   of rows or bytes in each file, the output is written to a series
+     *   of numbered files (see {@link RollingPrintStream}).
+     * @return The new stream
+     * @throws IOException If the file cannot be opened
+     */
+    public PrintStream openOutputFile(File file, boolean append,
+            boolean canRoll)
+        throws IOException {
+        
+        final boolean compress = compression == Compression.GZIP
+            || (compression == Compression.AUTO 
+                && file.getName().endsWith(".gz"));
+        final int threads = compressThreads > 0 ? compressThreads
+            : Runtime.getRuntime().availableProcessors();
+        
+        if (canRoll && (rollRows > 0 || rollSize > 0)) {
+            
+            return RollingPrintStream.open(file, rollRows, rollSize,
+                outputBufferSize, part -> compress 
+                    ? InputOutputManager.newCompressedStream(part, append, 
+                        threads)
+                    : new FileOutputStream(part, append));
+        }
+        
+        if (compress) {
+            
+            return InputOutputManager.openCompressedFile(file, append,
+                outputBufferSize, threads);
+        }
+        
+        return InputOutputManager.openFile(file, append, outputBufferSize);
+    }
+
     /**
      * @return whether or not exceptions that are printed out via
      * the sessions printException() method will show the stack trace.
@@ -17,6 +17,7 @@ package org.sqsh.commands;
 
 import org.sqsh.Command;
 import org.sqsh.DatabaseCommand;
+import org.sqsh.MetadataCache;
 import org.sqsh.Renderer;
 import org.sqsh.SQLConnectionContext;
 import org.sqsh.SQLObjectName;
@@ -27,8 +28,6 @@ import org.sqsh.SqshOptions;
 import org.sqsh.options.Argv;
 import org.sqsh.options.OptionProperty;
 
-import java.sql.Connection;
-import java.sql.DatabaseMetaData;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
@@ -70,8 +69,7 @@ public class Describe extends Command implements DatabaseCommand {
         }
 
         SQLConnectionContext sqlContext = (SQLConnectionContext) session.getConnectionContext();
-        Connection con = session.getConnection();
-        DatabaseMetaData meta = con.getMetaData();
+        MetadataCache meta = sqlContext.getMetadataCache();
 
         SQLObjectName objName = new SQLObjectName(sqlContext, options.arguments.get(0));
         if (objName.isMalformed()) {
@@ -119,16 +117,15 @@ public class Describe extends Command implements DatabaseCommand {
     /**
      * Does a crappy test to determine of an object name is a table.
      *
-     * @param meta Database metadata descriptor.
+     * @param meta Database metadata cache.
      * @param catalog The database name
      * @param schema The schema of the object
      * @param name The name of the object.
      * @return True if it is a table.
      */
-    private boolean isTable(DatabaseMetaData meta, String catalog, String schema, String name) {
+    private boolean isTable(MetadataCache meta, String catalog, String schema, String name) {
         int nRows = 0;
-        try {
-            ResultSet result = meta.getColumns(catalog, schema, name, null);
+        try (ResultSet result = meta.getColumns(catalog, schema, name, null)) {
             while (result.next()) {
                 ++nRows;
             }
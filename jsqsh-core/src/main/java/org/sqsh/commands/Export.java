@@ -0,0 +1,662 @@
+/*
+ * Copyright 2007-2022 Scott C. Gray
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sqsh.commands;
+
+import org.sqsh.BufferManager;
+import org.sqsh.ColumnDescription;
+import org.sqsh.Command;
+import org.sqsh.ConnectionContext;
+import org.sqsh.ConnectionDescriptor;
+import org.sqsh.DataFormatter;
+import org.sqsh.DatabaseCommand;
+import org.sqsh.Formatter;
+import org.sqsh.Renderer;
+import org.sqsh.RendererManager;
+import org.sqsh.RowFetcher;
+import org.sqsh.SQLConnectionContext;
+import org.sqsh.SQLRenderer;
+import org.sqsh.SQLTools;
+import org.sqsh.Session;
+import org.sqsh.SqshOptions;
+import org.sqsh.format.DateFormatter;
+import org.sqsh.options.Argv;
+import org.sqsh.options.OptionProperty;
+import org.sqsh.util.RollingPrintStream;
+import org.sqsh.util.TimeUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.sqsh.options.ArgumentRequired.NONE;
+import static org.sqsh.options.ArgumentRequired.REQUIRED;
+
+/**
+ * Implements the \export command. The rows of a table or query are split into slices on the value of a column, and
+ * each slice is fetched over a connection of its own, by a thread of its own. The rows are handed back to the thread
+ * running the command, which passes them through the usual renderers into a file per slice, or a single file.
+ */
+public class Export extends Command implements DatabaseCommand {
+
+    /**
+     * The number of rows handed from a slice to the rendering thread at a time.
+     */
+    private static final int BATCH_ROWS = 256;
+
+    /**
+     * The number of batches each slice may have waiting to be rendered.
+     */
+    private static final int BATCHES_PER_SLICE = 4;
+
+    private static class Options extends SqshOptions {
+        @OptionProperty(option = 'c', longOption = "column", arg = REQUIRED, argName = "column",
+                description = "Column on which the rows are split into slices")
+        public String column = null;
+
+        @OptionProperty(option = 'n', longOption = "slices", arg = REQUIRED, argName = "count",
+                description = "Number of slices (and connections) to export with")
+        public int slices = 4;
+
+        @OptionProperty(option = 's', longOption = "split", arg = REQUIRED, argName = "minmax|ntile",
+                description = "How the range of the column is divided up")
+        public String split = "minmax";
+
+        @OptionProperty(option = 'm', longOption = "display-style", arg = REQUIRED, argName = "style",
+                description = "Sets the display style for output")
+        public String style = null;
+
+        @OptionProperty(option = 'o', longOption = "output", arg = REQUIRED, argName = "file",
+                description = "File to write to")
+        public String output = null;
+
+        @OptionProperty(option = 'M', longOption = "merge", arg = NONE,
+                description = "Write all slices to the one file")
+        public boolean merge = false;
+
+        @Argv(program = "\\export", min = 0, max = 1, usage = "-c column -o file [-n slices] [-s minmax|ntile] "
+                + "[-m style] [-M] [table_name]")
+        public List<String> arguments = new ArrayList<>();
+    }
+
+    @Override
+    public SqshOptions getOptions() {
+        return new Options();
+    }
+
+    @Override
+    public int execute(Session session, SqshOptions opts) throws Exception {
+        final Options options = (Options) opts;
+        if (options.column == null || options.output == null) {
+            session.err.println("use: \\export -c column -o file [options] [table_name]");
+            return 1;
+        }
+        if (options.slices < 1) {
+            session.err.println("The number of slices must be at least 1");
+            return 1;
+        }
+        final boolean useNtile;
+        if (options.split.equalsIgnoreCase("ntile")) {
+            useNtile = true;
+        } else if (options.split.equalsIgnoreCase("minmax")) {
+            useNtile = false;
+        } else {
+            session.err.println("Invalid split '" + options.split + "': must be either minmax or ntile");
+            return 1;
+        }
+
+        final ConnectionContext connCtx = session.getConnectionContext();
+        if (!(connCtx instanceof SQLConnectionContext)) {
+            session.err.println("\\export may only be used with a JDBC connection");
+            return 1;
+        }
+        final SQLConnectionContext sqlCtx = (SQLConnectionContext) connCtx;
+
+        // Either export a table, or the query in the current buffer.
+        final String source;
+        if (options.arguments.size() == 1) {
+            source = options.arguments.get(0);
+        } else {
+            final BufferManager bufferMan = session.getBufferManager();
+            final String sql = bufferMan.getCurrent().toString().trim();
+            if (session.isInteractive()) {
+                bufferMan.newBuffer();
+            } else {
+                bufferMan.getCurrent().clear();
+            }
+            if (sql.length() == 0) {
+                session.err.println("Either a table name must be provided, or a query must be in the current buffer");
+                return 1;
+            }
+            source = "(" + sql + ") jsqsh_export";
+        }
+
+        final RendererManager renderMan = session.getRendererManager();
+        final String style = options.style != null ? options.style : renderMan.getDefaultRenderer();
+        final Renderer first = renderMan.getRenderer(session, style);
+        if (first.isTyped()) {
+            session.err.println("The " + style + " display style reads the result set itself, and cannot be used "
+                    + "with \\export");
+            return 1;
+        }
+
+        // Work out where the slices start and end.
+        final Split split;
+        try {
+            split = useNtile
+                    ? Split.ntile(sqlCtx.getConnection(), source, options.column, options.slices)
+                    : Split.minMax(sqlCtx.getConnection(), source, options.column, options.slices);
+        } catch (SQLException e) {
+            SQLTools.printException(session, e);
+            return 1;
+        }
+        if (split == null) {
+            session.err.println("Column " + options.column + " is not an integer column. Use --split=ntile to "
+                    + "split it into slices");
+            return 1;
+        }
+
+        final int nSlices = split.getSliceCount();
+        final Renderer[] renderers = new Renderer[options.merge ? 1 : nSlices];
+        renderers[0] = first;
+        for (int i = 1; i < renderers.length; i++) {
+            renderers[i] = renderMan.getRenderer(session, style);
+        }
+        final File file = new File(options.output);
+        final SQLConnectionContext[] conns = new SQLConnectionContext[nSlices];
+        final PrintStream[] outs = new PrintStream[renderers.length];
+        final PrintStream origOut = session.out;
+        final long startTime = System.currentTimeMillis();
+        try {
+            // Connections are opened one at a time, here, as the driver manager may need to prompt for a password.
+            for (int i = 0; i < nSlices; i++) {
+                try {
+                    conns[i] = session.getDriverManager().connect(session,
+                            (ConnectionDescriptor) sqlCtx.getConnectionDescriptor().clone());
+                } catch (SQLException e) {
+                    session.err.println("Unable to open connection for slice " + (i + 1) + " of " + nSlices);
+                    SQLTools.printException(session, e);
+                    return 1;
+                }
+            }
+            for (int i = 0; i < outs.length; i++) {
+                final File out = options.merge ? file : RollingPrintStream.getPartFile(file, i + 1);
+                try {
+                    outs[i] = session.getContext().openOutputFile(out, false, options.merge);
+                } catch (IOException e) {
+                    session.err.println("Unable to open " + out + ": " + e.getMessage());
+                    return 1;
+                }
+            }
+
+            final long rows = export(session, split, options.column, source, conns, renderers, outs,
+                    options.merge);
+            session.out = origOut;
+            if (rows >= 0) {
+                session.out.println(rows + " row" + (rows == 1 ? "" : "s") + " exported in " + nSlices + " slice"
+                        + (nSlices == 1 ? "" : "s") + " (" + TimeUtils.millisToDurationString(
+                                System.currentTimeMillis() - startTime) + ")");
+            }
+            return rows >= 0 ? 0 : 1;
+        } finally {
+            session.out = origOut;
+            for (PrintStream out : outs) {
+                if (out != null) {
+                    out.close();
+                }
+            }
+            for (SQLConnectionContext conn : conns) {
+                if (conn != null) {
+                    conn.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * Fetches every slice on a thread of its own, rendering the rows on this one as they arrive.
+     *
+     * @return The number of rows exported, or -1 if the export failed
+     */
+    private long export(Session session, Split split, String column, String source, SQLConnectionContext[] conns,
+            Renderer[] renderers, PrintStream[] outs, boolean merge) {
+        final int nSlices = conns.length;
+        final BlockingQueue<Batch> queue = new ArrayBlockingQueue<>(nSlices * BATCHES_PER_SLICE);
+        final SliceThread[] threads = new SliceThread[nSlices];
+        for (int i = 0; i < nSlices; i++) {
+            threads[i] = new SliceThread(session, i, conns[i].getConnection(),
+                    "SELECT * FROM " + source + split.getPredicate(column, i), split.getBinds(i), queue);
+            threads[i].start();
+        }
+
+        final RollingPrintStream rolling = merge && outs[0] instanceof RollingPrintStream
+                ? (RollingPrintStream) outs[0] : null;
+        ColumnDescription[] mergedColumns = null;
+        long rowCount = 0;
+        boolean ok = true;
+        int active = nSlices;
+        try {
+            while (ok && active > 0) {
+                final Batch batch = queue.take();
+                final int idx = merge ? 0 : batch.slice;
+                final Renderer renderer = renderers[idx];
+                session.out = outs[idx];
+
+                if (batch.columns != null) {
+                    if (!merge) {
+                        renderer.header(batch.columns);
+                    } else if (mergedColumns == null) {
+                        mergedColumns = batch.columns;
+                        renderer.header(mergedColumns);
+                    }
+                } else if (batch.rows != null) {
+                    for (int i = 0; ok && i < batch.rows.size(); i++) {
+                        if (rolling != null && rolling.isFull()) {
+                            ok = roll(session, renderer, rolling, mergedColumns);
+                        }
+                        ok = ok && renderer.row(batch.rows.get(i));
+                        if (ok && rolling != null) {
+                            rolling.rowWritten();
+                        }
+                    }
+                    if (batch.warnings != null) {
+                        session.err.print(batch.warnings);
+                    }
+                    if (batch.fetchError != null) {
+                        session.setException(batch.fetchError);
+                    }
+                } else {
+                    --active;
+                    rowCount += batch.rowCount;
+                    if (batch.error != null) {
+                        session.err.println("Slice " + (batch.slice + 1) + " of " + nSlices + " failed");
+                        if (batch.error instanceof SQLException) {
+                            SQLTools.printException(session, (SQLException) batch.error);
+                        } else {
+                            session.err.println(batch.error.toString());
+                        }
+                        ok = false;
+                    } else if (ok && !merge) {
+                        ok = renderer.flush();
+                    }
+                }
+            }
+            if (ok && merge && mergedColumns != null) {
+                session.out = outs[0];
+                ok = renderers[0].flush();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            ok = false;
+        } finally {
+            // If anything went wrong, the remaining slices are stopped. Either way, they must be finished with
+            // their connections before the connections are closed.
+            for (SliceThread thread : threads) {
+                thread.abort();
+            }
+            for (SliceThread thread : threads) {
+                joinUninterruptibly(thread);
+            }
+        }
+        return ok ? rowCount : -1;
+    }
+
+    private static void joinUninterruptibly(Thread thread) {
+        boolean interrupted = false;
+        while (thread.isAlive()) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Moves the merged output on to its next file, starting it afresh as {@link SQLRenderer} does.
+     */
+    private static boolean roll(Session session, Renderer renderer, RollingPrintStream rolling,
+            ColumnDescription[] columns) {
+        if (!renderer.flush()) {
+            return false;
+        }
+        try {
+            rolling.roll();
+        } catch (IOException e) {
+            session.err.println("Unable to start part " + (rolling.getPart() + 1) + " of the output: "
+                    + e.getMessage());
+            return false;
+        }
+        renderer.header(columns);
+        return true;
+    }
+
+    /**
+     * The points at which the range of the partitioning column is divided into slices. There is one fewer cut
+     * than there are slices. The first slice also picks up the rows in which the column is NULL, and the last
+     * slice is open ended.
+     */
+    static class Split {
+        private final Object[] cuts;
+
+        /**
+         * If true, a cut belongs to the slice below it, otherwise it belongs to the slice above it.
+         */
+        private final boolean upperInclusive;
+
+        Split(Object[] cuts, boolean upperInclusive) {
+            this.cuts = cuts;
+            this.upperInclusive = upperInclusive;
+        }
+
+        /**
+         * Divides the range between the lowest and highest values of an integer column into equal parts. The
+         * bounds are worked out with {@link BigInteger}, and bound as the column's own type ({@link Long} or
+         * {@link BigDecimal}), so that keys wider than a <code>long</code> are split correctly.
+         *
+         * @return The split, or null if the column is not an integer
+         */
+        static Split minMax(Connection conn, String source, String column, int slices) throws SQLException {
+            try (Statement statement = conn.createStatement();
+                 ResultSet rs = statement.executeQuery("SELECT MIN(" + column + "), MAX(" + column + ") FROM "
+                         + source)) {
+                final ResultSetMetaData meta = rs.getMetaData();
+                if (!isInteger(meta, 1)) {
+                    return null;
+                }
+                if (!rs.next()) {
+                    return new Split(new Object[0], false);
+                }
+                final BigDecimal min = rs.getBigDecimal(1);
+                final BigDecimal max = rs.getBigDecimal(2);
+                if (min == null || max == null) {
+                    return new Split(new Object[0], false);
+                }
+                final boolean isDecimal = meta.getColumnType(1) == Types.DECIMAL
+                        || meta.getColumnType(1) == Types.NUMERIC;
+                final BigInteger low = min.toBigInteger();
+                final BigInteger span = max.toBigInteger().subtract(low).add(BigInteger.ONE);
+                final int n = span.compareTo(BigInteger.valueOf(slices)) < 0 ? span.intValue() : Math.max(slices, 1);
+                final Object[] cuts = new Object[n - 1];
+                for (int i = 1; i < n; i++) {
+                    final BigInteger cut = low.add(span.multiply(BigInteger.valueOf(i)).divide(BigInteger.valueOf(n)));
+                    cuts[i - 1] = isDecimal ? new BigDecimal(cut) : (Object) cut.longValue();
+                }
+                return new Split(cuts, false);
+            }
+        }
+
+        /**
+         * Asks the database to divide the (non-NULL) values of the column into groups of the same size, using
+         * NTILE(), so that the slices hold roughly the same number of rows whatever the column's type and however
+         * its values are distributed. Groups that end on the same value are combined.
+         */
+        static Split ntile(Connection conn, String source, String column, int slices) throws SQLException {
+            final String sql = "SELECT jsqsh_slice, MAX(" + column + ") FROM (SELECT " + column
+                    + ", NTILE(" + slices + ") OVER (ORDER BY " + column + ") AS jsqsh_slice FROM " + source
+                    + " WHERE " + column + " IS NOT NULL) jsqsh_tiles GROUP BY jsqsh_slice ORDER BY jsqsh_slice";
+            final List<Object> bounds = new ArrayList<>();
+            try (Statement statement = conn.createStatement(); ResultSet rs = statement.executeQuery(sql)) {
+                while (rs.next()) {
+                    final Object bound = rs.getObject(2);
+                    if (bounds.isEmpty() || !bound.equals(bounds.get(bounds.size() - 1))) {
+                        bounds.add(bound);
+                    }
+                }
+            }
+
+            // The upper bound of the last group is the highest value, which the open ended last slice covers.
+            if (!bounds.isEmpty()) {
+                bounds.remove(bounds.size() - 1);
+            }
+            return new Split(bounds.toArray(), true);
+        }
+
+        private static boolean isInteger(ResultSetMetaData meta, int column) throws SQLException {
+            switch (meta.getColumnType(column)) {
+                case Types.BIGINT:
+                case Types.INTEGER:
+                case Types.SMALLINT:
+                case Types.TINYINT:
+                    return true;
+                case Types.DECIMAL:
+                case Types.NUMERIC:
+                    return meta.getScale(column) == 0;
+                default:
+                    return false;
+            }
+        }
+
+        int getSliceCount() {
+            return cuts.length + 1;
+        }
+
+        /**
+         * @return The WHERE clause that restricts a query to a slice, with a parameter marker for each cut
+         */
+        String getPredicate(String column, int slice) {
+            if (cuts.length == 0) {
+                return "";
+            }
+            final String below = upperInclusive ? " <= ?" : " < ?";
+            final String above = upperInclusive ? " > ?" : " >= ?";
+            if (slice == 0) {
+                return " WHERE (" + column + below + " OR " + column + " IS NULL)";
+            }
+            if (slice == cuts.length) {
+                return " WHERE " + column + above;
+            }
+            return " WHERE " + column + above + " AND " + column + below;
+        }
+
+        /**
+         * @return The values to bind to the parameter markers of {@link #getPredicate(String, int)}
+         */
+        Object[] getBinds(int slice) {
+            if (cuts.length == 0) {
+                return new Object[0];
+            }
+            if (slice == 0) {
+                return new Object[] { cuts[0] };
+            }
+            if (slice == cuts.length) {
+                return new Object[] { cuts[slice - 1] };
+            }
+            return new Object[] { cuts[slice - 1], cuts[slice] };
+        }
+    }
+
+    /**
+     * What a slice hands back to the rendering thread: its columns, once its query has been executed, then its
+     * rows, and finally a batch marking its end. The errors and warnings raised while fetching the rows of a batch
+     * come with it, as only the rendering thread reports to the session.
+     */
+    private static class Batch {
+        final int slice;
+        final ColumnDescription[] columns;
+        final List<String[]> rows;
+        final long rowCount;
+        final Throwable error;
+        final SQLException fetchError;
+        final String warnings;
+
+        Batch(int slice, ColumnDescription[] columns, List<String[]> rows, long rowCount, Throwable error) {
+            this(slice, columns, rows, rowCount, error, null, null);
+        }
+
+        Batch(int slice, List<String[]> rows, RowFetcher fetcher) {
+            this(slice, null, rows, 0, null, fetcher.takeError(), fetcher.takeWarnings());
+        }
+
+        private Batch(int slice, ColumnDescription[] columns, List<String[]> rows, long rowCount, Throwable error,
+                SQLException fetchError, String warnings) {
+            this.slice = slice;
+            this.columns = columns;
+            this.rows = rows;
+            this.rowCount = rowCount;
+            this.error = error;
+            this.fetchError = fetchError;
+            this.warnings = warnings;
+        }
+    }
+
+    /**
+     * Executes the query for a slice and fetches its rows.
+     */
+    private static class SliceThread extends Thread {
+        private final Session session;
+        private final int slice;
+        private final Connection conn;
+        private final String sql;
+        private final Object[] binds;
+        private final BlockingQueue<Batch> queue;
+        private volatile boolean aborted = false;
+        private volatile Statement statement;
+
+        SliceThread(Session session, int slice, Connection conn, String sql, Object[] binds,
+                BlockingQueue<Batch> queue) {
+            this.session = session;
+            this.slice = slice;
+            this.conn = conn;
+            this.sql = sql;
+            this.binds = binds;
+            this.queue = queue;
+
+            setName("ExportThread-" + session.getId() + "-" + (slice + 1));
+            setDaemon(true);
+        }
+
+        /**
+         * Stops the slice, cancelling its query if it is still running.
+         */
+        void abort() {
+            if (!aborted) {
+                aborted = true;
+                final Statement running = statement;
+                if (running != null && isAlive()) {
+                    try {
+                        running.cancel();
+                    } catch (SQLException e) {
+                        // The query is going to be closed regardless.
+                    }
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            long rowCount = 0;
+            Throwable error = null;
+            try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                statement = ps;
+                for (int i = 0; i < binds.length; i++) {
+                    ps.setObject(i + 1, binds[i]);
+                }
+                if (session.getFetchSize() > 0) {
+                    ps.setFetchSize(session.getFetchSize());
+                }
+
+                try (ResultSet rs = ps.executeQuery()) {
+                    final ColumnDescription[] columns = getDescription(rs);
+                    final RowFetcher fetcher = new RowFetcher(session, rs, columns,
+                            RowFetcher.getProjection(columns.length, null));
+                    fetcher.setDeferred(true);
+                    if (!hand(new Batch(slice, columns, null, 0, null))) {
+                        return;
+                    }
+
+                    List<String[]> rows = new ArrayList<>(BATCH_ROWS);
+                    while (!aborted && rs.next()) {
+                        rows.add(fetcher.fetch(++rowCount, new String[columns.length]));
+                        if (rows.size() == BATCH_ROWS) {
+                            if (!hand(new Batch(slice, rows, fetcher))) {
+                                return;
+                            }
+                            rows = new ArrayList<>(BATCH_ROWS);
+                        }
+                    }
+                    if (!rows.isEmpty() && !hand(new Batch(slice, rows, fetcher))) {
+                        return;
+                    }
+                }
+            } catch (Throwable e) {
+                error = e;
+            }
+
+            hand(new Batch(slice, null, null, rowCount, error));
+        }
+
+        /**
+         * Hands a batch to the rendering thread, waiting for room if necessary.
+         *
+         * @return false if the slice was aborted, in which case nobody is waiting for it any more
+         */
+        private boolean hand(Batch batch) {
+            try {
+                while (!queue.offer(batch, 100, TimeUnit.MILLISECONDS)) {
+                    if (aborted) {
+                        return false;
+                    }
+                }
+                return true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+
+        /**
+         * Describes the columns of the slice. Date formatters are shared by everyone using the same
+         * {@link DataFormatter}, and are not thread safe, so each slice gets its own.
+         */
+        private ColumnDescription[] getDescription(ResultSet rs) throws SQLException {
+            final SQLRenderer sqlRenderer = session.getSQLRenderer();
+            final DataFormatter formatter = session.getDataFormatter();
+            final ResultSetMetaData meta = rs.getMetaData();
+            final ColumnDescription[] columns = new ColumnDescription[meta.getColumnCount()];
+            for (int i = 0; i < columns.length; i++) {
+                final ColumnDescription col = sqlRenderer.getDescription(meta, i + 1);
+                final Formatter format = col.getFormatter();
+                if (format instanceof DateFormatter) {
+                    final int width = ((DateFormatter) format).getMaxWidth();
+                    if (col.getNativeType() == Types.DATE) {
+                        col.setFormatter(new DateFormatter(formatter.getDateFormat(), width));
+                    } else if (col.getNativeType() == Types.TIMESTAMP) {
+                        col.setFormatter(new DateFormatter(formatter.getDatetimeFormat(), width));
+                    }
+                }
+                columns[i] = col;
+            }
+            return columns;
+        }
+    }
+}
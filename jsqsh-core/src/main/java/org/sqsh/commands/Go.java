@@ -79,7 +79,15 @@ public class Go extends Command {
                 description = "Produces a crosstab of the final results")
         public String crosstab = null;
 
-        @Argv(program = "\\go", min = 0, max = 0, usage = "[-m style] [-i table] [-H] [-F]")
+        @OptionProperty(option = 'C', longOption = "cache", arg = NONE,
+                description = "Answers the query from the result cache, if possible")
+        public boolean cache = false;
+
+        @OptionProperty(option = 'N', longOption = "no-cache", arg = NONE,
+                description = "Executes the query, bypassing the result cache")
+        public boolean noCache = false;
+
+        @Argv(program = "\\go", min = 0, max = 0, usage = "[-m style] [-i table] [-H] [-F] [-C|-N]")
         public List<String> arguments = new ArrayList<>();
     }
 
@@ -130,6 +138,14 @@ public class Go extends Command {
             set(varMan, origVariableValues, "headers", Boolean.toString(!renderMan.isShowHeaders()));
         }
 
+        if (options.cache && options.noCache) {
+            session.err.println("--cache (-C) and --no-cache (-N) cannot be used together");
+            return 1;
+        }
+        if (options.cache || options.noCache) {
+            set(varMan, origVariableValues, "result_cache", Boolean.toString(options.cache));
+        }
+
         if (options.vars.size() > 0) {
             for (String nameValue : options.vars) {
                 String name = nameValue;
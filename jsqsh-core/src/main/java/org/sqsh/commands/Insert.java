@@ -55,7 +55,20 @@ public class Insert extends Command implements DatabaseCommand {
                 description = "Allow multiple rows per insert")
         public boolean multiRowInsert = false;
 
-        @Argv(program = "\\insert", min = 1, max = 1, usage = "[-s target-session] [-b batch-size] [-t terminator] " + "table_name")
+        @OptionProperty(option = 'c', longOption = "commit-interval", arg = REQUIRED, argName = "rows",
+                description = "Number of rows inserted between commits")
+        public int commitInterval = 0;
+
+        @OptionProperty(option = 'q', longOption = "queue-depth", arg = REQUIRED, argName = "batches",
+                description = "Number of batches that may be waiting to be inserted")
+        public int queueDepth = 4;
+
+        @OptionProperty(option = 'l', longOption = "literal", arg = NONE, argName = "literal",
+                description = "Execute literal INSERT statements rather than binding values")
+        public boolean literal = false;
+
+        @Argv(program = "\\insert", min = 1, max = 1, usage = "[-s target-session] [-b batch-size] [-c commit-interval] [-q queue-depth] [-t terminator] [-m] [-l] "
+                + "table_name")
         public List<String> arguments = new ArrayList<>();
     }
 
@@ -100,6 +113,11 @@ public class Insert extends Command implements DatabaseCommand {
         renderer.setConnection(targetConnection);
         renderer.setBatchTerminator(options.batchTerminator);
         renderer.setMultiRowInsert(options.multiRowInsert);
+        renderer.setPrepared(!options.literal);
+        renderer.setCommitInterval(options.commitInterval);
+        // Inserting into the session that runs the query must not overlap with reading its results, as the two
+        // would share a connection that is only safe to use from one thread at a time.
+        renderer.setQueueDepth(targetConnection == session.getConnection() ? 0 : options.queueDepth);
 
         // Get the current SQL statement.
         BufferManager bufferMan = session.getBufferManager();
@@ -0,0 +1,495 @@
+/*
+ * Copyright 2007-2022 Scott C. Gray
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sqsh.commands;
+
+import org.sqsh.MetadataCache;
+
+import javax.swing.event.TreeModelEvent;
+import javax.swing.event.TreeModelListener;
+import javax.swing.tree.TreeModel;
+import javax.swing.tree.TreePath;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+
+/**
+ * The model behind the <code>\tree</code> browser: schemas, then the types of table in each schema, then the tables of
+ * each type, then their columns. Nothing is looked up until it is needed, that is until the node it belongs under is
+ * first expanded, and long lists of children are shown a page at a time, ending with a node standing for the rest of
+ * them that shows the next page when {@link #showMore(Node)} is called on it.
+ *
+ * <p>When a node is expanded its children are taken from the metadata cache if they are there. Otherwise the node
+ * shows a placeholder while they are looked up by a background executor, and the tree is told about them once they
+ * arrive. After the children of a node are shown, the first few of them that have children of their own are looked
+ * up in the background as well, so that expanding them next is instant.
+ *
+ * <p>The model is to be used from a single thread (the Swing event thread), which is also the thread that is handed
+ * the results of background lookups, by way of the notifier given to the constructor. It has no dependency upon
+ * Swing being available beyond its interfaces, so it can be used headless.
+ */
+public class MetadataTreeModel implements TreeModel {
+
+    /**
+     * The number of children of a node shown at a time.
+     */
+    public static final int PAGE_SIZE = 500;
+
+    /**
+     * Where the model gets the names it displays from.
+     */
+    public interface Source {
+
+        /**
+         * @param cachedOnly If true, the names are to be returned only if they can be returned right away
+         * @return The names of the schemas. A null name stands for the objects of a database without schemas.
+         * @throws SQLException If the names cannot be looked up, or are not at hand when cachedOnly is true
+         */
+        List<String> getSchemas(boolean cachedOnly) throws SQLException;
+
+        /**
+         * @param schema The schema
+         * @param cachedOnly If true, the names are to be returned only if they can be returned right away
+         * @return The names of the tables in the schema, by type
+         * @throws SQLException If the names cannot be looked up, or are not at hand when cachedOnly is true
+         */
+        Map<String, List<String>> getTables(String schema, boolean cachedOnly) throws SQLException;
+
+        /**
+         * @param schema The schema of the table
+         * @param table The name of the table
+         * @param cachedOnly If true, the names are to be returned only if they can be returned right away
+         * @return The names of the columns of the table
+         * @throws SQLException If the names cannot be looked up, or are not at hand when cachedOnly is true
+         */
+        List<String> getColumns(String schema, String table, boolean cachedOnly) throws SQLException;
+    }
+
+    /**
+     * The kinds of node in the tree.
+     */
+    public enum Kind {
+        ROOT, SCHEMA, TYPE, TABLE, COLUMN, MORE, MESSAGE
+    }
+
+    /**
+     * A node of the tree. Its label is its {@link #toString()}.
+     */
+    public static class Node {
+        private final Kind kind;
+        private final String label;
+        private final String schema;
+        private final Node parent;
+        private List<Node> all = null;
+        private int shown = 0;
+        private boolean loading = false;
+        private Node more = null;
+        private Node placeholder = null;
+
+        private Node(Kind kind, String label, String schema, Node parent) {
+            this.kind = kind;
+            this.label = label;
+            this.schema = schema;
+            this.parent = parent;
+        }
+
+        /**
+         * @return The kind of node
+         */
+        public Kind getKind() {
+            return kind;
+        }
+
+        /**
+         * @return The node that this one is under, or null for the root
+         */
+        public Node getParent() {
+            return parent;
+        }
+
+        /**
+         * @return true if the children of this node have been looked up
+         */
+        public boolean isLoaded() {
+            return all != null;
+        }
+
+        /**
+         * @return true if the children of this node are being looked up in the background
+         */
+        public boolean isLoading() {
+            return loading;
+        }
+
+        private boolean hasChildren() {
+            return kind == Kind.ROOT || kind == Kind.SCHEMA || kind == Kind.TYPE || kind == Kind.TABLE;
+        }
+
+        private TreePath getPath() {
+            return parent == null ? new TreePath(this) : parent.getPath().pathByAddingChild(this);
+        }
+
+        @Override
+        public String toString() {
+            return label;
+        }
+    }
+
+    private final Source source;
+    private final Executor loader;
+    private final Executor notifier;
+    private final int prefetch;
+    private final Node root = new Node(Kind.ROOT, "", null, null);
+    private final List<TreeModelListener> listeners = new CopyOnWriteArrayList<>();
+    private int pageSize = PAGE_SIZE;
+
+    /**
+     * @param source Where the names come from
+     * @param loader Looks up names in the background
+     * @param notifier Runs the code that hands the names looked up in the background to the model, on the thread
+     *         that the model is used from
+     * @param prefetch The number of children of a node that are looked up ahead of time once the node is shown, or
+     *         0 to look nothing up ahead of time
+     */
+    public MetadataTreeModel(Source source, Executor loader, Executor notifier, int prefetch) {
+        this.source = source;
+        this.loader = loader;
+        this.notifier = notifier;
+        this.prefetch = prefetch;
+    }
+
+    /**
+     * @param pageSize The number of children of a node shown at a time
+     */
+    public void setPageSize(int pageSize) {
+        this.pageSize = Math.max(pageSize, 1);
+    }
+
+    /**
+     * Makes sure that the children of a node are looked up, or are on their way. Called when the node is about to be
+     * expanded.
+     *
+     * @param node The node
+     */
+    public void expand(Node node) {
+        if (!node.hasChildren() || node.isLoaded() || node.loading) {
+            return;
+        }
+        try {
+            loaded(node, children(node, true));
+            return;
+        } catch (SQLException e) {
+            // Not at hand, so look it up in the background.
+        }
+        node.loading = true;
+        loader.execute(() -> {
+            List<Node> children;
+            try {
+                children = children(node, false);
+            } catch (SQLException e) {
+                children = Collections.singletonList(new Node(Kind.MESSAGE, "Error: " + e.getMessage(), null, node));
+            }
+            final List<Node> result = children;
+            notifier.execute(() -> {
+                node.loading = false;
+                loaded(node, result);
+            });
+        });
+    }
+
+    /**
+     * Shows the next page of the children of a node, in place of the node standing for the rest of them. Does
+     * nothing if the node is not one of those.
+     *
+     * @param more The node standing for the rest of the children
+     */
+    public void showMore(Node more) {
+        final Node parent = more.parent;
+        if (more.kind != Kind.MORE || parent == null || parent.more != more) {
+            return;
+        }
+        final int from = parent.shown;
+        parent.more = null;
+        fire(parent, new int[] { from }, new Object[] { more }, false);
+
+        parent.shown = Math.min(parent.all.size(), from + pageSize);
+        updateMore(parent);
+        final int count = parent.shown - from + (parent.more == null ? 0 : 1);
+        final int[] indices = new int[count];
+        final Object[] added = new Object[count];
+        for (int i = 0; i < count; i++) {
+            indices[i] = from + i;
+            added[i] = getChild(parent, from + i);
+        }
+        fire(parent, indices, added, true);
+        prefetch(parent.all.subList(from, parent.shown));
+    }
+
+    private void loaded(Node node, List<Node> children) {
+        node.all = children;
+        node.shown = Math.min(children.size(), pageSize);
+        updateMore(node);
+        final TreeModelEvent event = new TreeModelEvent(this, node.getPath());
+        for (TreeModelListener listener : listeners) {
+            listener.treeStructureChanged(event);
+        }
+        prefetch(children.subList(0, node.shown));
+    }
+
+    private void updateMore(Node node) {
+        final int remaining = node.all.size() - node.shown;
+        node.more = remaining > 0 ? new Node(Kind.MORE, "(" + remaining + " more)", null, node) : null;
+    }
+
+    /**
+     * Looks up the children of the first few of a list of nodes in the background, so that they are at hand when
+     * needed. The nodes themselves are left alone.
+     */
+    private void prefetch(List<Node> nodes) {
+        int count = 0;
+        for (Node node : nodes) {
+            if (count >= prefetch) {
+                break;
+            }
+            if (node.kind == Kind.SCHEMA || node.kind == Kind.TABLE) {
+                ++count;
+                loader.execute(() -> {
+                    try {
+                        children(node, false);
+                    } catch (SQLException e) {
+                        // It will be looked up again, and the error shown, if the node is expanded.
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * Looks up the children of a node.
+     */
+    private List<Node> children(Node node, boolean cachedOnly) throws SQLException {
+        final List<Node> children = new ArrayList<>();
+        switch (node.kind) {
+            case ROOT:
+                for (String schema : source.getSchemas(cachedOnly)) {
+                    children.add(new Node(Kind.SCHEMA, schema == null ? "(no schema)" : schema, schema, node));
+                }
+                break;
+            case SCHEMA:
+                for (Map.Entry<String, List<String>> type : source.getTables(node.schema, cachedOnly).entrySet()) {
+                    final Node typeNode = new Node(Kind.TYPE, type.getKey(), node.schema, node);
+                    final List<Node> tables = new ArrayList<>(type.getValue().size());
+                    for (String table : type.getValue()) {
+                        tables.add(new Node(Kind.TABLE, table, node.schema, typeNode));
+                    }
+                    typeNode.all = tables;
+                    typeNode.shown = Math.min(tables.size(), pageSize);
+                    updateMore(typeNode);
+                    children.add(typeNode);
+                }
+                break;
+            case TABLE:
+                for (String column : source.getColumns(node.schema, node.label, cachedOnly)) {
+                    children.add(new Node(Kind.COLUMN, column, node.schema, node));
+                }
+                break;
+            default:
+                break;
+        }
+        return children;
+    }
+
+    private void fire(Node parent, int[] indices, Object[] children, boolean inserted) {
+        final TreeModelEvent event = new TreeModelEvent(this, parent.getPath(), indices, children);
+        for (TreeModelListener listener : listeners) {
+            if (inserted) {
+                listener.treeNodesInserted(event);
+            } else {
+                listener.treeNodesRemoved(event);
+            }
+        }
+    }
+
+    @Override
+    public Node getRoot() {
+        return root;
+    }
+
+    @Override
+    public Object getChild(Object parent, int index) {
+        final Node node = (Node) parent;
+        if (!node.isLoaded()) {
+            if (node.placeholder == null) {
+                node.placeholder = new Node(Kind.MESSAGE, "Loading...", null, node);
+            }
+            return node.placeholder;
+        }
+        return index < node.shown ? node.all.get(index) : node.more;
+    }
+
+    @Override
+    public int getChildCount(Object parent) {
+        final Node node = (Node) parent;
+        if (!node.hasChildren()) {
+            return 0;
+        }
+        if (!node.isLoaded()) {
+            return 1;
+        }
+        return node.shown + (node.more == null ? 0 : 1);
+    }
+
+    @Override
+    public boolean isLeaf(Object node) {
+        return !((Node) node).hasChildren();
+    }
+
+    @Override
+    public void valueForPathChanged(TreePath path, Object newValue) {
+    }
+
+    @Override
+    public int getIndexOfChild(Object parent, Object child) {
+        final Node node = (Node) parent;
+        if (child == null || !node.isLoaded()) {
+            return child != null && child == node.placeholder ? 0 : -1;
+        }
+        if (child == node.more) {
+            return node.shown;
+        }
+        final int index = node.all.indexOf(child);
+        return index < node.shown ? index : -1;
+    }
+
+    @Override
+    public void addTreeModelListener(TreeModelListener listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public void removeTreeModelListener(TreeModelListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * A source of names that takes them from the metadata cache of a connection. Names that are not cached are looked
+     * up over a connection of the cache's own (see {@link MetadataCache#withOwnConnection(String, Function)}), as
+     * they are looked up in the background while the session goes on using its connection.
+     */
+    public static class CacheSource implements Source {
+        private final MetadataCache meta;
+        private final String catalog;
+        private final String schemaPattern;
+        private final String tablePattern;
+        private final String[] types;
+
+        private interface Lookup<T> {
+            T lookup(MetadataCache meta) throws SQLException;
+        }
+
+        /**
+         * @param meta The metadata cache
+         * @param catalog The catalog whose objects are shown, as found out on the thread of the session
+         * @param schemaPattern The pattern that schemas must match
+         * @param tablePattern The pattern that tables must match
+         * @param types The types of table to show, or null for all of them
+         */
+        public CacheSource(MetadataCache meta, String catalog, String schemaPattern, String tablePattern,
+                String[] types) {
+            this.meta = meta;
+            this.catalog = catalog;
+            this.schemaPattern = schemaPattern;
+            this.tablePattern = tablePattern;
+            this.types = types;
+        }
+
+        private <T> T lookup(boolean cachedOnly, Lookup<T> lookup) throws SQLException {
+            if (cachedOnly) {
+                return lookup.lookup(meta.cachedOnly());
+            }
+            final SQLException[] failure = new SQLException[1];
+            final T result = meta.withOwnConnection(catalog, own -> {
+                try {
+                    return lookup.lookup(own);
+                } catch (SQLException e) {
+                    failure[0] = e;
+                    return null;
+                }
+            });
+            if (failure[0] != null) {
+                throw failure[0];
+            }
+            return result;
+        }
+
+        @Override
+        public List<String> getSchemas(boolean cachedOnly) throws SQLException {
+            final List<String> schemas = lookup(cachedOnly, own -> {
+                final List<String> names = new ArrayList<>();
+                try (ResultSet results = new PatternFilteredResultSet(own.getSchemas(), 1, schemaPattern)) {
+                    while (results.next()) {
+                        names.add(results.getString(1));
+                    }
+                }
+                return names;
+            });
+            if (schemas.isEmpty() && (schemaPattern == null || "%".equals(schemaPattern))) {
+                schemas.add(null);
+            }
+            return schemas;
+        }
+
+        @Override
+        public Map<String, List<String>> getTables(String schema, boolean cachedOnly) throws SQLException {
+            return lookup(cachedOnly, own -> {
+                final Map<String, List<String>> tables = new LinkedHashMap<>();
+                try (ResultSet results = own.getTables(catalog, schema == null ? schemaPattern : schema,
+                        tablePattern, types)) {
+                    while (results.next()) {
+                        if (schema == null || schema.equals(results.getString(2))) {
+                            final String type = results.getString(4);
+                            tables.computeIfAbsent(type == null ? "" : type, t -> new ArrayList<>())
+                                    .add(results.getString(3));
+                        }
+                    }
+                }
+                return tables;
+            });
+        }
+
+        @Override
+        public List<String> getColumns(String schema, String table, boolean cachedOnly) throws SQLException {
+            return lookup(cachedOnly, own -> {
+                final List<String> columns = new ArrayList<>();
+                try (ResultSet results = own.getColumns(catalog, schema, table, "%")) {
+                    while (results.next()) {
+                        if ((schema == null || schema.equals(results.getString(2)))
+                                && table.equals(results.getString(3))) {
+                            columns.add(results.getString(4));
+                        }
+                    }
+                }
+                return columns;
+            });
+        }
+    }
+}
@@ -17,6 +17,7 @@ package org.sqsh.commands;
 
 import org.sqsh.Command;
 import org.sqsh.DatabaseCommand;
+import org.sqsh.MetadataCache;
 import org.sqsh.Renderer;
 import org.sqsh.SQLConnectionContext;
 import org.sqsh.SQLObjectName;
@@ -26,8 +27,6 @@ import org.sqsh.SqshOptions;
 import org.sqsh.options.Argv;
 import org.sqsh.options.OptionProperty;
 
-import java.sql.Connection;
-import java.sql.DatabaseMetaData;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
@@ -76,11 +75,10 @@ public class Procs extends Command implements DatabaseCommand {
             name = new SQLObjectName((SQLConnectionContext) session.getConnectionContext(), "%");
         }
 
-        Connection con = session.getConnection();
         Renderer renderer = session.getRendererManager().getCommandRenderer(session);
-        DatabaseMetaData meta = con.getMetaData();
+        MetadataCache meta = ((SQLConnectionContext) session.getConnectionContext()).getMetadataCache();
 
-        try (ResultSet result = meta.getProcedures(name.getCatalog(),
+        try (ResultSet result = meta.streamProcedures(name.getCatalog(),
                 options.schemaPattern != null
                         ? options.schemaPattern
                         : name.getSchema(),
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2007-2022 Scott C. Gray
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sqsh.commands;
+
+import org.sqsh.Command;
+import org.sqsh.DatabaseCommand;
+import org.sqsh.SQLConnectionContext;
+import org.sqsh.Session;
+import org.sqsh.SqshOptions;
+import org.sqsh.options.Argv;
+import org.sqsh.options.OptionProperty;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.sqsh.options.ArgumentRequired.NONE;
+
+/**
+ * Implements the \refresh command, which throws away the metadata cached for the current connection.
+ */
+public class Refresh extends Command implements DatabaseCommand {
+
+    private static class Options extends SqshOptions {
+        @OptionProperty(option = 'r', longOption = "results", arg = NONE,
+                description = "Also clears the cache of query results")
+        public boolean results = false;
+
+        @Argv(program = "\\refresh", usage = "[-r]", min = 0, max = 0)
+        public List<String> arguments = new ArrayList<>();
+    }
+
+    @Override
+    public SqshOptions getOptions() {
+        return new Options();
+    }
+
+    @Override
+    public int execute(Session session, SqshOptions opts) throws Exception {
+        Options options = (Options) opts;
+        SQLConnectionContext sqlContext = (SQLConnectionContext) session.getConnectionContext();
+        int count = sqlContext.getMetadataCache().invalidate();
+        if (options.results) {
+            session.getSQLRenderer().getResultCache().clear();
+        }
+        if (session.isInteractive()) {
+            session.out.println("Discarded " + count + " cached metadata lookup" + (count == 1 ? "" : "s"));
+        }
+        return 0;
+    }
+}
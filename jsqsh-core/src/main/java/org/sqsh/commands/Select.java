@@ -17,6 +17,9 @@ package org.sqsh.commands;
 
 import org.sqsh.Command;
 import org.sqsh.DatabaseCommand;
+import org.sqsh.ForeignKeyGraph;
+import org.sqsh.MetadataCache;
+import org.sqsh.SQLConnectionContext;
 import org.sqsh.SQLTools;
 import org.sqsh.Session;
 import org.sqsh.SessionRedrawBufferMessage;
@@ -24,8 +27,6 @@ import org.sqsh.SqshOptions;
 import org.sqsh.options.Argv;
 import org.sqsh.options.OptionProperty;
 
-import java.sql.Connection;
-import java.sql.DatabaseMetaData;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
@@ -67,16 +68,16 @@ public class Select extends Command implements DatabaseCommand {
         }
 
 
-        // First, gather up a description of every table.
-        Table[] descriptions = new Table[options.arguments.size()];
+        // First, gather up a description of every table, all at once.
+        Table[] descriptions;
+        try {
+            descriptions = describe(session, options.arguments);
+        } catch (SQLException e) {
+            session.err.println("Failed to fetch column descriptions: " + e.getMessage());
+            return 1;
+        }
         for (int i = 0; i < descriptions.length; i++) {
-            try {
-                descriptions[i] = describe(session, options.arguments.get(i));
-                descriptions[i].alias = Character.toString((char) ('a' + i));
-            } catch (SQLException e) {
-                session.err.println("Failed to fetch column descriptions for " + "table " + options.arguments.get(i) + ": " + e.getMessage());
-                return 1;
-            }
+            descriptions[i].alias = Character.toString((char) ('a' + i));
 
             // If no columns where found for a given table, that means it couldn't be found.
             if (descriptions[i].columns.length == 0) {
@@ -142,6 +143,8 @@ public class Select extends Command implements DatabaseCommand {
 
     /**
      * Attempts to fetch a join clause by asking the database about primary/foriegn key relationships between tables.
+     * The keys of each table are looked up once, and kept in the graph of foreign keys of the connection for next
+     * time.
      *
      * @param session The session.
      * @param tables The tables to join
@@ -150,20 +153,23 @@ public class Select extends Command implements DatabaseCommand {
      * @throws SQLException
      */
     private String getKeyJoin(Session session, Table[] tables, String linesep) throws SQLException {
-        Connection conn = session.getConnection();
-        DatabaseMetaData meta = conn.getMetaData();
+        MetadataCache meta = ((SQLConnectionContext) session.getConnectionContext()).getMetadataCache();
+        List<String[]> names = new ArrayList<>(tables.length);
+        for (Table table : tables) {
+            names.add(table.getQualifiedName());
+        }
+        ForeignKeyGraph graph = meta.getForeignKeyGraph(names);
         StringBuilder join = new StringBuilder();
         int joinCount = 0;
         for (int t1 = 0; t1 < tables.length; ++t1) {
             Table table1 = tables[t1];
             for (int t2 = 0; t2 < tables.length; ++t2) {
                 Table table2 = tables[t2];
-                ResultSet rs = meta.getCrossReference(table1.catalog, table1.schema, table1.tableName, table2.catalog, table2.schema, table2.tableName);
-                while (rs.next()) {
+                for (ForeignKeyGraph.ForeignKey key : graph.getKeys(names.get(t1), names.get(t2))) {
                     if (joinCount > 0) {
                         join.append(linesep).append("   AND ");
                     }
-                    join.append(table1.alias).append('.').append(SQLTools.quoteIdentifier(rs.getString(4))).append(" = ").append(table2.alias).append('.').append(SQLTools.quoteIdentifier(rs.getString(8)));
+                    join.append(table1.alias).append('.').append(SQLTools.quoteIdentifier(key.getParentColumn())).append(" = ").append(table2.alias).append('.').append(SQLTools.quoteIdentifier(key.getChildColumn()));
                     ++joinCount;
                 }
             }
@@ -203,32 +209,46 @@ public class Select extends Command implements DatabaseCommand {
     }
 
     /**
-     * Helper method to fetch the description of a table.
+     * Helper method to fetch the descriptions of tables. The columns of all of them are looked up at once.
      *
      * @param session The session
-     * @param name The name of the table.
-     * @return A description of the table.
+     * @param names The names of the tables.
+     * @return A description of each table.
      * @throws SQLException Thrown if things don't work out so good.
      */
-    private Table describe(Session session, String name) throws SQLException {
-        Connection conn = session.getConnection();
-        DatabaseMetaData meta = conn.getMetaData();
-        SQLTools.ObjectDescription nameDescription = SQLTools.parseObjectName(name);
-        Table table = new Table();
-        table.name = name;
-        ResultSet result = meta.getColumns(nameDescription.getCatalog(), nameDescription.getSchema(), nameDescription.getName(), "%");
-        ArrayList<Column> cols = new ArrayList<Column>();
-        while (result.next()) {
-            Column col = new Column();
-            table.catalog = result.getString(1);
-            table.schema = result.getString(2);
-            table.tableName = result.getString(3);
-            col.name = result.getString(4);
-            col.type = result.getInt(5);
-            cols.add(col);
+    private Table[] describe(Session session, List<String> names) throws SQLException {
+        MetadataCache meta = ((SQLConnectionContext) session.getConnectionContext()).getMetadataCache();
+        List<String[]> patterns = new ArrayList<>(names.size());
+        for (String name : names) {
+            SQLTools.ObjectDescription nameDescription = SQLTools.parseObjectName(name);
+            patterns.add(new String[] { nameDescription.getCatalog(), nameDescription.getSchema(), nameDescription.getName() });
         }
-        table.columns = cols.toArray(new Column[0]);
-        return table;
+        List<ResultSet> results = meta.getColumns(patterns, "%");
+        Table[] tables = new Table[names.size()];
+        try {
+            for (int i = 0; i < tables.length; i++) {
+                Table table = new Table();
+                table.name = names.get(i);
+                ArrayList<Column> cols = new ArrayList<Column>();
+                ResultSet result = results.get(i);
+                while (result.next()) {
+                    Column col = new Column();
+                    table.catalog = result.getString(1);
+                    table.schema = result.getString(2);
+                    table.tableName = result.getString(3);
+                    col.name = result.getString(4);
+                    col.type = result.getInt(5);
+                    cols.add(col);
+                }
+                table.columns = cols.toArray(new Column[0]);
+                tables[i] = table;
+            }
+        } finally {
+            for (ResultSet result : results) {
+                result.close();
+            }
+        }
+        return tables;
     }
 
     private static class Table {
@@ -240,6 +260,10 @@ public class Select extends Command implements DatabaseCommand {
         public String owner;
         public String alias;
         public Column[] columns;
+
+        public String[] getQualifiedName() {
+            return new String[] { catalog, schema, tableName };
+        }
     }
 
     private static class Column {
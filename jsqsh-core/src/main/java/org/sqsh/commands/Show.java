@@ -325,8 +325,7 @@ public class Show extends Command implements DatabaseCommand {
         }
         SQLConnectionContext ctx = (SQLConnectionContext) session.getConnectionContext();
         SQLObjectName name = (options.arguments.size() == 2) ? new SQLObjectName(ctx, options.arguments.get(1)) : new SQLObjectName(ctx, "%");
-        DatabaseMetaData meta = con.getMetaData();
-        return meta.getColumns(
+        return ctx.getMetadataCache().streamColumns(
                 (options.catalog != null ? options.catalog : name.getCatalog()),
                 (options.schemaPattern != null ? options.schemaPattern : name.getSchema()),
                 (options.tablePattern != null ? options.tablePattern : name.getName()),
@@ -376,8 +375,7 @@ public class Show extends Command implements DatabaseCommand {
         }
         SQLConnectionContext ctx = (SQLConnectionContext) session.getConnectionContext();
         SQLObjectName name = (options.arguments.size() == 2) ? new SQLObjectName(ctx, options.arguments.get(1)) : new SQLObjectName(ctx, "%");
-        DatabaseMetaData meta = con.getMetaData();
-        return meta.getFunctions(
+        return ctx.getMetadataCache().streamFunctions(
                 (options.catalog != null ? options.catalog : name.getCatalog()),
                 (options.schemaPattern != null ? options.schemaPattern : name.getSchema()),
                 (options.tablePattern != null ? options.tablePattern : name.getName()));
@@ -441,8 +439,7 @@ public class Show extends Command implements DatabaseCommand {
         SQLObjectName name = (options.arguments.size() == 2)
                 ? new SQLObjectName(ctx, options.arguments.get(1))
                 : new SQLObjectName(ctx, "%");
-        DatabaseMetaData meta = con.getMetaData();
-        return meta.getProcedures(
+        return ctx.getMetadataCache().streamProcedures(
                 (options.catalog != null ? options.catalog : name.getCatalog()),
                 (options.schemaPattern != null ? options.schemaPattern : name.getSchema()),
                 (options.tablePattern != null ? options.tablePattern : name.getName()));
@@ -521,8 +518,7 @@ public class Show extends Command implements DatabaseCommand {
         SQLObjectName name = (options.arguments.size() == 2)
                 ? new SQLObjectName(ctx, options.arguments.get(1))
                 : new SQLObjectName(ctx, "%");
-        DatabaseMetaData meta = con.getMetaData();
-        return meta.getTables(
+        return ctx.getMetadataCache().streamTables(
                 (options.catalog != null ? options.catalog : name.getCatalog()),
                 (options.schemaPattern != null ? options.schemaPattern : name.getSchema()),
                 (options.tablePattern != null ? options.tablePattern : name.getName()),
@@ -0,0 +1,187 @@
+/*
+ * Copyright 2007-2022 Scott C. Gray
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sqsh.commands;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.SQLWarning;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * A result set made up of the rows of several others (slices), one after another, each of which is still being
+ * produced in the background. Each slice is waited for only once the rows of the slices before it have been read,
+ * so the first rows can be displayed as soon as the first slice arrives. All of the slices must have the same
+ * columns.
+ *
+ * <p>Only reading forward through the rows is supported. Closing the result set closes the slice being read and
+ * cancels those that have yet to be read. Slices that are already being produced are left to finish, rather than
+ * being interrupted (which some drivers answer by closing the connection they were using), and are thrown away.
+ */
+public class SlicedResultSet extends DelegatingResultSet {
+
+    private final List<Future<ResultSet>> slices;
+    private final List<Callable<ResultSet>> work;
+    private final ExecutorService executor;
+    private final int ahead;
+    private final int sliceCount;
+    private int slice = -1;
+    private boolean closed = false;
+
+    /**
+     * @param slices The slices, in the order in which their rows are to be read. There must be at least one.
+     */
+    public SlicedResultSet(List<Future<ResultSet>> slices) {
+        super(null);
+        this.slices = slices;
+        this.work = null;
+        this.executor = null;
+        this.ahead = 0;
+        this.sliceCount = slices.size();
+    }
+
+    /**
+     * Creates a result set whose slices are produced by an executor. Only a few slices at a time are handed to the
+     * executor ahead of the one being read, so that a great many of them do not pile up in its queue, or in memory,
+     * all at once.
+     *
+     * @param work The work that produces each slice, in the order in which their rows are to be read. There must be
+     *         at least one.
+     * @param executor The executor
+     * @param ahead The number of slices beyond the one being read that may be handed to the executor
+     */
+    public SlicedResultSet(List<Callable<ResultSet>> work, ExecutorService executor, int ahead) {
+        super(null);
+        this.slices = new ArrayList<>(work.size());
+        this.work = work;
+        this.executor = executor;
+        this.ahead = Math.max(ahead, 0);
+        this.sliceCount = work.size();
+        submit(0);
+    }
+
+    /**
+     * @return The number of slices
+     */
+    public int getSliceCount() {
+        return sliceCount;
+    }
+
+    @Override
+    public boolean next() throws SQLException {
+        if (closed) {
+            throw new SQLException("Result set is closed");
+        }
+        current();
+        while (!rs.next()) {
+            if (slice == sliceCount - 1) {
+                return false;
+            }
+            // The last slice is kept open once read, so that its description is still there to be asked for.
+            rs.close();
+            rs = take(++slice);
+        }
+        return true;
+    }
+
+    @Override
+    public ResultSetMetaData getMetaData() throws SQLException {
+        return current().getMetaData();
+    }
+
+    @Override
+    public SQLWarning getWarnings() throws SQLException {
+        return current().getWarnings();
+    }
+
+    @Override
+    public Statement getStatement() {
+        return null;
+    }
+
+    @Override
+    public boolean isClosed() {
+        return closed;
+    }
+
+    @Override
+    public void close() throws SQLException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        for (int i = slice + 1; i < slices.size(); i++) {
+            slices.get(i).cancel(false);
+        }
+        if (rs != null) {
+            rs.close();
+        }
+    }
+
+    /**
+     * @return The slice being read, waiting for the first one to arrive if reading has not yet started
+     */
+    private ResultSet current() throws SQLException {
+        if (rs == null) {
+            slice = 0;
+            rs = take(0);
+        }
+        return rs;
+    }
+
+    /**
+     * Waits for a slice to arrive and returns it, without moving on to it. The slice is left for the caller to read
+     * and close.
+     *
+     * @param i The number of the slice, starting at 0
+     * @return The slice
+     * @throws SQLException If the slice could not be produced
+     */
+    public ResultSet take(int i) throws SQLException {
+        submit(i);
+        try {
+            return slices.get(i).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted waiting for results");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof SQLException) {
+                throw (SQLException) e.getCause();
+            }
+            throw new SQLException(e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    /**
+     * Hands the work of producing a slice, and of up to {@link #ahead} slices beyond it, to the executor, if that has
+     * not been done already.
+     */
+    private void submit(int i) {
+        if (work == null || closed) {
+            return;
+        }
+        final int last = Math.min(i + ahead, sliceCount - 1);
+        while (slices.size() <= last) {
+            slices.add(executor.submit(work.get(slices.size())));
+        }
+    }
+}
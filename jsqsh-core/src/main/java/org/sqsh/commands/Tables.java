@@ -17,6 +17,7 @@ package org.sqsh.commands;
 
 import org.sqsh.Command;
 import org.sqsh.DatabaseCommand;
+import org.sqsh.MetadataCache;
 import org.sqsh.Renderer;
 import org.sqsh.SQLConnectionContext;
 import org.sqsh.SQLObjectName;
@@ -26,8 +27,6 @@ import org.sqsh.SqshOptions;
 import org.sqsh.options.Argv;
 import org.sqsh.options.OptionProperty;
 
-import java.sql.Connection;
-import java.sql.DatabaseMetaData;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
@@ -110,10 +109,9 @@ public class Tables extends Command implements DatabaseCommand {
             cols.add(4); // Table Type
         }
 
-        Connection con = session.getConnection();
         Renderer renderer = session.getRendererManager().getCommandRenderer(session);
-        DatabaseMetaData meta = con.getMetaData();
-        try (ResultSet result = meta.getTables(
+        MetadataCache meta = ((SQLConnectionContext) session.getConnectionContext()).getMetadataCache();
+        try (ResultSet result = meta.streamTables(
                 name.getCatalog(),
                 options.schemaPattern != null ? options.schemaPattern : name.getSchema(),
                 options.tablePattern != null ? options.tablePattern : name.getName(), types)) {
@@ -17,38 +17,37 @@ package org.sqsh.commands;
 
 import org.sqsh.Command;
 import org.sqsh.DatabaseCommand;
+import org.sqsh.MetadataCache;
 import org.sqsh.Renderer;
-import org.sqsh.SQLRenderer;
+import org.sqsh.SQLConnectionContext;
 import org.sqsh.Session;
 import org.sqsh.SqshOptions;
 import org.sqsh.options.Argv;
 import org.sqsh.options.OptionProperty;
 import org.sqsh.renderers.GraphicalTreeRenderer;
-import org.sqsh.renderers.GraphicalTreeRenderer.JSqshNode;
 
+import javax.swing.SwingUtilities;
 import javax.swing.event.TreeExpansionEvent;
-import javax.swing.event.TreeSelectionEvent;
-import javax.swing.event.TreeSelectionListener;
 import javax.swing.event.TreeWillExpandListener;
-import javax.swing.tree.DefaultMutableTreeNode;
-import javax.swing.tree.ExpandVetoException;
-import javax.swing.tree.TreeNode;
-import java.sql.Connection;
-import java.sql.DatabaseMetaData;
-import java.sql.ResultSet;
-import java.sql.SQLException;
 import java.util.ArrayList;
-import java.util.Enumeration;
 import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import static org.sqsh.options.ArgumentRequired.REQUIRED;
 
 /**
- * Implements the \tree command. A clone of the table command
+ * Implements the \tree command. A clone of the table command, showing the tables in a tree that is filled in as it
+ * is browsed (see {@link MetadataTreeModel}).
  */
-public class Tree extends Command implements DatabaseCommand, TreeWillExpandListener, TreeSelectionListener {
+public class Tree extends Command implements DatabaseCommand {
 
-    private Session session;
+    /**
+     * The number of children of a node whose own children are looked up ahead of time when it is shown.
+     */
+    private static final int PREFETCH = 20;
 
     private static class Options extends SqshOptions {
         @OptionProperty(option = 't', longOption = "table-pattern", arg = REQUIRED, argName = "pattern",
@@ -72,7 +71,6 @@ public class Tree extends Command implements DatabaseCommand, TreeWillExpandList
     public int execute(final Session session, final SqshOptions opts) throws Exception {
         final Options options = (Options) opts;
         String type = null;
-        this.session = session;
 
         if (options.arguments.size() > 0) {
             type = options.arguments.get(0);
@@ -99,75 +97,47 @@ public class Tree extends Command implements DatabaseCommand, TreeWillExpandList
             }
         }
 
-        final Connection con = session.getConnection();
-        final DatabaseMetaData meta = con.getMetaData();
-        try (ResultSet result = meta.getTables(con.getCatalog(), options.schemaPattern, options.tablePattern, types)) {
-            final SQLRenderer sqlRenderer = session.getSQLRenderer();
-            final Renderer renderer = session.getContext().getRendererManager().getRenderer(session, "tree");
-            // displaying only the columns I want to see in the order I want.
-            ((GraphicalTreeRenderer) renderer).setColOrder(new int[]{1, 3, 2});
-            // setting listener
-            ((GraphicalTreeRenderer) renderer).setTreeListeners(this, this);
-            sqlRenderer.displayResults(renderer, session, result, null);
-
-        } catch (final SQLException e) {
-            session.err.println("Failed to retrieve database metadata: " + e.getMessage());
-            return 1;
-        }
-
-        return 0;
-    }
-
-    /**
-     * {@inheritDoc}
-     */
-    public void treeWillCollapse(final TreeExpansionEvent event) throws ExpandVetoException {
-    }
-
-    /**
-     * {@inheritDoc}
-     * <p>
-     * on the third expand event show tables
-     */
-    public void treeWillExpand(final TreeExpansionEvent event) throws ExpandVetoException {
-        //Check where we are at.
-        if (event.getPath().getPathCount() == 3) {
-            //Force all table name to say they are not leafs
-            final JSqshNode node = (JSqshNode) event.getPath().getLastPathComponent();
-            final Enumeration<TreeNode> kids = node.children();
-            while (kids.hasMoreElements()) {
-                final JSqshNode kid = (JSqshNode) kids.nextElement();
-                if (kid.isLeaf()) {
-                    kid.forceHasChildren(true);
-                }
-            }
-        } else if (event.getPath().getPathCount() == 4) {
-            //If expanding a table go and get the columns
-            final JSqshNode node = (JSqshNode) event.getPath().getLastPathComponent();
-            if (node.isTrueLeaf()) {
-                try {
-                    final DatabaseMetaData meta = session.getConnection().getMetaData();
-                    final ResultSet set = meta.getColumns(null,
-                            node.getParent().getParent().toString(),
-                            node.toString(),
-                            null);
+        final MetadataCache meta = ((SQLConnectionContext) session.getConnectionContext()).getMetadataCache();
+        final Renderer renderer = session.getContext().getRendererManager().getRenderer(session, "tree");
+        final MetadataTreeModel model = new MetadataTreeModel(
+                new MetadataTreeModel.CacheSource(meta, meta.getCurrentCatalog(), options.schemaPattern,
+                        options.tablePattern, types),
+                newLoader(), SwingUtilities::invokeLater,
+                session.getContext().getMetadataCacheTtl() > 0 ? PREFETCH : 0);
+        ((GraphicalTreeRenderer) renderer).display("TABLE_SCHEM >> TABLE_TYPE >> TABLE_NAME", model,
+                new TreeWillExpandListener() {
+                    @Override
+                    public void treeWillExpand(TreeExpansionEvent event) {
+                        model.expand((MetadataTreeModel.Node) event.getPath().getLastPathComponent());
+                    }
 
-                    while (set.next()) {
-                        node.add(new DefaultMutableTreeNode(set.getString(4)));
+                    @Override
+                    public void treeWillCollapse(TreeExpansionEvent event) {
                     }
-                    set.close();
-                } catch (final Exception e) {
-                    session.err.println("Failed to retrieve table metadata: " + e.getMessage());
-                    e.printStackTrace(session.err);
-                }
-            }
-        }
+                },
+                event -> {
+                    // Selecting the node standing for the rest of a long list shows the next page of it.
+                    final Object node = event.getPath().getLastPathComponent();
+                    if (event.isAddedPath() && node instanceof MetadataTreeModel.Node) {
+                        SwingUtilities.invokeLater(() -> model.showMore((MetadataTreeModel.Node) node));
+                    }
+                });
+        SwingUtilities.invokeLater(() -> model.expand(model.getRoot()));
+        return 0;
     }
 
     /**
-     * This is here to add features for selection listeners to the tree.
+     * Creates the executor that looks up metadata in the background for a tree. Its one thread goes away when there
+     * is nothing to look up.
      */
-
-    public void valueChanged(TreeSelectionEvent e) {
+    private static Executor newLoader() {
+        final ThreadPoolExecutor loader = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), r -> {
+                    final Thread thread = new Thread(r, "jsqsh-tree");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        loader.allowCoreThreadTimeOut(true);
+        return loader;
     }
 }
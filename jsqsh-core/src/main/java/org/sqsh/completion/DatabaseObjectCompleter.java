@@ -15,6 +15,7 @@
  */
 package org.sqsh.completion;
 
+import org.sqsh.MetadataCache;
 import org.sqsh.Session;
 import org.sqsh.parser.DatabaseObject;
 import org.sqsh.parser.SQLParser;
@@ -65,7 +66,17 @@ public class DatabaseObjectCompleter extends Completer {
     private final QuoteType quote;
     private final Iterator<String> iter;
 
-    public DatabaseObjectCompleter(Session session, String line, int position, String word) {
+    /**
+     * Creates a completer, coming up with its completions right away.
+     *
+     * @param session The session
+     * @param line The line of input
+     * @param position The position of the cursor in the line
+     * @param word The word the cursor is sitting on
+     * @param meta The metadata of the connection, which may be a {@link MetadataCache#cachedOnly()} view if the
+     *         completions are needed without waiting on the server
+     */
+    public DatabaseObjectCompleter(Session session, String line, int position, String word, MetadataCache meta) {
         super(session, line, position, word);
         if (LOG.isLoggable(Level.FINE)) {
             LOG.fine("Completing '" + line + "' at position " + position + ", current word '" + word + "'");
@@ -131,7 +142,7 @@ public class DatabaseObjectCompleter extends Completer {
         if (info.getStatement() != null) {
             for (SQLStatementCompleter completer : STATEMENT_COMPLETERS) {
                 if (completer.getStatement().equals(info.getStatement()) && (completer.getClause() == null || completer.getClause().equals(info.getCurrentClause()))) {
-                    completer.getCompletions(completions, session.getConnection(), nameParts, info);
+                    completer.getCompletions(completions, meta, nameParts, info);
                     break;
                 }
             }
@@ -15,9 +15,9 @@
  */
 package org.sqsh.completion;
 
+import org.sqsh.MetadataCache;
 import org.sqsh.parser.DatabaseObject;
 
-import java.sql.Connection;
 import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -38,7 +38,7 @@ public class ExecProcedureStatementCompleter extends SQLStatementCompleter {
     }
 
     @Override
-    public void getCompletions(Set<String> completions, Connection conn, String[] nameParts, SQLParseState parseState) {
+    public void getCompletions(Set<String> completions, MetadataCache meta, String[] nameParts, SQLParseState parseState) {
         DatabaseObject[] refs = parseState.getObjectReferences();
         if (LOG.isLoggable(Level.FINE)) {
             LOG.fine("EXECUTE PROC: Completing for " + getNameString(nameParts));
@@ -67,9 +67,9 @@ public class ExecProcedureStatementCompleter extends SQLStatementCompleter {
                         // the cursor is sitting on right now. This means we want to complete procedure calls.
                         getProcedures(
                                 completions,
-                                conn,
+                                meta,
                                 (currentObject.getCatalog() == null
-                                        ? getCurrentCatalog(conn)
+                                        ? getCurrentCatalog(meta)
                                         : currentObject.getCatalog()),
                                 currentObject.getSchema(),
                                 currentObject.getName());
@@ -86,9 +86,9 @@ public class ExecProcedureStatementCompleter extends SQLStatementCompleter {
             // parameters instead.
             getProcedureParameters(
                     completions,
-                    conn,
+                    meta,
                     (refs[0].getCatalog() == null
-                            ? getCurrentCatalog(conn)
+                            ? getCurrentCatalog(meta)
                             : refs[0].getCatalog()),
                     refs[0].getSchema(),
                     refs[0].getName(),
@@ -100,6 +100,6 @@ public class ExecProcedureStatementCompleter extends SQLStatementCompleter {
         }
 
         // If we got here, have no object references, so we want to supply the user a list of procedures.
-        getProcedures(completions, conn, getCurrentCatalog(conn), null, null);
+        getProcedures(completions, meta, getCurrentCatalog(meta), null, null);
     }
 }
@@ -15,7 +15,8 @@
  */
 package org.sqsh.completion;
 
-import java.sql.Connection;
+import org.sqsh.MetadataCache;
+
 import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -71,7 +72,7 @@ public class GenericStatementCompleter extends SQLStatementCompleter {
     }
 
     @Override
-    public void getCompletions(Set<String> completions, Connection conn, String[] nameParts, SQLParseState parseState) {
+    public void getCompletions(Set<String> completions, MetadataCache meta, String[] nameParts, SQLParseState parseState) {
         if (LOG.isLoggable(Level.FINE)) {
             LOG.fine(statement + ": Looking for " + getCompletionNames() + " for input " + getNameString(nameParts));
         }
@@ -80,20 +81,20 @@ public class GenericStatementCompleter extends SQLStatementCompleter {
         // with all catalogs) or they have only entered one word so far.
         if ((completionFlags & CATALOGS) != 0) {
             if (nameParts.length == 0) {
-                getCatalogs(completions, conn, null);
+                getCatalogs(completions, meta, null);
             } else if (nameParts.length == 1) {
-                getCatalogs(completions, conn, nameParts[0]);
+                getCatalogs(completions, meta, nameParts[0]);
             }
         }
 
         // Schemas are completed if we have no input from the user, or the user has entered sch<tab> or catalog.sch<tab>.
         if ((completionFlags & SCHEMAS) != 0) {
             if (nameParts.length == 0) {
-                getSchemas(completions, conn, getCurrentCatalog(conn), null);
+                getSchemas(completions, meta, getCurrentCatalog(meta), null);
             } else if (nameParts.length == 1) {
-                getSchemas(completions, conn, getCurrentCatalog(conn), nameParts[0]);
+                getSchemas(completions, meta, getCurrentCatalog(meta), nameParts[0]);
             } else if (nameParts.length == 2) {
-                getSchemas(completions, conn, nameParts[0], nameParts[1]);
+                getSchemas(completions, meta, nameParts[0], nameParts[1]);
             }
         }
 
@@ -105,13 +106,13 @@ public class GenericStatementCompleter extends SQLStatementCompleter {
         // the user has entered
         if ((completionFlags & TABLES) != 0) {
             if (nameParts.length == 0) {
-                getTables(completions, conn, getCurrentCatalog(conn), null, null);
+                getTables(completions, meta, getCurrentCatalog(meta), null, null);
             } else if (nameParts.length == 1) {
-                getTables(completions, conn, getCurrentCatalog(conn), null, nameParts[0]);
+                getTables(completions, meta, getCurrentCatalog(meta), null, nameParts[0]);
             } else if (nameParts.length == 2) {
-                getTables(completions, conn, getCurrentCatalog(conn), nameParts[0], nameParts[1]);
+                getTables(completions, meta, getCurrentCatalog(meta), nameParts[0], nameParts[1]);
             } else if (nameParts.length == 3) {
-                getTables(completions, conn, nameParts[0], nameParts[1], nameParts[2]);
+                getTables(completions, meta, nameParts[0], nameParts[1], nameParts[2]);
             }
         }
 
@@ -123,11 +124,11 @@ public class GenericStatementCompleter extends SQLStatementCompleter {
         // 3. The user has typed catalog.schema.table.co<tab>
         if ((completionFlags & COLUMNS) != 0) {
             if (nameParts.length == 2) {
-                getColumns(completions, conn, getCurrentCatalog(conn), null, nameParts[0], nameParts[1]);
+                getColumns(completions, meta, getCurrentCatalog(meta), null, nameParts[0], nameParts[1]);
             } else if (nameParts.length == 3) {
-                getColumns(completions, conn, getCurrentCatalog(conn), nameParts[0], nameParts[1], nameParts[2]);
+                getColumns(completions, meta, getCurrentCatalog(meta), nameParts[0], nameParts[1], nameParts[2]);
             } else if (nameParts.length == 4) {
-                getColumns(completions, conn, nameParts[0], nameParts[1], nameParts[2], nameParts[3]);
+                getColumns(completions, meta, nameParts[0], nameParts[1], nameParts[2], nameParts[3]);
             }
         }
 
@@ -138,13 +139,13 @@ public class GenericStatementCompleter extends SQLStatementCompleter {
         //   3. catalog.schema.proc<tab>
         if ((completionFlags & PROCEDURES) != 0) {
             if (nameParts.length == 0) {
-                getProcedures(completions, conn, getCurrentCatalog(conn), null, null);
+                getProcedures(completions, meta, getCurrentCatalog(meta), null, null);
             } else if (nameParts.length == 1) {
-                getProcedures(completions, conn, getCurrentCatalog(conn), null, nameParts[0]);
+                getProcedures(completions, meta, getCurrentCatalog(meta), null, nameParts[0]);
             } else if (nameParts.length == 2) {
-                getProcedures(completions, conn, getCurrentCatalog(conn), nameParts[0], nameParts[1]);
+                getProcedures(completions, meta, getCurrentCatalog(meta), nameParts[0], nameParts[1]);
             } else if (nameParts.length == 3) {
-                getProcedures(completions, conn, nameParts[0], nameParts[1], nameParts[2]);
+                getProcedures(completions, meta, nameParts[0], nameParts[1], nameParts[2]);
             }
         }
     }
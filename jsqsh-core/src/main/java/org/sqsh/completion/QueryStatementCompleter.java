@@ -15,9 +15,9 @@
  */
 package org.sqsh.completion;
 
+import org.sqsh.MetadataCache;
 import org.sqsh.parser.DatabaseObject;
 
-import java.sql.Connection;
 import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -62,7 +62,7 @@ public class QueryStatementCompleter extends GenericStatementCompleter {
     }
 
     @Override
-    public void getCompletions(Set<String> completions, Connection conn, String[] nameParts, SQLParseState parseState) {
+    public void getCompletions(Set<String> completions, MetadataCache meta, String[] nameParts, SQLParseState parseState) {
         DatabaseObject[] refs = parseState.getObjectReferences();
         if (LOG.isLoggable(Level.FINE)) {
             LOG.fine(statement + ": Looking for " + getCompletionNames() + " for input " + getNameString(nameParts));
@@ -100,13 +100,13 @@ public class QueryStatementCompleter extends GenericStatementCompleter {
 
                 }
                 getReferencedCompletions(completions, nameParts, parseState);
-                getColumnsOfReferences(completions, conn, nameParts, parseState);
+                getColumnsOfReferences(completions, meta, nameParts, parseState);
                 return;
             }
         }
 
         // At this point we have no referenced objects, or we are in the FROM clause or the user is editing the name
         // of a referenced object, so we want to go complete based upon all available object names.
-        super.getCompletions(completions, conn, nameParts, parseState);
+        super.getCompletions(completions, meta, nameParts, parseState);
     }
 }
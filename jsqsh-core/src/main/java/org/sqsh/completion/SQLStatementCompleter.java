@@ -15,11 +15,14 @@
  */
 package org.sqsh.completion;
 
+import org.sqsh.MetadataCache;
 import org.sqsh.parser.DatabaseObject;
+import org.sqsh.util.PrefixIndex;
 
-import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -74,13 +77,13 @@ public abstract class SQLStatementCompleter {
      *
      * @param completions The current set of completions. The implementor of this method is expected to add any
      *         completions it finds (if any) to this set before returning.
-     * @param conn Database connection to be used to perform object name completions.
+     * @param meta Metadata of the database connection to be used to perform object name completions.
      * @param nameParts This is an array of portions of the object name that the user has entered thus far. If
      *         the user has entered nothing, then the array will be of length zero. If the array has two elements, that
      *         means the user has entered "name.name", etc.
      * @param parseState This represents the information that was gleaned by parsing the current SQL statement.
      */
-    public abstract void getCompletions(Set<String> completions, Connection conn, String[] nameParts, SQLParseState parseState);
+    public abstract void getCompletions(Set<String> completions, MetadataCache meta, String[] nameParts, SQLParseState parseState);
 
     /**
      * A helper method available to implementors of SQLStatementCompletion to determine all of the possible completions
@@ -169,11 +172,11 @@ public abstract class SQLStatementCompleter {
      *
      * @param completions The current set of completions. The implementor of this method is expected to add any
      *         completions it finds (if any) to this set before returning.
-     * @param conn Connection with which to work.
+     * @param meta The metadata of the connection with which to work.
      * @param nameParts This is an array of portions of the object name that the user has entered thus far.
      * @param parseState This represents the information that was gleaned by parsing the current SQL statement.
      */
-    protected void getColumnsOfReferences(Set<String> completions, Connection conn, String[] nameParts, SQLParseState parseState) {
+    protected void getColumnsOfReferences(Set<String> completions, MetadataCache meta, String[] nameParts, SQLParseState parseState) {
         DatabaseObject[] referencedObjects = parseState.getObjectReferences();
 
         // If there are no objects being referenced in the current SQL statement then there is no work to do.
@@ -194,26 +197,26 @@ public abstract class SQLStatementCompleter {
             //   5. schema.table.col<tab>
             //   6. catalog.schema.table.col<tab>
             if (nameParts.length == 0) {
-                getColumns(completions, conn, (ref.getCatalog() == null ? getCurrentCatalog(conn) : ref.getCatalog()),
+                getColumns(completions, meta, (ref.getCatalog() == null ? getCurrentCatalog(meta) : ref.getCatalog()),
                         ref.getSchema(), ref.getName(), "");
             } else if (nameParts.length == 1) {
-                getColumns(completions, conn, (ref.getCatalog() == null ? getCurrentCatalog(conn) : ref.getCatalog()),
+                getColumns(completions, meta, (ref.getCatalog() == null ? getCurrentCatalog(meta) : ref.getCatalog()),
                         ref.getSchema(), ref.getName(), nameParts[0]);
             } else if (nameParts.length == 2
                     && ref.getName() != null
                     && ref.getName().equals(nameParts[0])) {
-                getColumns(completions, conn, (ref.getCatalog() == null ? getCurrentCatalog(conn) : ref.getCatalog()),
+                getColumns(completions, meta, (ref.getCatalog() == null ? getCurrentCatalog(meta) : ref.getCatalog()),
                         ref.getSchema(), ref.getName(), nameParts[1]);
             } else if (nameParts.length == 2
                     && ref.getAlias() != null
                     && ref.getAlias().equals(nameParts[0])) {
-                getColumns(completions, conn, (ref.getCatalog() == null ? getCurrentCatalog(conn) : ref.getCatalog()),
+                getColumns(completions, meta, (ref.getCatalog() == null ? getCurrentCatalog(meta) : ref.getCatalog()),
                         ref.getSchema(), ref.getName(), nameParts[1]);
             } else if (nameParts.length == 3
                     && ref.getSchema() != null
                     && ref.getSchema().equals(nameParts[0])
                     && ref.getName() != null && ref.getName().equals(nameParts[1])) {
-                getColumns(completions, conn, (ref.getCatalog() == null ? getCurrentCatalog(conn) : ref.getCatalog()),
+                getColumns(completions, meta, (ref.getCatalog() == null ? getCurrentCatalog(meta) : ref.getCatalog()),
                         ref.getSchema(), ref.getName(), nameParts[2]);
             } else if (nameParts.length == 4 && ref.getCatalog() != null
                     && ref.getCatalog().equals(nameParts[0])
@@ -221,8 +224,8 @@ public abstract class SQLStatementCompleter {
                     && ref.getSchema().equals(nameParts[1])
                     && ref.getName() != null
                     && ref.getName().equals(nameParts[2])) {
-                getColumns(completions, conn, ref.getCatalog(),
-                        ref.getSchema(), ref.getName(), nameParts[3] + "%");
+                getColumns(completions, meta, ref.getCatalog(),
+                        ref.getSchema(), ref.getName(), nameParts[3]);
             }
         }
     }
@@ -231,13 +234,12 @@ public abstract class SQLStatementCompleter {
      * Helper method to retrieve the set of catalogs that match a name provided.
      *
      * @param completions The current set of object completions.
-     * @param conn The connection to the database.
+     * @param meta The metadata of the connection to the database.
      * @param name A partially completed catalog name.
      */
-    protected void getCatalogs(Set<String> completions, Connection conn, String name) {
+    protected void getCatalogs(Set<String> completions, MetadataCache meta, String name) {
         int count = 0;
-        try {
-            ResultSet results = conn.getMetaData().getCatalogs();
+        try (ResultSet results = meta.getCatalogs()) {
             while (results.next()) {
                 String catalog = results.getString(1);
                 if (name == null || catalog.startsWith(name)) {
@@ -257,11 +259,11 @@ public abstract class SQLStatementCompleter {
      * Helper method to retrieve the set of catalogs that match a name provided.
      *
      * @param completions The current set of object completions.
-     * @param conn The connection to the database.
+     * @param meta The metadata of the connection to the database.
      * @param catalog The catalog containing the schema.
      * @param name A partially completed catalog name.
      */
-    protected void getSchemas(Set<String> completions, Connection conn, String catalog, String name) {
+    protected void getSchemas(Set<String> completions, MetadataCache meta, String catalog, String name) {
         // Currently this method does nothing, but is here as a marker for future work. As of this writing only
         // the JDBC with Java 6 supports queries for schemas and since I don't want to mandate java 6 yet, I'm
         // leaving this as a stub.
@@ -271,23 +273,18 @@ public abstract class SQLStatementCompleter {
      * Gathers the set of tables that matches requested criteria
      *
      * @param completions The set that the table names will be added to.
-     * @param conn The connection to use.
+     * @param meta The metadata of the connection to use.
      * @param catalog The catalog to look in.
      * @param schema The schema (owner) to look for
      * @param tablePrefix The prefix of the table.
      */
-    protected void getTables(Set<String> completions, Connection conn, String catalog, String schema, String tablePrefix) {
+    protected void getTables(Set<String> completions, MetadataCache meta, String catalog, String schema, String tablePrefix) {
         int count = 0;
         try {
-            ResultSet results = conn.getMetaData().getTables(
+            PrefixIndex tables = meta.getTableIndex(
                     (catalog == null ? "%" : catalog),
-                    (schema == null ? "%" : schema),
-                    (tablePrefix == null ? "%" : tablePrefix + "%"), null);
-
-            while (results.next()) {
-                completions.add(results.getString(3));
-                ++count;
-            }
+                    (schema == null ? "%" : schema));
+            count = findNames(completions, meta, tables, tablePrefix);
         } catch (SQLException e) {
             // IGNORED
         }
@@ -301,24 +298,29 @@ public abstract class SQLStatementCompleter {
      * Gathers the set of columns that matches requested criteria
      *
      * @param completions The set that the table names will be added to.
-     * @param conn The connection to use.
+     * @param meta The metadata of the connection to use.
      * @param catalog The catalog to look in.
      * @param schema The schema (owner) to look for
      * @param table The table name
      * @param table The column prefix
      */
-    protected void getColumns(Set<String> completions, Connection conn, String catalog, String schema, String table, String columnPrefix) {
+    protected void getColumns(Set<String> completions, MetadataCache meta, String catalog, String schema, String table, String columnPrefix) {
         int count = 0;
-        try {
-            ResultSet results = conn.getMetaData().getColumns(
+        String normalizedPrefix = (columnPrefix == null ? null : meta.normalize(columnPrefix));
+        try (ResultSet results = meta.getColumns(
                     (catalog == null ? "%" : catalog),
                     (schema == null ? "%" : schema),
-                    (table == null ? "%" : table),
-                    (columnPrefix == null ? "%" : columnPrefix + "%"));
+                    (table == null ? "%" : table), "%")) {
 
             while (results.next()) {
-                completions.add(results.getString(4));
-                ++count;
+                String column = results.getString(4);
+                if (columnPrefix == null || column.startsWith(columnPrefix)) {
+                    completions.add(column);
+                    ++count;
+                } else if (column.startsWith(normalizedPrefix)) {
+                    completions.add(inTypedCase(meta, column, columnPrefix));
+                    ++count;
+                }
             }
         } catch (SQLException e) {
             // IGNORED
@@ -339,16 +341,16 @@ public abstract class SQLStatementCompleter {
      * columns that start with 'i'.
      *
      * @param completions The set that the table names will be added to.
-     * @param conn The connection to use.
+     * @param meta The metadata of the connection to use.
      * @param catalog The catalog to look in.
      * @param tableRefs The set of table names and aliases that are contained in the SQL
      * @param alias If non-null the alias name by which the table is being referred.
      * @param columnPrefix the portion of the column name entered so far.
      */
-    protected void getColumnsOfAliases(Set<String> completions, Connection conn, String catalog, DatabaseObject[] tableRefs, String alias, String columnPrefix) {
+    protected void getColumnsOfAliases(Set<String> completions, MetadataCache meta, String catalog, DatabaseObject[] tableRefs, String alias, String columnPrefix) {
         for (DatabaseObject ref : tableRefs) {
             if (alias == null || (alias != null && alias.equals(ref.getAlias()))) {
-                getColumns(completions, conn,
+                getColumns(completions, meta,
                         (ref.getCatalog() == null ? catalog : ref.getCatalog()),
                         (ref.getSchema() == null ? "%" : ref.getSchema()),
                         ref.getName(), columnPrefix);
@@ -360,24 +362,18 @@ public abstract class SQLStatementCompleter {
      * Returns set of available procedures.
      *
      * @param completions The current set of completions.
-     * @param conn The connection
+     * @param meta The metadata of the connection
      * @param catalog Catalog containing the procedure (or null)
      * @param schema The schema containing the procedure (or null)
      * @param procPrefix The prefix of the procedure.
      */
-    protected void getProcedures(Set<String> completions, Connection conn, String catalog, String schema, String procPrefix) {
+    protected void getProcedures(Set<String> completions, MetadataCache meta, String catalog, String schema, String procPrefix) {
         int count = 0;
         try {
-            ResultSet results = conn.getMetaData().getProcedures(
+            PrefixIndex procs = meta.getProcedureIndex(
                     (catalog == null ? "%" : catalog),
-                    (schema == null ? "%" : schema),
-                    (procPrefix == null ? "%" : procPrefix + "%"));
-
-            while (results.next()) {
-                String proc = results.getString(3);
-                completions.add(proc);
-                ++count;
-            }
+                    (schema == null ? "%" : schema));
+            count = findNames(completions, meta, procs, procPrefix);
         } catch (SQLException e) {
             // IGNORED
         }
@@ -394,21 +390,19 @@ public abstract class SQLStatementCompleter {
      * @param proc The name of the procedure.
      * @param paramPart The part of the parameter name that the user has typed so far.
      */
-    protected void getProcedureParameters(Set<String> completions, Connection conn, String catalog, String schema,
+    protected void getProcedureParameters(Set<String> completions, MetadataCache meta, String catalog, String schema,
                                           String proc, String paramPart) {
         int count = 0;
-        try {
-            ResultSet results = conn.getMetaData().getProcedureColumns(
+        try (ResultSet results = meta.getProcedureColumns(
                     (catalog == null ? "%" : catalog),
                     (schema == null ? "%" : schema),
-                    (proc == null ? "%" : proc),
-                    (paramPart == null ? "%" : paramPart + "%"));
+                    (proc == null ? "%" : proc), "%")) {
 
             while (results.next()) {
                 String name = results.getString(4);
                 // Many drivers have a special column called RETURN_VALUE to indicate the datatype of the value
                 // returned by the procedure...I ignore these.
-                if (!name.equals("RETURN_VALUE")) {
+                if (!name.equals("RETURN_VALUE") && (paramPart == null || name.startsWith(paramPart))) {
                     completions.add(name);
                     ++count;
                 }
@@ -422,19 +416,67 @@ public abstract class SQLStatementCompleter {
         }
     }
 
+    /**
+     * Adds the names in an index that start with a prefix. If no names start with the prefix as it was typed, then
+     * it is normalized according to the rules of the database (folded to upper case, for example) and tried again,
+     * and the names found are added in the case that the prefix was typed in (see
+     * {@link #inTypedCase(MetadataCache, String, String)}).
+     *
+     * @param completions The set that the names are added to.
+     * @param meta The metadata of the connection.
+     * @param index The index of names.
+     * @param prefix The prefix of the name, or null for all names.
+     * @return The number of names added.
+     */
+    protected int findNames(Set<String> completions, MetadataCache meta, PrefixIndex index, String prefix) {
+        int count = index.find(prefix, 0, completions);
+        if (count == 0 && prefix != null) {
+            String normalized = meta.normalize(prefix);
+            if (normalized != null && !normalized.equals(prefix)) {
+                List<String> names = new ArrayList<>();
+                count = index.find(normalized, 0, names);
+                for (String name : names) {
+                    completions.add(inTypedCase(meta, name, prefix));
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Puts a name that was found by its normalized prefix into the case that the prefix was typed in, so that the
+     * completion carries on from what was typed (the line reader only offers completions that start with it) and
+     * still refers to the same object once the database normalizes it. If the name cannot be put into that case
+     * without changing what it refers to, it is returned as it is.
+     *
+     * @param meta The metadata of the connection.
+     * @param name The name, as the database stores it.
+     * @param prefix The prefix of the name, as it was typed.
+     * @return The name to offer as the completion.
+     */
+    protected static String inTypedCase(MetadataCache meta, String name, String prefix) {
+        if (prefix.length() > name.length()) {
+            return name;
+        }
+        String rest = name.substring(prefix.length());
+        if (prefix.equals(prefix.toLowerCase())) {
+            String lower = prefix + rest.toLowerCase();
+            if (name.equals(meta.normalize(lower))) {
+                return lower;
+            }
+        }
+        String typed = prefix + rest;
+        return name.equals(meta.normalize(typed)) ? typed : name;
+    }
+
     /**
      * Helper method to return the current catalog for a connection.
      *
-     * @param conn The connection
+     * @param meta The metadata of the connection
      * @return The current catalog or null if there is none.
      */
-    protected String getCurrentCatalog(Connection conn) {
-        try {
-            return conn.getCatalog();
-        } catch (SQLException e) {
-            // IGNORED
-        }
-        return null;
+    protected String getCurrentCatalog(MetadataCache meta) {
+        return meta.getCurrentCatalog();
     }
 
     /**
@@ -15,22 +15,87 @@
  */
 package org.sqsh.format;
 
+import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
 import java.sql.Blob;
 
+/**
+ * Formats a BLOB as a hexadecimal string.
+ *
+ * <p>If a limit is placed on the number of bytes to display, no more of the BLOB than is needed is read. A BLOB that
+ * is longer than the limit is either cut short and followed by {@link ClobFormatter#TRUNCATED}, or, if a directory
+ * has been provided, streamed in its entirety to a file of its own in that directory, with the path of the file
+ * displayed in its place.
+ */
 public class BlobFormatter extends ByteFormatter {
 
+    private final int limit;
+    private final File directory;
+
     public BlobFormatter() {
-        super(Integer.MAX_VALUE);
+        this(0, null);
+    }
+
+    /**
+     * @param limit The maximum number of bytes to display, or 0 for no limit
+     * @param directory If not null, the directory to which BLOBs that are longer than the limit are written
+     */
+    public BlobFormatter(int limit, File directory) {
+        super(limit > 0 ? limit : Integer.MAX_VALUE);
+        this.limit = limit;
+        this.directory = directory;
     }
 
     public String format(Object value) {
-        Blob blob = (Blob) value;
+        final StringBuilder sb = new StringBuilder();
+        formatTo(value, sb);
+        return sb.toString();
+    }
+
+    /**
+     * Formats the BLOB, freeing it once it has been read. If it cannot be read, whatever was read of it is thrown
+     * away (along with any file it was being written to) and the value is displayed as an error.
+     */
+    @Override
+    public void formatTo(Object value, StringBuilder buffer) {
+        final Blob blob = (Blob) value;
+        final int start = buffer.length();
         try {
-            byte bytes[] = blob.getBytes(1, (int) blob.length());
-            return super.format(bytes);
+            final long length = blob.length();
+            if (limit <= 0 || length <= limit) {
+                super.formatTo(blob.getBytes(1, (int) length), -1, buffer);
+            } else if (directory != null) {
+                Files.createDirectories(directory.toPath());
+                final File file = Files.createTempFile(directory.toPath(), "blob", ".bin").toFile();
+                try (InputStream in = blob.getBinaryStream();
+                     OutputStream out = Files.newOutputStream(file.toPath())) {
+                    final byte[] bytes = new byte[8192];
+                    int n;
+                    while ((n = in.read(bytes)) >= 0) {
+                        out.write(bytes, 0, n);
+                    }
+                } catch (Exception e) {
+                    Files.deleteIfExists(file.toPath());
+                    throw e;
+                }
+                buffer.append(file.getPath());
+            } else {
+                super.formatTo(blob.getBytes(1, limit), -1, buffer);
+                buffer.append(ClobFormatter.TRUNCATED);
+            }
         } catch (Exception e) {
-            // IGNORED
+            buffer.setLength(start);
+            buffer.append(ClobFormatter.ERROR);
+        } finally {
+            ClobFormatter.free(blob);
         }
-        return "*ERROR*";
+    }
+
+    @Override
+    public int getMaxWidth() {
+        return limit > 0 && directory == null ? super.getMaxWidth() + ClobFormatter.TRUNCATED.length()
+                : super.getMaxWidth();
     }
 }
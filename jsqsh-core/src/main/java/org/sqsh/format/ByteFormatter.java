@@ -43,14 +43,25 @@ public class ByteFormatter implements Formatter {
     }
 
     public String format(Object value, int len) {
-        byte[] bytes;
-        if (value instanceof Byte) {
-            b[0] = ((Byte) value);
-            bytes = b;
-        } else {
-            bytes = ((byte[]) value);
-        }
-        StringBuilder sb = new StringBuilder(2 + (bytes.length * 2));
+        StringBuilder sb = new StringBuilder(2 + ((len < 0 ? bytesOf(value).length : len) * 2));
+        formatTo(value, len, sb);
+        return sb.toString();
+    }
+
+    @Override
+    public void formatTo(Object value, StringBuilder buffer) {
+        formatTo(value, -1, buffer);
+    }
+
+    /**
+     * Formats a value, appending the result to the provided buffer.
+     *
+     * @param value The value to format (a byte or array of bytes)
+     * @param len The number of bytes to format, or -1 to format all of them
+     * @param sb The buffer to append to
+     */
+    public void formatTo(Object value, int len, StringBuilder sb) {
+        final byte[] bytes = bytesOf(value);
         byte ch;
         if (useStringFormat) sb.append("X'");
         else sb.append("0x");
@@ -66,7 +77,14 @@ public class ByteFormatter implements Formatter {
             sb.append(HEX_DIGITS[ch]);
         }
         if (useStringFormat) sb.append("'");
-        return sb.toString();
+    }
+
+    private byte[] bytesOf(Object value) {
+        if (value instanceof Byte) {
+            b[0] = ((Byte) value);
+            return b;
+        }
+        return ((byte[]) value);
     }
 
     public int getMaxWidth() {
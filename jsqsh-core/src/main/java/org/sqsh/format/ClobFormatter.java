@@ -17,28 +17,137 @@ package org.sqsh.format;
 
 import org.sqsh.Formatter;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
 import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.sql.Clob;
 
+/**
+ * Formats a CLOB by reading its characters.
+ *
+ * <p>If a limit is placed on the number of characters to display, no more of the CLOB than is needed is read. A CLOB
+ * that is longer than the limit is either cut short and followed by {@link #TRUNCATED}, or, if a directory has been
+ * provided, written out in its entirety to a file of its own in that directory, with the path of the file displayed
+ * in its place.
+ */
 public class ClobFormatter implements Formatter {
 
+    /**
+     * Appended to a value that has been cut short.
+     */
+    public static final String TRUNCATED = "...";
+
+    /**
+     * Displayed in place of a value that could not be read.
+     */
+    static final String ERROR = "*ERROR*";
+
+    private final int limit;
+    private final File directory;
+    private final char[] chars = new char[8192];
+
+    public ClobFormatter() {
+        this(0, null);
+    }
+
+    /**
+     * @param limit The maximum number of characters to display, or 0 for no limit
+     * @param directory If not null, the directory to which CLOBs that are longer than the limit are written
+     */
+    public ClobFormatter(int limit, File directory) {
+        this.limit = limit;
+        this.directory = directory;
+    }
+
     public String format(Object value) {
-        Clob clob = (Clob) value;
-        StringBuilder sb = new StringBuilder();
-        char[] chars = new char[512];
-        try {
-            Reader in = clob.getCharacterStream();
-            while (in.read(chars) >= 0) {
-                sb.append(chars);
+        final StringBuilder sb = new StringBuilder();
+        formatTo(value, sb);
+        return sb.toString();
+    }
+
+    /**
+     * Formats the CLOB, freeing it once it has been read. If it cannot be read, whatever was read of it is thrown
+     * away (along with any file it was being written to) and the value is displayed as an error.
+     */
+    @Override
+    public void formatTo(Object value, StringBuilder buffer) {
+        final Clob clob = (Clob) value;
+        final int start = buffer.length();
+        try (Reader in = clob.getCharacterStream()) {
+            int n;
+            while ((n = in.read(chars, 0, toRead(buffer.length() - start))) >= 0) {
+                final int length = buffer.length() - start;
+                if (limit > 0 && length + n > limit) {
+                    if (directory != null) {
+                        final File file = spill(buffer.subSequence(start, buffer.length()), n, in);
+                        buffer.setLength(start);
+                        buffer.append(file.getPath());
+                    } else {
+                        buffer.append(chars, 0, limit - length).append(TRUNCATED);
+                    }
+                    return;
+                }
+                buffer.append(chars, 0, n);
             }
-            in.close();
         } catch (Exception e) {
-            // IGNORED
+            buffer.setLength(start);
+            buffer.append(ERROR);
+        } finally {
+            free(clob);
         }
-        return sb.toString();
+    }
+
+    /**
+     * Lets go of the resources held by a LOB once it has been formatted. Drivers that predate JDBC 4 have no
+     * <code>free()</code> at all, and others do not support it, in which case the LOB is left to the driver.
+     *
+     * @param lob The LOB (a {@link Clob} or {@link java.sql.Blob})
+     */
+    static void free(Object lob) {
+        try {
+            if (lob instanceof Clob) {
+                ((Clob) lob).free();
+            } else if (lob instanceof java.sql.Blob) {
+                ((java.sql.Blob) lob).free();
+            }
+        } catch (Exception | AbstractMethodError e) {
+            // Not supported
+        }
+    }
+
+    /**
+     * @return The number of characters to read next. Past the limit, only a single character needs to be read to
+     *         tell whether or not the value is longer than the limit.
+     */
+    private int toRead(int length) {
+        return limit > 0 ? Math.max(1, Math.min(chars.length, limit + 1 - length)) : chars.length;
+    }
+
+    /**
+     * Writes out the CLOB to a new file: the characters that have been read so far, the last n characters read
+     * into the read buffer, and then the rest of the CLOB.
+     */
+    private File spill(CharSequence head, int n, Reader in) throws IOException {
+        Files.createDirectories(directory.toPath());
+        final File file = Files.createTempFile(directory.toPath(), "clob", ".txt").toFile();
+        try (Writer out = new OutputStreamWriter(Files.newOutputStream(file.toPath()), StandardCharsets.UTF_8)) {
+            out.append(head);
+            out.write(chars, 0, n);
+            while ((n = in.read(chars)) >= 0) {
+                out.write(chars, 0, n);
+            }
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(file.toPath());
+            throw e;
+        }
+        return file;
     }
 
     public int getMaxWidth() {
-        return Integer.MAX_VALUE;
+        return limit > 0 && directory == null ? limit + TRUNCATED.length() : Integer.MAX_VALUE;
     }
 }
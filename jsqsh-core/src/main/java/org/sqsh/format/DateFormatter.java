@@ -33,6 +33,11 @@ public class DateFormatter implements Formatter {
         return format.format((Date) value);
     }
 
+    @Override
+    public void formatTo(Object value, StringBuilder buffer) {
+        format.formatTo((Date) value, buffer);
+    }
+
     public int getMaxWidth() {
         return maxWidth;
     }
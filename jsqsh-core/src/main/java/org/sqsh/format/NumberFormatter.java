@@ -18,6 +18,7 @@ package org.sqsh.format;
 import org.sqsh.Formatter;
 
 import java.text.DecimalFormat;
+import java.text.FieldPosition;
 
 public class NumberFormatter implements Formatter {
 
@@ -25,6 +26,12 @@ public class NumberFormatter implements Formatter {
     private int scale;
     private DecimalFormat format;
 
+    /**
+     * Scratch space used by the formatTo() methods when the value must pass through the {@link DecimalFormat}.
+     */
+    private StringBuffer scratch;
+    private FieldPosition fieldPosition;
+
     public NumberFormatter(int precision, int scale) {
         this.precision = precision;
         this.scale = scale;
@@ -60,6 +67,117 @@ public class NumberFormatter implements Formatter {
         return value.toString();
     }
 
+    /**
+     * Formats a long value without requiring it to be boxed first. The result is identical to calling
+     * {@link #format(Object)} with a {@link Long}.
+     *
+     * @param value The value to format
+     * @return The formatted value
+     */
+    public String format(long value) {
+        if (format != null) {
+            return format.format(value);
+        }
+        return Long.toString(value);
+    }
+
+    /**
+     * Formats a double value without requiring it to be boxed first. The result is identical to calling
+     * {@link #format(Object)} with a {@link Double}.
+     *
+     * @param value The value to format
+     * @return The formatted value
+     */
+    public String format(double value) {
+        if (format != null) {
+            return format.format(value);
+        }
+        return Double.toString(value);
+    }
+
+    @Override
+    public void formatTo(Object value, StringBuilder buffer) {
+        if (format == null) {
+            if (value instanceof Long || value instanceof Integer || value instanceof Short
+                    || value instanceof Byte) {
+                buffer.append(((Number) value).longValue());
+            } else {
+                buffer.append(value);
+            }
+        } else {
+            if (!(value instanceof Number)) {
+                throw new IllegalArgumentException("Cannot format " + value.getClass().getName() + " as a number");
+            }
+            buffer.append(format.format(value, scratch(), fieldPosition));
+        }
+    }
+
+    /**
+     * Formats a long value, appending the result to the provided buffer.
+     *
+     * @param value The value to format
+     * @param buffer The buffer to append to
+     */
+    public void formatTo(long value, StringBuilder buffer) {
+        if (format != null) {
+            buffer.append(format.format(value, scratch(), fieldPosition));
+        } else {
+            buffer.append(value);
+        }
+    }
+
+    /**
+     * Formats a double value, appending the result to the provided buffer.
+     *
+     * @param value The value to format
+     * @param buffer The buffer to append to
+     */
+    public void formatTo(double value, StringBuilder buffer) {
+        if (format != null) {
+            buffer.append(format.format(value, scratch(), fieldPosition));
+        } else {
+            buffer.append(value);
+        }
+    }
+
+    /**
+     * Formats a float value, appending the result to the provided buffer.
+     *
+     * @param value The value to format
+     * @param buffer The buffer to append to
+     */
+    public void formatTo(float value, StringBuilder buffer) {
+        if (format != null) {
+            buffer.append(format.format(value, scratch(), fieldPosition));
+        } else {
+            buffer.append(value);
+        }
+    }
+
+    private StringBuffer scratch() {
+        if (scratch == null) {
+            scratch = new StringBuffer(32);
+            fieldPosition = new FieldPosition(0);
+        } else {
+            scratch.setLength(0);
+        }
+        return scratch;
+    }
+
+    /**
+     * Formats a float value without requiring it to be boxed first. The result is identical to calling
+     * {@link #format(Object)} with a {@link Float}.
+     *
+     * @param value The value to format
+     * @return The formatted value
+     */
+    public String format(float value) {
+        if (format != null) {
+            return format.format(value);
+        }
+        return Float.toString(value);
+    }
+
     @Override
     public int getMaxWidth() {
         // This is an Oracle-ism. If the precision is 0 then this is just a regular floating point number, so we
@@ -32,6 +32,15 @@ public class Unformatter implements Formatter {
         return value.toString();
     }
 
+    @Override
+    public void formatTo(Object value, StringBuilder buffer) {
+        if (value instanceof CharSequence) {
+            buffer.append((CharSequence) value);
+        } else {
+            buffer.append(value);
+        }
+    }
+
     public int getMaxWidth() {
         return maxWidth;
     }
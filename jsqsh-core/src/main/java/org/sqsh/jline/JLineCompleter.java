@@ -24,9 +24,34 @@ import org.sqsh.SqshContext;
 import org.sqsh.completion.Completer;
 
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
+/**
+ * Hooks jsqsh's completers up to JLine. Completions are worked out on a background thread (see
+ * {@link ConnectionContext#getBackgroundTabCompleter(Session, String, int, String)}, which keeps the work off of the
+ * connection of the session), and if that takes longer than {@link SqshContext#getCompletionTimeout()} then the
+ * connection is asked for whatever completions it can come up with right away (see
+ * {@link ConnectionContext#getCachedTabCompleter(Session, String, int, String)}) while the background work carries on,
+ * filling the metadata cache for the next time. Only one completion is worked on in the
+ * background at a time; while it is running, completions come from what is at hand.
+ */
 public class JLineCompleter implements org.jline.reader.Completer {
+    private static final Logger LOG = Logger.getLogger(JLineCompleter.class.getName());
+
     final SqshContext ctx;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        final Thread thread = new Thread(r, "jsqsh-completion");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private Future<Completer> pending = null;
 
     public JLineCompleter(SqshContext ctx) {
         this.ctx = ctx;
@@ -37,7 +62,30 @@ public class JLineCompleter implements org.jline.reader.Completer {
         Session session = ctx.getCurrentSession();
         ConnectionContext conn = session.getConnectionContext();
         if (conn != null) {
-            Completer completer = conn.getTabCompleter(session, parsedLine.line(), parsedLine.cursor(), parsedLine.word());
+            String line = parsedLine.line();
+            int cursor = parsedLine.cursor();
+            String word = parsedLine.word();
+            Completer completer = null;
+            int timeout = ctx.getCompletionTimeout();
+            if (timeout <= 0) {
+                completer = conn.getTabCompleter(session, line, cursor, word);
+            } else {
+                if (pending == null || pending.isDone()) {
+                    pending = executor.submit(conn.getBackgroundTabCompleter(session, line, cursor, word));
+                    try {
+                        completer = pending.get(timeout, TimeUnit.MILLISECONDS);
+                    } catch (TimeoutException e) {
+                        LOG.fine("Completion did not finish within " + timeout + "ms, using what is at hand");
+                    } catch (ExecutionException e) {
+                        LOG.log(Level.FINE, "Completion failed", e.getCause());
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                if (completer == null) {
+                    completer = conn.getCachedTabCompleter(session, line, cursor, word);
+                }
+            }
             String name = completer.next();
             while (name != null) {
                 list.add(new Candidate(name));
@@ -0,0 +1,389 @@
+/*
+ * Copyright 2007-2022 Scott C. Gray
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sqsh.renderers;
+
+import org.sqsh.ColumnDescription;
+import org.sqsh.Renderer;
+import org.sqsh.RendererManager;
+import org.sqsh.Session;
+import org.sqsh.util.ArrowStreamWriter;
+import org.sqsh.util.ArrowStreamWriter.Field;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.logging.Logger;
+
+/**
+ * Writes result sets in the Apache Arrow IPC streaming format, so they can be loaded by columnar tools (pyarrow,
+ * pandas, Spark, DuckDB, etc.) without having to parse text. Values are read straight from the result set in their
+ * native type, and the schema of the stream is derived from the result set's metadata. Each result set is written
+ * as a separate stream.
+ *
+ * <p>Rows that do not come from a result set (such as stored procedure output parameters) are written with every
+ * column as a string.
+ */
+public class ArrowRenderer extends Renderer {
+
+    private static final Logger LOG = Logger.getLogger(ArrowRenderer.class.getName());
+
+    // How each column is read from the result set
+    private static final int READ_BOOLEAN = 0;
+    private static final int READ_LONG = 1;
+    private static final int READ_DOUBLE = 2;
+    private static final int READ_DECIMAL = 3;
+    private static final int READ_DECIMAL_STRING = 4;
+    private static final int READ_DATE = 5;
+    private static final int READ_TIME = 6;
+    private static final int READ_TIMESTAMP = 7;
+    private static final int READ_TIMESTAMP_TZ = 8;
+    private static final int READ_STRING = 9;
+    private static final int READ_BYTES = 10;
+    private static final int READ_OBJECT = 11;
+
+    private ArrowStreamWriter writer;
+    private int[] projection;
+    private int[] readers;
+    private int rowNumber;
+    private boolean failed;
+    private boolean warnedOverflow;
+
+    public ArrowRenderer(Session session, RendererManager renderMan) {
+        super(session, renderMan);
+    }
+
+    @Override
+    public boolean isTyped() {
+        return true;
+    }
+
+    @Override
+    public boolean isStreaming() {
+        return true;
+    }
+
+    @Override
+    public void header(ColumnDescription[] columns) {
+        super.header(columns);
+        final Field[] fields = new Field[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            fields[i] = new Field(columns[i].getName(), ArrowStreamWriter.Type.UTF8);
+        }
+        start(fields);
+        projection = null;
+        readers = null;
+    }
+
+    @Override
+    public void header(ColumnDescription[] columns, ResultSet resultSet, int[] projection) throws SQLException {
+        super.header(columns);
+        final ResultSetMetaData meta = resultSet.getMetaData();
+        final Field[] fields = new Field[columns.length];
+        this.readers = new int[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            fields[i] = describe(meta, projection[i], columns[i], i);
+        }
+        start(fields);
+        this.projection = projection;
+    }
+
+    private void start(Field[] fields) {
+        writer = new ArrowStreamWriter(session.out, fields, manager.getArrowBatchSize());
+        rowNumber = 0;
+        failed = false;
+        warnedOverflow = false;
+    }
+
+    /**
+     * Works out the Arrow type of a column, and how it should be read from the result set.
+     */
+    private Field describe(ResultSetMetaData meta, int column, ColumnDescription desc, int idx) throws SQLException {
+        final String name = desc.getName();
+        switch (desc.getNativeType()) {
+            case Types.BIT:
+            case Types.BOOLEAN:
+                readers[idx] = READ_BOOLEAN;
+                return new Field(name, ArrowStreamWriter.Type.BOOL);
+            case Types.TINYINT:
+                readers[idx] = READ_LONG;
+                return new Field(name, isSigned(meta, column) ? ArrowStreamWriter.Type.INT8
+                        : ArrowStreamWriter.Type.INT16);
+            case Types.SMALLINT:
+                readers[idx] = READ_LONG;
+                return new Field(name, isSigned(meta, column) ? ArrowStreamWriter.Type.INT16
+                        : ArrowStreamWriter.Type.INT32);
+            case Types.INTEGER:
+                readers[idx] = READ_LONG;
+                return new Field(name, isSigned(meta, column) ? ArrowStreamWriter.Type.INT32
+                        : ArrowStreamWriter.Type.INT64);
+            case Types.BIGINT:
+                if (isSigned(meta, column)) {
+                    readers[idx] = READ_LONG;
+                    return new Field(name, ArrowStreamWriter.Type.INT64);
+                }
+                readers[idx] = READ_DECIMAL;
+                return Field.decimal(name, 20, 0);
+            case Types.REAL:
+                readers[idx] = READ_DOUBLE;
+                return new Field(name, ArrowStreamWriter.Type.FLOAT32);
+            case Types.FLOAT:
+            case Types.DOUBLE:
+                readers[idx] = READ_DOUBLE;
+                return new Field(name, ArrowStreamWriter.Type.FLOAT64);
+            case Types.DECIMAL:
+            case Types.NUMERIC: {
+                final int precision = meta.getPrecision(column);
+                final int scale = meta.getScale(column);
+
+                // Some databases (Oracle's NUMBER, for example) have no fixed precision, in which case the exact
+                // value is written as a string rather than losing digits.
+                if (precision < 1 || precision > 76 || scale < 0 || scale > precision) {
+                    readers[idx] = READ_DECIMAL_STRING;
+                    return new Field(name, ArrowStreamWriter.Type.UTF8);
+                }
+                readers[idx] = READ_DECIMAL;
+                return Field.decimal(name, precision, scale);
+            }
+            case Types.DATE:
+                readers[idx] = READ_DATE;
+                return new Field(name, ArrowStreamWriter.Type.DATE);
+            case Types.TIME:
+                readers[idx] = READ_TIME;
+                return new Field(name, ArrowStreamWriter.Type.TIME);
+            case Types.TIMESTAMP:
+                readers[idx] = READ_TIMESTAMP;
+                return Field.timestamp(name, null);
+            case Types.TIMESTAMP_WITH_TIMEZONE:
+                readers[idx] = READ_TIMESTAMP_TZ;
+                return Field.timestamp(name, "UTC");
+            case Types.CHAR:
+            case Types.VARCHAR:
+            case Types.LONGVARCHAR:
+            case Types.NCHAR:
+            case Types.NVARCHAR:
+            case Types.LONGNVARCHAR:
+            case Types.CLOB:
+            case Types.NCLOB:
+                readers[idx] = READ_STRING;
+                return new Field(name, ArrowStreamWriter.Type.UTF8);
+            case Types.BINARY:
+            case Types.VARBINARY:
+            case Types.LONGVARBINARY:
+            case Types.BLOB:
+                readers[idx] = READ_BYTES;
+                return new Field(name, ArrowStreamWriter.Type.BINARY);
+            default:
+                readers[idx] = READ_OBJECT;
+                return new Field(name, ArrowStreamWriter.Type.UTF8);
+        }
+    }
+
+    private static boolean isSigned(ResultSetMetaData meta, int column) {
+        try {
+            return meta.isSigned(column);
+        } catch (SQLException e) {
+            return true;
+        }
+    }
+
+    @Override
+    public boolean row(String[] row) {
+        for (int i = 0; i < row.length; i++) {
+            final ArrowStreamWriter.Column column = writer.getColumn(i);
+            if (isNull(row[i])) {
+                column.appendNull();
+            } else {
+                column.appendString(row[i]);
+            }
+        }
+        return endRow();
+    }
+
+    @Override
+    public boolean row(ResultSet resultSet) {
+        ++rowNumber;
+        for (int i = 0; i < readers.length; i++) {
+            final ArrowStreamWriter.Column column = writer.getColumn(i);
+            try {
+                read(resultSet, projection[i], readers[i], columns[i], column);
+            } catch (SQLException e) {
+                LOG.fine("Row #" + rowNumber + ", column " + projection[i] + ", driver error decoding value: "
+                        + e.getMessage());
+                session.setException(e);
+                column.appendNull();
+            } catch (ArithmeticException e) {
+                if (!warnedOverflow) {
+                    session.err.println("WARNING: Row #" + rowNumber + ": " + e.getMessage()
+                            + ". Values that do not fit their column are written as NULL");
+                    warnedOverflow = true;
+                }
+                column.appendNull();
+            }
+        }
+        return endRow();
+    }
+
+    private static void read(ResultSet rs, int idx, int reader, ColumnDescription desc,
+            ArrowStreamWriter.Column column) throws SQLException {
+        switch (reader) {
+            case READ_BOOLEAN: {
+                final boolean value = rs.getBoolean(idx);
+                if (rs.wasNull()) {
+                    column.appendNull();
+                } else {
+                    column.appendBoolean(value);
+                }
+                break;
+            }
+            case READ_LONG: {
+                final long value = rs.getLong(idx);
+                if (rs.wasNull()) {
+                    column.appendNull();
+                } else {
+                    column.appendLong(value);
+                }
+                break;
+            }
+            case READ_DOUBLE: {
+                final double value = rs.getDouble(idx);
+                if (rs.wasNull()) {
+                    column.appendNull();
+                } else {
+                    column.appendDouble(value);
+                }
+                break;
+            }
+            case READ_DECIMAL:
+            case READ_DECIMAL_STRING: {
+                final BigDecimal value = rs.getBigDecimal(idx);
+                if (value == null) {
+                    column.appendNull();
+                } else if (reader == READ_DECIMAL) {
+                    column.appendDecimal(value);
+                } else {
+                    column.appendString(value.toPlainString());
+                }
+                break;
+            }
+            case READ_DATE: {
+                final Date value = rs.getDate(idx);
+                if (value == null) {
+                    column.appendNull();
+                } else {
+                    column.appendLong(value.toLocalDate().toEpochDay());
+                }
+                break;
+            }
+            case READ_TIME: {
+                final Time value = rs.getTime(idx);
+                if (value == null) {
+                    column.appendNull();
+                } else {
+                    column.appendLong(value.toLocalTime().toSecondOfDay() * 1000000L
+                            + Math.floorMod(value.getTime(), 1000L) * 1000L);
+                }
+                break;
+            }
+            case READ_TIMESTAMP: {
+                final Timestamp value = rs.getTimestamp(idx);
+                if (value == null) {
+                    column.appendNull();
+                } else {
+                    final LocalDateTime local = value.toLocalDateTime();
+                    column.appendLong(local.toEpochSecond(ZoneOffset.UTC) * 1000000L + local.getNano() / 1000);
+                }
+                break;
+            }
+            case READ_TIMESTAMP_TZ: {
+                OffsetDateTime value;
+                try {
+                    value = rs.getObject(idx, OffsetDateTime.class);
+                } catch (SQLException e) {
+                    final Timestamp ts = rs.getTimestamp(idx);
+                    value = ts == null ? null : ts.toInstant().atOffset(ZoneOffset.UTC);
+                }
+                if (value == null) {
+                    column.appendNull();
+                } else {
+                    column.appendLong(value.toEpochSecond() * 1000000L + value.getNano() / 1000);
+                }
+                break;
+            }
+            case READ_STRING: {
+                final String value = rs.getString(idx);
+                if (value == null) {
+                    column.appendNull();
+                } else {
+                    column.appendString(value);
+                }
+                break;
+            }
+            case READ_BYTES: {
+                final byte[] value = rs.getBytes(idx);
+                if (value == null) {
+                    column.appendNull();
+                } else {
+                    column.appendBytes(value);
+                }
+                break;
+            }
+            default: {
+                final Object value = rs.getObject(idx);
+                if (value == null) {
+                    column.appendNull();
+                } else {
+                    column.appendString(desc.getFormatter().format(value));
+                }
+                break;
+            }
+        }
+    }
+
+    private boolean endRow() {
+        if (failed) {
+            return false;
+        }
+        try {
+            writer.endRow();
+        } catch (IOException e) {
+            session.err.println("Failed to write Arrow record batch: " + e.getMessage());
+            failed = true;
+        }
+        return !failed;
+    }
+
+    @Override
+    public boolean flush() {
+        if (!failed) {
+            try {
+                writer.finish();
+            } catch (IOException e) {
+                session.err.println("Failed to write Arrow stream: " + e.getMessage());
+                failed = true;
+            }
+        }
+        return !failed;
+    }
+}
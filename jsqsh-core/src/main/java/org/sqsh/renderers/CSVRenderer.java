@@ -95,7 +95,12 @@ public class CSVRenderer extends Renderer {
         return true;
     }
 
-    private boolean needsQuoting(String str) {
+    @Override
+    public boolean isStreaming() {
+        return true;
+    }
+
+    private boolean needsQuoting(CharSequence str) {
         final int sz = str.length();
 
         if (sz == 0) {
@@ -114,11 +119,11 @@ public class CSVRenderer extends Renderer {
         for (int i = 0; i < sz; i++) {
             char ch = str.charAt(i);
             if (ch == quoteChar) {
-                if (quote.length() == 1 || str.regionMatches(i, quote, 0, quote.length())) {
+                if (quote.length() == 1 || regionMatches(str, i, quote)) {
                     return true;
                 }
             } else if (ch == delChar) {
-                if (delimiter.length() == 1 || str.regionMatches(i, delimiter, 0, delimiter.length())) {
+                if (delimiter.length() == 1 || regionMatches(str, i, delimiter)) {
                     return true;
                 }
             } else if (ch == '\n') {
@@ -128,15 +133,41 @@ public class CSVRenderer extends Renderer {
         return false;
     }
 
+    /**
+     * Tests whether a string occurs at a given position in a value.
+     *
+     * @param str The value to search
+     * @param offset The position in the value to test
+     * @param match The string to look for
+     * @return true if match occurs in str at offset
+     */
+    private static boolean regionMatches(CharSequence str, int offset, String match) {
+        final int len = match.length();
+        if (offset + len > str.length()) {
+            return false;
+        }
+        for (int i = 0; i < len; i++) {
+            if (str.charAt(offset + i) != match.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     @Override
     public boolean row(String[] row) {
+        return row((CharSequence[]) row);
+    }
+
+    @Override
+    public boolean row(CharSequence[] row) {
         line.setLength(0);
         for (int i = 0; i < row.length; i++) {
             if (i > 0) {
                 line.append(delimiter);
             }
 
-            String field = row[i];
+            final CharSequence field = row[i];
             if (!isNull(field)) {
                 if (!needsQuoting(field)) {
                     line.append(field);
@@ -145,8 +176,7 @@ public class CSVRenderer extends Renderer {
                     final char quoteChar = quote.charAt(0);
                     for (int j = 0; j < field.length(); j++) {
                         char ch = field.charAt(j);
-                        if (ch == quoteChar && (quote.length() == 1 || field.regionMatches(j, quote, 0,
-                                quote.length()))) {
+                        if (ch == quoteChar && (quote.length() == 1 || regionMatches(field, j, quote))) {
                             if (quoteEsc == null || quoteEsc.length() == 0) {
                                 line.append(quote).append(quote);
                             } else {
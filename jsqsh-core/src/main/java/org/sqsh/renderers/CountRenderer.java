@@ -3,18 +3,73 @@ package org.sqsh.renderers;
 import org.sqsh.ColumnDescription;
 import org.sqsh.Renderer;
 import org.sqsh.RendererManager;
+import org.sqsh.RowFetcher;
 import org.sqsh.Session;
+import org.sqsh.util.Histogram;
 import org.sqsh.util.TimeUtils;
 
+import java.sql.JDBCType;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Counts the rows that are returned, periodically reporting the rate at which they are arriving.
+ *
+ * <p>If profiling is enabled, the renderer also reads and formats every value (as any other display style would)
+ * and measures where the time goes: how long is spent waiting in {@link ResultSet#next()}, how long is spent
+ * fetching and formatting the values of each row, and how much data arrives for each type of column. Calls to
+ * next() that take much longer than usual are counted as stalls, which is where the driver goes back to the server
+ * for the next block of rows, so the number of rows between stalls shows the effect of the fetch size.
+ */
 public class CountRenderer extends Renderer {
 
     private static long updateInterval = 10_000L;
+    private static boolean profile = false;
+
+    /**
+     * A call to next() is considered a stall if it takes this many times longer than the median...
+     */
+    private static final int STALL_FACTOR = 16;
+
+    /**
+     * ...and at least this many nanoseconds.
+     */
+    private static final long MIN_STALL_NANOS = 50_000L;
+
+    /**
+     * The number of different gaps between stalls that are counted.
+     */
+    private static final int MAX_STALL_GAPS = 1024;
 
     private int resultCount;
     private long rowCount;
+    private long batchRowCount;
     private long startTime;
     private long batchStartTime;
 
+    /*
+     * The following are only used when profiling.
+     */
+    private RowFetcher fetcher;
+    private RowFetcher.RowBuffer rowBuffer;
+    private String nullValue;
+    private int[] columnTypes;
+    private long[] columnBytes;
+    private long batchBytes;
+    private int fetchSize;
+    private long lastRowEnd;
+    private long stallNanos;
+    private long lastStallRow;
+    private final Histogram nextTimes = new Histogram();
+    private final Histogram formatTimes = new Histogram();
+    private final Histogram stallTimes = new Histogram();
+    private final Map<Long, Long> stallGaps = new HashMap<>();
+    private final Histogram batchNextTimes = new Histogram();
+
     public CountRenderer(Session session, RendererManager manager) {
         super(session, manager);
     }
@@ -27,6 +82,14 @@ public class CountRenderer extends Renderer {
         return CountRenderer.updateInterval;
     }
 
+    public void setProfile(boolean profile) {
+        CountRenderer.profile = profile;
+    }
+
+    public boolean isProfile() {
+        return CountRenderer.profile;
+    }
+
     @Override
     public void header(ColumnDescription[] columns) {
         super.header(columns);
@@ -40,42 +103,266 @@ public class CountRenderer extends Renderer {
 
         ++resultCount;
         rowCount = 0L;
+        batchRowCount = 0L;
+        fetcher = null;
+    }
+
+    @Override
+    public void header(ColumnDescription[] columns, ResultSet resultSet, int[] projection) throws SQLException {
+        header(columns);
+
+        fetcher = new RowFetcher(session, resultSet, columns, projection);
+        rowBuffer = fetcher.newRowBuffer();
+        nullValue = session.getDataFormatter().getNull();
+        columnTypes = new int[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            columnTypes[i] = columns[i].getNativeType();
+        }
+        columnBytes = new long[columns.length];
+        batchBytes = 0L;
+        fetchSize = resultSet.getFetchSize();
+        stallNanos = Long.MAX_VALUE;
+        lastStallRow = 0L;
+        nextTimes.clear();
+        formatTimes.clear();
+        stallTimes.clear();
+        stallGaps.clear();
+        batchNextTimes.clear();
+        lastRowEnd = System.nanoTime();
     }
 
     @Override
     public boolean isDiscard() {
-        return true;
+        return !profile;
+    }
+
+    @Override
+    public boolean isTyped() {
+        return profile;
     }
 
     @Override
     public boolean row(String[] row) {
-        ++rowCount;
-        if (updateInterval > 0 && (rowCount % updateInterval) == 0) {
-            batchStats();
+        countRow();
+        return true;
+    }
+
+    @Override
+    public boolean row(ResultSet resultSet) {
+        // Time since the end of the previous row is (nearly) all time spent in next()
+        final long start = System.nanoTime();
+        final long nextNanos = start - lastRowEnd;
+        nextTimes.record(nextNanos);
+        batchNextTimes.record(nextNanos);
+
+        final CharSequence[] row = fetcher.fetch(rowCount + 1, rowBuffer);
+        final long end = System.nanoTime();
+        formatTimes.record(end - start);
+
+        for (int i = 0; i < row.length; i++) {
+            if (row[i] != nullValue) {
+                final long bytes = sizeOf(columnTypes[i], row[i]);
+                columnBytes[i] += bytes;
+                batchBytes += bytes;
+            }
         }
+
+        // The threshold for a stall follows the median, so it is refreshed every so often
+        final long count = nextTimes.getCount();
+        if (count == 64 || (count & 1023) == 0) {
+            stallNanos = Math.max(nextTimes.getPercentile(50) * STALL_FACTOR, MIN_STALL_NANOS);
+        }
+        if (nextNanos >= stallNanos) {
+            stallTimes.record(nextNanos);
+            final long gap = rowCount + 1 - lastStallRow;
+            if (stallGaps.size() < MAX_STALL_GAPS || stallGaps.containsKey(gap)) {
+                stallGaps.merge(gap, 1L, Long::sum);
+            }
+            lastStallRow = rowCount + 1;
+        }
+
+        countRow();
+        lastRowEnd = System.nanoTime();
         return true;
     }
 
     @Override
     public boolean flush() {
-        batchStats();
+        if (batchRowCount > 0 || rowCount == 0) {
+            batchStats();
+        }
+        if (fetcher != null) {
+            profileStats();
+            fetcher = null;
+        }
         return true;
     }
 
+    private void countRow() {
+        ++rowCount;
+        ++batchRowCount;
+        if (updateInterval > 0 && (rowCount % updateInterval) == 0) {
+            batchStats();
+        }
+    }
+
     private void batchStats() {
         final long now = System.currentTimeMillis();
         final long batchMillis = now - batchStartTime;
         final long overallMillis = now - startTime;
 
         session.out.format("Result set #%d returned %d rows (%s, %.2f rows/sec), %d total (%s, %2f rows/sec)",
-                resultCount, updateInterval,
+                resultCount, batchRowCount,
                 TimeUtils.millisToDurationString(batchMillis),
-                (updateInterval / (batchMillis / 1000.0)),
+                (batchRowCount / (batchMillis / 1000.0)),
                 rowCount,
                 TimeUtils.millisToDurationString(overallMillis),
                 (rowCount / (overallMillis / 1000.0)));
+        if (fetcher != null) {
+            session.out.format(", %s/sec, next() p50 %s p99 %s",
+                    bytesToString((long) (batchBytes / (Math.max(batchMillis, 1L) / 1000.0))),
+                    nanosToString(batchNextTimes.getPercentile(50)),
+                    nanosToString(batchNextTimes.getPercentile(99)));
+            batchNextTimes.clear();
+            batchBytes = 0L;
+        }
 
         session.out.println();
+        batchRowCount = 0L;
         batchStartTime = System.currentTimeMillis();
     }
+
+    /**
+     * Displays the summary of where the time went while fetching the result set.
+     */
+    private void profileStats() {
+        session.out.format("Result set #%d fetch profile (%d rows, fetch size %s):%n", resultCount, rowCount,
+                fetchSize > 0 ? Integer.toString(fetchSize) : "driver default");
+        session.out.println("  next()  : " + summary(nextTimes));
+        session.out.println("  format  : " + summary(formatTimes));
+
+        if (stallTimes.getCount() > 0) {
+            long commonGap = 0L;
+            long commonGapCount = 0L;
+            for (Map.Entry<Long, Long> e : stallGaps.entrySet()) {
+                if (e.getValue() > commonGapCount || (e.getValue() == commonGapCount && e.getKey() < commonGap)) {
+                    commonGap = e.getKey();
+                    commonGapCount = e.getValue();
+                }
+            }
+            session.out.format("  stalls  : %d calls to next() over %s, %.1f%% of time in next(), %d rows apart "
+                            + "on average, most often %d rows apart (%d times)%n",
+                    stallTimes.getCount(),
+                    nanosToString(stallNanos == Long.MAX_VALUE ? MIN_STALL_NANOS : stallNanos),
+                    nextTimes.getTotal() == 0 ? 0.0 : 100.0 * stallTimes.getTotal() / nextTimes.getTotal(),
+                    rowCount / stallTimes.getCount(), commonGap, commonGapCount);
+            session.out.println("            " + summary(stallTimes));
+        } else {
+            session.out.println("  stalls  : none");
+        }
+
+        // The time spent in each call to next(), compared to the time spent fetching and formatting each row
+        final long[] nextCounts = nextTimes.getCountsByPowerOfTwo();
+        final long[] formatCounts = formatTimes.getCountsByPowerOfTwo();
+        session.out.format("  %-19s %12s %12s%n", "latency", "next()", "format");
+        for (int i = 0; i < Math.max(nextCounts.length, formatCounts.length); i++) {
+            final long n = i < nextCounts.length ? nextCounts[i] : 0L;
+            final long f = i < formatCounts.length ? formatCounts[i] : 0L;
+            if (n != 0 || f != 0) {
+                final String range = i == 0 ? "< 2ns" : nanosToString(1L << i) + " - " + nanosToString(2L << i);
+                session.out.format("  %-19s %12d %12d%n", range, n, f);
+            }
+        }
+
+        // Approximately how much data arrived for each type of column
+        final Map<String, Long> byType = new LinkedHashMap<>();
+        long totalBytes = 0L;
+        for (int i = 0; i < columnTypes.length; i++) {
+            byType.merge(typeName(columnTypes[i]), columnBytes[i], Long::sum);
+            totalBytes += columnBytes[i];
+        }
+        final long elapsed = System.currentTimeMillis() - startTime;
+        session.out.format("  bytes   : %s total, %s/sec (approximately)%n", bytesToString(totalBytes),
+                bytesToString((long) (totalBytes / (Math.max(elapsed, 1L) / 1000.0))));
+        for (Map.Entry<String, Long> e : byType.entrySet()) {
+            session.out.format("            %-24s %10s %8.1f bytes/row%n", e.getKey(), bytesToString(e.getValue()),
+                    rowCount == 0 ? 0.0 : (double) e.getValue() / rowCount);
+        }
+    }
+
+    private static String summary(Histogram histogram) {
+        return String.format("total %s, mean %s, p50 %s, p95 %s, p99 %s, max %s",
+                nanosToString(histogram.getTotal()), nanosToString((long) histogram.getMean()),
+                nanosToString(histogram.getPercentile(50)), nanosToString(histogram.getPercentile(95)),
+                nanosToString(histogram.getPercentile(99)), nanosToString(histogram.getMax()));
+    }
+
+    /**
+     * Estimates the number of bytes a value took to arrive: types of a fixed size are counted at their size, binary
+     * values at the number of bytes in their hex display form, and other types at the length of their display form.
+     */
+    private static long sizeOf(int type, CharSequence value) {
+        switch (type) {
+            case Types.BIT:
+            case Types.BOOLEAN:
+            case Types.TINYINT:
+                return 1;
+            case Types.SMALLINT:
+                return 2;
+            case Types.INTEGER:
+            case Types.REAL:
+            case Types.DATE:
+                return 4;
+            case Types.BIGINT:
+            case Types.DOUBLE:
+            case Types.FLOAT:
+            case Types.TIME:
+            case Types.TIMESTAMP:
+                return 8;
+            case Types.TIME_WITH_TIMEZONE:
+            case Types.TIMESTAMP_WITH_TIMEZONE:
+                return 12;
+            case Types.BINARY:
+            case Types.VARBINARY:
+            case Types.LONGVARBINARY:
+            case Types.BLOB:
+                return Math.max(value.length() - 2, 0) / 2;
+            default:
+                return value.length();
+        }
+    }
+
+    private static String typeName(int type) {
+        try {
+            return JDBCType.valueOf(type).getName();
+        } catch (IllegalArgumentException e) {
+            return "TYPE " + type;
+        }
+    }
+
+    private static String nanosToString(long nanos) {
+        if (nanos < 1_000L) {
+            return nanos + "ns";
+        }
+        if (nanos < 1_000_000L) {
+            return String.format("%.1fus", nanos / 1_000.0);
+        }
+        if (nanos < 1_000_000_000L) {
+            return String.format("%.1fms", nanos / 1_000_000.0);
+        }
+        return String.format("%.2fs", nanos / 1_000_000_000.0);
+    }
+
+    private static String bytesToString(long bytes) {
+        if (bytes < 1024L) {
+            return bytes + "B";
+        }
+        if (bytes < 1024L * 1024L) {
+            return String.format("%.1fKB", bytes / 1024.0);
+        }
+        if (bytes < 1024L * 1024L * 1024L) {
+            return String.format("%.1fMB", bytes / (1024.0 * 1024.0));
+        }
+        return String.format("%.2fGB", bytes / (1024.0 * 1024.0 * 1024.0));
+    }
 }
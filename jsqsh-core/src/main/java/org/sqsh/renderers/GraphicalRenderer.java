@@ -16,6 +16,7 @@
 package org.sqsh.renderers;
 
 import org.sqsh.ColumnDescription;
+import org.sqsh.MemoryBudget;
 import org.sqsh.Renderer;
 import org.sqsh.RendererManager;
 import org.sqsh.Session;
@@ -31,18 +32,24 @@ import javax.swing.table.TableColumnModel;
 import java.awt.*;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Vector;
 
 /**
- * The GraphicalRenderer displays row results using a swing graphical interface.
+ * The GraphicalRenderer displays row results using a swing graphical interface. Because the window holds onto every
+ * row, the rows are reserved from the {@link MemoryBudget}, and once the budget runs out the remaining rows are left
+ * out of the window. Each window keeps its rows reserved until it is closed.
  */
 public class GraphicalRenderer extends Renderer {
 
     private SortableTableModel tableModel;
     private JPanel topPanel;
+    private MemoryBudget.Reservation memory = null;
+    private int discardedRows = 0;
 
     /**
      * Creates the renderer.
@@ -67,6 +74,7 @@ public class GraphicalRenderer extends Renderer {
         if (columns == null) {
             return;
         }
+        discardedRows = 0;
 
         DimensionVariable v = (DimensionVariable) session.getVariableManager().getVariable("window_size");
         if (v != null) {
@@ -74,9 +82,20 @@ public class GraphicalRenderer extends Renderer {
             height = v.getHeight();
         }
 
+        // The rows belong to the window, so they stay reserved until it is closed.
+        final MemoryBudget.Reservation reservation = manager.getMemoryBudget().reserve(session);
+        memory = reservation;
+
         JFrame frame = new JFrame();
         // Set the frame characteristics
         frame.setTitle("Query Results");
+        frame.setDefaultCloseOperation(WindowConstants.DISPOSE_ON_CLOSE);
+        frame.addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosed(WindowEvent e) {
+                reservation.release();
+            }
+        });
         frame.setSize(width, height);
         frame.setLocationByPlatform(true);
 
@@ -114,6 +133,10 @@ public class GraphicalRenderer extends Renderer {
      */
     @Override
     public boolean row(String[] row) {
+        if (discardedRows > 0 || !memory.tryGrow(MemoryBudget.estimate(row))) {
+            ++discardedRows;
+            return true;
+        }
         tableModel.addRow(row);
         return true;
     }
@@ -121,6 +144,10 @@ public class GraphicalRenderer extends Renderer {
     @Override
     public void footer(String footer) {
         if (topPanel != null) {
+            if (discardedRows > 0) {
+                footer = footer + " (" + discardedRows + " rows not shown: memory limit for displaying results "
+                        + "reached, see \"help display_memory\")";
+            }
             JLabel footerText = new JLabel(footer);
             topPanel.add(footerText, BorderLayout.SOUTH);
             topPanel.repaint();
@@ -132,9 +159,32 @@ public class GraphicalRenderer extends Renderer {
 
     @Override
     public boolean flush() {
+        detach();
+        if (discardedRows > 0) {
+            session.err.println("WARNING: The memory limit for displaying results was reached (see \"help "
+                    + "display_memory\"). The last " + discardedRows + " rows are not shown");
+        }
         return true;
     }
 
+    /**
+     * The window stays open with whatever rows it was given.
+     */
+    @Override
+    public void abort() {
+        detach();
+    }
+
+    /**
+     * Hands the rows of the current window over to the window, which releases them once it is closed.
+     */
+    private void detach() {
+        if (memory != null) {
+            memory.detach();
+            memory = null;
+        }
+    }
+
     private static class SortableTableModel extends DefaultTableModel {
         private static final long serialVersionUID = 1L;
         private final ColumnDescription[] columns;
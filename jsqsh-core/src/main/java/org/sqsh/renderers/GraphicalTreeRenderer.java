@@ -26,6 +26,7 @@ import javax.swing.*;
 import javax.swing.event.TreeSelectionListener;
 import javax.swing.event.TreeWillExpandListener;
 import javax.swing.tree.DefaultMutableTreeNode;
+import javax.swing.tree.TreeModel;
 import java.awt.*;
 
 /**
@@ -85,8 +86,6 @@ public class GraphicalTreeRenderer extends Renderer {
      */
     @Override
     public void header(ColumnDescription[] columns) {
-        int width = 600;
-        int height = 400;
         if (columns == null) {
             return;
         }
@@ -115,7 +114,39 @@ public class GraphicalTreeRenderer extends Renderer {
 
         }
 
-        JLabel headerLabel = new JLabel(label.toString());
+        rootTreeNode = new JSqshNode();
+        tree = new JTree(rootTreeNode);
+        topPanel = open(label.toString(), tree);
+    }
+
+    /**
+     * Displays a tree that is not made up of rows, but comes from a model of its own, in a new window.
+     *
+     * @param label The label shown above the tree
+     * @param model The model of the tree
+     * @param twel Told when a node is about to be expanded, or null
+     * @param tsl Told when the selection changes, or null
+     */
+    public void display(String label, TreeModel model, TreeWillExpandListener twel, TreeSelectionListener tsl) {
+        this.twel = twel;
+        this.tsl = tsl;
+        JTree modelTree = new JTree(model);
+        modelTree.setShowsRootHandles(true);
+        modelTree.setRootVisible(false);
+        open(label, modelTree);
+        this.twel = null;
+        this.tsl = null;
+    }
+
+    /**
+     * Opens a window showing a tree.
+     *
+     * @return The panel holding the tree
+     */
+    private JPanel open(String label, JTree view) {
+        int width = 600;
+        int height = 400;
+        JLabel headerLabel = new JLabel(label);
         DimensionVariable v = (DimensionVariable) session.getVariableManager().getVariable("window_size");
         if (v != null) {
             width = v.getWidth();
@@ -129,30 +160,28 @@ public class GraphicalTreeRenderer extends Renderer {
         frame.setLocationByPlatform(true);
 
         // Create a panel to hold all other components
-        topPanel = new JPanel();
-        topPanel.setLayout(new BorderLayout());
-        frame.getContentPane().add(topPanel);
-        rootTreeNode = new JSqshNode();
+        JPanel panel = new JPanel();
+        panel.setLayout(new BorderLayout());
+        frame.getContentPane().add(panel);
 
-        // Create a new table instance
-        tree = new JTree(rootTreeNode);
         FontVariable fontVar = (FontVariable) session.getVariableManager().getVariable("font");
         if (fontVar != null) {
-            tree.setFont(new Font(fontVar.getFontName(), Font.PLAIN, fontVar.getFontSize()));
+            view.setFont(new Font(fontVar.getFontName(), Font.PLAIN, fontVar.getFontSize()));
         }
 
         // Add the table to a scrolling pane
-        JScrollPane scrollPane = new JScrollPane(tree, ScrollPaneConstants.VERTICAL_SCROLLBAR_AS_NEEDED,
+        JScrollPane scrollPane = new JScrollPane(view, ScrollPaneConstants.VERTICAL_SCROLLBAR_AS_NEEDED,
                 ScrollPaneConstants.HORIZONTAL_SCROLLBAR_AS_NEEDED);
-        topPanel.add(headerLabel, BorderLayout.NORTH);
-        topPanel.add(scrollPane, BorderLayout.CENTER);
+        panel.add(headerLabel, BorderLayout.NORTH);
+        panel.add(scrollPane, BorderLayout.CENTER);
         if (twel != null) {
-            tree.addTreeWillExpandListener(twel);
+            view.addTreeWillExpandListener(twel);
         }
         if (tsl != null) {
-            tree.addTreeSelectionListener(tsl);
+            view.addTreeSelectionListener(tsl);
         }
         frame.setVisible(true);
+        return panel;
     }
 
     /**
@@ -20,13 +20,25 @@ import org.sqsh.Renderer;
 import org.sqsh.RendererManager;
 import org.sqsh.SQLTools;
 import org.sqsh.Session;
+import org.sqsh.util.BoundedRing;
 
 import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.sql.Types;
+import java.util.Arrays;
 
 /**
  * Renders INSERT statements based upon a result set.
+ *
+ * <p>When the statements are executed against a connection (see {@link #setConnection(Connection)}), the rows of a
+ * result set are, by default, inserted using a single prepared INSERT statement, with the values of each row read
+ * from the result set as they come from the driver and bound to its parameters, and sent to the server in batches
+ * (see {@link #setBatchSize(int)}) using {@link PreparedStatement#executeBatch()}. The batches are inserted by a
+ * thread of their own while the result set is still being read (see {@link #setQueueDepth(int)}). Otherwise, or when
+ * {@link #setPrepared(boolean) disabled}, each row is turned into the text of an INSERT statement.
  */
 public class InsertRenderer extends Renderer {
 
@@ -35,11 +47,28 @@ public class InsertRenderer extends Renderer {
     private int batchSize = 50;
     private String batchTerminator = "go";
     private boolean multiRowInsert = false;
+    private boolean prepared = true;
+    private int commitInterval = 0;
     private Connection conn = null;
     private StringBuilder insertBatch = new StringBuilder();
+    private final StringBuilder line = new StringBuilder();
 
     private int rowCount = 0;
 
+    /**
+     * When rows are read from a result set, they are collected into batches that are handed to the writer, which
+     * inserts them through a prepared statement. Unless the queue depth is 0, the writer runs in a thread of its own,
+     * fed through a ring that holds at most that many batches.
+     */
+    private int queueDepth = 4;
+    private int[] projection = null;
+    private int[] types = null;
+    private Object[][] rows = null;
+    private int batched = 0;
+    private BatchWriter writer = null;
+    private BoundedRing<Object[][]> ring = null;
+    private Thread writerThread = null;
+
     public InsertRenderer(Session session, RendererManager manager) {
         super(session, manager);
         String tab = session.getVariable("insert_table");
@@ -65,6 +94,61 @@ public class InsertRenderer extends Renderer {
         return multiRowInsert;
     }
 
+    /**
+     * Controls whether the rows of a result set are inserted using a prepared INSERT statement whose parameters are
+     * bound to the values of each row, when a connection has been provided. If not, or if multiple rows per insert
+     * are enabled, the text of each INSERT statement is built from the values as they are displayed.
+     *
+     * @param prepared true to use a prepared statement (the default)
+     */
+    public void setPrepared(boolean prepared) {
+        this.prepared = prepared;
+    }
+
+    /**
+     * @return whether the rows of a result set are inserted using a prepared statement, when a connection is provided
+     */
+    public boolean isPrepared() {
+        return prepared;
+    }
+
+    /**
+     * @return The number of rows inserted between commits, or 0 to commit after every batch.
+     */
+    public int getCommitInterval() {
+        return commitInterval;
+    }
+
+    /**
+     * Sets how often the inserted rows are committed, when a prepared statement is used. A commit takes place after
+     * the first batch that brings the number of rows inserted since the last commit to at least this many, and once
+     * all of the rows have been inserted. Commits are left to the driver if the connection is in auto-commit mode.
+     *
+     * @param commitInterval The number of rows inserted between commits, or 0 to commit after every batch.
+     */
+    public void setCommitInterval(int commitInterval) {
+        this.commitInterval = Math.max(commitInterval, 0);
+    }
+
+    /**
+     * @return The number of batches that may be waiting to be inserted.
+     */
+    public int getQueueDepth() {
+        return queueDepth;
+    }
+
+    /**
+     * Sets how many batches of rows read from a result set may be waiting to be inserted through a prepared
+     * statement. The batches are inserted by a thread of its own, so that reading the rows of the result set and
+     * inserting them take place at the same time; should the inserts fall behind, reading stops once this many
+     * batches are waiting.
+     *
+     * @param queueDepth The number of batches, or 0 to insert each batch as soon as it is read, without a thread
+     */
+    public void setQueueDepth(int queueDepth) {
+        this.queueDepth = Math.max(queueDepth, 0);
+    }
+
     /**
      * @return the name of the table that will be used in the INSERT statements.
      */
@@ -145,9 +229,205 @@ public class InsertRenderer extends Renderer {
         insert = sb.toString();
     }
 
+    /**
+     * Prepares the INSERT statement that the rows of a result set are bound to, and starts the writer.
+     */
+    @Override
+    public void header(ColumnDescription[] columns, ResultSet resultSet, int[] projection) throws SQLException {
+        header(columns);
+        final StringBuilder sb = new StringBuilder(insert.length() + columns.length * 3);
+        sb.append(insert, 0, insert.length() - 1).append(" (");
+        this.types = new int[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            sb.append(i > 0 ? ", ?" : "?");
+            types[i] = columns[i].getNativeType();
+        }
+        sb.append(')');
+        this.projection = projection;
+        this.rows = new Object[Math.max(batchSize, 1)][];
+        this.batched = 0;
+        final BatchWriter writer = new BatchWriter(conn, conn.prepareStatement(sb.toString()), types, commitInterval);
+        this.writer = writer;
+        if (queueDepth > 0) {
+            final BoundedRing<Object[][]> ring = new BoundedRing<>(queueDepth);
+            this.ring = ring;
+            writerThread = new Thread(() -> writer.run(ring), "InsertWriter-" + session.getId());
+            writerThread.setDaemon(true);
+            writerThread.start();
+        }
+    }
+
+    @Override
+    public boolean isTyped() {
+        return conn != null && prepared && !multiRowInsert;
+    }
+
+    @Override
+    public boolean isStreaming() {
+        return true;
+    }
+
+    /**
+     * Reads the values of the current row of the result set and adds it to the batch, handing the batch over to
+     * the writer once it is full.
+     */
+    @Override
+    public boolean row(ResultSet resultSet) throws SQLException {
+        if (writer.failure != null) {
+            finish();
+            return false;
+        }
+        final Object[] row = new Object[projection.length];
+        try {
+            for (int i = 0; i < projection.length; i++) {
+                row[i] = read(types[i], resultSet, projection[i]);
+            }
+        } catch (SQLException e) {
+            SQLTools.printException(session, e);
+            abort();
+            return false;
+        }
+        rows[batched++] = row;
+        if (batched < rows.length) {
+            return true;
+        }
+        final Object[][] batch = rows;
+        rows = new Object[batch.length][];
+        batched = 0;
+        return write(batch);
+    }
+
+    /**
+     * Reads a value from the result set in the form that the JDBC specification maps its type to, so that it is
+     * understood by the driver of the target connection.
+     */
+    private static Object read(int type, ResultSet resultSet, int column) throws SQLException {
+        switch (type) {
+            case Types.CHAR:
+            case Types.VARCHAR:
+            case Types.LONGVARCHAR:
+            case Types.NCHAR:
+            case Types.NVARCHAR:
+            case Types.LONGNVARCHAR:
+            case Types.CLOB:
+            case Types.NCLOB:
+                return resultSet.getString(column);
+            case Types.DECIMAL:
+            case Types.NUMERIC:
+                return resultSet.getBigDecimal(column);
+            case Types.DATE:
+                return resultSet.getDate(column);
+            case Types.TIME:
+                return resultSet.getTime(column);
+            case Types.TIMESTAMP:
+                return resultSet.getTimestamp(column);
+            case Types.BINARY:
+            case Types.VARBINARY:
+            case Types.LONGVARBINARY:
+            case Types.BLOB:
+                return resultSet.getBytes(column);
+            default:
+                return resultSet.getObject(column);
+        }
+    }
+
+    /**
+     * Hands a batch over to the writer, waiting for room in the ring if the writer has fallen behind.
+     *
+     * @return true if it worked, false if the writer failed or has otherwise stopped.
+     */
+    private boolean write(Object[][] batch) {
+        if (ring == null) {
+            try {
+                writer.write(batch);
+                return true;
+            } catch (SQLException e) {
+                writer.failure = e;
+                writer.rollback();
+                return finish();
+            }
+        }
+        try {
+            if (ring.put(batch)) {
+                return true;
+            }
+            finish();
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            abort();
+            return false;
+        }
+    }
+
+    /**
+     * Waits for the writer to insert and commit whatever has been handed to it, reporting its failure, if any.
+     *
+     * @return true if all of the rows were inserted, false otherwise.
+     */
+    private boolean finish() {
+        if (ring != null) {
+            ring.close();
+            join();
+        } else if (writer.failure == null) {
+            try {
+                writer.finish();
+            } catch (SQLException e) {
+                writer.failure = e;
+                writer.rollback();
+            }
+        }
+        final SQLException failure = writer.failure;
+        writer = null;
+        if (failure != null) {
+            SQLTools.printException(session, failure);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Stops the writer, rolling back the rows that it has not committed yet.
+     */
+    @Override
+    public void abort() {
+        if (writer == null) {
+            return;
+        }
+        if (ring != null) {
+            ring.fail(new SQLException("The insert was abandoned"));
+            join();
+        } else {
+            writer.rollback();
+        }
+        writer = null;
+    }
+
+    private void join() {
+        boolean interrupted = false;
+        while (writerThread.isAlive()) {
+            try {
+                writerThread.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        ring = null;
+        writerThread = null;
+    }
+
     @Override
     public boolean row(String[] row) {
-        StringBuilder sb = new StringBuilder();
+        return row((CharSequence[]) row);
+    }
+
+    @Override
+    public boolean row(CharSequence[] row) {
+        final StringBuilder sb = line;
+        sb.setLength(0);
 
         if (!multiRowInsert || (rowCount % batchSize) == 0) {
             sb.append(insert).append(" (");
@@ -156,20 +436,19 @@ public class InsertRenderer extends Renderer {
         }
 
         for (int i = 0; i < row.length; i++) {
-            if (isNull(row[i])) {
-                row[i] = null;
-            }
             if (i > 0) {
                 sb.append(", ");
             }
-            if (row[i] == null) {
+            if (isNull(row[i])) {
                 sb.append("NULL");
             } else {
                 ColumnDescription col = columns[i];
                 if (col.getType() != ColumnDescription.Type.STRING) {
                     sb.append(row[i]);
                 } else {
-                    sb.append('\'').append(quote(row[i])).append('\'');
+                    sb.append('\'');
+                    quote(sb, row[i]);
+                    sb.append('\'');
                 }
             }
         }
@@ -177,7 +456,7 @@ public class InsertRenderer extends Renderer {
         sb.append(")");
 
         ++rowCount;
-        boolean ok = insertRow(sb.toString());
+        boolean ok = insertRow(sb);
         if (ok && (rowCount % batchSize) == 0) {
             ok = insertGo();
         }
@@ -190,7 +469,7 @@ public class InsertRenderer extends Renderer {
      * @param str String containing an insert statement.
      * @return true if the insert succeeded, false otherwise
      */
-    private boolean insertRow(String str) {
+    private boolean insertRow(CharSequence str) {
 
         // If there is no connection, then just print the INSERT statement to the screen.
         if (conn == null) {
@@ -243,17 +522,12 @@ public class InsertRenderer extends Renderer {
     }
 
     /**
-     * Protects single quotes in a string.
+     * Appends a string to a buffer, protecting any single quotes it contains.
      *
+     * @param sb The buffer to append to.
      * @param str The string that may or may not have single quotes.
-     * @return The string with the quotes escaped.
      */
-    private String quote(String str) {
-        if (str.indexOf('\'') < 0) {
-            return str;
-        }
-
-        StringBuilder sb = new StringBuilder();
+    private static void quote(StringBuilder sb, CharSequence str) {
         int len = str.length();
         for (int i = 0; i < len; i++) {
             char ch = str.charAt(i);
@@ -263,17 +537,144 @@ public class InsertRenderer extends Renderer {
                 sb.append(ch);
             }
         }
-
-        return sb.toString();
     }
 
+    /**
+     * Ends the INSERT statement that is being built, if any, so that the output is complete (and may be split up,
+     * see {@link org.sqsh.util.RollingPrintStream}) at this point.
+     */
     @Override
     public boolean flush() {
-        return true;
+        boolean ok = true;
+        if (writer != null) {
+            final Object[][] batch = Arrays.copyOf(rows, batched);
+            rows = null;
+            batched = 0;
+            ok = (batch.length == 0 || write(batch)) && finish();
+        } else if ((rowCount % batchSize) != 0) {
+            ok = insertGo();
+        }
+        rowCount = 0;
+        return ok;
     }
 
     @Override
     public void footer(String footer) {
-        insertGo();
+        // The final batch has already been ended by flush(), and the footer itself is not valid SQL.
+    }
+
+    /**
+     * Inserts batches of rows through a prepared statement, committing as it goes. The writer is only ever used by
+     * one thread at a time, and lets go of the statement once it has finished or failed.
+     */
+    private static class BatchWriter {
+
+        private final Connection conn;
+        private final PreparedStatement statement;
+        private final int[] types;
+        private final int commitInterval;
+        private int uncommitted = 0;
+
+        /**
+         * The reason the writer stopped early, if it did.
+         */
+        private volatile SQLException failure = null;
+
+        private BatchWriter(Connection conn, PreparedStatement statement, int[] types, int commitInterval) {
+            this.conn = conn;
+            this.statement = statement;
+            this.types = types;
+            this.commitInterval = commitInterval;
+        }
+
+        /**
+         * Inserts the batches taken from the ring until it is closed, then commits. If the ring fails, or a batch
+         * cannot be inserted, or the writer stops for any other reason, the reason is recorded as its failure, the
+         * rows that have not been committed are rolled back, and the ring is aborted so that no more batches are
+         * handed over.
+         */
+        private void run(BoundedRing<Object[][]> ring) {
+            try {
+                Object[][] batch = ring.take();
+                while (batch != null) {
+                    write(batch);
+                    batch = ring.take();
+                }
+                finish();
+            } catch (SQLException e) {
+                stop(ring, e);
+            } catch (InterruptedException e) {
+                stop(ring, new SQLException("The insert was interrupted", e));
+            } catch (BoundedRing.RingFailedException e) {
+                stop(ring, e.getCause() instanceof SQLException ? (SQLException) e.getCause()
+                        : new SQLException(e.getCause().getMessage(), e.getCause()));
+            } catch (RuntimeException e) {
+                stop(ring, new SQLException(e.toString(), e));
+            }
+        }
+
+        private void stop(BoundedRing<Object[][]> ring, SQLException cause) {
+            failure = cause;
+            ring.abort();
+            rollback();
+        }
+
+        /**
+         * Binds each row of a batch to the statement and executes them, committing if enough rows have been
+         * inserted since the last commit.
+         */
+        private void write(Object[][] batch) throws SQLException {
+            for (Object[] row : batch) {
+                for (int i = 0; i < row.length; i++) {
+                    if (row[i] == null) {
+                        statement.setNull(i + 1, types[i]);
+                    } else {
+                        statement.setObject(i + 1, row[i]);
+                    }
+                }
+                statement.addBatch();
+            }
+            statement.executeBatch();
+            uncommitted += batch.length;
+            if (uncommitted >= commitInterval) {
+                commit();
+            }
+        }
+
+        /**
+         * Commits the rows that are left and closes the statement.
+         */
+        private void finish() throws SQLException {
+            commit();
+            statement.close();
+        }
+
+        private void commit() throws SQLException {
+            if (uncommitted > 0 && !conn.getAutoCommit()) {
+                conn.commit();
+            }
+            uncommitted = 0;
+        }
+
+        /**
+         * Discards the rows that have not been committed yet, if possible, and closes the statement. Errors are
+         * ignored, as the insert has already failed.
+         */
+        private void rollback() {
+            try {
+                statement.clearBatch();
+                if (!conn.getAutoCommit()) {
+                    conn.rollback();
+                }
+            } catch (SQLException e) {
+                // Already failed
+            }
+            try {
+                statement.close();
+            } catch (SQLException e) {
+                // Already failed
+            }
+            uncommitted = 0;
+        }
     }
 }
@@ -20,14 +20,28 @@ import org.sqsh.Renderer;
 import org.sqsh.RendererManager;
 import org.sqsh.SQLTools;
 import org.sqsh.Session;
+import org.sqsh.util.JsonText;
 
 /**
- * Displays SQL result sets as JSON values.
+ * Displays SQL result sets as JSON values. Each row is assembled in a re-usable buffer and written to the output in
+ * one go.
  */
 public class JsonRenderer extends Renderer {
 
-    private boolean firstResult = true;
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+
     private int nrows = 0;
+    private final StringBuilder line = new StringBuilder();
+
+    /**
+     * For each column, the text that precedes its value (the escaped column name, and its indentation).
+     */
+    private String[] prefixes;
+
+    /**
+     * For each column, whether the values are always written as strings.
+     */
+    private boolean[] isText;
 
     public JsonRenderer(Session session, RendererManager renderMan) {
         super(session, renderMan);
@@ -35,74 +49,69 @@ public class JsonRenderer extends Renderer {
 
     @Override
     public void header(ColumnDescription[] columns) {
-        if (firstResult) {
-            session.out.println('[');
-            firstResult = false;
-        }
+        session.out.println('[');
+        nrows = 0;
         super.header(columns);
+
+        prefixes = new String[columns.length];
+        isText = new boolean[columns.length];
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < columns.length; i++) {
+            sb.setLength(0);
+            sb.append("      ");
+            JsonText.appendString(sb, columns[i].getName());
+            sb.append(": ");
+            prefixes[i] = sb.toString();
+            isText[i] = SQLTools.needsQuotes(columns[i].getNativeType());
+        }
+    }
+
+    @Override
+    public boolean isStreaming() {
+        return true;
     }
 
     @Override
     public boolean row(String[] row) {
+        return row((CharSequence[]) row);
+    }
+
+    @Override
+    public boolean row(CharSequence[] row) {
+        line.setLength(0);
         if (nrows > 0) {
-            session.out.println(',');
+            line.append(',').append(LINE_SEPARATOR);
         }
 
         if (row.length > 1) {
-            session.out.println("   {");
+            line.append("   {").append(LINE_SEPARATOR);
             for (int i = 0; i < row.length; i++) {
                 if (i > 0) {
-                    session.out.println(',');
-                }
-                ColumnDescription desc = columns[i];
-                session.out.print("      \"");
-                session.out.print(escape(desc.getName()));
-                session.out.print("\": ");
-                if (SQLTools.needsQuotes(desc.getNativeType())) {
-                    session.out.print('"');
-                    session.out.print(escape(row[i]));
-                    session.out.print('"');
-                } else {
-                    session.out.print(row[i]);
+                    line.append(',').append(LINE_SEPARATOR);
                 }
+                line.append(prefixes[i]);
+                appendValue(i, row[i]);
             }
-            session.out.println();
-            session.out.print("   }");
+            line.append(LINE_SEPARATOR);
+            line.append("   }");
         } else {
-            session.out.print("   ");
-            session.out.print(row[0]);
+            line.append("   ");
+            appendValue(0, row[0]);
         }
 
+        session.out.append(line);
         ++nrows;
         return true;
     }
 
-    /**
-     * Given a string that may contain double quotes, escapes them if they exist.
-     *
-     * @param str The string to check
-     * @return The escaped string.
-     */
-    private String escape(String str) {
-
-        int idx = str.indexOf('"');
-        if (idx < 0) {
-            return str;
-        }
-
-        StringBuilder sb = new StringBuilder(str.length() + 4);
-        sb.append(str, 0, idx);
-        sb.append("\\\"");
-        ++idx;
-        while (idx < str.length()) {
-            int nextIdx = str.indexOf('"', idx);
-            if (nextIdx < 0) {
-                nextIdx = str.length();
-            }
-            sb.append(str, idx, nextIdx);
-            idx = nextIdx + 1;
+    private void appendValue(int idx, CharSequence value) {
+        if (isNull(value)) {
+            line.append("null");
+        } else if (isText[idx]) {
+            JsonText.appendString(line, value);
+        } else {
+            JsonText.appendLiteral(line, value);
         }
-        return sb.toString();
     }
 
     @Override
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2007-2022 Scott C. Gray
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sqsh.renderers;
+
+import org.sqsh.ColumnDescription;
+import org.sqsh.Renderer;
+import org.sqsh.RendererManager;
+import org.sqsh.SQLTools;
+import org.sqsh.Session;
+import org.sqsh.util.JsonText;
+
+/**
+ * Displays SQL result sets as newline delimited JSON (also known as JSON Lines), that is, each row is written as a
+ * single JSON object on a line of its own. There is no enclosing array, so the output can be consumed one line at a
+ * time by log and stream processing tools.
+ */
+public class NdJsonRenderer extends Renderer {
+
+    private final StringBuilder line = new StringBuilder();
+
+    /**
+     * For each column, the text that precedes its value: the opening brace or separating comma followed by the
+     * escaped column name.
+     */
+    private String[] prefixes;
+
+    /**
+     * For each column, whether the values are always written as strings.
+     */
+    private boolean[] isText;
+
+    public NdJsonRenderer(Session session, RendererManager renderMan) {
+        super(session, renderMan);
+    }
+
+    @Override
+    public void header(ColumnDescription[] columns) {
+        super.header(columns);
+
+        prefixes = new String[columns.length];
+        isText = new boolean[columns.length];
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < columns.length; i++) {
+            sb.setLength(0);
+            sb.append(i == 0 ? '{' : ',');
+            JsonText.appendString(sb, columns[i].getName());
+            sb.append(':');
+            prefixes[i] = sb.toString();
+            isText[i] = SQLTools.needsQuotes(columns[i].getNativeType());
+        }
+    }
+
+    @Override
+    public boolean isStreaming() {
+        return true;
+    }
+
+    @Override
+    public boolean row(String[] row) {
+        return row((CharSequence[]) row);
+    }
+
+    @Override
+    public boolean row(CharSequence[] row) {
+        line.setLength(0);
+        if (row.length == 0) {
+            line.append('{');
+        }
+        for (int i = 0; i < row.length; i++) {
+            line.append(prefixes[i]);
+
+            final CharSequence value = row[i];
+            if (isNull(value)) {
+                line.append("null");
+            } else if (isText[i]) {
+                JsonText.appendString(line, value);
+            } else {
+                JsonText.appendLiteral(line, value);
+            }
+        }
+        line.append('}').append('\n');
+
+        session.out.append(line);
+        return true;
+    }
+
+    @Override
+    public boolean flush() {
+        return true;
+    }
+}
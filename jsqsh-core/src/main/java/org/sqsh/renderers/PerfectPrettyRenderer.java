@@ -16,15 +16,24 @@
 package org.sqsh.renderers;
 
 import org.sqsh.ColumnDescription;
+import org.sqsh.MemoryBudget;
 import org.sqsh.RendererManager;
 import org.sqsh.Session;
+import org.sqsh.util.RowSpillFile;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
 /**
  * Implements a renderer that is similar to mysql's or henplus's in that it will attempt to analyze all of the available
  * data to perfectly display all columns without wasting too much space.
+ *
+ * <p>Rows are held in memory until either the sample size ({@link RendererManager#getPerfectSampleSize()}) is
+ * reached, or the result set ends. If the rows being held grow beyond {@link RendererManager#getPerfectSpillSize()}
+ * bytes, or if the session-wide {@link MemoryBudget} has run out, the rest of the sample is written to a temporary
+ * file and read back for display, so that the column widths can be computed over a very large sample without running
+ * out of memory.
  */
 public class PerfectPrettyRenderer extends AbstractPrettyRenderer {
 
@@ -46,6 +55,22 @@ public class PerfectPrettyRenderer extends AbstractPrettyRenderer {
     private int sampleSize = 0;
     private boolean hasHitSampleLimit = false;
 
+    /**
+     * Estimated number of bytes held by {@link #rows}.
+     */
+    private long rowBytes = 0L;
+    private long spillSize = 0L;
+
+    /**
+     * Memory held by {@link #rows}, as far as the rest of jsqsh is concerned.
+     */
+    private final MemoryBudget.Reservation memory;
+
+    /**
+     * Once the in-memory rows grow too large, the rest of the sample goes here.
+     */
+    private RowSpillFile spill = null;
+
     /**
      * Creates the renderer.
      *
@@ -53,13 +78,14 @@ public class PerfectPrettyRenderer extends AbstractPrettyRenderer {
      * @param renderMan The owning manager.
      */
     public PerfectPrettyRenderer(Session session, RendererManager renderMan) {
-        super(session, renderMan, true);
-        sampleSize = renderMan.getPerfectSampleSize();
+        this(session, renderMan, true);
     }
 
     protected PerfectPrettyRenderer(Session session, RendererManager renderMan, boolean hasOuterBorder) {
         super(session, renderMan, hasOuterBorder);
         sampleSize = renderMan.getPerfectSampleSize();
+        spillSize = renderMan.getPerfectSpillSize();
+        memory = renderMan.getMemoryBudget().reserve(session);
     }
 
     @Override
@@ -68,6 +94,9 @@ public class PerfectPrettyRenderer extends AbstractPrettyRenderer {
 
         // We need to throw away the previous result set.
         rows.clear();
+        rowBytes = 0L;
+        memory.release();
+        closeSpill();
         hasHitSampleLimit = false;
         for (ColumnDescription col : columns) {
             if (col.getName() != null) {
@@ -83,18 +112,13 @@ public class PerfectPrettyRenderer extends AbstractPrettyRenderer {
         if (hasHitSampleLimit) {
             printRow(row);
         } else {
-            if (sampleSize > 0 && rows.size() >= sampleSize) {
-                perfectWidth();
-                printHeader();
-                for (String[] strings : rows) {
-                    if (session.out.checkError() || Thread.interrupted()) {
-                        return false;
-                    }
-                    printRow(strings);
+            if (sampleSize > 0 && getSampledRowCount() >= sampleSize) {
+                if (!printSample()) {
+                    return false;
                 }
                 printRow(row);
-                rows.clear();
                 hasHitSampleLimit = true;
+                return true;
             } else {
                 for (int colIdx = 0; colIdx < columns.length; ++colIdx) {
                     ColumnDescription col = columns[colIdx];
@@ -113,11 +137,127 @@ public class PerfectPrettyRenderer extends AbstractPrettyRenderer {
                     col.setWidth(width);
                 }
             }
-            rows.add(row);
+            return sample(row);
+        }
+        return true;
+    }
+
+    /**
+     * @return The number of rows that are waiting to be displayed
+     */
+    private int getSampledRowCount() {
+        return rows.size() + (spill == null ? 0 : spill.getRowCount());
+    }
+
+    /**
+     * Holds onto a row until the column widths have been worked out, spilling it to disk if we are holding onto too
+     * much already.
+     *
+     * @param row The row to hold
+     * @return false if the output has gone away
+     */
+    private boolean sample(String[] row) {
+        if (spill == null) {
+            final long size = MemoryBudget.estimate(row);
+            if ((spillSize <= 0 || rowBytes + size <= spillSize) && memory.tryGrow(size)) {
+                rows.add(row);
+                rowBytes += size;
+                return true;
+            }
+
+            // Either we have hit our own limit, or the session-wide limit on memory for display.
+            if (spillSize <= 0) {
+                session.err.println("WARNING: The memory limit for displaying results has been reached (see \"help "
+                        + "display_memory\"). Column widths will be based on the first " + rows.size() + " rows");
+                return printRemainingUnsampled(row);
+            }
+            try {
+                spill = new RowSpillFile(columns.length);
+            } catch (IOException e) {
+                session.err.println("WARNING: Unable to create temporary file to hold rows for display ("
+                        + e.getMessage() + "). Column widths will be based on the first " + rows.size() + " rows");
+                return printRemainingUnsampled(row);
+            }
+        }
+
+        try {
+            spill.append(row);
+        } catch (IOException e) {
+            session.err.println("WARNING: Unable to write rows to temporary file ("
+                    + e.getMessage() + "). Column widths will be based on the first "
+                    + getSampledRowCount() + " rows");
+            return printRemainingUnsampled(row);
+        }
+        return true;
+    }
+
+    /**
+     * Gives up on sampling, displaying what has been sampled so far and displaying any remaining rows as they
+     * arrive.
+     *
+     * @param row The row that could not be sampled
+     * @return false if the output has gone away
+     */
+    private boolean printRemainingUnsampled(String[] row) {
+        hasHitSampleLimit = true;
+        if (!printSample()) {
+            return false;
         }
+        printRow(row);
         return true;
     }
 
+    /**
+     * Computes the final column widths and displays the header and all of the sampled rows, including those that
+     * were spilled to disk. Upon return, no rows are being held.
+     *
+     * @return false if the output has gone away or the display was interrupted.
+     */
+    private boolean printSample() {
+        perfectWidth();
+        printHeader();
+        try {
+            for (String[] row : rows) {
+                if (session.out.checkError() || Thread.interrupted()) {
+                    return false;
+                }
+                printRow(row);
+            }
+            rows.clear();
+            rowBytes = 0L;
+            memory.release();
+
+            if (spill != null) {
+                try (RowSpillFile.Reader reader = spill.read()) {
+                    String[] row = reader.next();
+                    while (row != null) {
+                        if (session.out.checkError() || Thread.interrupted()) {
+                            return false;
+                        }
+                        printRow(row);
+                        row = reader.next();
+                    }
+                } catch (IOException e) {
+                    session.err.println("ERROR: Unable to read rows back from temporary file: " + e.getMessage());
+                    return false;
+                }
+            }
+            return true;
+        } finally {
+            rows.clear();
+            rowBytes = 0L;
+            memory.release();
+            closeSpill();
+        }
+    }
+
+    private void closeSpill() {
+        if (spill != null) {
+            spill.close();
+            spill = null;
+        }
+    }
+
     /**
      * This method is called just prior to display and attempts to adjust the width of specific columns so that they
      * will try to stay within the width of the screen overall.
@@ -202,17 +342,22 @@ public class PerfectPrettyRenderer extends AbstractPrettyRenderer {
         // There are no more passes now. If we didn't shrink enough...well, we're just S.O.L.
     }
 
+    /**
+     * Lets go of the rows held for the sample, including any spilled to disk, when the results are abandoned before
+     * they could be displayed.
+     */
+    @Override
+    public void abort() {
+        rows.clear();
+        rowBytes = 0L;
+        memory.release();
+        closeSpill();
+    }
+
     @Override
     public boolean flush() {
-        if (!hasHitSampleLimit) {
-            perfectWidth();
-            printHeader();
-            for (String[] row : rows) {
-                if (session.out.checkError() || Thread.interrupted()) {
-                    return false;
-                }
-                printRow(row);
-            }
+        if (!hasHitSampleLimit && !printSample()) {
+            return false;
         }
         printFooter();
         return true;
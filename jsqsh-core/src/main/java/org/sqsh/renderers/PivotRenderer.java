@@ -16,6 +16,7 @@
 package org.sqsh.renderers;
 
 import org.sqsh.ColumnDescription;
+import org.sqsh.MemoryBudget;
 import org.sqsh.Renderer;
 import org.sqsh.RendererManager;
 import org.sqsh.Session;
@@ -62,7 +63,8 @@ import java.util.Map;
  * +-----------+---------+----------+----------+
  * </pre>
  * In order to do this, it is important to note that the PivotRenderer must buffer all of the data for the final table
- * in memory before display!
+ * in memory before display! The memory is reserved from the {@link MemoryBudget}, and if the budget runs out the rest
+ * of the results are discarded and a warning is displayed along with the (partial) table.
  */
 public class PivotRenderer extends Renderer {
 
@@ -77,6 +79,10 @@ public class PivotRenderer extends Renderer {
     private int dataColNum;
     private final String dataColName;
     private boolean isOk = true;
+    // Memory held by the table
+    private final MemoryBudget.Reservation memory;
+    // Number of rows discarded because we ran out of memory
+    private int discardedRows = 0;
 
     // The actual underlying table of data in [row][column] order
     private String[][] table;
@@ -126,6 +132,7 @@ public class PivotRenderer extends Renderer {
         this.vertColName = vertColName;
         this.horizColName = horizColName;
         this.dataColName = dataColName;
+        this.memory = renderMan.getMemoryBudget().reserve(session);
     }
 
     @Override
@@ -142,6 +149,8 @@ public class PivotRenderer extends Renderer {
         valueToColIdx.clear();
         nColumns = 1;
         table = null;
+        memory.release();
+        discardedRows = 0;
 
         if (isOk) {
             valueColumnDescription = columns[dataColNum];
@@ -156,6 +165,12 @@ public class PivotRenderer extends Renderer {
         if (!isOk) {
             return false;
         }
+
+        // Once we have run out of memory, throw everything else away.
+        if (discardedRows > 0 || !memory.tryGrow(estimateCost(row))) {
+            ++discardedRows;
+            return true;
+        }
         Integer rowId = valueToRowIdx.get(row[vertColNum]);
         if (rowId == null) {
             Integer colId = valueToColIdx.get(row[horizColNum]);
@@ -207,11 +222,31 @@ public class PivotRenderer extends Renderer {
                 out.row(row);
             }
             table = null;
+            memory.release();
+            if (discardedRows > 0) {
+                session.err.println("WARNING: The memory limit for displaying results was reached (see \"help "
+                        + "display_memory\"). The last " + discardedRows + " rows were not included in the pivot");
+            }
             return out.flush();
         }
         return true;
     }
 
+    /**
+     * Estimates how much memory the table will grow by when a row is added to it: the value itself, plus a new row
+     * and/or a new column if the row introduces new header values.
+     */
+    private long estimateCost(String[] row) {
+        long size = 8 + MemoryBudget.estimate(row[dataColNum]);
+        if (!valueToRowIdx.containsKey(row[vertColNum])) {
+            size += 16 + 4L * nColumns + MemoryBudget.estimate(row[vertColNum]);
+        }
+        if (!valueToColIdx.containsKey(row[horizColNum])) {
+            size += 64 + MemoryBudget.estimate(row[horizColNum]) + (table == null ? 0 : 4L * table.length);
+        }
+        return size;
+    }
+
     private void setValueForRowAndColumn(int rowId, int colId, String value) {
         String[] row = table[rowId];
         if (colId >= row.length) {
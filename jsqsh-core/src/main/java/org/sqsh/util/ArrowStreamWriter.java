@@ -0,0 +1,697 @@
+/*
+ * Copyright 2007-2022 Scott C. Gray
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sqsh.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Writes rows in the Apache Arrow IPC streaming format (https://arrow.apache.org/docs/format/Columnar.html), which
+ * can be read directly by pyarrow, pandas, Spark, DuckDB and friends without having to parse any text.
+ *
+ * <p>Values are appended a row at a time, a column at a time, to a set of {@link Column}s. Every
+ * <code>batchSize</code> rows, the columns are written out as a record batch and cleared. The stream starts with a
+ * message describing the schema, and {@link #finish()} ends it. Only flat (non-nested) columns of the most common
+ * types are supported, and nothing is compressed or dictionary encoded.
+ */
+public class ArrowStreamWriter {
+
+    /**
+     * The Arrow metadata version written (V5).
+     */
+    private static final short METADATA_VERSION = 4;
+
+    // Message header types
+    private static final byte HEADER_SCHEMA = 1;
+    private static final byte HEADER_RECORD_BATCH = 3;
+
+    // Logical type ids
+    private static final byte TYPE_INT = 2;
+    private static final byte TYPE_FLOATING_POINT = 3;
+    private static final byte TYPE_BINARY = 4;
+    private static final byte TYPE_UTF8 = 5;
+    private static final byte TYPE_BOOL = 6;
+    private static final byte TYPE_DECIMAL = 7;
+    private static final byte TYPE_DATE = 8;
+    private static final byte TYPE_TIME = 9;
+    private static final byte TYPE_TIMESTAMP = 10;
+
+    private static final short PRECISION_SINGLE = 1;
+    private static final short PRECISION_DOUBLE = 2;
+    private static final short DATE_UNIT_DAY = 0;
+    private static final short TIME_UNIT_MICROSECOND = 2;
+
+    private static final byte[] PADDING = new byte[8];
+
+    /**
+     * The types of column that may be written.
+     */
+    public enum Type {
+        BOOL(0),
+        INT8(1),
+        INT16(2),
+        INT32(4),
+        INT64(8),
+        FLOAT32(4),
+        FLOAT64(8),
+
+        /**
+         * A fixed point number, appended with {@link Column#appendDecimal(BigDecimal)}. A precision of up to 38
+         * is stored in 128 bits, and up to 76 in 256 bits.
+         */
+        DECIMAL(0),
+
+        /**
+         * Days since the epoch.
+         */
+        DATE(4),
+
+        /**
+         * Microseconds since midnight.
+         */
+        TIME(8),
+
+        /**
+         * Microseconds since the epoch.
+         */
+        TIMESTAMP(8),
+        UTF8(0),
+        BINARY(0);
+
+        private final int width;
+
+        Type(int width) {
+            this.width = width;
+        }
+    }
+
+    /**
+     * Describes a column.
+     */
+    public static class Field {
+
+        private final String name;
+        private final Type type;
+        private final int precision;
+        private final int scale;
+        private final String timezone;
+
+        /**
+         * @param name The name of the column
+         * @param type The type of the column. Use {@link #decimal(String, int, int)} for a {@link Type#DECIMAL}
+         *         column
+         */
+        public Field(String name, Type type) {
+            this(name, type, 0, 0, null);
+        }
+
+        private Field(String name, Type type, int precision, int scale, String timezone) {
+            this.name = name;
+            this.type = type;
+            this.precision = precision;
+            this.scale = scale;
+            this.timezone = timezone;
+        }
+
+        /**
+         * @param name The name of the column
+         * @param precision The total number of digits (1 through 76)
+         * @param scale The number of digits after the decimal point
+         * @return A description of a {@link Type#DECIMAL} column
+         */
+        public static Field decimal(String name, int precision, int scale) {
+            if (precision < 1 || precision > 76) {
+                throw new IllegalArgumentException("Decimal precision " + precision + " is out of range");
+            }
+            return new Field(name, Type.DECIMAL, precision, scale, null);
+        }
+
+        /**
+         * @param name The name of the column
+         * @param timezone The time zone that the timestamps are relative to, or null if they are local
+         * @return A description of a {@link Type#TIMESTAMP} column
+         */
+        public static Field timestamp(String name, String timezone) {
+            return new Field(name, Type.TIMESTAMP, 0, 0, timezone);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public Type getType() {
+            return type;
+        }
+    }
+
+    private final OutputStream out;
+    private final Field[] fields;
+    private final Column[] columns;
+    private final int batchSize;
+    private boolean started = false;
+    private int rowCount = 0;
+    private long totalRows = 0L;
+
+    /**
+     * Creates a writer. Nothing is written until the first batch is full or {@link #finish()} is called.
+     *
+     * @param out The stream to write to
+     * @param fields The columns to be written
+     * @param batchSize The number of rows in each record batch
+     */
+    public ArrowStreamWriter(OutputStream out, Field[] fields, int batchSize) {
+        this.out = out;
+        this.fields = fields;
+        this.batchSize = Math.max(batchSize, 1);
+        this.columns = new Column[fields.length];
+        for (int i = 0; i < fields.length; i++) {
+            columns[i] = new Column(fields[i]);
+        }
+    }
+
+    /**
+     * @param idx The index of a column
+     * @return The column, to which a value for the current row must be appended before {@link #endRow()} is called
+     */
+    public Column getColumn(int idx) {
+        return columns[idx];
+    }
+
+    /**
+     * @return The number of rows written so far, including those not yet written out in a batch
+     */
+    public long getRowCount() {
+        return totalRows + rowCount;
+    }
+
+    /**
+     * Completes the current row, writing out a record batch if it is full.
+     *
+     * @throws IOException If the batch cannot be written
+     */
+    public void endRow() throws IOException {
+        ++rowCount;
+        for (Column column : columns) {
+            if (column.length != rowCount) {
+                throw new IllegalStateException("Column \"" + column.field.name + "\" has " + column.length
+                        + " values, expected " + rowCount);
+            }
+        }
+        if (rowCount == batchSize) {
+            writeBatch();
+        }
+    }
+
+    /**
+     * Writes out any rows that have not yet been written and ends the stream. The output stream is not closed.
+     *
+     * @throws IOException If the output cannot be written
+     */
+    public void finish() throws IOException {
+        if (rowCount > 0) {
+            writeBatch();
+        } else {
+            start();
+        }
+        writePrefix(0);
+        out.flush();
+    }
+
+    private void start() throws IOException {
+        if (started) {
+            return;
+        }
+        started = true;
+
+        final FlatBufferBuilder fb = new FlatBufferBuilder(1024);
+        final int[] fieldOffsets = new int[fields.length];
+        for (int i = 0; i < fields.length; i++) {
+            fieldOffsets[i] = buildField(fb, fields[i]);
+        }
+        final int fieldVector = fb.createOffsetVector(fieldOffsets);
+        fb.startTable(4);
+        fb.addOffsetField(1, fieldVector);
+        final int schema = fb.endTable();
+        writeMessage(fb, HEADER_SCHEMA, schema, 0L);
+    }
+
+    private static int buildField(FlatBufferBuilder fb, Field field) {
+        final int name = fb.createString(field.name);
+        final int children = fb.createOffsetVector(new int[0]);
+        final byte typeId;
+        final int type;
+        switch (field.type) {
+            case BOOL:
+                typeId = TYPE_BOOL;
+                fb.startTable(0);
+                type = fb.endTable();
+                break;
+            case INT8:
+            case INT16:
+            case INT32:
+            case INT64:
+                typeId = TYPE_INT;
+                fb.startTable(2);
+                fb.addIntField(0, field.type.width * 8, 0);
+                fb.addByteField(1, 1, 0);
+                type = fb.endTable();
+                break;
+            case FLOAT32:
+            case FLOAT64:
+                typeId = TYPE_FLOATING_POINT;
+                fb.startTable(1);
+                fb.addShortField(0, field.type == Type.FLOAT32 ? PRECISION_SINGLE : PRECISION_DOUBLE, 0);
+                type = fb.endTable();
+                break;
+            case DECIMAL:
+                typeId = TYPE_DECIMAL;
+                fb.startTable(3);
+                fb.addIntField(0, field.precision, 0);
+                fb.addIntField(1, field.scale, 0);
+                fb.addIntField(2, decimalWidth(field) * 8, 128);
+                type = fb.endTable();
+                break;
+            case DATE:
+                typeId = TYPE_DATE;
+                fb.startTable(1);
+                fb.addShortField(0, DATE_UNIT_DAY, 1);
+                type = fb.endTable();
+                break;
+            case TIME:
+                typeId = TYPE_TIME;
+                fb.startTable(2);
+                fb.addShortField(0, TIME_UNIT_MICROSECOND, 1);
+                fb.addIntField(1, 64, 32);
+                type = fb.endTable();
+                break;
+            case TIMESTAMP: {
+                typeId = TYPE_TIMESTAMP;
+                final int timezone = field.timezone == null ? 0 : fb.createString(field.timezone);
+                fb.startTable(2);
+                fb.addShortField(0, TIME_UNIT_MICROSECOND, 0);
+                fb.addOffsetField(1, timezone);
+                type = fb.endTable();
+                break;
+            }
+            case UTF8:
+                typeId = TYPE_UTF8;
+                fb.startTable(0);
+                type = fb.endTable();
+                break;
+            default:
+                typeId = TYPE_BINARY;
+                fb.startTable(0);
+                type = fb.endTable();
+                break;
+        }
+
+        fb.startTable(7);
+        fb.addOffsetField(0, name);
+        fb.addOffsetField(3, type);
+        fb.addOffsetField(5, children);
+        fb.addByteField(1, 1, 0);
+        fb.addByteField(2, typeId, 0);
+        return fb.endTable();
+    }
+
+    private static int decimalWidth(Field field) {
+        return field.precision <= 38 ? 16 : 32;
+    }
+
+    private void writeBatch() throws IOException {
+        start();
+
+        // Each column contributes a validity buffer, followed by either its values or (for variable width
+        // columns) its offsets and its values, each of which is padded out to 8 bytes in the body.
+        int nBuffers = 0;
+        for (Column column : columns) {
+            nBuffers += column.offsets != null ? 3 : 2;
+        }
+        final byte[][] buffers = new byte[nBuffers][];
+        final int[] lengths = new int[nBuffers];
+        int b = 0;
+        for (Column column : columns) {
+            buffers[b] = column.validity;
+            lengths[b++] = bitmapLength(rowCount);
+            if (column.offsets != null) {
+                buffers[b] = column.offsets.data;
+                lengths[b++] = column.offsets.length;
+            }
+            if (column.bits != null) {
+                buffers[b] = column.bits;
+                lengths[b++] = bitmapLength(rowCount);
+            } else {
+                buffers[b] = column.values.data;
+                lengths[b++] = column.values.length;
+            }
+        }
+
+        final FlatBufferBuilder fb = new FlatBufferBuilder(256 + 32 * nBuffers);
+        fb.startVector(16, nBuffers, 8);
+        long bodyLength = 0L;
+        final long[] bufferOffsets = new long[nBuffers];
+        for (int i = 0; i < nBuffers; i++) {
+            bufferOffsets[i] = bodyLength;
+            bodyLength += padded(lengths[i]);
+        }
+        for (int i = nBuffers - 1; i >= 0; i--) {
+            fb.addLongPair(bufferOffsets[i], lengths[i]);
+        }
+        final int bufferVector = fb.endVector();
+
+        fb.startVector(16, columns.length, 8);
+        for (int i = columns.length - 1; i >= 0; i--) {
+            fb.addLongPair(rowCount, columns[i].nullCount);
+        }
+        final int nodeVector = fb.endVector();
+
+        fb.startTable(5);
+        fb.addLongField(0, rowCount, 0L);
+        fb.addOffsetField(1, nodeVector);
+        fb.addOffsetField(2, bufferVector);
+        final int batch = fb.endTable();
+        writeMessage(fb, HEADER_RECORD_BATCH, batch, bodyLength);
+
+        for (int i = 0; i < nBuffers; i++) {
+            out.write(buffers[i], 0, lengths[i]);
+            out.write(PADDING, 0, padded(lengths[i]) - lengths[i]);
+        }
+
+        totalRows += rowCount;
+        rowCount = 0;
+        for (Column column : columns) {
+            column.clear();
+        }
+    }
+
+    /**
+     * Writes an encapsulated message: a continuation marker, the length of the metadata, and then the metadata
+     * itself, padded so that the body that follows starts on an 8 byte boundary.
+     */
+    private void writeMessage(FlatBufferBuilder fb, byte headerType, int header, long bodyLength)
+            throws IOException {
+        fb.startTable(5);
+        fb.addLongField(3, bodyLength, 0L);
+        fb.addOffsetField(2, header);
+        fb.addShortField(0, METADATA_VERSION, 0);
+        fb.addByteField(1, headerType, 0);
+        final byte[] metadata = fb.finish(fb.endTable());
+
+        final int length = padded(metadata.length);
+        writePrefix(length);
+        out.write(metadata);
+        out.write(PADDING, 0, length - metadata.length);
+    }
+
+    /**
+     * Writes the continuation marker and metadata length that start each message. A length of zero marks the end
+     * of the stream.
+     */
+    private void writePrefix(int length) throws IOException {
+        final byte[] prefix = {-1, -1, -1, -1, (byte) length, (byte) (length >> 8), (byte) (length >> 16),
+                (byte) (length >> 24)};
+        out.write(prefix);
+    }
+
+    private static int padded(int length) {
+        return (length + 7) & ~7;
+    }
+
+    private static int bitmapLength(int bits) {
+        return (bits + 7) >> 3;
+    }
+
+    /**
+     * A growable, little endian, byte buffer.
+     */
+    private static class Bytes {
+
+        private byte[] data = new byte[1024];
+        private int length = 0;
+
+        private void ensure(int extra) {
+            if (length + extra > data.length) {
+                data = Arrays.copyOf(data, Math.max(length + extra, data.length * 2));
+            }
+        }
+
+        private void writeInt(int value) {
+            ensure(4);
+            data[length++] = (byte) value;
+            data[length++] = (byte) (value >> 8);
+            data[length++] = (byte) (value >> 16);
+            data[length++] = (byte) (value >> 24);
+        }
+
+        private void writeLong(long value, int width) {
+            ensure(width);
+            for (int i = 0; i < width; i++) {
+                data[length++] = (byte) (value >> (i * 8));
+            }
+        }
+
+        private void write(byte[] bytes, int off, int len) {
+            ensure(len);
+            System.arraycopy(bytes, off, data, length, len);
+            length += len;
+        }
+
+        private void zeroes(int n) {
+            ensure(n);
+            Arrays.fill(data, length, length + n, (byte) 0);
+            length += n;
+        }
+    }
+
+    /**
+     * The values of a column in the batch that is being built. Exactly one value must be appended to each column
+     * for every row, using the method that matches the column's type.
+     */
+    public static class Column {
+
+        private final Field field;
+        private final Bytes values;
+        private final Bytes offsets;
+        private byte[] validity = new byte[128];
+        private byte[] bits;
+        private int length = 0;
+        private int nullCount = 0;
+
+        private Column(Field field) {
+            this.field = field;
+            if (field.type == Type.BOOL) {
+                values = null;
+                offsets = null;
+                bits = new byte[128];
+            } else {
+                values = new Bytes();
+                offsets = (field.type == Type.UTF8 || field.type == Type.BINARY) ? new Bytes() : null;
+                if (offsets != null) {
+                    offsets.writeInt(0);
+                }
+            }
+        }
+
+        /**
+         * @return The description of the column
+         */
+        public Field getField() {
+            return field;
+        }
+
+        private void clear() {
+            Arrays.fill(validity, 0, bitmapLength(length), (byte) 0);
+            if (bits != null) {
+                Arrays.fill(bits, 0, bitmapLength(length), (byte) 0);
+            } else {
+                values.length = 0;
+            }
+            if (offsets != null) {
+                offsets.length = 0;
+                offsets.writeInt(0);
+            }
+            length = 0;
+            nullCount = 0;
+        }
+
+        private static byte[] setBit(byte[] bitmap, int idx) {
+            if ((idx >> 3) >= bitmap.length) {
+                bitmap = Arrays.copyOf(bitmap, bitmap.length * 2);
+            }
+            bitmap[idx >> 3] |= (byte) (1 << (idx & 7));
+            return bitmap;
+        }
+
+        private void valid() {
+            validity = setBit(validity, length++);
+        }
+
+        private void wrongType(String what) {
+            throw new IllegalStateException("Cannot append " + what + " to " + field.type + " column \""
+                    + field.name + "\"");
+        }
+
+        /**
+         * Appends a NULL.
+         */
+        public void appendNull() {
+            if (bits != null) {
+                if ((length >> 3) >= bits.length) {
+                    bits = Arrays.copyOf(bits, bits.length * 2);
+                }
+            } else if (offsets != null) {
+                offsets.writeInt(values.length);
+            } else if (field.type == Type.DECIMAL) {
+                values.zeroes(decimalWidth(field));
+            } else {
+                values.zeroes(field.type.width);
+            }
+            if ((length >> 3) >= validity.length) {
+                validity = Arrays.copyOf(validity, validity.length * 2);
+            }
+            ++length;
+            ++nullCount;
+        }
+
+        /**
+         * Appends a value to a {@link Type#BOOL} column.
+         *
+         * @param value The value
+         */
+        public void appendBoolean(boolean value) {
+            if (bits == null) {
+                wrongType("a boolean");
+            }
+            if (value) {
+                bits = setBit(bits, length);
+            } else if ((length >> 3) >= bits.length) {
+                bits = Arrays.copyOf(bits, bits.length * 2);
+            }
+            valid();
+        }
+
+        /**
+         * Appends a value to an integer, {@link Type#DATE}, {@link Type#TIME} or {@link Type#TIMESTAMP} column. The
+         * value is truncated to the width of the column.
+         *
+         * @param value The value
+         */
+        public void appendLong(long value) {
+            switch (field.type) {
+                case INT8:
+                case INT16:
+                case INT32:
+                case INT64:
+                case DATE:
+                case TIME:
+                case TIMESTAMP:
+                    values.writeLong(value, field.type.width);
+                    break;
+                default:
+                    wrongType("an integer");
+            }
+            valid();
+        }
+
+        /**
+         * Appends a value to a floating point column.
+         *
+         * @param value The value
+         */
+        public void appendDouble(double value) {
+            if (field.type == Type.FLOAT64) {
+                values.writeLong(Double.doubleToRawLongBits(value), 8);
+            } else if (field.type == Type.FLOAT32) {
+                values.writeInt(Float.floatToRawIntBits((float) value));
+            } else {
+                wrongType("a floating point value");
+            }
+            valid();
+        }
+
+        /**
+         * Appends a value to a {@link Type#DECIMAL} column. The value is rounded to the scale of the column.
+         *
+         * @param value The value
+         * @throws ArithmeticException If the value has too many digits to be stored in the column
+         */
+        public void appendDecimal(BigDecimal value) {
+            if (field.type != Type.DECIMAL) {
+                wrongType("a decimal");
+            }
+            final BigInteger unscaled = value.setScale(field.scale, RoundingMode.HALF_UP).unscaledValue();
+            final int width = decimalWidth(field);
+            if (unscaled.bitLength() >= width * 8) {
+                throw new ArithmeticException("Value " + value + " does not fit in column \"" + field.name + "\"");
+            }
+
+            // BigInteger is big endian, Arrow wants little endian, sign extended to the full width.
+            final byte[] bytes = unscaled.toByteArray();
+            values.ensure(width);
+            for (int i = 0; i < width; i++) {
+                values.data[values.length++] = i < bytes.length
+                        ? bytes[bytes.length - 1 - i]
+                        : (byte) (unscaled.signum() < 0 ? -1 : 0);
+            }
+            valid();
+        }
+
+        /**
+         * Appends a value to a {@link Type#UTF8} column.
+         *
+         * @param value The value
+         */
+        public void appendString(CharSequence value) {
+            if (field.type != Type.UTF8) {
+                wrongType("a string");
+            }
+            final int len = value.length();
+            values.ensure(len);
+            for (int i = 0; i < len; i++) {
+                final char ch = value.charAt(i);
+                if (ch < 0x80) {
+                    values.data[values.length++] = (byte) ch;
+                } else {
+                    // Rare enough not to bother being clever.
+                    final byte[] encoded = value.subSequence(i, len).toString().getBytes(StandardCharsets.UTF_8);
+                    values.write(encoded, 0, encoded.length);
+                    break;
+                }
+            }
+            offsets.writeInt(values.length);
+            valid();
+        }
+
+        /**
+         * Appends a value to a {@link Type#BINARY} column.
+         *
+         * @param value The value
+         */
+        public void appendBytes(byte[] value) {
+            if (field.type != Type.BINARY) {
+                wrongType("a byte array");
+            }
+            values.write(value, 0, value.length);
+            offsets.writeInt(values.length);
+            valid();
+        }
+    }
+}
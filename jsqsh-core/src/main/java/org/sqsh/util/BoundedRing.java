@@ -0,0 +1,197 @@
+/*
+ * Copyright 2007-2022 Scott C. Gray
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sqsh.util;
+
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A fixed size ring buffer used to hand items from exactly one producer thread to exactly one consumer thread, in
+ * order. The slots of the ring are allocated once, up front, so passing an item through the ring produces no garbage.
+ *
+ * <p>Either side can end the exchange early:
+ * <ul>
+ *     <li>The producer calls {@link #close()} when it has nothing more to produce, or {@link #fail(Throwable)}
+ *     if it could not finish, in which case the failure is handed to the consumer once it has drained the
+ *     items that were produced before the failure.</li>
+ *     <li>The consumer calls {@link #abort()} when it no longer wants any items, which causes the next (or
+ *     current) {@link #put(Object)} to return false.</li>
+ * </ul>
+ *
+ * @param <T> The type of item passed through the ring
+ */
+public class BoundedRing<T> {
+
+    private final Object[] slots;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+
+    private int head = 0;
+    private int tail = 0;
+    private int count = 0;
+    private boolean closed = false;
+    private boolean aborted = false;
+    private Throwable failure = null;
+
+    /**
+     * Creates a ring.
+     *
+     * @param capacity The maximum number of items that may be waiting in the ring
+     */
+    public BoundedRing(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Ring capacity must be at least 1 (got " + capacity + ")");
+        }
+        this.slots = new Object[capacity];
+    }
+
+    /**
+     * @return The maximum number of items that may be waiting in the ring
+     */
+    public int getCapacity() {
+        return slots.length;
+    }
+
+    /**
+     * Adds an item to the ring, waiting for a slot to become available if the ring is full.
+     *
+     * @param item The item to add
+     * @return true if the item was added, false if the consumer has aborted and no more items are wanted
+     * @throws InterruptedException If the producer was interrupted while waiting for a free slot
+     */
+    public boolean put(T item) throws InterruptedException {
+        lock.lock();
+        try {
+            while (count == slots.length && !aborted) {
+                notFull.await();
+            }
+            if (aborted) {
+                return false;
+            }
+            slots[tail] = item;
+            tail = (tail + 1) % slots.length;
+            ++count;
+            notEmpty.signal();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes the next item from the ring, waiting for one to be produced if the ring is empty.
+     *
+     * @return The next item, or null if the producer has closed the ring and all items have been consumed
+     * @throws InterruptedException If the consumer was interrupted while waiting for an item
+     * @throws RingFailedException If the producer failed. The cause of the exception is the failure provided
+     *         to {@link #fail(Throwable)}
+     */
+    @SuppressWarnings("unchecked")
+    public T take() throws InterruptedException {
+        lock.lock();
+        try {
+            while (count == 0 && !closed) {
+                notEmpty.await();
+            }
+            if (count == 0) {
+                if (failure != null) {
+                    throw new RingFailedException(failure);
+                }
+                return null;
+            }
+            final T item = (T) slots[head];
+            slots[head] = null;
+            head = (head + 1) % slots.length;
+            --count;
+            notFull.signal();
+            return item;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Called by the producer to indicate that no more items will be added.
+     */
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Called by the producer to indicate that it failed. The consumer will receive the failure after it has taken
+     * all of the items produced so far.
+     *
+     * @param cause The reason for the failure
+     */
+    public void fail(Throwable cause) {
+        lock.lock();
+        try {
+            failure = cause;
+            closed = true;
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Called by the consumer to indicate that it will take no more items. Any items waiting in the ring are
+     * discarded and the producer is woken up if it is waiting for a free slot.
+     */
+    public void abort() {
+        lock.lock();
+        try {
+            aborted = true;
+            for (int i = 0; i < slots.length; i++) {
+                slots[i] = null;
+            }
+            count = 0;
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return true if the consumer has aborted
+     */
+    public boolean isAborted() {
+        lock.lock();
+        try {
+            return aborted;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Thrown from {@link #take()} to deliver the failure of the producer to the consumer.
+     */
+    public static class RingFailedException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        public RingFailedException(Throwable cause) {
+            super(cause);
+        }
+    }
+}
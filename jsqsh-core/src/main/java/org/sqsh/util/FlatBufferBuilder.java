@@ -0,0 +1,273 @@
+/*
+ * Copyright 2007-2022 Scott C. Gray
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sqsh.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Just enough of a FlatBuffers (https://google.github.io/flatbuffers/) builder to produce the metadata of the Arrow
+ * IPC format, which saves dragging in the FlatBuffers and Arrow libraries just to describe a handful of tables.
+ *
+ * <p>As with the official builder, the buffer is filled from the back to the front, so every object must be
+ * completely built before the object that refers to it is started, and offsets handed out by this class are
+ * measured from the end of the buffer. Vtables are not shared between tables.
+ */
+class FlatBufferBuilder {
+
+    private byte[] buf;
+    private int space;
+    private int minAlign = 1;
+
+    private int[] vtable = new int[16];
+    private int vtableInUse = 0;
+    private int objectStart;
+    private int vectorElements;
+
+    FlatBufferBuilder(int initialSize) {
+        buf = new byte[initialSize];
+        space = initialSize;
+    }
+
+    /**
+     * @return The offset of the last thing written, measured from the end of the buffer
+     */
+    int offset() {
+        return buf.length - space;
+    }
+
+    /**
+     * Makes sure that, once <code>additional</code> bytes have been written, the buffer is aligned to
+     * <code>size</code> bytes, growing the buffer if there is not enough room to write a value of that size.
+     */
+    private void prep(int size, int additional) {
+        if (size > minAlign) {
+            minAlign = size;
+        }
+        final int alignSize = (~(buf.length - space + additional) + 1) & (size - 1);
+        while (space < alignSize + size + additional) {
+            final int oldSize = buf.length;
+            final byte[] grown = new byte[oldSize * 2];
+            System.arraycopy(buf, 0, grown, oldSize, oldSize);
+            space += oldSize;
+            buf = grown;
+        }
+        space -= alignSize;
+    }
+
+    private void putShort(int value) {
+        space -= 2;
+        buf[space] = (byte) value;
+        buf[space + 1] = (byte) (value >> 8);
+    }
+
+    private void putInt(int value) {
+        space -= 4;
+        writeInt(space, value);
+    }
+
+    private void putLong(long value) {
+        space -= 8;
+        for (int i = 0; i < 8; i++) {
+            buf[space + i] = (byte) (value >> (i * 8));
+        }
+    }
+
+    private void writeInt(int pos, int value) {
+        buf[pos] = (byte) value;
+        buf[pos + 1] = (byte) (value >> 8);
+        buf[pos + 2] = (byte) (value >> 16);
+        buf[pos + 3] = (byte) (value >> 24);
+    }
+
+    void addByte(int value) {
+        prep(1, 0);
+        buf[--space] = (byte) value;
+    }
+
+    void addShort(int value) {
+        prep(2, 0);
+        putShort(value);
+    }
+
+    void addInt(int value) {
+        prep(4, 0);
+        putInt(value);
+    }
+
+    void addLong(long value) {
+        prep(8, 0);
+        putLong(value);
+    }
+
+    /**
+     * Writes a reference to an object that has already been built.
+     *
+     * @param off The offset of the object, as returned when it was built
+     */
+    void addOffset(int off) {
+        prep(4, 0);
+        putInt(offset() - off + 4);
+    }
+
+    /**
+     * Writes a struct made up of two longs, such as Arrow's <code>FieldNode</code> and <code>Buffer</code>. This
+     * may only be called between {@link #startVector(int, int, int)} and {@link #endVector()}.
+     */
+    void addLongPair(long first, long second) {
+        prep(8, 16);
+        putLong(second);
+        putLong(first);
+    }
+
+    /**
+     * Starts a vector. The elements must then be added in reverse order.
+     *
+     * @param elementSize The size of each element, in bytes
+     * @param count The number of elements
+     * @param alignment The alignment of the elements
+     */
+    void startVector(int elementSize, int count, int alignment) {
+        vectorElements = count;
+        prep(4, elementSize * count);
+        prep(alignment, elementSize * count);
+    }
+
+    /**
+     * @return The offset of the vector
+     */
+    int endVector() {
+        putInt(vectorElements);
+        return offset();
+    }
+
+    /**
+     * Builds a vector of references to objects that have already been built.
+     *
+     * @param offsets The offsets of the objects
+     * @return The offset of the vector
+     */
+    int createOffsetVector(int[] offsets) {
+        startVector(4, offsets.length, 4);
+        for (int i = offsets.length - 1; i >= 0; i--) {
+            addOffset(offsets[i]);
+        }
+        return endVector();
+    }
+
+    /**
+     * Builds a string.
+     *
+     * @param str The string
+     * @return The offset of the string
+     */
+    int createString(CharSequence str) {
+        final byte[] bytes = str.toString().getBytes(StandardCharsets.UTF_8);
+        addByte(0);
+        startVector(1, bytes.length, 1);
+        space -= bytes.length;
+        System.arraycopy(bytes, 0, buf, space, bytes.length);
+        return endVector();
+    }
+
+    /**
+     * Starts a table. Fields are then added with the <code>add*Field()</code> methods, which take the index of the
+     * field within the table's vtable.
+     *
+     * @param numFields The number of fields in the table's definition
+     */
+    void startTable(int numFields) {
+        if (vtable.length < numFields) {
+            vtable = new int[numFields];
+        }
+        Arrays.fill(vtable, 0, numFields, 0);
+        vtableInUse = numFields;
+        objectStart = offset();
+    }
+
+    void addByteField(int field, int value, int defaultValue) {
+        if (value != defaultValue) {
+            addByte(value);
+            vtable[field] = offset();
+        }
+    }
+
+    void addShortField(int field, int value, int defaultValue) {
+        if (value != defaultValue) {
+            addShort(value);
+            vtable[field] = offset();
+        }
+    }
+
+    void addIntField(int field, int value, int defaultValue) {
+        if (value != defaultValue) {
+            addInt(value);
+            vtable[field] = offset();
+        }
+    }
+
+    void addLongField(int field, long value, long defaultValue) {
+        if (value != defaultValue) {
+            addLong(value);
+            vtable[field] = offset();
+        }
+    }
+
+    void addOffsetField(int field, int off) {
+        if (off != 0) {
+            addOffset(off);
+            vtable[field] = offset();
+        }
+    }
+
+    /**
+     * Finishes the current table, writing its vtable.
+     *
+     * @return The offset of the table
+     */
+    int endTable() {
+        addInt(0);
+        final int objectOffset = offset();
+
+        int i = vtableInUse - 1;
+        while (i >= 0 && vtable[i] == 0) {
+            --i;
+        }
+        final int trimmed = i + 1;
+        for (; i >= 0; i--) {
+            addShort(vtable[i] != 0 ? objectOffset - vtable[i] : 0);
+        }
+        addShort(objectOffset - objectStart);
+        addShort((trimmed + 2) * 2);
+
+        // The table starts with the (signed) distance back to its vtable.
+        writeInt(buf.length - objectOffset, offset() - objectOffset);
+        vtableInUse = 0;
+        return objectOffset;
+    }
+
+    /**
+     * Finishes the buffer.
+     *
+     * @param root The offset of the root table
+     * @return The finished buffer
+     */
+    byte[] finish(int root) {
+        prep(minAlign, 4);
+        addOffset(root);
+        return Arrays.copyOfRange(buf, space, buf.length);
+    }
+}
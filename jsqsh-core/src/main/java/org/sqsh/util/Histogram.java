@@ -0,0 +1,158 @@
+/*
+ * Copyright 2007-2022 Scott C. Gray
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sqsh.util;
+
+import java.util.Arrays;
+
+/**
+ * Counts how often values (typically latencies, in nanoseconds) of each size are seen, in a fixed amount of memory,
+ * so that percentiles can be estimated afterwards. Each power of two is divided into eight equal buckets, so an
+ * estimated percentile is within 12.5% of the true value. Values below 8 are counted exactly.
+ *
+ * <p>This class is not thread safe.
+ */
+public class Histogram {
+
+    private static final int SUB_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+    private final long[] counts = new long[(64 - SUB_BITS + 1) * SUB_BUCKETS];
+    private long count = 0L;
+    private long total = 0L;
+    private long max = 0L;
+
+    /**
+     * Records a value.
+     *
+     * @param value The value. Negative values are counted as 0.
+     */
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        ++counts[indexOf(value)];
+        ++count;
+        total += value;
+        if (value > max) {
+            max = value;
+        }
+    }
+
+    /**
+     * Discards all of the recorded values.
+     */
+    public void clear() {
+        Arrays.fill(counts, 0L);
+        count = 0L;
+        total = 0L;
+        max = 0L;
+    }
+
+    /**
+     * @return The number of values recorded
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @return The sum of the values recorded
+     */
+    public long getTotal() {
+        return total;
+    }
+
+    /**
+     * @return The largest value recorded, or 0 if none have been
+     */
+    public long getMax() {
+        return max;
+    }
+
+    /**
+     * @return The mean of the values recorded, or 0 if none have been
+     */
+    public double getMean() {
+        return count == 0 ? 0.0 : (double) total / count;
+    }
+
+    /**
+     * Estimates a percentile of the values recorded.
+     *
+     * @param percent The percentile, from 0 to 100
+     * @return The estimate (the upper bound of the bucket the percentile falls in, but no more than the largest
+     *         value recorded), or 0 if no values have been recorded
+     */
+    public long getPercentile(double percent) {
+        if (count == 0) {
+            return 0L;
+        }
+        final long rank = Math.max(1L, (long) Math.ceil(count * (percent / 100.0)));
+        long seen = 0L;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(upperBoundOf(i), max);
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Counts the values recorded in each power of two: element 0 holds the number of values that were 0 or 1,
+     * and element n (for n &gt; 0) holds those from 2<sup>n</sup> up to 2<sup>n+1</sup>-1.
+     *
+     * @return The counts, one for every power of two up to that of the largest value recorded
+     */
+    public long[] getCountsByPowerOfTwo() {
+        if (count == 0) {
+            return new long[0];
+        }
+        final long[] powers = new long[64 - Long.numberOfLeadingZeros(Math.max(max, 1L))];
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] != 0) {
+                final int power = 63 - Long.numberOfLeadingZeros(Math.max(lowerBoundOf(i), 1L));
+                powers[power] += counts[i];
+            }
+        }
+        return powers;
+    }
+
+    private static int indexOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        final int power = 63 - Long.numberOfLeadingZeros(value);
+        final int sub = (int) (value >>> (power - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return (power - SUB_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    private static long lowerBoundOf(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        final int shift = index / SUB_BUCKETS - 1;
+        return (long) (SUB_BUCKETS + index % SUB_BUCKETS) << shift;
+    }
+
+    private static long upperBoundOf(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        final int shift = index / SUB_BUCKETS - 1;
+        return lowerBoundOf(index) + (1L << shift) - 1;
+    }
+}
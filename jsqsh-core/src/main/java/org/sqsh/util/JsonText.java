@@ -0,0 +1,205 @@
+/*
+ * Copyright 2007-2022 Scott C. Gray
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sqsh.util;
+
+/**
+ * Helpers for producing JSON text (RFC 8259) from display values.
+ *
+ * <p>String escaping is driven by a lookup table indexed by character, so that the common case of a character that
+ * needs no escaping costs a single array access. Characters outside of ASCII are written as-is, with the exception
+ * of U+2028 and U+2029 (which are legal in JSON but not in JavaScript source, and trip up some line oriented
+ * consumers) and unpaired surrogates (which cannot be encoded by a conforming UTF-8 writer); these are written as
+ * {@code \}{@code uXXXX} escapes.
+ */
+public final class JsonText {
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    /**
+     * For each ASCII character, the text that it must be replaced with inside of a JSON string, or null if it may be
+     * written as-is.
+     */
+    private static final String[] ESCAPES = new String[128];
+
+    private static final String LINE_SEPARATOR = unicodeEscape((char) 0x2028);
+    private static final String PARAGRAPH_SEPARATOR = unicodeEscape((char) 0x2029);
+
+    static {
+        for (int ch = 0; ch < 0x20; ch++) {
+            ESCAPES[ch] = unicodeEscape((char) ch);
+        }
+        ESCAPES['"'] = "\\\"";
+        ESCAPES['\\'] = "\\\\";
+        ESCAPES['\b'] = "\\b";
+        ESCAPES['\f'] = "\\f";
+        ESCAPES['\n'] = "\\n";
+        ESCAPES['\r'] = "\\r";
+        ESCAPES['\t'] = "\\t";
+        ESCAPES[0x7f] = unicodeEscape((char) 0x7f);
+    }
+
+    private JsonText() {
+    }
+
+    /**
+     * Appends a value as a quoted and escaped JSON string.
+     *
+     * @param out The buffer to append to
+     * @param value The value to append
+     */
+    public static void appendString(StringBuilder out, CharSequence value) {
+        out.append('"');
+        appendEscaped(out, value);
+        out.append('"');
+    }
+
+    /**
+     * Appends the escaped contents of a value, without the surrounding quotes. Runs of characters that do not need
+     * escaping are appended in a single operation.
+     *
+     * @param out The buffer to append to
+     * @param value The value to append
+     */
+    public static void appendEscaped(StringBuilder out, CharSequence value) {
+        final int len = value.length();
+        int start = 0;
+        for (int i = 0; i < len; i++) {
+            final char ch = value.charAt(i);
+            final String escape;
+            if (ch < 0x80) {
+                escape = ESCAPES[ch];
+                if (escape == null) {
+                    continue;
+                }
+            } else if (ch == 0x2028) {
+                escape = LINE_SEPARATOR;
+            } else if (ch == 0x2029) {
+                escape = PARAGRAPH_SEPARATOR;
+            } else if (Character.isHighSurrogate(ch) && i + 1 < len && Character.isLowSurrogate(value.charAt(i + 1))) {
+                ++i;
+                continue;
+            } else if (Character.isSurrogate(ch)) {
+                escape = unicodeEscape(ch);
+            } else {
+                continue;
+            }
+            if (start < i) {
+                out.append(value, start, i);
+            }
+            out.append(escape);
+            start = i + 1;
+        }
+        if (start < len) {
+            out.append(value, start, len);
+        }
+    }
+
+    /**
+     * Appends a value that is expected to be a number or a boolean. If it is a valid JSON number, or is
+     * <code>true</code> or <code>false</code>, it is appended as-is, otherwise (such as for <code>NaN</code>,
+     * <code>Infinity</code>, or a number formatted with a locale specific decimal separator) it is appended as a
+     * string so that the output remains valid.
+     *
+     * @param out The buffer to append to
+     * @param value The value to append
+     */
+    public static void appendLiteral(StringBuilder out, CharSequence value) {
+        if (isNumber(value) || isBoolean(value)) {
+            out.append(value);
+        } else {
+            appendString(out, value);
+        }
+    }
+
+    /**
+     * @param value The value to check
+     * @return true if the value is exactly <code>true</code> or <code>false</code>
+     */
+    public static boolean isBoolean(CharSequence value) {
+        return contentEquals(value, "true") || contentEquals(value, "false");
+    }
+
+    /**
+     * Checks whether a value matches the JSON grammar for a number, that is an optional minus sign, an integer part
+     * without leading zeroes, an optional fraction and an optional exponent.
+     *
+     * @param value The value to check
+     * @return true if the value is a valid JSON number
+     */
+    public static boolean isNumber(CharSequence value) {
+        final int len = value.length();
+        int i = 0;
+        if (i < len && value.charAt(i) == '-') {
+            ++i;
+        }
+        if (i == len) {
+            return false;
+        }
+        if (value.charAt(i) == '0') {
+            ++i;
+        } else {
+            final int digits = i;
+            i = skipDigits(value, i);
+            if (i == digits) {
+                return false;
+            }
+        }
+        if (i < len && value.charAt(i) == '.') {
+            final int digits = ++i;
+            i = skipDigits(value, i);
+            if (i == digits) {
+                return false;
+            }
+        }
+        if (i < len && (value.charAt(i) == 'e' || value.charAt(i) == 'E')) {
+            ++i;
+            if (i < len && (value.charAt(i) == '+' || value.charAt(i) == '-')) {
+                ++i;
+            }
+            final int digits = i;
+            i = skipDigits(value, i);
+            if (i == digits) {
+                return false;
+            }
+        }
+        return i == len;
+    }
+
+    private static int skipDigits(CharSequence value, int i) {
+        final int len = value.length();
+        while (i < len && value.charAt(i) >= '0' && value.charAt(i) <= '9') {
+            ++i;
+        }
+        return i;
+    }
+
+    private static boolean contentEquals(CharSequence value, String str) {
+        if (value.length() != str.length()) {
+            return false;
+        }
+        for (int i = 0; i < str.length(); i++) {
+            if (value.charAt(i) != str.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String unicodeEscape(char ch) {
+        return new String(new char[] {'\\', 'u', HEX[(ch >> 12) & 0xf], HEX[(ch >> 8) & 0xf], HEX[(ch >> 4) & 0xf],
+                HEX[ch & 0xf]});
+    }
+}
@@ -0,0 +1,266 @@
+/*
+ * Copyright 2007-2022 Scott C. Gray
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sqsh.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A buffered destination for output that is headed to a file or to another process. Unlike a
+ * {@link java.io.BufferedOutputStream}, the buffer is only ever written out when it fills up or when {@link #flush()}
+ * is explicitly called, and text may be encoded as UTF-8 directly into the buffer (see
+ * {@link #writeUtf8(CharSequence, int, int)}) without going through a {@link java.nio.charset.CharsetEncoder}.
+ *
+ * <p>Output to a file is written through a {@link FileChannel}, output to any other stream is written to the
+ * stream in buffer sized chunks.
+ *
+ * <p>Once writing to the destination has failed, all further output is discarded and every write throws an
+ * {@link IOException}. This allows callers that only look at {@link #hasFailed()} (such as a
+ * {@link java.io.PrintStream}) to notice that the destination has gone away, for example when the process at the
+ * other end of a pipe has exited.
+ *
+ * <p>This class is not thread safe.
+ */
+public class OutputSink extends OutputStream {
+
+    /**
+     * The size of the buffer used when none is specified.
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * The smallest buffer allowed. A UTF-8 encoded character can take up to 4 bytes, so the buffer has to be at
+     * least that large, but there is no point in being stingy.
+     */
+    public static final int MIN_BUFFER_SIZE = 512;
+
+    private final byte[] buffer;
+    private final ByteBuffer wrappedBuffer;
+    private final FileChannel channel;
+    private final OutputStream stream;
+    private int count = 0;
+    private long drained = 0L;
+    private boolean failed = false;
+    private boolean closed = false;
+
+    private OutputSink(FileChannel channel, OutputStream stream, int bufferSize) {
+        this.buffer = new byte[Math.max(bufferSize, MIN_BUFFER_SIZE)];
+        this.wrappedBuffer = ByteBuffer.wrap(buffer);
+        this.channel = channel;
+        this.stream = stream;
+    }
+
+    /**
+     * Opens a file for output.
+     *
+     * @param file The file to write to
+     * @param append If true, output is appended to the file, otherwise the file is truncated
+     * @param bufferSize The size of the buffer, in bytes
+     * @return The new sink
+     * @throws IOException If the file cannot be opened
+     */
+    public static OutputSink open(File file, boolean append, int bufferSize) throws IOException {
+        final FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, append ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING);
+        return new OutputSink(channel, null, bufferSize);
+    }
+
+    /**
+     * Creates a sink that writes to an arbitrary output stream, such as the input of another process.
+     *
+     * @param stream The stream to write to. It is closed when the sink is closed.
+     * @param bufferSize The size of the buffer, in bytes
+     * @return The new sink
+     */
+    public static OutputSink wrap(OutputStream stream, int bufferSize) {
+        return new OutputSink(null, stream, bufferSize);
+    }
+
+    /**
+     * @return true if writing to the destination has failed
+     */
+    public boolean hasFailed() {
+        return failed;
+    }
+
+    /**
+     * @return The total number of bytes written to this sink, including any that are still in the buffer
+     */
+    public long getByteCount() {
+        return drained + count;
+    }
+
+    /**
+     * @return The size of the buffer, in bytes
+     */
+    public int getBufferSize() {
+        return buffer.length;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (count == buffer.length) {
+            drain();
+        }
+        buffer[count++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (len >= buffer.length) {
+
+            // No point in copying something this large through the buffer.
+            drain();
+            drained += len;
+            writeThrough(ByteBuffer.wrap(b, off, len));
+            return;
+        }
+        if (len > buffer.length - count) {
+            drain();
+        }
+        System.arraycopy(b, off, buffer, count, len);
+        count += len;
+    }
+
+    /**
+     * Encodes a range of characters as UTF-8 directly into the buffer. Unpaired surrogates are written as '?', which
+     * is what the JDK's own encoder does.
+     *
+     * @param str The characters to write
+     * @param start The index of the first character to write
+     * @param end The index after the last character to write
+     * @throws IOException If the buffer needed to be written out and could not be
+     */
+    public void writeUtf8(CharSequence str, int start, int end) throws IOException {
+        final byte[] buf = buffer;
+        int pos = count;
+        int i = start;
+        while (i < end) {
+
+            // Leave room for the largest possible character.
+            if (buf.length - pos < 4) {
+                count = pos;
+                drain();
+                pos = 0;
+            }
+
+            // Fast path for runs of ASCII, which is what nearly all result sets are made of.
+            final int limit = Math.min(end, i + (buf.length - pos));
+            char ch;
+            while (i < limit && (ch = str.charAt(i)) < 0x80) {
+                buf[pos++] = (byte) ch;
+                ++i;
+            }
+            if (i == end || buf.length - pos < 4) {
+                continue;
+            }
+
+            ch = str.charAt(i++);
+            if (ch < 0x800) {
+                buf[pos++] = (byte) (0xc0 | (ch >> 6));
+                buf[pos++] = (byte) (0x80 | (ch & 0x3f));
+            } else if (Character.isSurrogate(ch)) {
+                if (Character.isHighSurrogate(ch) && i < end && Character.isLowSurrogate(str.charAt(i))) {
+                    final int cp = Character.toCodePoint(ch, str.charAt(i++));
+                    buf[pos++] = (byte) (0xf0 | (cp >> 18));
+                    buf[pos++] = (byte) (0x80 | ((cp >> 12) & 0x3f));
+                    buf[pos++] = (byte) (0x80 | ((cp >> 6) & 0x3f));
+                    buf[pos++] = (byte) (0x80 | (cp & 0x3f));
+                } else {
+                    buf[pos++] = (byte) '?';
+                }
+            } else {
+                buf[pos++] = (byte) (0xe0 | (ch >> 12));
+                buf[pos++] = (byte) (0x80 | ((ch >> 6) & 0x3f));
+                buf[pos++] = (byte) (0x80 | (ch & 0x3f));
+            }
+        }
+        count = pos;
+    }
+
+    /**
+     * Writes out anything that is in the buffer.
+     */
+    @Override
+    public void flush() throws IOException {
+        drain();
+        if (stream != null && !failed) {
+            try {
+                stream.flush();
+            } catch (IOException e) {
+                failed = true;
+                throw e;
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        try {
+            drain();
+        } finally {
+            closed = true;
+            if (channel != null) {
+                channel.close();
+            } else {
+                stream.close();
+            }
+        }
+    }
+
+    /**
+     * Writes the contents of the buffer to the destination, leaving the buffer empty.
+     */
+    private void drain() throws IOException {
+        if (count == 0) {
+            return;
+        }
+        wrappedBuffer.clear().limit(count);
+        drained += count;
+        count = 0;
+        writeThrough(wrappedBuffer);
+    }
+
+    private void writeThrough(ByteBuffer bytes) throws IOException {
+        if (failed) {
+            throw new IOException("Output destination has failed");
+        }
+        if (closed) {
+            failed = true;
+            throw new IOException("Output destination is closed");
+        }
+        try {
+            if (channel != null) {
+                while (bytes.hasRemaining()) {
+                    channel.write(bytes);
+                }
+            } else {
+                stream.write(bytes.array(), bytes.arrayOffset() + bytes.position(), bytes.remaining());
+                bytes.position(bytes.limit());
+            }
+        } catch (IOException e) {
+            failed = true;
+            throw e;
+        }
+    }
+}
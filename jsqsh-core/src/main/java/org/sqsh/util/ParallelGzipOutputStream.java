@@ -0,0 +1,251 @@
+/*
+ * Copyright 2007-2022 Scott C. Gray
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sqsh.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * An output stream that gzip compresses its output using several threads, in the same manner as pigz. The data is
+ * cut up into blocks that are compressed independently on a pool of threads and written out, in order, as a single
+ * gzip member. Each block is primed with the last 32K of the data that precedes it, so the compression ratio is
+ * nearly as good as that of a single threaded compressor.
+ *
+ * <p>Calling {@link #flush()} compresses and writes out everything written so far (at the cost of ending the
+ * current block early), so it should not be called more often than necessary.
+ *
+ * <p>This class is not thread safe.
+ */
+public class ParallelGzipOutputStream extends OutputStream {
+
+    /**
+     * The default amount of uncompressed data in each block.
+     */
+    public static final int DEFAULT_BLOCK_SIZE = 256 * 1024;
+
+    private static final int DICTIONARY_SIZE = 32 * 1024;
+
+    private static final byte[] HEADER = {
+            0x1f, (byte) 0x8b, // Magic number
+            Deflater.DEFLATED, // Compression method
+            0,                 // Flags
+            0, 0, 0, 0,        // Modification time (none)
+            0,                 // Extra flags
+            (byte) 0xff        // Operating system (unknown)
+    };
+
+    private final OutputStream out;
+    private final ExecutorService pool;
+    private final int maxPending;
+    private final ArrayDeque<Future<byte[]>> pending = new ArrayDeque<>();
+    private final CRC32 crc = new CRC32();
+
+    private byte[] block;
+    private int count = 0;
+    private long totalIn = 0L;
+
+    /**
+     * The last (up to) 32K of data that has been handed off to be compressed.
+     */
+    private final byte[] history = new byte[DICTIONARY_SIZE];
+    private int historyLength = 0;
+
+    private boolean closed = false;
+
+    /**
+     * Creates a stream. The gzip header is written immediately.
+     *
+     * @param out The stream to write the compressed data to. It is closed when this stream is closed.
+     * @param threads The number of threads to compress with
+     * @param blockSize The amount of uncompressed data in each block
+     * @throws IOException If the header cannot be written
+     */
+    public ParallelGzipOutputStream(OutputStream out, int threads, int blockSize) throws IOException {
+        this.out = out;
+        this.block = new byte[Math.max(blockSize, DICTIONARY_SIZE)];
+        this.maxPending = Math.max(threads, 1) * 2;
+        this.pool = Executors.newFixedThreadPool(Math.max(threads, 1), r -> {
+            final Thread thread = new Thread(r, "jsqsh-gzip");
+            thread.setDaemon(true);
+            return thread;
+        });
+        out.write(HEADER);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (count == block.length) {
+            submit(false);
+        }
+        block[count++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            if (count == block.length) {
+                submit(false);
+            }
+            final int n = Math.min(len, block.length - count);
+            System.arraycopy(b, off, block, count, n);
+            count += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    /**
+     * Compresses everything written so far and writes it out.
+     */
+    @Override
+    public void flush() throws IOException {
+        ensureOpen();
+        if (count > 0) {
+            submit(false);
+        }
+        while (!pending.isEmpty()) {
+            writeNext();
+        }
+        out.flush();
+    }
+
+    /**
+     * Finishes the compressed stream, writing the gzip trailer, and closes the underlying stream.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        try {
+            submit(true);
+            while (!pending.isEmpty()) {
+                writeNext();
+            }
+            final long crcValue = crc.getValue();
+            final byte[] trailer = new byte[8];
+            for (int i = 0; i < 4; i++) {
+                trailer[i] = (byte) (crcValue >> (i * 8));
+                trailer[i + 4] = (byte) (totalIn >> (i * 8));
+            }
+            out.write(trailer);
+        } finally {
+            closed = true;
+            pool.shutdownNow();
+            out.close();
+        }
+    }
+
+    /**
+     * Hands the current block off to be compressed, writing out any blocks that have finished compressing in the
+     * meantime.
+     *
+     * @param last Whether this is the final block of the stream
+     */
+    private void submit(boolean last) throws IOException {
+        ensureOpen();
+        crc.update(block, 0, count);
+        totalIn += count;
+
+        final byte[] data = block;
+        final int length = count;
+        final byte[] dictionary = historyLength == 0 ? null : Arrays.copyOf(history, historyLength);
+        pending.add(pool.submit(() -> compress(data, length, dictionary, last)));
+
+        // Remember the tail of this block, to prime the compression of the next one.
+        if (length >= DICTIONARY_SIZE) {
+            System.arraycopy(data, length - DICTIONARY_SIZE, history, 0, DICTIONARY_SIZE);
+            historyLength = DICTIONARY_SIZE;
+        } else {
+            final int keep = Math.min(historyLength, DICTIONARY_SIZE - length);
+            System.arraycopy(history, historyLength - keep, history, 0, keep);
+            System.arraycopy(data, 0, history, keep, length);
+            historyLength = keep + length;
+        }
+
+        block = new byte[block.length];
+        count = 0;
+
+        while (!pending.isEmpty() && (pending.size() >= maxPending || pending.peek().isDone())) {
+            writeNext();
+        }
+    }
+
+    /**
+     * Waits for the oldest block to finish compressing and writes it out.
+     */
+    private void writeNext() throws IOException {
+        final Future<byte[]> next = pending.poll();
+        final byte[] compressed;
+        try {
+            compressed = next.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for compression");
+        } catch (ExecutionException e) {
+            throw new IOException("Compression failed: " + e.getCause().getMessage(), e.getCause());
+        }
+        out.write(compressed);
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Stream is closed");
+        }
+    }
+
+    /**
+     * Compresses a block as raw deflate data. All blocks but the last end with a sync flush, which leaves the
+     * output on a byte boundary so that the next block can simply be appended to it.
+     */
+    private static byte[] compress(byte[] data, int length, byte[] dictionary, boolean last) {
+        final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        try {
+            if (dictionary != null) {
+                deflater.setDictionary(dictionary);
+            }
+            deflater.setInput(data, 0, length);
+            final ByteArrayOutputStream result = new ByteArrayOutputStream(length / 2 + 64);
+            final byte[] buf = new byte[64 * 1024];
+            if (last) {
+                deflater.finish();
+                while (!deflater.finished()) {
+                    final int n = deflater.deflate(buf);
+                    result.write(buf, 0, n);
+                }
+            } else {
+                int n;
+                do {
+                    n = deflater.deflate(buf, 0, buf.length, Deflater.SYNC_FLUSH);
+                    result.write(buf, 0, n);
+                } while (n == buf.length);
+            }
+            return result.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright 2007-2022 Scott C. Gray
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sqsh.util;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * An immutable, sorted set of names that can quickly find all of the names starting with a given prefix. The names
+ * are packed end to end into a single character array, with an array of offsets marking where each one starts, so a
+ * set of a few hundred thousand table names takes little more memory than the characters themselves, and looking up
+ * a prefix is a binary search followed by a walk over the matches.
+ *
+ * <p>Names are compared exactly, character by character, so any case folding has to be done before the names are
+ * indexed and before a prefix is looked up.
+ */
+public class PrefixIndex {
+
+    private static final int MAGIC = 0x6a735049;
+    private static final int VERSION = 1;
+
+    private static final PrefixIndex EMPTY = new PrefixIndex(new char[0], new int[]{0});
+
+    private final char[] chars;
+    private final int[] offsets;
+
+    private PrefixIndex(char[] chars, int[] offsets) {
+        this.chars = chars;
+        this.offsets = offsets;
+    }
+
+    /**
+     * Builds an index. Null names are ignored, as are duplicates.
+     *
+     * @param names The names to index
+     * @return The index
+     */
+    public static PrefixIndex of(Collection<String> names) {
+        final String[] sorted = names.stream().filter(name -> name != null).sorted().distinct()
+                .toArray(String[]::new);
+        if (sorted.length == 0) {
+            return EMPTY;
+        }
+        int length = 0;
+        for (String name : sorted) {
+            length += name.length();
+        }
+        final char[] chars = new char[length];
+        final int[] offsets = new int[sorted.length + 1];
+        int pos = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            offsets[i] = pos;
+            sorted[i].getChars(0, sorted[i].length(), chars, pos);
+            pos += sorted[i].length();
+        }
+        offsets[sorted.length] = pos;
+        return new PrefixIndex(chars, offsets);
+    }
+
+    /**
+     * @return The number of names in the index
+     */
+    public int size() {
+        return offsets.length - 1;
+    }
+
+    /**
+     * @param i The position of a name, in sorted order
+     * @return The name
+     */
+    public String get(int i) {
+        return new String(chars, offsets[i], offsets[i + 1] - offsets[i]);
+    }
+
+    /**
+     * Finds the names that start with a prefix.
+     *
+     * @param prefix The prefix, or null to find all names
+     * @param limit The most names to return, or 0 for no limit
+     * @param out The collection that the names are added to, in sorted order
+     * @return The number of names added
+     */
+    public int find(String prefix, int limit, Collection<? super String> out) {
+        final String p = prefix == null ? "" : prefix;
+        final int size = size();
+        int count = 0;
+        for (int i = lowerBound(p); i < size && startsWith(i, p) && (limit <= 0 || count < limit); i++) {
+            out.add(get(i));
+            ++count;
+        }
+        return count;
+    }
+
+    /**
+     * Writes the index in a form that can be read back with {@link #read(DataInput)}.
+     *
+     * @param out Where to write the index
+     * @throws IOException If the index cannot be written
+     */
+    public void write(DataOutput out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(size());
+        for (int i = 0; i < size(); i++) {
+            out.writeUTF(get(i));
+        }
+    }
+
+    /**
+     * Reads an index written by {@link #write(DataOutput)}.
+     *
+     * @param in Where to read the index from
+     * @return The index
+     * @throws IOException If the index cannot be read or is not in a recognized format
+     */
+    public static PrefixIndex read(DataInput in) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a name index");
+        }
+        final int version = in.readInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported name index version " + version);
+        }
+        final int size = in.readInt();
+        if (size < 0) {
+            throw new IOException("Corrupt name index");
+        }
+        final String[] names = new String[size];
+        for (int i = 0; i < size; i++) {
+            names[i] = in.readUTF();
+        }
+        return of(Arrays.asList(names));
+    }
+
+    /**
+     * @return The position of the first name that is not less than the prefix
+     */
+    private int lowerBound(String prefix) {
+        int low = 0;
+        int high = size();
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (compare(mid, prefix) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Compares a name in the index to a string, in the same way as {@link String#compareTo(String)}.
+     */
+    private int compare(int i, String s) {
+        final int start = offsets[i];
+        final int length = offsets[i + 1] - start;
+        final int n = Math.min(length, s.length());
+        for (int j = 0; j < n; j++) {
+            final char c = chars[start + j];
+            final char d = s.charAt(j);
+            if (c != d) {
+                return c - d;
+            }
+        }
+        return length - s.length();
+    }
+
+    private boolean startsWith(int i, String prefix) {
+        final int start = offsets[i];
+        if (offsets[i + 1] - start < prefix.length()) {
+            return false;
+        }
+        for (int j = 0; j < prefix.length(); j++) {
+            if (chars[start + j] != prefix.charAt(j)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
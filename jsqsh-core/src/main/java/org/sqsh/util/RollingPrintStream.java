@@ -0,0 +1,192 @@
+/*
+ * Copyright 2007-2022 Scott C. Gray
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sqsh.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * A {@link SinkPrintStream} that writes to a series of numbered files (<code>file.0001.csv</code>,
+ * <code>file.0002.csv</code>, and so on), moving on to the next file once the current one holds a given number of
+ * rows or bytes.
+ *
+ * <p>The stream has no idea where one row ends and the next begins, so it never moves on to the next file by itself.
+ * Whoever is writing rows calls {@link #rowWritten()} after each one and, before writing the next, checks
+ * {@link #isFull()} and calls {@link #roll()} if needed. This gives the writer the chance to finish off the current
+ * file and start the next one with a fresh set of headers, so that every file stands on its own.
+ */
+public class RollingPrintStream extends SinkPrintStream {
+
+    /**
+     * Opens the stream that a part is written to.
+     */
+    public interface Opener {
+
+        /**
+         * @param file The file to open
+         * @return A stream writing to the file
+         * @throws IOException If the file cannot be opened
+         */
+        OutputStream open(File file) throws IOException;
+    }
+
+    private final Parts parts;
+    private final long maxRows;
+    private final long maxBytes;
+    private long rows = 0L;
+    private long partStart = 0L;
+
+    private RollingPrintStream(OutputSink sink, Parts parts, long maxRows, long maxBytes) {
+        super(sink);
+        this.parts = parts;
+        this.maxRows = maxRows;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Opens the first part.
+     *
+     * @param file The name of the output. The parts are named by inserting a part number before its extension.
+     * @param maxRows The number of rows after which to move on to the next part, or 0 for no limit
+     * @param maxBytes The number of bytes after which to move on to the next part, or 0 for no limit
+     * @param bufferSize The size of the output buffer, in bytes
+     * @param opener Opens each part
+     * @return The new stream
+     * @throws IOException If the first part cannot be opened
+     */
+    public static RollingPrintStream open(File file, long maxRows, long maxBytes, int bufferSize, Opener opener)
+            throws IOException {
+        final Parts parts = new Parts(file, opener);
+        return new RollingPrintStream(OutputSink.wrap(parts, bufferSize), parts, maxRows, maxBytes);
+    }
+
+    /**
+     * Works out the name of a part. The part number is inserted before the extension of the file name, ignoring
+     * a trailing ".gz", so that <code>out.csv.gz</code> becomes <code>out.0001.csv.gz</code>.
+     *
+     * @param file The name of the output
+     * @param part The part number, starting at 1
+     * @return The name of the part
+     */
+    public static File getPartFile(File file, int part) {
+        String name = file.getName();
+        String suffix = "";
+        if (name.endsWith(".gz") && name.length() > 3) {
+            suffix = ".gz";
+            name = name.substring(0, name.length() - 3);
+        }
+        final int dot = name.lastIndexOf('.');
+        if (dot > 0) {
+            suffix = name.substring(dot) + suffix;
+            name = name.substring(0, dot);
+        }
+        return new File(file.getParentFile(), String.format("%s.%04d%s", name, part, suffix));
+    }
+
+    /**
+     * Records that a row has been written to the current part.
+     */
+    public void rowWritten() {
+        ++rows;
+    }
+
+    /**
+     * @return true if at least one row has been written to the current part and it has reached its limit on rows
+     *         or bytes
+     */
+    public boolean isFull() {
+        return rows > 0
+                && ((maxRows > 0 && rows >= maxRows)
+                || (maxBytes > 0 && getSink().getByteCount() - partStart >= maxBytes));
+    }
+
+    /**
+     * @return The number of the part currently being written, starting at 1
+     */
+    public int getPart() {
+        return parts.part;
+    }
+
+    /**
+     * Finishes the current part and moves on to the next one.
+     *
+     * @throws IOException If the current part cannot be finished or the next one cannot be opened
+     */
+    public void roll() throws IOException {
+        synchronized (this) {
+            getSink().flush();
+            parts.next();
+            rows = 0L;
+            partStart = getSink().getByteCount();
+        }
+    }
+
+    /**
+     * Passes output through to whichever part is current.
+     */
+    private static class Parts extends OutputStream {
+
+        private final File file;
+        private final Opener opener;
+        private OutputStream current;
+        private int part = 1;
+
+        private Parts(File file, Opener opener) throws IOException {
+            this.file = file;
+            this.opener = opener;
+            this.current = opener.open(getPartFile(file, part));
+        }
+
+        private void next() throws IOException {
+            final OutputStream finished = current;
+            current = null;
+            finished.close();
+            ++part;
+            current = opener.open(getPartFile(file, part));
+        }
+
+        private OutputStream current() throws IOException {
+            if (current == null) {
+                throw new IOException("Unable to open part " + part + " of " + file);
+            }
+            return current;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            current().write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            current().write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            current().flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (current != null) {
+                current.close();
+                current = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright 2007-2022 Scott C. Gray
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sqsh.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A temporary file that rows of display values can be written to when there are too many of them to hold in memory,
+ * and later read back, in the same order, as many times as needed.
+ *
+ * <p>Each value is written as its length in bytes followed by its UTF-8 encoding (a length of -1 is a null), so
+ * the file is about as large as the text that will eventually be displayed. Unpaired surrogate characters cannot be
+ * represented in UTF-8 and are read back as '?'.
+ *
+ * <p>The file is deleted when it is closed, and only then; it is not registered with
+ * {@link File#deleteOnExit()}, which would hold on to its name for the life of the JVM, so whoever creates the file
+ * is responsible for closing it.
+ */
+public class RowSpillFile implements Closeable {
+
+    private static final int IO_BUFFER_SIZE = 64 * 1024;
+
+    private final File file;
+    private final int nCols;
+    private DataOutputStream out;
+    private int rowCount = 0;
+    private long byteCount = 0L;
+
+    /**
+     * Creates a new, empty, spill file.
+     *
+     * @param nCols The number of values in each row
+     * @throws IOException If the temporary file cannot be created
+     */
+    public RowSpillFile(int nCols) throws IOException {
+        this.nCols = nCols;
+        this.file = File.createTempFile("jsqsh_spill_", ".tmp");
+        try {
+            this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), IO_BUFFER_SIZE));
+        } catch (IOException e) {
+            file.delete();
+            throw e;
+        }
+    }
+
+    /**
+     * @return The number of rows written to the file
+     */
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * @return The number of bytes written to the file
+     */
+    public long getByteCount() {
+        return byteCount;
+    }
+
+    /**
+     * Appends a row to the file.
+     *
+     * @param row The row to write. It must contain exactly as many values as the file was created for.
+     * @throws IOException If the row cannot be written
+     */
+    public void append(String[] row) throws IOException {
+        if (out == null) {
+            throw new IOException("Spill file " + file + " is closed");
+        }
+        for (int i = 0; i < nCols; i++) {
+            final String value = row[i];
+            if (value == null) {
+                out.writeInt(-1);
+                byteCount += 4;
+            } else {
+                final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+                byteCount += 4 + bytes.length;
+            }
+        }
+        ++rowCount;
+    }
+
+    /**
+     * Starts reading the rows back from the beginning of the file. The reader must be closed when it is no longer
+     * needed.
+     *
+     * @return A reader positioned before the first row
+     * @throws IOException If the file cannot be read
+     */
+    public Reader read() throws IOException {
+        if (out == null) {
+            throw new IOException("Spill file " + file + " is closed");
+        }
+        out.flush();
+        return new Reader();
+    }
+
+    /**
+     * Closes and deletes the file.
+     */
+    @Override
+    public void close() {
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException e) {
+
+                /* IGNORED */
+            }
+            out = null;
+        }
+        file.delete();
+    }
+
+    /**
+     * Reads the rows of the file back in the order that they were written.
+     */
+    public class Reader implements Closeable {
+
+        private final DataInputStream in;
+        private byte[] bytes = new byte[256];
+        private int rowsRead = 0;
+
+        private Reader() throws IOException {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), IO_BUFFER_SIZE));
+        }
+
+        /**
+         * @return The next row, or null if all of the rows have been read
+         * @throws IOException If the file cannot be read
+         */
+        public String[] next() throws IOException {
+            if (rowsRead == rowCount) {
+                return null;
+            }
+            final String[] row = new String[nCols];
+            try {
+                for (int i = 0; i < nCols; i++) {
+                    final int len = in.readInt();
+                    if (len >= 0) {
+                        if (len > bytes.length) {
+                            bytes = new byte[Math.max(len, bytes.length * 2)];
+                        }
+                        in.readFully(bytes, 0, len);
+                        row[i] = new String(bytes, 0, len, StandardCharsets.UTF_8);
+                    }
+                }
+            } catch (EOFException e) {
+                throw new IOException("Spill file " + file + " is truncated at row " + (rowsRead + 1), e);
+            }
+            ++rowsRead;
+            return row;
+        }
+
+        @Override
+        public void close() {
+            try {
+                in.close();
+            } catch (IOException e) {
+
+                /* IGNORED */
+            }
+        }
+    }
+}
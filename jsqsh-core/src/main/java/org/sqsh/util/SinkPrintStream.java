@@ -0,0 +1,171 @@
+/*
+ * Copyright 2007-2022 Scott C. Gray
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sqsh.util;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A {@link PrintStream} that writes to an {@link OutputSink}. Nothing is written to the destination until the sink's
+ * buffer fills up or {@link #flush()} is called, so the owner of the stream is responsible for flushing it at
+ * sensible points (such as the end of a result set, or before prompting the user).
+ *
+ * <p>When the platform encoding is UTF-8, text is encoded straight into the sink's buffer rather than passing
+ * through the encoder that {@link PrintStream} normally uses. All other encodings fall back to the normal
+ * {@link PrintStream} behavior, which is still buffered by the sink.
+ *
+ * <p>Unlike a normal {@link PrintStream}, {@link #checkError()} does not flush the stream, so it is cheap enough
+ * to be called for every row displayed.
+ */
+public class SinkPrintStream extends PrintStream {
+
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+
+    private final OutputSink sink;
+    private final boolean isUtf8;
+
+    /**
+     * Creates a print stream.
+     *
+     * @param sink The sink to write to. It is closed when this stream is closed.
+     */
+    public SinkPrintStream(OutputSink sink) {
+        super(sink, false);
+        this.sink = sink;
+        this.isUtf8 = StandardCharsets.UTF_8.equals(Charset.defaultCharset());
+    }
+
+    /**
+     * @return The sink this stream writes to
+     */
+    public OutputSink getSink() {
+        return sink;
+    }
+
+    @Override
+    public boolean checkError() {
+        return sink.hasFailed();
+    }
+
+    @Override
+    public void print(String s) {
+        if (!isUtf8) {
+            super.print(s);
+            return;
+        }
+        if (s == null) {
+            s = "null";
+        }
+        writeUtf8(s, 0, s.length());
+    }
+
+    @Override
+    public void print(char c) {
+        if (!isUtf8 || Character.isSurrogate(c)) {
+
+            // The normal encoder is able to pair up surrogates that arrive one at a time.
+            super.print(c);
+            return;
+        }
+        synchronized (this) {
+            try {
+                if (c < 0x80) {
+                    sink.write(c);
+                } else {
+                    sink.writeUtf8(String.valueOf(c), 0, 1);
+                }
+            } catch (IOException e) {
+                setError();
+            }
+        }
+    }
+
+    @Override
+    public void print(Object obj) {
+        print(String.valueOf(obj));
+    }
+
+    @Override
+    public void println() {
+        if (!isUtf8) {
+            super.println();
+            return;
+        }
+        writeUtf8(LINE_SEPARATOR, 0, LINE_SEPARATOR.length());
+    }
+
+    @Override
+    public void println(String s) {
+        if (!isUtf8) {
+            super.println(s);
+            return;
+        }
+        synchronized (this) {
+            print(s);
+            println();
+        }
+    }
+
+    @Override
+    public void println(Object obj) {
+        println(String.valueOf(obj));
+    }
+
+    @Override
+    public PrintStream append(CharSequence csq) {
+        if (!isUtf8) {
+            return super.append(csq);
+        }
+        if (csq == null) {
+            csq = "null";
+        }
+        writeUtf8(csq, 0, csq.length());
+        return this;
+    }
+
+    @Override
+    public PrintStream append(CharSequence csq, int start, int end) {
+        if (!isUtf8) {
+            return super.append(csq, start, end);
+        }
+        if (csq == null) {
+            csq = "null";
+        }
+        if (start < 0 || start > end || end > csq.length()) {
+            throw new IndexOutOfBoundsException("start " + start + ", end " + end + ", length " + csq.length());
+        }
+        writeUtf8(csq, start, end);
+        return this;
+    }
+
+    @Override
+    public PrintStream append(char c) {
+        print(c);
+        return this;
+    }
+
+    private void writeUtf8(CharSequence csq, int start, int end) {
+        synchronized (this) {
+            try {
+                sink.writeUtf8(csq, start, end);
+            } catch (IOException e) {
+                setError();
+            }
+        }
+    }
+}
@@ -28,7 +28,7 @@ public class TimestampFormatter {
 
     private SimpleDateFormat format;
     private StringBuffer sb;
-    private FieldPosition fp;
+    private final FieldPosition fp = new FieldPosition(0);
     private int nFractionalDigits;
 
     public TimestampFormatter(String format) {
@@ -63,16 +63,15 @@ public class TimestampFormatter {
         if (startIdx != -1 && endIdx == -1) {
             endIdx = len;
         }
+        sb = new StringBuffer();
         if ((startIdx == -1 && endIdx == -1) || (endIdx - startIdx) == 3) {
             this.format = new SimpleDateFormat(format);
         } else {
-            sb = new StringBuffer();
             sb.append(format, 0, startIdx);
             for (int i = startIdx; i < endIdx; i++) {
                 sb.append('\u0000');
             }
             sb.append(format, endIdx, len);
-            this.fp = new FieldPosition(0);
             this.nFractionalDigits = endIdx - startIdx;
             this.format = new SimpleDateFormat(sb.toString());
         }
@@ -82,7 +81,30 @@ public class TimestampFormatter {
         if (nFractionalDigits == 0) {
             return format.format(date);
         }
+        return formatToBuffer(date).toString();
+    }
+
+    /**
+     * Formats a date, appending the result to a buffer.
+     *
+     * @param date The date to format
+     * @param buffer The buffer to which the result is appended
+     */
+    public void formatTo(Date date, StringBuilder buffer) {
+        buffer.append(formatToBuffer(date));
+    }
+
+    /**
+     * Formats the date into our internal buffer.
+     *
+     * @param date The date to format
+     * @return The internal buffer (only valid until the next call)
+     */
+    private StringBuffer formatToBuffer(Date date) {
         sb.setLength(0);
+        if (nFractionalDigits == 0) {
+            return format.format(date, sb, fp);
+        }
         format.format(date, sb, fp);
 
         // Are we doing our own fractional digits?
@@ -102,6 +124,6 @@ public class TimestampFormatter {
                 divisor /= 10;
             }
         }
-        return sb.toString();
+        return sb;
     }
 }
@@ -0,0 +1,204 @@
+/*
+ * Copyright 2007-2022 Scott C. Gray
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sqsh;
+
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.BigIntVector;
+import org.apache.arrow.vector.BitVector;
+import org.apache.arrow.vector.DateDayVector;
+import org.apache.arrow.vector.Decimal256Vector;
+import org.apache.arrow.vector.DecimalVector;
+import org.apache.arrow.vector.FieldVector;
+import org.apache.arrow.vector.Float4Vector;
+import org.apache.arrow.vector.Float8Vector;
+import org.apache.arrow.vector.IntVector;
+import org.apache.arrow.vector.SmallIntVector;
+import org.apache.arrow.vector.TimeMicroVector;
+import org.apache.arrow.vector.TimeStampMicroTZVector;
+import org.apache.arrow.vector.TimeStampMicroVector;
+import org.apache.arrow.vector.TinyIntVector;
+import org.apache.arrow.vector.VarBinaryVector;
+import org.apache.arrow.vector.VarCharVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.ipc.ArrowStreamReader;
+import org.apache.arrow.vector.types.pojo.ArrowType;
+import org.junit.Assert;
+import org.junit.Test;
+import org.sqsh.util.ArrowStreamWriter;
+import org.sqsh.util.ArrowStreamWriter.Field;
+import org.sqsh.util.ArrowStreamWriter.Type;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads what {@link ArrowStreamWriter} writes back with the Arrow Java library.
+ */
+public class ArrowRoundTripTest {
+
+    private static final int ROWS = 5;
+
+    private static final Field[] FIELDS = {
+            new Field("B", Type.BOOL),
+            new Field("I8", Type.INT8),
+            new Field("I16", Type.INT16),
+            new Field("I32", Type.INT32),
+            new Field("I64", Type.INT64),
+            new Field("F32", Type.FLOAT32),
+            new Field("F64", Type.FLOAT64),
+            Field.decimal("DEC", 10, 2),
+            Field.decimal("WIDE", 50, 3),
+            new Field("D", Type.DATE),
+            new Field("T", Type.TIME),
+            new Field("TS", Type.TIMESTAMP),
+            Field.timestamp("TSZ", "UTC"),
+            new Field("S", Type.UTF8),
+            new Field("BIN", Type.BINARY)};
+
+    /**
+     * Every fourth row (starting with the second) is all NULLs.
+     */
+    private static boolean isNull(int row) {
+        return row % 4 == 1;
+    }
+
+    private static BigDecimal wide(int row) {
+        return new BigDecimal("-12345678901234567890123456789012345678901234." + row + row + row);
+    }
+
+    private static byte[] write(int rows, int batchSize) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final ArrowStreamWriter writer = new ArrowStreamWriter(out, FIELDS, batchSize);
+        for (int r = 0; r < rows; r++) {
+            if (isNull(r)) {
+                for (int c = 0; c < FIELDS.length; c++) {
+                    writer.getColumn(c).appendNull();
+                }
+            } else {
+                int c = 0;
+                writer.getColumn(c++).appendBoolean(r % 2 == 0);
+                writer.getColumn(c++).appendLong(-r);
+                writer.getColumn(c++).appendLong(300 * r);
+                writer.getColumn(c++).appendLong(-70000 * r);
+                writer.getColumn(c++).appendLong(5000000000L * r);
+                writer.getColumn(c++).appendDouble(r + 0.5);
+                writer.getColumn(c++).appendDouble(-r * 1.25e100);
+                writer.getColumn(c++).appendDecimal(new BigDecimal("-1.5").multiply(BigDecimal.valueOf(r)));
+                writer.getColumn(c++).appendDecimal(wide(r));
+                writer.getColumn(c++).appendLong(18000 + r);
+                writer.getColumn(c++).appendLong(3600000000L + r);
+                writer.getColumn(c++).appendLong(1600000000000000L + r);
+                writer.getColumn(c++).appendLong(-1600000000000000L - r);
+                writer.getColumn(c++).appendString("row \u00e9 " + r);
+                writer.getColumn(c).appendBytes(new byte[] {(byte) r, (byte) 0xff});
+            }
+            writer.endRow();
+        }
+        writer.finish();
+        return out.toByteArray();
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        final byte[] stream = write(ROWS, 2);
+        final List<Object[]> rows = new ArrayList<>();
+        int batches = 0;
+        try (BufferAllocator allocator = new RootAllocator();
+             ArrowStreamReader reader = new ArrowStreamReader(new ByteArrayInputStream(stream), allocator)) {
+            final VectorSchemaRoot root = reader.getVectorSchemaRoot();
+            final List<org.apache.arrow.vector.types.pojo.Field> fields = root.getSchema().getFields();
+            Assert.assertEquals(FIELDS.length, fields.size());
+            for (int i = 0; i < FIELDS.length; i++) {
+                Assert.assertEquals(FIELDS[i].getName(), fields.get(i).getName());
+                Assert.assertTrue(fields.get(i).isNullable());
+            }
+            Assert.assertEquals(new ArrowType.Decimal(10, 2, 128), fields.get(7).getType());
+            Assert.assertEquals(new ArrowType.Decimal(50, 3, 256), fields.get(8).getType());
+            Assert.assertEquals("UTC", ((ArrowType.Timestamp) fields.get(12).getType()).getTimezone());
+
+            while (reader.loadNextBatch()) {
+                ++batches;
+                Assert.assertTrue(root.getRowCount() <= 2);
+                for (int r = 0; r < root.getRowCount(); r++) {
+                    final Object[] row = new Object[FIELDS.length];
+                    for (int c = 0; c < FIELDS.length; c++) {
+                        final FieldVector vector = root.getVector(c);
+                        row[c] = vector.isNull(r) ? null : vector.getObject(r);
+                    }
+                    rows.add(row);
+                }
+            }
+            Assert.assertTrue(root.getVector(0) instanceof BitVector);
+            Assert.assertTrue(root.getVector(1) instanceof TinyIntVector);
+            Assert.assertTrue(root.getVector(2) instanceof SmallIntVector);
+            Assert.assertTrue(root.getVector(3) instanceof IntVector);
+            Assert.assertTrue(root.getVector(4) instanceof BigIntVector);
+            Assert.assertTrue(root.getVector(5) instanceof Float4Vector);
+            Assert.assertTrue(root.getVector(6) instanceof Float8Vector);
+            Assert.assertTrue(root.getVector(7) instanceof DecimalVector);
+            Assert.assertTrue(root.getVector(8) instanceof Decimal256Vector);
+            Assert.assertTrue(root.getVector(9) instanceof DateDayVector);
+            Assert.assertTrue(root.getVector(10) instanceof TimeMicroVector);
+            Assert.assertTrue(root.getVector(11) instanceof TimeStampMicroVector);
+            Assert.assertTrue(root.getVector(12) instanceof TimeStampMicroTZVector);
+            Assert.assertTrue(root.getVector(13) instanceof VarCharVector);
+            Assert.assertTrue(root.getVector(14) instanceof VarBinaryVector);
+        }
+
+        Assert.assertEquals(3, batches);
+        Assert.assertEquals(ROWS, rows.size());
+        for (int r = 0; r < ROWS; r++) {
+            final Object[] row = rows.get(r);
+            if (isNull(r)) {
+                for (Object value : row) {
+                    Assert.assertNull(value);
+                }
+                continue;
+            }
+            int c = 0;
+            Assert.assertEquals(r % 2 == 0, row[c++]);
+            Assert.assertEquals((byte) -r, row[c++]);
+            Assert.assertEquals((short) (300 * r), row[c++]);
+            Assert.assertEquals(-70000 * r, row[c++]);
+            Assert.assertEquals(5000000000L * r, row[c++]);
+            Assert.assertEquals(r + 0.5f, row[c++]);
+            Assert.assertEquals(-r * 1.25e100, row[c++]);
+            Assert.assertEquals(new BigDecimal("-1.50").multiply(BigDecimal.valueOf(r)), row[c++]);
+            Assert.assertEquals(wide(r), row[c++]);
+            Assert.assertEquals(18000 + r, row[c++]);
+            Assert.assertEquals(3600000000L + r, ((Number) row[c++]).longValue());
+            Assert.assertEquals(java.time.LocalDateTime.of(2020, 9, 13, 12, 26, 40, r * 1000), row[c++]);
+            Assert.assertEquals(-1600000000000000L - r, row[c++]);
+            Assert.assertEquals("row \u00e9 " + r, row[c++].toString());
+            Assert.assertArrayEquals(new byte[] {(byte) r, (byte) 0xff}, (byte[]) row[c]);
+        }
+    }
+
+    @Test
+    public void testEmpty() throws IOException {
+        final byte[] stream = write(0, 2);
+        try (BufferAllocator allocator = new RootAllocator();
+             ArrowStreamReader reader = new ArrowStreamReader(new ByteArrayInputStream(stream), allocator)) {
+            Assert.assertEquals(FIELDS.length, reader.getVectorSchemaRoot().getSchema().getFields().size());
+            Assert.assertFalse(reader.loadNextBatch());
+        }
+    }
+}
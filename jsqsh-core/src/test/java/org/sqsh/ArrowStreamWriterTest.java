@@ -0,0 +1,109 @@
+/*
+ * Copyright 2007-2022 Scott C. Gray
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sqsh;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.sqsh.util.ArrowStreamWriter;
+import org.sqsh.util.ArrowStreamWriter.Field;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+public class ArrowStreamWriterTest {
+
+    /**
+     * Walks the messages in a stream, checking the framing of each, and returns the length of the body of each
+     * message (the last entry being -1 for the end of stream marker).
+     */
+    private static long[] messages(byte[] stream) {
+        final ByteBuffer bb = ByteBuffer.wrap(stream).order(ByteOrder.LITTLE_ENDIAN);
+        final long[] bodies = new long[16];
+        int n = 0;
+        while (true) {
+            Assert.assertEquals(0, bb.position() % 8);
+            Assert.assertEquals(-1, bb.getInt());
+            final int metaLength = bb.getInt();
+            if (metaLength == 0) {
+                bodies[n++] = -1;
+                break;
+            }
+            Assert.assertEquals(0, metaLength % 8);
+
+            // Message.bodyLength is the fourth field of the root table
+            final int meta = bb.position();
+            final int table = meta + bb.getInt(meta);
+            final int vtable = table - bb.getInt(table);
+            final int vtableLength = bb.getShort(vtable);
+            final int fieldOffset = vtableLength > 10 ? bb.getShort(vtable + 10) : 0;
+            final long bodyLength = fieldOffset == 0 ? 0L : bb.getLong(table + fieldOffset);
+            Assert.assertEquals(0, bodyLength % 8);
+            bodies[n++] = bodyLength;
+            bb.position(meta + metaLength + (int) bodyLength);
+        }
+        Assert.assertFalse(bb.hasRemaining());
+        final long[] result = new long[n];
+        System.arraycopy(bodies, 0, result, 0, n);
+        return result;
+    }
+
+    @Test
+    public void testBatches() throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final ArrowStreamWriter writer = new ArrowStreamWriter(out, new Field[] {
+                new Field("ID", ArrowStreamWriter.Type.INT32),
+                Field.decimal("AMOUNT", 10, 2),
+                new Field("NAME", ArrowStreamWriter.Type.UTF8)}, 2);
+        for (int i = 0; i < 3; i++) {
+            writer.getColumn(0).appendLong(i);
+            writer.getColumn(1).appendDecimal(new BigDecimal("-1.5"));
+            if (i == 1) {
+                writer.getColumn(2).appendNull();
+            } else {
+                writer.getColumn(2).appendString("row " + i);
+            }
+            writer.endRow();
+        }
+        writer.finish();
+        Assert.assertEquals(3, writer.getRowCount());
+
+        // Schema, a full batch, a partial batch, and the end of the stream. The body of the first batch is made up
+        // of, for each column, an 8 byte validity bitmap followed by 8 bytes of ints, 32 bytes of decimals, or 16
+        // bytes of offsets and 8 bytes of characters.
+        Assert.assertArrayEquals(new long[] {0, 8 + 8 + 8 + 32 + 8 + 16 + 8, 8 + 8 + 8 + 16 + 8 + 8 + 8, -1},
+                messages(out.toByteArray()));
+    }
+
+    @Test
+    public void testEmpty() throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final ArrowStreamWriter writer = new ArrowStreamWriter(out, new Field[] {
+                new Field("FLAG", ArrowStreamWriter.Type.BOOL)}, 10);
+        writer.finish();
+        Assert.assertArrayEquals(new long[] {0, -1}, messages(out.toByteArray()));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testMissingValue() throws IOException {
+        final ArrowStreamWriter writer = new ArrowStreamWriter(new ByteArrayOutputStream(), new Field[] {
+                new Field("A", ArrowStreamWriter.Type.INT64), new Field("B", ArrowStreamWriter.Type.INT64)}, 10);
+        writer.getColumn(0).appendLong(1);
+        writer.endRow();
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2007-2022 Scott C. Gray
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sqsh;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.sqsh.util.BoundedRing;
+
+import java.sql.SQLException;
+
+public class BoundedRingTest {
+
+    @Test
+    public void testOrdering() throws Exception {
+        final BoundedRing<Integer> ring = new BoundedRing<>(3);
+        Thread producer = new Thread(() -> {
+            try {
+                for (int i = 0; i < 1000; i++) {
+                    ring.put(i);
+                }
+                ring.close();
+            } catch (InterruptedException e) {
+                ring.fail(e);
+            }
+        });
+        producer.start();
+
+        int expected = 0;
+        Integer value = ring.take();
+        while (value != null) {
+            Assert.assertEquals(expected++, value.intValue());
+            value = ring.take();
+        }
+        Assert.assertEquals(1000, expected);
+        producer.join();
+    }
+
+    @Test
+    public void testFailureAfterItems() throws Exception {
+        BoundedRing<String> ring = new BoundedRing<>(4);
+        ring.put("a");
+        ring.put("b");
+        ring.fail(new SQLException("boom"));
+
+        Assert.assertEquals("a", ring.take());
+        Assert.assertEquals("b", ring.take());
+        try {
+            ring.take();
+            Assert.fail("Expected failure");
+        } catch (BoundedRing.RingFailedException e) {
+            Assert.assertEquals("boom", e.getCause().getMessage());
+        }
+    }
+
+    @Test
+    public void testAbortReleasesProducer() throws Exception {
+        final BoundedRing<Integer> ring = new BoundedRing<>(1);
+        final boolean[] result = new boolean[1];
+        ring.put(1);
+        Thread producer = new Thread(() -> {
+            try {
+                result[0] = ring.put(2);
+            } catch (InterruptedException e) {
+                // IGNORED
+            }
+        });
+        producer.start();
+        ring.abort();
+        producer.join(5000);
+        Assert.assertFalse(producer.isAlive());
+        Assert.assertFalse(result[0]);
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2007-2022 Scott C. Gray
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sqsh;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+
+public class FetchSizeTunerTest {
+
+    /**
+     * Fetches every row of a query through a tracker and finishes it. The rows are measured as being so wide that
+     * the memory limit pulls the fetch size down to 1 after the first block.
+     */
+    private static void fetch(FetchSizeTuner tuner, Connection conn, String shape) throws SQLException {
+        final char[] wide = new char[1016];
+        Arrays.fill(wide, 'x');
+        try (Statement statement = conn.createStatement()) {
+            statement.setFetchSize(10);
+            try (ResultSet rs = statement.executeQuery("SELECT X FROM SYSTEM_RANGE(1, 40)")) {
+                final FetchSizeTuner.Tracker tracker = tuner.track(rs, shape,
+                        new ColumnDescription[] { new ColumnDescription("X") });
+                while (tracker.next()) {
+                    tracker.measure(new CharSequence[] { new String(wide) });
+                }
+                tracker.finish();
+            }
+        }
+    }
+
+    @Test
+    public void testShapeIgnoresLiterals() {
+        Assert.assertEquals("select * from t where a = ? and b = ?",
+                FetchSizeTuner.shapeOf("SELECT *\n  FROM t WHERE a = 42 AND b = 'it''s'"));
+        Assert.assertEquals(FetchSizeTuner.shapeOf("select c1 from t2 where x > 1.5"),
+                FetchSizeTuner.shapeOf("select c1 from t2 where x > 300"));
+    }
+
+    @Test
+    public void testShapeKeepsIdentifiers() {
+        Assert.assertNotEquals(FetchSizeTuner.shapeOf("select * from t1"),
+                FetchSizeTuner.shapeOf("select * from t2"));
+    }
+
+    @Test
+    public void testGrowsWhileRoundTripsDominate() {
+        // Round trip was half of the block, so double
+        Assert.assertEquals(64, FetchSizeTuner.nextFetchSize(32, 1000L, 500L, 100L, 1L << 24));
+        // Round trip was negligible, so stay put
+        Assert.assertEquals(32, FetchSizeTuner.nextFetchSize(32, 1000L, 10L, 100L, 1L << 24));
+    }
+
+    @Test
+    public void testLimitedByMemory() {
+        Assert.assertEquals(1000, FetchSizeTuner.nextFetchSize(800, 1000L, 900L, 1000L, 1000L * 1000L));
+        // A size over the limit is pulled back down, even if it would not otherwise change
+        Assert.assertEquals(10, FetchSizeTuner.nextFetchSize(32, 1000L, 0L, 1000L, 10L * 1000L));
+        Assert.assertEquals(FetchSizeTuner.MAX_FETCH_SIZE,
+                FetchSizeTuner.nextFetchSize(FetchSizeTuner.MAX_FETCH_SIZE, 1000L, 900L, 1L, 1L << 40));
+    }
+
+    @Test
+    public void testRemembersByShape() throws SQLException {
+        final FetchSizeTuner tuner = new FetchSizeTuner();
+        tuner.setMemoryLimit(1024L);
+        Assert.assertEquals(32, tuner.getFetchSize("select ?"));
+        Assert.assertEquals(32, tuner.getFetchSize(null));
+
+        try (Connection conn = DriverManager.getConnection("jdbc:h2:mem:", "sa", "")) {
+            fetch(tuner, conn, "select ?");
+            Assert.assertEquals(1, tuner.getFetchSize("select ?"));
+            Assert.assertEquals(32, tuner.getFetchSize("select ? from t"));
+            Assert.assertEquals(32, tuner.getFetchSize(null));
+
+            // Once full, the shape that was least recently used is forgotten to make room for a new one
+            for (int i = 1; i < FetchSizeTuner.MAX_SHAPES; i++) {
+                fetch(tuner, conn, "select " + i);
+            }
+            Assert.assertEquals(1, tuner.getFetchSize("select ?"));
+            fetch(tuner, conn, "select " + FetchSizeTuner.MAX_SHAPES);
+            Assert.assertEquals(1, tuner.getFetchSize("select ?"));
+            Assert.assertEquals(32, tuner.getFetchSize("select 1"));
+            Assert.assertEquals(1, tuner.getFetchSize("select 2"));
+        }
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2007-2022 Scott C. Gray
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sqsh;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.sqsh.ForeignKeyGraph.ForeignKey;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class ForeignKeyGraphTest {
+
+    private static final String[] ORDERS = { "DB", "SALES", "ORDERS" };
+    private static final String[] LINES = { "DB", "SALES", "LINES" };
+    private static final String[] PARTS = { "DB", "STOCK", "PARTS" };
+
+    private static ForeignKeyGraph graph() {
+        final ForeignKeyGraph graph = new ForeignKeyGraph();
+        graph.add("DB", "SALES", "LINES", Arrays.asList(
+                new ForeignKey(ORDERS, "ID", LINES, "ORDER_ID", "FK_ORDER", 1),
+                new ForeignKey(PARTS, "ID", LINES, "PART_ID", "FK_PART", 1),
+                new ForeignKey(PARTS, "REV", LINES, "PART_REV", "FK_PART", 2)));
+        graph.add("DB", "SALES", "ORDERS", Collections.emptyList());
+        return graph;
+    }
+
+    @Test
+    public void testKeysBetweenTables() {
+        final ForeignKeyGraph graph = graph();
+        final List<ForeignKey> keys = graph.getKeys(PARTS, LINES);
+        Assert.assertEquals(2, keys.size());
+        Assert.assertEquals("ID", keys.get(0).getParentColumn());
+        Assert.assertEquals("PART_ID", keys.get(0).getChildColumn());
+        Assert.assertEquals(2, keys.get(1).getSequence());
+        Assert.assertEquals("FK_PART", keys.get(1).getName());
+
+        Assert.assertEquals(1, graph.getKeys(ORDERS, LINES).size());
+        Assert.assertTrue(graph.getKeys(LINES, ORDERS).isEmpty());
+        Assert.assertTrue(graph.getKeys(LINES, PARTS).isEmpty());
+    }
+
+    @Test
+    public void testUnknownCatalogAndSchemaMatch() {
+        final ForeignKeyGraph graph = graph();
+        Assert.assertEquals(1, graph.getKeys(new String[] { null, null, "ORDERS" }, LINES).size());
+        Assert.assertTrue(graph.getKeys(new String[] { "DB", "OTHER", "ORDERS" }, LINES).isEmpty());
+    }
+
+    @Test
+    public void testContainsAndReplace() {
+        final ForeignKeyGraph graph = graph();
+        Assert.assertTrue(graph.contains("DB", "SALES", "ORDERS"));
+        Assert.assertFalse(graph.contains("DB", "STOCK", "PARTS"));
+
+        graph.add("DB", "SALES", "LINES", Collections.emptyList());
+        Assert.assertTrue(graph.getKeys(PARTS, LINES).isEmpty());
+    }
+}
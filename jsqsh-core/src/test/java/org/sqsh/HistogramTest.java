@@ -0,0 +1,91 @@
+/*
+ * Copyright 2007-2022 Scott C. Gray
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sqsh;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.sqsh.util.Histogram;
+
+public class HistogramTest {
+
+    @Test
+    public void testEmpty() {
+        final Histogram h = new Histogram();
+        Assert.assertEquals(0L, h.getCount());
+        Assert.assertEquals(0L, h.getPercentile(50));
+        Assert.assertEquals(0, h.getCountsByPowerOfTwo().length);
+    }
+
+    @Test
+    public void testSmallValuesAreExact() {
+        final Histogram h = new Histogram();
+        for (int i = 0; i < 8; i++) {
+            h.record(i);
+        }
+        Assert.assertEquals(3L, h.getPercentile(50));
+        Assert.assertEquals(7L, h.getPercentile(100));
+        Assert.assertEquals(0L, h.getPercentile(0));
+        Assert.assertEquals(28L, h.getTotal());
+    }
+
+    @Test
+    public void testPercentiles() {
+        final Histogram h = new Histogram();
+        for (long i = 1; i <= 100_000; i++) {
+            h.record(i * 1000L);
+        }
+        Assert.assertEquals(100_000L, h.getCount());
+        Assert.assertEquals(100_000_000L, h.getMax());
+        for (double p : new double[] { 50, 95, 99 }) {
+            final double actual = p * 1000 * 1000;
+            final long estimate = h.getPercentile(p);
+            Assert.assertTrue(p + ": " + estimate, estimate >= actual && estimate <= actual * 1.125);
+        }
+        Assert.assertEquals(100_000_000L, h.getPercentile(100));
+    }
+
+    @Test
+    public void testPowersOfTwo() {
+        final Histogram h = new Histogram();
+        h.record(0);
+        h.record(1);
+        h.record(5);
+        h.record(7);
+        h.record(1023);
+        h.record(1024);
+        h.record(Long.MAX_VALUE);
+        final long[] powers = h.getCountsByPowerOfTwo();
+        Assert.assertEquals(63, powers.length);
+        Assert.assertEquals(2L, powers[0]);
+        Assert.assertEquals(2L, powers[2]);
+        Assert.assertEquals(1L, powers[9]);
+        Assert.assertEquals(1L, powers[10]);
+        Assert.assertEquals(1L, powers[62]);
+    }
+
+    @Test
+    public void testClear() {
+        final Histogram a = new Histogram();
+        a.record(10);
+        a.record(1000);
+        Assert.assertEquals(2L, a.getCount());
+        Assert.assertEquals(1010L, a.getTotal());
+        a.clear();
+        Assert.assertEquals(0L, a.getCount());
+        Assert.assertEquals(0L, a.getMax());
+        Assert.assertEquals(0L, a.getPercentile(50));
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright 2007-2022 Scott C. Gray
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sqsh;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.sqsh.renderers.InsertRenderer;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests the inserts that {@link InsertRenderer} makes into a target connection through a prepared statement, from
+ * one in-memory database into another.
+ */
+public class InsertRendererTest {
+
+    private static final AtomicInteger databases = new AtomicInteger();
+
+    private Session session;
+    private Connection source;
+    private Connection target;
+    private final AtomicInteger commits = new AtomicInteger();
+
+    @Before
+    public void setUp() throws SQLException {
+        session = SqshContext.getThreadLocal().newSession(false);
+        final int id = databases.incrementAndGet();
+        source = DriverManager.getConnection("jdbc:h2:mem:insert_source" + id, "sa", "");
+        target = countCommits(DriverManager.getConnection("jdbc:h2:mem:insert_target" + id, "sa", ""));
+        target.setAutoCommit(false);
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        source.close();
+        target.close();
+    }
+
+    /**
+     * Wraps a connection so that the calls to {@link Connection#commit()} made through it are counted.
+     */
+    private Connection countCommits(Connection conn) {
+        return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { Connection.class },
+                (proxy, method, args) -> {
+                    if ("commit".equals(method.getName())) {
+                        commits.incrementAndGet();
+                    }
+                    try {
+                        return method.invoke(conn, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                });
+    }
+
+    private static void execute(Connection conn, String... sql) throws SQLException {
+        try (Statement statement = conn.createStatement()) {
+            for (String s : sql) {
+                statement.execute(s);
+            }
+        }
+    }
+
+    private InsertRenderer newRenderer(int batchSize, int commitInterval, int queueDepth) {
+        final InsertRenderer renderer = new InsertRenderer(session, session.getRendererManager());
+        renderer.setTable("T");
+        renderer.setConnection(target);
+        renderer.setBatchSize(batchSize);
+        renderer.setCommitInterval(commitInterval);
+        renderer.setQueueDepth(queueDepth);
+        return renderer;
+    }
+
+    /**
+     * Copies the rows of a query on the source into table T of the target.
+     *
+     * @return The number of rows read from the source
+     */
+    private int copy(InsertRenderer renderer, String query) throws SQLException {
+        Assert.assertTrue(renderer.isTyped());
+        try (Statement statement = source.createStatement()) {
+            return session.getSQLRenderer().displayResults(renderer, session, statement.executeQuery(query), null);
+        }
+    }
+
+    /**
+     * @return The values of each row of a query, as strings
+     */
+    private static List<List<String>> rows(Connection conn, String query) throws SQLException {
+        final List<List<String>> rows = new ArrayList<>();
+        try (Statement statement = conn.createStatement(); ResultSet results = statement.executeQuery(query)) {
+            final ResultSetMetaData meta = results.getMetaData();
+            while (results.next()) {
+                final List<String> row = new ArrayList<>();
+                for (int i = 1; i <= meta.getColumnCount(); i++) {
+                    row.add(results.getString(i));
+                }
+                rows.add(row);
+            }
+        }
+        return rows;
+    }
+
+    @Test
+    public void testTypedValues() throws SQLException {
+        final String columns = "ID INT, B BIGINT, D DECIMAL(10, 2), F DOUBLE PRECISION, V VARCHAR(20), C CHAR(3), "
+                + "DT DATE, TM TIME, TS TIMESTAMP(9), BIN VARBINARY(4), BOOL BOOLEAN, CL CLOB, BL BLOB";
+        execute(source, "CREATE TABLE T (" + columns + ")",
+                "INSERT INTO T VALUES (1, 9007199254740993, 12.50, 0.1, 'it''s', 'ab', DATE '1999-12-31', "
+                        + "TIME '23:59:58', TIMESTAMP '2020-02-29 12:34:56.123456789', X'00FF10', TRUE, "
+                        + "'\u00e9t\u00e9', X'CAFE')",
+                "INSERT INTO T VALUES (2, NULL, NULL, NULL, NULL, NULL, NULL, NULL, NULL, NULL, NULL, NULL, NULL)");
+        execute(target, "CREATE TABLE T (" + columns + ")");
+
+        Assert.assertEquals(2, copy(newRenderer(50, 0, 0), "SELECT * FROM T ORDER BY ID"));
+        Assert.assertEquals(rows(source, "SELECT * FROM T ORDER BY ID"), rows(target, "SELECT * FROM T ORDER BY ID"));
+    }
+
+    @Test
+    public void testCommitInterval() throws SQLException {
+        execute(source, "CREATE TABLE T (ID INT)", "INSERT INTO T SELECT X FROM SYSTEM_RANGE(1, 12)");
+        execute(target, "CREATE TABLE T (ID INT)");
+
+        // Batches of 2, committed once at least 5 rows have gone in: after the 6th and 12th rows
+        Assert.assertEquals(12, copy(newRenderer(2, 5, 0), "SELECT ID FROM T"));
+        Assert.assertEquals(2, commits.get());
+
+        // Without an interval, every batch is committed, including the last, partial one
+        commits.set(0);
+        execute(target, "DELETE FROM T");
+        Assert.assertEquals(12, copy(newRenderer(5, 0, 0), "SELECT ID FROM T"));
+        Assert.assertEquals(3, commits.get());
+        Assert.assertEquals(12, rows(target, "SELECT ID FROM T").size());
+    }
+
+    @Test
+    public void testFailureRollsBackUncommitted() throws SQLException {
+        execute(source, "CREATE TABLE T (ID INT)", "INSERT INTO T SELECT X FROM SYSTEM_RANGE(1, 10)");
+        execute(target, "CREATE TABLE T (ID INT PRIMARY KEY)", "INSERT INTO T VALUES (7)");
+        target.commit();
+        commits.set(0);
+
+        // Rows 1 to 4 are committed, 5 and 6 are rolled back when the batch holding 7 fails
+        copy(newRenderer(2, 4, 0), "SELECT ID FROM T ORDER BY ID");
+        Assert.assertEquals(1, commits.get());
+        Assert.assertEquals(5, rows(target, "SELECT ID FROM T").size());
+    }
+
+    @Test
+    public void testWriterThread() throws SQLException {
+        execute(source, "CREATE TABLE T (ID INT)", "INSERT INTO T SELECT X FROM SYSTEM_RANGE(1, 100)");
+        execute(target, "CREATE TABLE T (SEQ INT AUTO_INCREMENT PRIMARY KEY, ID INT)");
+
+        // Batches of 3, committed once at least 10 rows have gone in (after every 12) and once at the end
+        Assert.assertEquals(100, copy(newRenderer(3, 10, 2), "SELECT ID FROM T ORDER BY ID"));
+        Assert.assertEquals(9, commits.get());
+        final List<List<String>> rows = rows(target, "SELECT ID FROM T ORDER BY SEQ");
+        Assert.assertEquals(100, rows.size());
+        for (int i = 0; i < rows.size(); i++) {
+            Assert.assertEquals(String.valueOf(i + 1), rows.get(i).get(0));
+        }
+    }
+
+    @Test
+    public void testWriterThreadFailure() throws SQLException {
+        execute(source, "CREATE TABLE T (ID INT)", "INSERT INTO T SELECT X FROM SYSTEM_RANGE(1, 100)");
+        execute(target, "CREATE TABLE T (ID INT PRIMARY KEY)", "INSERT INTO T VALUES (50)");
+        target.commit();
+        commits.set(0);
+
+        // Rows 1 to 48 are committed, the batch holding 50 fails, and reading stops soon after
+        Assert.assertTrue(copy(newRenderer(3, 10, 2), "SELECT ID FROM T ORDER BY ID") < 100);
+        Assert.assertEquals(4, commits.get());
+        Assert.assertEquals(49, rows(target, "SELECT ID FROM T").size());
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2007-2022 Scott C. Gray
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sqsh;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.sqsh.util.JsonText;
+
+public class JsonTextTest {
+
+    private static String quote(String str) {
+        StringBuilder sb = new StringBuilder();
+        JsonText.appendString(sb, str);
+        return sb.toString();
+    }
+
+    private static String literal(String str) {
+        StringBuilder sb = new StringBuilder();
+        JsonText.appendLiteral(sb, str);
+        return sb.toString();
+    }
+
+    @Test
+    public void testEscaping() {
+        Assert.assertEquals("\"plain\"", quote("plain"));
+        Assert.assertEquals("\"\"", quote(""));
+        Assert.assertEquals("\"say \\\"hi\\\"\"", quote("say \"hi\""));
+        Assert.assertEquals("\"c:\\\\temp\"", quote("c:\\temp"));
+        Assert.assertEquals("\"a\\tb\\nc\\r\\b\\f\"", quote("a\tb\nc\r\b\f"));
+        Assert.assertEquals("\"\\u0000\\u001f\"", quote("\u0000\u001f"));
+
+        // Non-ASCII characters pass through, except for the JavaScript line terminators and broken surrogates
+        Assert.assertEquals("\"caf\u00e9 \ud83d\ude00\"", quote("caf\u00e9 \ud83d\ude00"));
+        Assert.assertEquals("\"a\\u2028b\\u2029\"", quote("a\u2028b\u2029"));
+        Assert.assertEquals("\"\\ud83d!\\ude00\"", quote("\ud83d!\ude00"));
+    }
+
+    @Test
+    public void testLiterals() {
+        Assert.assertEquals("0", literal("0"));
+        Assert.assertEquals("-12.50", literal("-12.50"));
+        Assert.assertEquals("1.5E-7", literal("1.5E-7"));
+        Assert.assertEquals("true", literal("true"));
+        Assert.assertEquals("false", literal("false"));
+
+        Assert.assertEquals("\"NaN\"", literal("NaN"));
+        Assert.assertEquals("\"-Infinity\"", literal("-Infinity"));
+        Assert.assertEquals("\"012\"", literal("012"));
+        Assert.assertEquals("\"1,5\"", literal("1,5"));
+        Assert.assertEquals("\"1.\"", literal("1."));
+        Assert.assertEquals("\"-\"", literal("-"));
+        Assert.assertEquals("\"\"", literal(""));
+    }
+}
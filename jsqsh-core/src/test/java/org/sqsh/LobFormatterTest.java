@@ -0,0 +1,201 @@
+/*
+ * Copyright 2007-2022 Scott C. Gray
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sqsh;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sqsh.format.BlobFormatter;
+import org.sqsh.format.ClobFormatter;
+
+import javax.sql.rowset.serial.SerialBlob;
+import javax.sql.rowset.serial.SerialClob;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.sql.SQLException;
+
+public class LobFormatterTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private static String repeat(String s, int count) {
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            sb.append(s);
+        }
+        return sb.toString();
+    }
+
+    @Test
+    public void testClobUnlimited() throws Exception {
+        // Not a multiple of the read buffer size, to be sure that nothing is left over from a previous read
+        final String text = repeat("abcdefg", 3001);
+        Assert.assertEquals(text, new ClobFormatter().format(new SerialClob(text.toCharArray())));
+        Assert.assertEquals("", new ClobFormatter().format(new SerialClob(new char[0])));
+    }
+
+    @Test
+    public void testClobLimit() throws Exception {
+        final ClobFormatter formatter = new ClobFormatter(10, null);
+        Assert.assertEquals("0123456789", formatter.format(new SerialClob("0123456789".toCharArray())));
+        Assert.assertEquals("0123456789...", formatter.format(new SerialClob("0123456789a".toCharArray())));
+        Assert.assertEquals("short", formatter.format(new SerialClob("short".toCharArray())));
+    }
+
+    @Test
+    public void testClobSpill() throws Exception {
+        final File dir = new File(tmp.getRoot(), "lobs");
+        final ClobFormatter formatter = new ClobFormatter(10, dir);
+        Assert.assertEquals("0123456789", formatter.format(new SerialClob("0123456789".toCharArray())));
+
+        final String text = repeat("\u00e9t\u00e9 ", 5000);
+        final StringBuilder sb = new StringBuilder("prefix:");
+        formatter.formatTo(new SerialClob(text.toCharArray()), sb);
+        Assert.assertTrue(sb.toString().startsWith("prefix:"));
+        final File file = new File(sb.substring("prefix:".length()));
+        Assert.assertEquals(dir, file.getParentFile());
+        Assert.assertEquals(text, new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testBlob() throws Exception {
+        final byte[] bytes = { 0x01, (byte) 0xab, 0x7f, 0x00 };
+        Assert.assertEquals("0x01ab7f00", new BlobFormatter().format(new SerialBlob(bytes)));
+        Assert.assertEquals("0x01ab...", new BlobFormatter(2, null).format(new SerialBlob(bytes)));
+        Assert.assertEquals("0x01ab7f00", new BlobFormatter(4, null).format(new SerialBlob(bytes)));
+
+        final File dir = tmp.getRoot();
+        final String name = new BlobFormatter(2, dir).format(new SerialBlob(bytes));
+        Assert.assertArrayEquals(bytes, Files.readAllBytes(new File(name).toPath()));
+    }
+
+    /**
+     * A CLOB that fails part way through being read, and records whether it was freed.
+     */
+    private static class BrokenClob extends SerialClob {
+        private static final long serialVersionUID = 1L;
+        private boolean freed = false;
+
+        BrokenClob() throws SQLException {
+            super(new char[0]);
+        }
+
+        @Override
+        public Reader getCharacterStream() {
+            return new Reader() {
+                private int count = 0;
+
+                @Override
+                public int read(char[] cbuf, int off, int len) throws IOException {
+                    if (count > 20000) {
+                        throw new IOException("Connection reset");
+                    }
+                    final int n = Math.min(len, 1000);
+                    for (int i = 0; i < n; i++) {
+                        cbuf[off + i] = 'x';
+                    }
+                    count += n;
+                    return n;
+                }
+
+                @Override
+                public void close() {
+                }
+            };
+        }
+
+        @Override
+        public void free() {
+            freed = true;
+        }
+    }
+
+    /**
+     * A BLOB that fails part way through being streamed, and records whether it was freed.
+     */
+    private static class BrokenBlob extends SerialBlob {
+        private static final long serialVersionUID = 1L;
+        private boolean freed = false;
+
+        BrokenBlob() throws SQLException {
+            super(new byte[100]);
+        }
+
+        @Override
+        public InputStream getBinaryStream() {
+            return new InputStream() {
+                private int count = 0;
+
+                @Override
+                public int read() throws IOException {
+                    if (++count > 50) {
+                        throw new IOException("Connection reset");
+                    }
+                    return 0;
+                }
+            };
+        }
+
+        @Override
+        public void free() {
+            freed = true;
+        }
+    }
+
+    @Test
+    public void testClobError() throws Exception {
+        final StringBuilder sb = new StringBuilder("prefix:");
+        BrokenClob clob = new BrokenClob();
+        new ClobFormatter().formatTo(clob, sb);
+        Assert.assertEquals("prefix:*ERROR*", sb.toString());
+        Assert.assertTrue(clob.freed);
+
+        // Nothing is left behind of a CLOB that fails while being written to a file
+        final File dir = tmp.newFolder("clobs");
+        clob = new BrokenClob();
+        Assert.assertEquals("*ERROR*", new ClobFormatter(10, dir).format(clob));
+        Assert.assertTrue(clob.freed);
+        Assert.assertEquals(0, dir.list().length);
+
+        // Those that are read successfully are freed too
+        final boolean[] freed = { false };
+        final SerialClob ok = new SerialClob("abc".toCharArray()) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public void free() {
+                freed[0] = true;
+            }
+        };
+        Assert.assertEquals("abc", new ClobFormatter().format(ok));
+        Assert.assertTrue(freed[0]);
+    }
+
+    @Test
+    public void testBlobError() throws Exception {
+        final File dir = tmp.newFolder("blobs");
+        final BrokenBlob blob = new BrokenBlob();
+        Assert.assertEquals("*ERROR*", new BlobFormatter(10, dir).format(blob));
+        Assert.assertTrue(blob.freed);
+        Assert.assertEquals(0, dir.list().length);
+    }
+}
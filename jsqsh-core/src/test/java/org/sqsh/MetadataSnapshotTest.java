@@ -0,0 +1,150 @@
+/*
+ * Copyright 2007-2022 Scott C. Gray
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sqsh;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sqsh.util.PrefixIndex;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.sql.ResultSetMetaData;
+import java.sql.Types;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.sql.rowset.CachedRowSet;
+import javax.sql.rowset.RowSetMetaDataImpl;
+
+public class MetadataSnapshotTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static CachedRowSet columns() throws Exception {
+        final RowSetMetaDataImpl meta = new RowSetMetaDataImpl();
+        meta.setColumnCount(4);
+        meta.setColumnName(1, "COLUMN_NAME");
+        meta.setColumnLabel(1, "COLUMN_NAME");
+        meta.setColumnType(1, Types.VARCHAR);
+        meta.setColumnName(2, "DATA_TYPE");
+        meta.setColumnType(2, Types.INTEGER);
+        meta.setColumnName(3, "KEY_SEQ");
+        meta.setColumnType(3, Types.SMALLINT);
+        meta.setColumnName(4, "REMARKS");
+        meta.setColumnType(4, Types.VARCHAR);
+        meta.setNullable(4, ResultSetMetaData.columnNullable);
+
+        final CachedRowSet rows = MetadataCache.newRowSet();
+        rows.setMetaData(meta);
+        final Object[][] data = {
+                { "ID", Types.INTEGER, (short) 1, null },
+                { "NAME\u00e9", Types.VARCHAR, (short) 2, "The name" }
+        };
+        for (Object[] row : data) {
+            rows.moveToInsertRow();
+            for (int i = 0; i < row.length; i++) {
+                if (row[i] == null) {
+                    rows.updateNull(i + 1);
+                } else {
+                    rows.updateObject(i + 1, row[i]);
+                }
+            }
+            rows.insertRow();
+        }
+        rows.moveToCurrentRow();
+        rows.beforeFirst();
+        return rows;
+    }
+
+    @Test
+    public void testRowsRoundTrip() throws Exception {
+        final CachedRowSet rows = columns();
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        MetadataSnapshot.writeRows(new DataOutputStream(bytes), rows);
+
+        final CachedRowSet copy = MetadataSnapshot.readRows(
+                new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        Assert.assertEquals(4, copy.getMetaData().getColumnCount());
+        Assert.assertEquals("DATA_TYPE", copy.getMetaData().getColumnName(2));
+        Assert.assertEquals(Types.SMALLINT, copy.getMetaData().getColumnType(3));
+        Assert.assertEquals(ResultSetMetaData.columnNullable, copy.getMetaData().isNullable(4));
+
+        Assert.assertTrue(copy.next());
+        Assert.assertEquals("ID", copy.getString(1));
+        Assert.assertEquals(Types.INTEGER, copy.getInt(2));
+        Assert.assertEquals(1, copy.getShort(3));
+        Assert.assertNull(copy.getString(4));
+        Assert.assertTrue(copy.wasNull());
+        Assert.assertTrue(copy.next());
+        Assert.assertEquals("NAME\u00e9", copy.getString(1));
+        Assert.assertEquals("The name", copy.getString(4));
+        Assert.assertFalse(copy.next());
+
+        // The rows that were written are still there to be read.
+        Assert.assertEquals(2, rows.size());
+        Assert.assertTrue(rows.next());
+        Assert.assertEquals("ID", rows.getString(1));
+    }
+
+    @Test
+    public void testFileRoundTrip() throws Exception {
+        final StringBuilder remarks = new StringBuilder();
+        while (remarks.length() < 70000) {
+            remarks.append("A very long remark \u00e9 ");
+        }
+        final CachedRowSet rows = columns();
+        rows.absolute(2);
+        rows.updateString(4, remarks.toString());
+        rows.updateRow();
+        rows.beforeFirst();
+
+        final Map<String, MetadataCache.CachedLookup> lookups = new HashMap<>();
+        lookups.put("columns\0CAT\0S\0T\0%", new MetadataCache.CachedLookup(rows, 1234L, false));
+        final Map<String, MetadataCache.CachedIndex> indexes = new HashMap<>();
+        indexes.put("tableIndex\0CAT\0S", new MetadataCache.CachedIndex(
+                PrefixIndex.of(Arrays.asList("ORDERS", "CUSTOMERS")), 5678L, false));
+
+        final File file = new File(new File(folder.getRoot(), "meta"), "conn.idx");
+        new MetadataSnapshot("CAT", lookups, indexes).write(file);
+        Assert.assertTrue(file.isFile());
+        Assert.assertFalse(new File(file.getParentFile(), "conn.idx.tmp").exists());
+
+        final MetadataSnapshot snapshot = MetadataSnapshot.read(file);
+        Assert.assertNotNull(snapshot);
+        Assert.assertEquals("CAT", snapshot.getCatalog());
+        Assert.assertEquals(Collections.singleton("columns\0CAT\0S\0T\0%"), snapshot.getLookups().keySet());
+
+        final MetadataCache.CachedLookup lookup = snapshot.getLookups().get("columns\0CAT\0S\0T\0%");
+        Assert.assertEquals(1234L, lookup.created);
+        Assert.assertTrue(lookup.restored);
+        Assert.assertTrue(lookup.rows.next());
+        Assert.assertEquals("ID", lookup.rows.getString(1));
+        Assert.assertTrue(lookup.rows.next());
+        Assert.assertEquals(remarks.toString(), lookup.rows.getString(4));
+
+        final MetadataCache.CachedIndex index = snapshot.getIndexes().get("tableIndex\0CAT\0S");
+        Assert.assertEquals(5678L, index.created);
+        Assert.assertEquals(2, index.index.size());
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright 2007-2022 Scott C. Gray
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sqsh;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.sqsh.commands.MetadataTreeModel;
+import org.sqsh.commands.MetadataTreeModel.Kind;
+import org.sqsh.commands.MetadataTreeModel.Node;
+
+import javax.swing.event.TreeModelEvent;
+import javax.swing.event.TreeModelListener;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+
+public class MetadataTreeModelTest {
+
+    /**
+     * Two schemas, the first with a table and a view, the second with 12 tables. Only what has been looked up
+     * without cachedOnly counts as cached.
+     */
+    private static class FakeSource implements MetadataTreeModel.Source {
+        final Set<String> cached = new HashSet<>();
+        final List<String> lookups = new ArrayList<>();
+
+        private void lookup(String what, boolean cachedOnly) throws SQLException {
+            if (cachedOnly && !cached.contains(what)) {
+                throw new SQLException("Not cached: " + what);
+            }
+            if (!cachedOnly) {
+                lookups.add(what);
+                cached.add(what);
+            }
+        }
+
+        @Override
+        public List<String> getSchemas(boolean cachedOnly) throws SQLException {
+            lookup("schemas", cachedOnly);
+            return Arrays.asList("APP", "BIG");
+        }
+
+        @Override
+        public Map<String, List<String>> getTables(String schema, boolean cachedOnly) throws SQLException {
+            lookup("tables " + schema, cachedOnly);
+            final Map<String, List<String>> tables = new LinkedHashMap<>();
+            if (schema.equals("APP")) {
+                tables.put("TABLE", Arrays.asList("ORDERS"));
+                tables.put("VIEW", Arrays.asList("OPEN_ORDERS"));
+            } else {
+                final List<String> names = new ArrayList<>();
+                for (int i = 0; i < 12; i++) {
+                    names.add("T" + i);
+                }
+                tables.put("TABLE", names);
+            }
+            return tables;
+        }
+
+        @Override
+        public List<String> getColumns(String schema, String table, boolean cachedOnly) throws SQLException {
+            lookup("columns " + schema + "." + table, cachedOnly);
+            return Arrays.asList("ID", "NAME");
+        }
+    }
+
+    private static class Events implements TreeModelListener {
+        int changed, inserted, removed;
+
+        public void treeNodesChanged(TreeModelEvent e) {
+        }
+
+        public void treeNodesInserted(TreeModelEvent e) {
+            inserted += e.getChildren().length;
+        }
+
+        public void treeNodesRemoved(TreeModelEvent e) {
+            removed += e.getChildren().length;
+        }
+
+        public void treeStructureChanged(TreeModelEvent e) {
+            ++changed;
+        }
+    }
+
+    private static void drain(Queue<Runnable> queue) {
+        while (!queue.isEmpty()) {
+            queue.poll().run();
+        }
+    }
+
+    private static List<String> labels(MetadataTreeModel model, Object parent) {
+        final List<String> labels = new ArrayList<>();
+        for (int i = 0; i < model.getChildCount(parent); i++) {
+            labels.add(model.getChild(parent, i).toString());
+        }
+        return labels;
+    }
+
+    @Test
+    public void testLoadsInBackgroundUnlessCached() {
+        final FakeSource source = new FakeSource();
+        final Queue<Runnable> loader = new ArrayDeque<>();
+        final MetadataTreeModel model = new MetadataTreeModel(source, loader::add, Runnable::run, 0);
+        final Events events = new Events();
+        model.addTreeModelListener(events);
+
+        final Node root = model.getRoot();
+        Assert.assertFalse(model.isLeaf(root));
+        Assert.assertEquals(Arrays.asList("Loading..."), labels(model, root));
+
+        model.expand(root);
+        Assert.assertTrue(root.isLoading());
+        Assert.assertEquals(Arrays.asList("Loading..."), labels(model, root));
+        drain(loader);
+        Assert.assertFalse(root.isLoading());
+        Assert.assertEquals(1, events.changed);
+        Assert.assertEquals(Arrays.asList("APP", "BIG"), labels(model, root));
+
+        // Already looked up, so it is loaded right away.
+        source.cached.add("tables APP");
+        final Node app = (Node) model.getChild(root, 0);
+        model.expand(app);
+        Assert.assertTrue(app.isLoaded());
+        Assert.assertTrue(loader.isEmpty());
+        Assert.assertEquals(Arrays.asList("TABLE", "VIEW"), labels(model, app));
+
+        final Node table = (Node) model.getChild(model.getChild(app, 0), 0);
+        Assert.assertEquals(Kind.TABLE, table.getKind());
+        model.expand(table);
+        drain(loader);
+        Assert.assertEquals(Arrays.asList("ID", "NAME"), labels(model, table));
+        Assert.assertTrue(model.isLeaf(model.getChild(table, 0)));
+        Assert.assertEquals(1, model.getIndexOfChild(table, model.getChild(table, 1)));
+    }
+
+    @Test
+    public void testPagesAndPrefetches() {
+        final FakeSource source = new FakeSource();
+        final Queue<Runnable> loader = new ArrayDeque<>();
+        final MetadataTreeModel model = new MetadataTreeModel(source, loader::add, Runnable::run, 3);
+        model.setPageSize(5);
+        final Events events = new Events();
+        model.addTreeModelListener(events);
+
+        model.expand(model.getRoot());
+        drain(loader);
+        // Both schemas have been looked up ahead of time.
+        Assert.assertEquals(Arrays.asList("schemas", "tables APP", "tables BIG"), source.lookups);
+
+        final Node big = (Node) model.getChild(model.getRoot(), 1);
+        model.expand(big);
+        Assert.assertTrue(big.isLoaded());
+        final Node tables = (Node) model.getChild(big, 0);
+        Assert.assertEquals(Arrays.asList("T0", "T1", "T2", "T3", "T4", "(7 more)"), labels(model, tables));
+
+        final Node more = (Node) model.getChild(tables, 5);
+        Assert.assertEquals(Kind.MORE, more.getKind());
+        Assert.assertTrue(model.isLeaf(more));
+        model.showMore(more);
+        Assert.assertEquals(1, events.removed);
+        Assert.assertEquals(6, events.inserted);
+        Assert.assertEquals(Arrays.asList("T0", "T1", "T2", "T3", "T4", "T5", "T6", "T7", "T8", "T9", "(2 more)"),
+                labels(model, tables));
+        Assert.assertEquals(-1, model.getIndexOfChild(tables, more));
+
+        // The columns of the first few tables of the page just shown are looked up ahead of time.
+        source.lookups.clear();
+        drain(loader);
+        Assert.assertEquals(Arrays.asList("columns BIG.T5", "columns BIG.T6", "columns BIG.T7"), source.lookups);
+
+        model.showMore(more);
+        Assert.assertEquals(11, model.getChildCount(tables));
+    }
+
+    @Test
+    public void testErrorsAreShownAsNodes() {
+        final FakeSource source = new FakeSource() {
+            @Override
+            public List<String> getSchemas(boolean cachedOnly) throws SQLException {
+                throw new SQLException("Permission denied");
+            }
+        };
+        final MetadataTreeModel model = new MetadataTreeModel(source, Runnable::run, Runnable::run, 0);
+        model.expand(model.getRoot());
+        Assert.assertEquals(Arrays.asList("Error: Permission denied"), labels(model, model.getRoot()));
+        Assert.assertTrue(model.isLeaf(model.getChild(model.getRoot(), 0)));
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2007-2022 Scott C. Gray
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sqsh;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.sqsh.format.NumberFormatter;
+
+public class NumberFormatterTest {
+
+    @Test
+    public void testPrimitivesMatchBoxed() {
+        NumberFormatter longFormatter = new NumberFormatter(21, 0);
+        for (long l : new long[] { 0L, -1L, 42L, Long.MIN_VALUE, Long.MAX_VALUE }) {
+            Assert.assertEquals(longFormatter.format((Object) l), longFormatter.format(l));
+        }
+
+        NumberFormatter intFormatter = new NumberFormatter(11, 0);
+        for (int i : new int[] { 0, -7, Integer.MIN_VALUE, Integer.MAX_VALUE }) {
+            Assert.assertEquals(intFormatter.format((Object) i), intFormatter.format((long) i));
+        }
+
+        NumberFormatter doubleFormatter = new NumberFormatter(20, 5);
+        for (double d : new double[] { 0.0, -1.5, 3.14159265, 1e300, Double.NaN }) {
+            Assert.assertEquals(doubleFormatter.format((Object) d), doubleFormatter.format(d));
+        }
+
+        for (float f : new float[] { 0.1f, -2.25f, 1e30f }) {
+            Assert.assertEquals(doubleFormatter.format((Object) f), doubleFormatter.format(f));
+        }
+
+        NumberFormatter unscaled = new NumberFormatter(0, 0);
+        Assert.assertEquals(unscaled.format((Object) 0.1f), unscaled.format(0.1f));
+        Assert.assertEquals(unscaled.format((Object) 0.1d), unscaled.format(0.1d));
+    }
+
+    @Test
+    public void testFormatToMatchesFormat() {
+        NumberFormatter formatter = new NumberFormatter(20, 5);
+        StringBuilder sb = new StringBuilder("x");
+        formatter.formatTo(42L, sb);
+        formatter.formatTo((Object) 3, sb);
+        formatter.formatTo(-1.5d, sb);
+        formatter.formatTo((Object) new java.math.BigDecimal("12.345"), sb);
+        Assert.assertEquals("x" + formatter.format(42L) + formatter.format((Object) 3) + formatter.format(-1.5d)
+                + formatter.format((Object) new java.math.BigDecimal("12.345")), sb.toString());
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2007-2022 Scott C. Gray
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sqsh;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.sqsh.util.OutputSink;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+public class OutputSinkTest {
+
+    @Test
+    public void testUtf8MatchesJdkEncoder() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            sb.append("abc").append('\u00e9').append('\u20ac').append("\ud83d\ude00").append(i);
+        }
+        String str = sb.toString();
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        OutputSink sink = OutputSink.wrap(bytes, OutputSink.MIN_BUFFER_SIZE);
+        sink.writeUtf8(str, 0, 7);
+        sink.writeUtf8(str, 7, str.length());
+        sink.flush();
+
+        Assert.assertArrayEquals(str.getBytes(StandardCharsets.UTF_8), bytes.toByteArray());
+    }
+
+    @Test
+    public void testNothingWrittenUntilFlush() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        OutputSink sink = OutputSink.wrap(bytes, 1024);
+        sink.writeUtf8("hello", 0, 5);
+        sink.write(new byte[] { '!' }, 0, 1);
+        Assert.assertEquals(0, bytes.size());
+
+        sink.flush();
+        Assert.assertEquals("hello!", bytes.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testFailureIsSticky() throws IOException {
+        OutputStream broken = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                throw new IOException("Broken pipe");
+            }
+        };
+        OutputSink sink = OutputSink.wrap(broken, 1024);
+        sink.write('x');
+        Assert.assertFalse(sink.hasFailed());
+        try {
+            sink.flush();
+            Assert.fail("Expected flush to fail");
+        } catch (IOException e) {
+            // Expected
+        }
+        Assert.assertTrue(sink.hasFailed());
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2007-2022 Scott C. Gray
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sqsh;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.sqsh.util.ParallelGzipOutputStream;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+
+public class ParallelGzipOutputStreamTest {
+
+    private static byte[] gunzip(byte[] compressed) throws IOException {
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            final byte[] buf = new byte[8192];
+            int n;
+            while ((n = in.read(buf)) > 0) {
+                out.write(buf, 0, n);
+            }
+            return out.toByteArray();
+        }
+    }
+
+    @Test
+    public void testManyBlocks() throws IOException {
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 200000; i++) {
+            sb.append(i).append(",row number ").append(i * 31 % 977).append('\n');
+        }
+        final byte[] data = sb.toString().getBytes(StandardCharsets.US_ASCII);
+
+        final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (ParallelGzipOutputStream out = new ParallelGzipOutputStream(compressed, 4, 64 * 1024)) {
+            // Uneven writes, with a flush part way through, to exercise blocks that end early.
+            int off = 0;
+            int len = 1;
+            while (off < data.length) {
+                final int n = Math.min(len, data.length - off);
+                out.write(data, off, n);
+                off += n;
+                len = (len * 7) % 100000 + 1;
+                if (off > data.length / 2 && off - n <= data.length / 2) {
+                    out.flush();
+                }
+            }
+        }
+        Assert.assertTrue(compressed.size() < data.length / 3);
+        Assert.assertArrayEquals(data, gunzip(compressed.toByteArray()));
+    }
+
+    @Test
+    public void testEmpty() throws IOException {
+        final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        new ParallelGzipOutputStream(compressed, 2, 1024).close();
+        Assert.assertEquals(0, gunzip(compressed.toByteArray()).length);
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2007-2022 Scott C. Gray
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sqsh;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.sqsh.util.PrefixIndex;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class PrefixIndexTest {
+
+    private static final PrefixIndex INDEX = PrefixIndex.of(Arrays.asList(
+            "ORDERS", "ORDER_LINES", "CUSTOMERS", "ORDERS", null, "ORD", "PARTS", "", "CUST\u00e9"));
+
+    private static List<String> find(PrefixIndex index, String prefix, int limit) {
+        final List<String> out = new ArrayList<>();
+        Assert.assertEquals(index.find(prefix, limit, out), out.size());
+        return out;
+    }
+
+    @Test
+    public void testSortedAndDistinct() {
+        Assert.assertEquals(7, INDEX.size());
+        Assert.assertEquals("", INDEX.get(0));
+        Assert.assertEquals("CUSTOMERS", INDEX.get(1));
+        Assert.assertEquals("PARTS", INDEX.get(6));
+    }
+
+    @Test
+    public void testFind() {
+        Assert.assertEquals(Arrays.asList("ORD", "ORDERS", "ORDER_LINES"), find(INDEX, "ORD", 0));
+        Assert.assertEquals(Arrays.asList("ORDERS", "ORDER_LINES"), find(INDEX, "ORDE", 0));
+        Assert.assertEquals(Collections.singletonList("CUST\u00e9"), find(INDEX, "CUST\u00e9", 0));
+        Assert.assertEquals(Collections.emptyList(), find(INDEX, "ord", 0));
+        Assert.assertEquals(Collections.emptyList(), find(INDEX, "Z", 0));
+        Assert.assertEquals(Collections.emptyList(), find(INDEX, "ORDERSX", 0));
+        Assert.assertEquals(7, find(INDEX, null, 0).size());
+        Assert.assertEquals(Arrays.asList("ORD", "ORDERS"), find(INDEX, "OR", 2));
+    }
+
+    @Test
+    public void testEmpty() {
+        final PrefixIndex empty = PrefixIndex.of(Collections.emptyList());
+        Assert.assertEquals(0, empty.size());
+        Assert.assertEquals(Collections.emptyList(), find(empty, "A", 0));
+    }
+
+    @Test
+    public void testWriteAndRead() throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        INDEX.write(new DataOutputStream(bytes));
+        final PrefixIndex copy = PrefixIndex.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        Assert.assertEquals(INDEX.size(), copy.size());
+        for (int i = 0; i < INDEX.size(); i++) {
+            Assert.assertEquals(INDEX.get(i), copy.get(i));
+        }
+        Assert.assertEquals(find(INDEX, "ORD", 0), find(copy, "ORD", 0));
+    }
+
+    @Test(expected = IOException.class)
+    public void testReadRejectsGarbage() throws IOException {
+        PrefixIndex.read(new DataInputStream(new ByteArrayInputStream(new byte[]{1, 2, 3, 4, 5, 6, 7, 8})));
+    }
+}
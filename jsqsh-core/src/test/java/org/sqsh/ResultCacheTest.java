@@ -0,0 +1,133 @@
+/*
+ * Copyright 2007-2022 Scott C. Gray
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sqsh;
+
+import java.util.Iterator;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ResultCacheTest {
+
+    private static ResultCache.Recorder record(ResultCache cache, String[]... rows) {
+        final ResultCache.Recorder recorder = cache.newRecorder();
+        recorder.startResult(new ColumnDescription[] { new ColumnDescription("a"), new ColumnDescription("b") });
+        for (String[] row : rows) {
+            recorder.row(row);
+        }
+        recorder.endResult();
+        return recorder;
+    }
+
+    @Test
+    public void testRoundTrip() {
+        final ResultCache cache = new ResultCache();
+        final StringBuilder longValue = new StringBuilder();
+        for (int i = 0; i < 300; i++) {
+            longValue.append('x');
+        }
+        cache.put("k", record(cache, new String[] { "1", null }, new String[] { "caf\u00e9", "" },
+                new String[] { longValue.toString(), "\u4e2d" }));
+
+        final ResultCache.Entry entry = cache.get("k");
+        Assert.assertNotNull(entry);
+        Assert.assertEquals(1, entry.getResults().size());
+        final ResultCache.Result result = entry.getResults().get(0);
+        Assert.assertEquals(3, result.getRowCount());
+        Assert.assertEquals("b", result.getColumns()[1].getName());
+
+        final Iterator<String[]> rows = result.rows();
+        Assert.assertArrayEquals(new String[] { "1", null }, rows.next());
+        Assert.assertArrayEquals(new String[] { "caf\u00e9", "" }, rows.next());
+        Assert.assertArrayEquals(new String[] { longValue.toString(), "\u4e2d" }, rows.next());
+        Assert.assertFalse(rows.hasNext());
+        Assert.assertEquals(1L, cache.getHits());
+    }
+
+    @Test
+    public void testExpiry() {
+        final ResultCache cache = new ResultCache();
+        cache.setTtl(0);
+        cache.put("k", record(cache, new String[] { "1", "2" }));
+        Assert.assertNull(cache.get("k"));
+        Assert.assertEquals(1L, cache.getMisses());
+        Assert.assertEquals(0, cache.getEntries());
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() {
+        final ResultCache cache = new ResultCache();
+        cache.put("a", record(cache, new String[] { "1", "2" }));
+        final long size = cache.getBytes();
+        cache.put("b", record(cache, new String[] { "3", "4" }));
+        cache.get("a");
+        cache.setMemoryLimit(size + 10);
+        Assert.assertNotNull(cache.get("a"));
+        Assert.assertNull(cache.get("b"));
+
+        cache.setMemoryLimit(0);
+        Assert.assertEquals(0, cache.getEntries());
+        Assert.assertEquals(0L, cache.getBytes());
+    }
+
+    @Test
+    public void testAbandoned() {
+        final ResultCache cache = new ResultCache();
+        final ResultCache.Recorder recorder = record(cache, new String[] { "1", "2" });
+        recorder.abandon();
+        cache.put("k", recorder);
+        Assert.assertEquals(0, cache.getEntries());
+    }
+
+    @Test
+    public void testCacheable() {
+        Assert.assertTrue(ResultCache.isCacheable("  -- comment\n SELECT * FROM t"));
+        Assert.assertTrue(ResultCache.isCacheable("(select 1) union (select 2)"));
+        Assert.assertTrue(ResultCache.isCacheable("with x as (select 1) select * from x"));
+        Assert.assertFalse(ResultCache.isCacheable("insert into t select * from u"));
+        Assert.assertFalse(ResultCache.isCacheable("selectx"));
+        Assert.assertFalse(ResultCache.isCacheable(""));
+    }
+
+    @Test
+    public void testNotReadOnly() {
+        Assert.assertFalse(ResultCache.isCacheable("select * from t for update"));
+        Assert.assertFalse(ResultCache.isCacheable("select * from t for no key update"));
+        Assert.assertFalse(ResultCache.isCacheable("SELECT * FROM t FOR SHARE"));
+        Assert.assertFalse(ResultCache.isCacheable("select * from t for key share"));
+        Assert.assertFalse(ResultCache.isCacheable("select * from t lock in share mode"));
+        Assert.assertFalse(ResultCache.isCacheable("select nextval('s')"));
+        Assert.assertFalse(ResultCache.isCacheable("values next value for s"));
+        Assert.assertFalse(ResultCache.isCacheable("select * into t2 from t"));
+        Assert.assertFalse(ResultCache.isCacheable("with d as (delete from t returning *) select * from d"));
+        Assert.assertTrue(ResultCache.isCacheable("select 'for update', \"insert\" from t -- delete\n/* into */"));
+        Assert.assertTrue(ResultCache.isCacheable("select updated, share from t"));
+    }
+
+    @Test
+    public void testInvalidate() {
+        final ResultCache cache = new ResultCache();
+        cache.put("k", record(cache, new String[] { "1", "2" }));
+        Assert.assertNotNull(cache.get("k"));
+        Assert.assertNull(cache.get("j"));
+        cache.invalidate();
+        Assert.assertEquals(0, cache.getEntries());
+        Assert.assertEquals(0L, cache.getBytes());
+        Assert.assertNull(cache.get("k"));
+        Assert.assertEquals(1L, cache.getHits());
+        Assert.assertEquals(2L, cache.getMisses());
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2007-2022 Scott C. Gray
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sqsh;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.sqsh.util.RollingPrintStream;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class RollingPrintStreamTest {
+
+    @Test
+    public void testPartNames() {
+        Assert.assertEquals(new File("/tmp/out.0001.csv"), RollingPrintStream.getPartFile(new File("/tmp/out.csv"), 1));
+        Assert.assertEquals(new File("/tmp/out.0012.csv.gz"),
+                RollingPrintStream.getPartFile(new File("/tmp/out.csv.gz"), 12));
+        Assert.assertEquals(new File("out.0002.gz"), RollingPrintStream.getPartFile(new File("out.gz"), 2));
+        Assert.assertEquals(new File("out.0003"), RollingPrintStream.getPartFile(new File("out"), 3));
+        Assert.assertEquals(new File(".hidden.0001"), RollingPrintStream.getPartFile(new File(".hidden"), 1));
+    }
+
+    @Test
+    public void testRollOnRows() throws Exception {
+        final Map<String, ByteArrayOutputStream> parts = new LinkedHashMap<>();
+        try (RollingPrintStream out = RollingPrintStream.open(new File("rows.txt"), 2, 0, 16, file -> {
+            final ByteArrayOutputStream part = new ByteArrayOutputStream();
+            parts.put(file.getName(), part);
+            return part;
+        })) {
+            for (int i = 1; i <= 5; i++) {
+                if (out.isFull()) {
+                    out.roll();
+                }
+                out.print("row " + i + "\n");
+                out.rowWritten();
+            }
+            Assert.assertEquals(3, out.getPart());
+        }
+
+        Assert.assertEquals(3, parts.size());
+        Assert.assertEquals("row 1\nrow 2\n", text(parts.get("rows.0001.txt")));
+        Assert.assertEquals("row 3\nrow 4\n", text(parts.get("rows.0002.txt")));
+        Assert.assertEquals("row 5\n", text(parts.get("rows.0003.txt")));
+    }
+
+    @Test
+    public void testRollOnBytes() throws Exception {
+        final Map<String, ByteArrayOutputStream> parts = new LinkedHashMap<>();
+        try (RollingPrintStream out = RollingPrintStream.open(new File("bytes"), 0, 10, 4, file -> {
+            final ByteArrayOutputStream part = new ByteArrayOutputStream();
+            parts.put(file.getName(), part);
+            return part;
+        })) {
+            // A row is never split, even if it alone is over the limit
+            for (String row : new String[] { "0123456789abc\n", "x\n", "y\n", "z\n" }) {
+                if (out.isFull()) {
+                    out.roll();
+                }
+                out.print(row);
+                out.rowWritten();
+            }
+        }
+
+        Assert.assertEquals(2, parts.size());
+        Assert.assertEquals("0123456789abc\n", text(parts.get("bytes.0001")));
+        Assert.assertEquals("x\ny\nz\n", text(parts.get("bytes.0002")));
+    }
+
+    private static String text(ByteArrayOutputStream out) {
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2007-2022 Scott C. Gray
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sqsh;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.sqsh.util.RowSpillFile;
+
+import java.io.IOException;
+
+public class RowSpillFileTest {
+
+    @Test
+    public void testRowsReadBackInOrder() throws IOException {
+        try (RowSpillFile spill = new RowSpillFile(3)) {
+            for (int i = 0; i < 1000; i++) {
+                spill.append(new String[] { Integer.toString(i), null, "caf\u00e9 " + i });
+            }
+            Assert.assertEquals(1000, spill.getRowCount());
+
+            // Rows can be read back more than once
+            for (int pass = 0; pass < 2; pass++) {
+                try (RowSpillFile.Reader reader = spill.read()) {
+                    for (int i = 0; i < 1000; i++) {
+                        Assert.assertArrayEquals(new String[] { Integer.toString(i), null, "caf\u00e9 " + i },
+                                reader.next());
+                    }
+                    Assert.assertNull(reader.next());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2007-2022 Scott C. Gray
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sqsh;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SQLParseUtilTest {
+
+    @Test
+    public void testDDL() {
+        Assert.assertTrue(SQLParseUtil.isDDL("create table t (a int)"));
+        Assert.assertTrue(SQLParseUtil.isDDL("  ALTER TABLE t ADD b int"));
+        Assert.assertTrue(SQLParseUtil.isDDL("drop view v"));
+        Assert.assertTrue(SQLParseUtil.isDDL("rename table t to u"));
+        Assert.assertTrue(SQLParseUtil.isDDL("truncate table t"));
+        Assert.assertTrue(SQLParseUtil.isDDL("sp_rename 't', 'u'"));
+        Assert.assertTrue(SQLParseUtil.isDDL("exec sp_rename 't', 'u'"));
+        Assert.assertTrue(SQLParseUtil.isDDL("EXECUTE sp_rename 't', 'u'"));
+        Assert.assertTrue(SQLParseUtil.isDDL("-- make it\n/* twice */ create index i on t (a)"));
+        Assert.assertTrue(SQLParseUtil.isDDL("/* a */\n  -- b\n  drop table t"));
+        Assert.assertTrue(SQLParseUtil.isDDL("select * into t2 from t"));
+        Assert.assertTrue(SQLParseUtil.isDDL("SELECT a, (select max(b) from u) AS m INTO #tmp FROM t"));
+        Assert.assertTrue(SQLParseUtil.isDDL("select a /* into @x */ into [new t] from t"));
+    }
+
+    @Test
+    public void testNotDDL() {
+        Assert.assertFalse(SQLParseUtil.isDDL("select * from t"));
+        Assert.assertFalse(SQLParseUtil.isDDL("insert into t values (1)"));
+        Assert.assertFalse(SQLParseUtil.isDDL("created"));
+        Assert.assertFalse(SQLParseUtil.isDDL("sp_renamed 't'"));
+        Assert.assertFalse(SQLParseUtil.isDDL("exec sp_help 't'"));
+        Assert.assertFalse(SQLParseUtil.isDDL("-- drop table t\nselect 1"));
+        Assert.assertFalse(SQLParseUtil.isDDL("select 'into t' from t"));
+        Assert.assertFalse(SQLParseUtil.isDDL("select a from t where b in (select c into d from u)"));
+        Assert.assertFalse(SQLParseUtil.isDDL("select @a = a into @b from t"));
+        Assert.assertFalse(SQLParseUtil.isDDL("select a into :a from t"));
+        Assert.assertFalse(SQLParseUtil.isDDL("select a, b into ?, ? from t"));
+        Assert.assertFalse(SQLParseUtil.isDDL("select intoxicated from t"));
+        Assert.assertFalse(SQLParseUtil.isDDL(""));
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright 2007-2022 Scott C. Gray
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sqsh;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.sqsh.commands.PatternFilteredResultSet;
+import org.sqsh.commands.SlicedResultSet;
+
+import java.sql.ResultSet;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sql.rowset.CachedRowSet;
+import javax.sql.rowset.RowSetMetaDataImpl;
+
+public class SlicedResultSetTest {
+
+    private static CachedRowSet names(String... names) throws Exception {
+        final RowSetMetaDataImpl meta = new RowSetMetaDataImpl();
+        meta.setColumnCount(1);
+        meta.setColumnName(1, "NAME");
+        meta.setColumnType(1, Types.VARCHAR);
+        final CachedRowSet rows = MetadataCache.newRowSet();
+        rows.setMetaData(meta);
+        for (String name : names) {
+            rows.moveToInsertRow();
+            rows.updateString(1, name);
+            rows.insertRow();
+        }
+        rows.moveToCurrentRow();
+        rows.beforeFirst();
+        return rows;
+    }
+
+    private static List<String> read(ResultSet results) throws Exception {
+        final List<String> out = new ArrayList<>();
+        while (results.next()) {
+            out.add(results.getString(1));
+        }
+        return out;
+    }
+
+    @Test
+    public void testSlicesReadInOrder() throws Exception {
+        final CompletableFuture<ResultSet> late = new CompletableFuture<>();
+        final List<Future<ResultSet>> slices = Arrays.asList(
+                CompletableFuture.completedFuture(names("A", "B")),
+                CompletableFuture.completedFuture(names()),
+                late);
+        final SlicedResultSet results = new SlicedResultSet(slices);
+        Assert.assertEquals("NAME", results.getMetaData().getColumnName(1));
+        Assert.assertTrue(results.next());
+        Assert.assertEquals("A", results.getString(1));
+        Assert.assertTrue(results.next());
+        Assert.assertEquals("B", results.getString(1));
+
+        late.complete(names("C"));
+        Assert.assertEquals(Arrays.asList("C"), read(results));
+        Assert.assertEquals("NAME", results.getMetaData().getColumnName(1));
+        results.close();
+        Assert.assertTrue(results.isClosed());
+    }
+
+    @Test
+    public void testCloseCancelsUnreadSlices() throws Exception {
+        final CompletableFuture<ResultSet> pending = new CompletableFuture<>();
+        final SlicedResultSet results = new SlicedResultSet(Arrays.asList(
+                CompletableFuture.completedFuture(names("A")), pending));
+        Assert.assertTrue(results.next());
+        results.close();
+        Assert.assertTrue(pending.isCancelled());
+    }
+
+    @Test
+    public void testSubmissionIsBounded() throws Exception {
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        final AtomicInteger started = new AtomicInteger();
+        final List<Callable<ResultSet>> work = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            final String name = "S" + i;
+            work.add(() -> {
+                started.incrementAndGet();
+                return names(name);
+            });
+        }
+        try (SlicedResultSet results = new SlicedResultSet(work, executor, 1)) {
+            Assert.assertEquals(5, results.getSliceCount());
+            Assert.assertTrue(results.next());
+            Assert.assertEquals("S0", results.getString(1));
+            Assert.assertTrue(started.get() <= 2);
+            Assert.assertEquals(Arrays.asList("S1", "S2", "S3", "S4"), read(results));
+            Assert.assertEquals(5, started.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testCloseLeavesRunningSliceAlone() throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        final CountDownLatch running = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicBoolean interrupted = new AtomicBoolean();
+        final AtomicInteger started = new AtomicInteger();
+        final List<Callable<ResultSet>> work = new ArrayList<>();
+        work.add(() -> {
+            started.incrementAndGet();
+            return names("A");
+        });
+        for (int i = 0; i < 2; i++) {
+            work.add(() -> {
+                started.incrementAndGet();
+                running.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    interrupted.set(true);
+                }
+                return names("B");
+            });
+        }
+        final SlicedResultSet results = new SlicedResultSet(work, executor, 1);
+        Assert.assertTrue(results.next());
+        Assert.assertTrue(running.await(10, TimeUnit.SECONDS));
+        results.close();
+        release.countDown();
+        executor.shutdown();
+        Assert.assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        Assert.assertFalse(interrupted.get());
+        Assert.assertEquals(2, started.get());
+    }
+
+    @Test
+    public void testPatternFilterEscapesRegex() throws Exception {
+        Assert.assertEquals(Arrays.asList("A.B", "AxB"),
+                read(new PatternFilteredResultSet(names("A.B", "AxB", "AB"), 1, "A_B")));
+        Assert.assertEquals(Arrays.asList("A.B"),
+                read(new PatternFilteredResultSet(names("A.B", "AxB", "A(B"), 1, "A.%")));
+        Assert.assertEquals(Arrays.asList("A(B"),
+                read(new PatternFilteredResultSet(names("A.B", "A(B"), 1, "a(%")));
+    }
+}
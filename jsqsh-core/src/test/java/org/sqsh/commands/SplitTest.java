@@ -0,0 +1,201 @@
+/*
+ * Copyright 2007-2022 Scott C. Gray
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sqsh.commands;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Tests {@link Export.Split} against an in-memory database, checking that every row of the table lands in exactly
+ * one slice.
+ */
+public class SplitTest {
+
+    private Connection conn;
+
+    @Before
+    public void setUp() throws SQLException {
+        conn = DriverManager.getConnection("jdbc:h2:mem:", "sa", "");
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        conn.close();
+    }
+
+    private void execute(String... sql) throws SQLException {
+        try (Statement statement = conn.createStatement()) {
+            for (String s : sql) {
+                statement.execute(s);
+            }
+        }
+    }
+
+    /**
+     * Runs the query for each slice of the split, checking that no row turns up in more than one slice.
+     *
+     * @return The number of rows in each slice
+     */
+    private int[] slice(Export.Split split, String table, String column) throws SQLException {
+        final int[] counts = new int[split.getSliceCount()];
+        final Set<Integer> seen = new HashSet<>();
+        for (int i = 0; i < counts.length; i++) {
+            final String sql = "SELECT _ROWID_ FROM " + table + split.getPredicate(column, i);
+            try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                final Object[] binds = split.getBinds(i);
+                for (int j = 0; j < binds.length; j++) {
+                    ps.setObject(j + 1, binds[j]);
+                }
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        Assert.assertTrue("Row in more than one slice", seen.add(rs.getInt(1)));
+                        ++counts[i];
+                    }
+                }
+            }
+        }
+        try (Statement statement = conn.createStatement();
+             ResultSet rs = statement.executeQuery("SELECT COUNT(*) FROM " + table)) {
+            rs.next();
+            Assert.assertEquals("Rows missing from the slices", rs.getInt(1), seen.size());
+        }
+        return counts;
+    }
+
+    @Test
+    public void testMinMaxBoundaries() throws SQLException {
+        execute("CREATE TABLE t (id INT)",
+                "INSERT INTO t SELECT x FROM SYSTEM_RANGE(1, 100)",
+                "INSERT INTO t VALUES (NULL)");
+        final Export.Split split = Export.Split.minMax(conn, "t", "id", 4);
+        Assert.assertEquals(4, split.getSliceCount());
+        Assert.assertArrayEquals(new Object[] { 26L }, split.getBinds(0));
+        Assert.assertArrayEquals(new Object[] { 26L, 51L }, split.getBinds(1));
+        Assert.assertArrayEquals(new Object[] { 76L }, split.getBinds(3));
+
+        // The NULL goes in the first slice
+        Assert.assertArrayEquals(new int[] { 26, 25, 25, 25 }, slice(split, "t", "id"));
+    }
+
+    @Test
+    public void testMinMaxFewerValuesThanSlices() throws SQLException {
+        execute("CREATE TABLE t (id BIGINT)", "INSERT INTO t VALUES (5), (6), (6)");
+        final Export.Split split = Export.Split.minMax(conn, "t", "id", 8);
+        Assert.assertEquals(2, split.getSliceCount());
+        Assert.assertArrayEquals(new int[] { 1, 2 }, slice(split, "t", "id"));
+    }
+
+    @Test
+    public void testMinMaxSingleSlice() throws SQLException {
+        execute("CREATE TABLE t (id INT)", "INSERT INTO t VALUES (1), (NULL), (1000)");
+        final Export.Split split = Export.Split.minMax(conn, "t", "id", 1);
+        Assert.assertEquals(1, split.getSliceCount());
+        Assert.assertEquals("", split.getPredicate("id", 0));
+        Assert.assertEquals(0, split.getBinds(0).length);
+        Assert.assertArrayEquals(new int[] { 3 }, slice(split, "t", "id"));
+
+        // So is a table with a single value
+        execute("CREATE TABLE u (id INT)", "INSERT INTO u VALUES (7), (7)");
+        Assert.assertEquals(1, Export.Split.minMax(conn, "u", "id", 4).getSliceCount());
+    }
+
+    @Test
+    public void testMinMaxEmptyAndNull() throws SQLException {
+        execute("CREATE TABLE t (id INT)");
+        Export.Split split = Export.Split.minMax(conn, "t", "id", 4);
+        Assert.assertEquals(1, split.getSliceCount());
+        Assert.assertArrayEquals(new int[] { 0 }, slice(split, "t", "id"));
+
+        execute("INSERT INTO t VALUES (NULL), (NULL)");
+        split = Export.Split.minMax(conn, "t", "id", 4);
+        Assert.assertEquals(1, split.getSliceCount());
+        Assert.assertArrayEquals(new int[] { 2 }, slice(split, "t", "id"));
+    }
+
+    @Test
+    public void testMinMaxWideDecimal() throws SQLException {
+        execute("CREATE TABLE t (id DECIMAL(38, 0))",
+                "INSERT INTO t SELECT CAST('100000000000000000000000000000' AS DECIMAL(38, 0)) * x "
+                        + "FROM SYSTEM_RANGE(1, 10)");
+        final Export.Split split = Export.Split.minMax(conn, "t", "id", 3);
+        Assert.assertEquals(3, split.getSliceCount());
+        Assert.assertTrue(split.getBinds(0)[0] instanceof BigDecimal);
+        Assert.assertEquals(new BigDecimal("400000000000000000000000000000"), split.getBinds(0)[0]);
+        Assert.assertArrayEquals(new int[] { 3, 3, 4 }, slice(split, "t", "id"));
+    }
+
+    @Test
+    public void testMinMaxNotInteger() throws SQLException {
+        execute("CREATE TABLE t (name VARCHAR(10), amount DECIMAL(10, 2))", "INSERT INTO t VALUES ('a', 1.5)");
+        Assert.assertNull(Export.Split.minMax(conn, "t", "name", 4));
+        Assert.assertNull(Export.Split.minMax(conn, "t", "amount", 4));
+    }
+
+    @Test
+    public void testNtile() throws SQLException {
+        // Half of the rows share one value, which must end up in a single slice
+        execute("CREATE TABLE t (name VARCHAR(10))",
+                "INSERT INTO t SELECT 'k' || LPAD(CAST(x AS VARCHAR), 3, '0') FROM SYSTEM_RANGE(1, 50)",
+                "INSERT INTO t SELECT 'm' FROM SYSTEM_RANGE(1, 50)",
+                "INSERT INTO t VALUES (NULL)");
+        final Export.Split split = Export.Split.ntile(conn, "t", "name", 4);
+        Assert.assertEquals(3, split.getSliceCount());
+        Assert.assertEquals(" WHERE (name <= ? OR name IS NULL)", split.getPredicate("name", 0));
+        Assert.assertEquals(" WHERE name > ?", split.getPredicate("name", 2));
+        final int[] counts = slice(split, "t", "name");
+        Assert.assertArrayEquals(new int[] { 26, 25, 50 }, counts);
+    }
+
+    @Test
+    public void testNtileEmpty() throws SQLException {
+        execute("CREATE TABLE t (name VARCHAR(10))", "INSERT INTO t VALUES (NULL)");
+        final Export.Split split = Export.Split.ntile(conn, "t", "name", 4);
+        Assert.assertEquals(1, split.getSliceCount());
+        Assert.assertArrayEquals(new int[] { 1 }, slice(split, "t", "name"));
+    }
+
+    @Test
+    public void testPredicates() {
+        final Export.Split lower = new Export.Split(new Object[] { 10, 20 }, false);
+        final List<String> predicates = new ArrayList<>();
+        for (int i = 0; i < lower.getSliceCount(); i++) {
+            predicates.add(lower.getPredicate("c", i));
+        }
+        Assert.assertEquals(List.of(" WHERE (c < ? OR c IS NULL)", " WHERE c >= ? AND c < ?", " WHERE c >= ?"),
+                predicates);
+        Assert.assertArrayEquals(new Object[] { 10 }, lower.getBinds(0));
+        Assert.assertArrayEquals(new Object[] { 10, 20 }, lower.getBinds(1));
+        Assert.assertArrayEquals(new Object[] { 20 }, lower.getBinds(2));
+
+        final Export.Split upper = new Export.Split(new Object[] { 10 }, true);
+        Assert.assertEquals(" WHERE (c <= ? OR c IS NULL)", upper.getPredicate("c", 0));
+        Assert.assertEquals(" WHERE c > ?", upper.getPredicate("c", 1));
+    }
+}